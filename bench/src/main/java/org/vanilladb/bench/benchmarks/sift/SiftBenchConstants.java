@@ -8,6 +8,7 @@ public class SiftBenchConstants {
     public static final int NUM_DIMENSION;
     public static final String DATASET_FILE;
     public static final double READ_INSERT_TX_RATE;
+    public static final int NUM_NEIGHBORS = 20;
 
     static {
         NUM_ITEMS = BenchProperties.getLoader().getPropertyAsInteger(
@@ -7,7 +7,8 @@ public enum SiftTransactionType implements BenchTransactionType{
     TESTBED_LOADER(false),
     CHECK_DATABASE(false),
     ANN(true), INSERT(true),
-    CALCULATE_RECALL(false);
+    CALCULATE_RECALL(false),
+    BATCH_ANN(false);
 
     public static SiftTransactionType fromProcedureId(int pid) {
         return SiftTransactionType.values()[pid];
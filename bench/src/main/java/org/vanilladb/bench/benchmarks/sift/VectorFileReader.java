@@ -0,0 +1,183 @@
+package org.vanilladb.bench.benchmarks.sift;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the vectors of a dataset file in batches of primitive arrays. The
+ * format is told by the file extension:
+ * <ul>
+ * <li>{@code .fvecs}: each vector is a little-endian int of its dimension,
+ * followed by that many little-endian floats.</li>
+ * <li>{@code .bvecs}: the same, but each component is an unsigned byte.</li>
+ * <li>otherwise, a text file with one vector per line, whose components are
+ * separated by spaces (e.g., {@code sift.txt}).</li>
+ * </ul>
+ *
+ * <p>
+ * The file is decoded by a producer thread, which hands full batches to the
+ * reader through a bounded queue, so decoding overlaps with the consumer.
+ * Binary files are memory-mapped window by window instead of being copied
+ * through a stream.
+ * </p>
+ */
+public class VectorFileReader implements AutoCloseable {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 8;
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    // marks the end of the file, or a failure of the producer
+    private static final float[][] END = new float[0][];
+
+    private final String fileName;
+    private final BlockingQueue<float[][]> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread producer;
+    private volatile Exception failure;
+    private boolean finished;
+
+    /**
+     * Starts reading the vectors of a file.
+     *
+     * @param fileName
+     *            the path of the file
+     * @param maxVectors
+     *            the maximum number of vectors to read from the beginning of
+     *            the file
+     */
+    public VectorFileReader(String fileName, int maxVectors) {
+        this.fileName = fileName;
+        producer = new Thread(() -> produce(maxVectors), "VectorFileReader-" + fileName);
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Returns the next batch of vectors, waiting for the producer if needed.
+     *
+     * @return the next non-empty batch, or null if all the vectors are read
+     */
+    public float[][] nextBatch() {
+        if (finished)
+            return null;
+        float[][] batch;
+        try {
+            batch = batches.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while reading " + fileName, e);
+        }
+        if (batch == END) {
+            finished = true;
+            if (failure != null)
+                throw new RuntimeException("failed to read " + fileName, failure);
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * Stops the producer, which may still be decoding the file.
+     */
+    @Override
+    public void close() {
+        finished = true;
+        producer.interrupt();
+    }
+
+    private void produce(int maxVectors) {
+        try {
+            if (fileName.endsWith(".fvecs"))
+                readBinary(maxVectors, Float.BYTES);
+            else if (fileName.endsWith(".bvecs"))
+                readBinary(maxVectors, Byte.BYTES);
+            else
+                readText(maxVectors);
+        } catch (InterruptedException e) {
+            // closed by the reader
+            return;
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+        try {
+            batches.put(END);
+        } catch (InterruptedException e) {
+            // closed by the reader
+        }
+    }
+
+    private void readBinary(int maxVectors, int componentSize)
+            throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < Integer.BYTES)
+                return;
+
+            // every vector of a file has the same dimension
+            int dim = channel.map(FileChannel.MapMode.READ_ONLY, 0, Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).getInt();
+            long vectorSize = Integer.BYTES + (long) dim * componentSize;
+            long numVectors = Math.min(fileSize / vectorSize, maxVectors);
+            long vectorsPerWindow = Math.max(1, MAP_WINDOW_SIZE / vectorSize);
+
+            float[][] batch = new float[BATCH_SIZE][];
+            int n = 0;
+            for (long first = 0; first < numVectors; first += vectorsPerWindow) {
+                long count = Math.min(vectorsPerWindow, numVectors - first);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        first * vectorSize, count * vectorSize);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                for (long i = 0; i < count; i++) {
+                    if (window.getInt() != dim)
+                        throw new IOException("vector " + (first + i) + " does not have "
+                                + dim + " dimensions");
+                    float[] vec = new float[dim];
+                    if (componentSize == Float.BYTES)
+                        for (int j = 0; j < dim; j++)
+                            vec[j] = window.getFloat();
+                    else
+                        for (int j = 0; j < dim; j++)
+                            vec[j] = window.get() & 0xFF;
+                    batch[n++] = vec;
+                    if (n == BATCH_SIZE) {
+                        batches.put(batch);
+                        batch = new float[BATCH_SIZE][];
+                        n = 0;
+                    }
+                }
+            }
+            if (n > 0)
+                batches.put(Arrays.copyOf(batch, n));
+        }
+    }
+
+    private void readText(int maxVectors) throws IOException, InterruptedException {
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            float[][] batch = new float[BATCH_SIZE][];
+            int n = 0;
+            String line;
+            for (int i = 0; i < maxVectors && (line = br.readLine()) != null; i++) {
+                String[] split = line.split(" ");
+                float[] vec = new float[split.length];
+                for (int j = 0; j < split.length; j++)
+                    vec[j] = Float.parseFloat(split[j]);
+                batch[n++] = vec;
+                if (n == BATCH_SIZE) {
+                    batches.put(batch);
+                    batch = new float[BATCH_SIZE][];
+                    n = 0;
+                }
+            }
+            if (n > 0)
+                batches.put(Arrays.copyOf(batch, n));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.vanilladb.bench.benchmarks.sift.rte;
+
+import java.util.Set;
+
+/**
+ * An ANN query issued during the benchmark, kept with the number of inserts
+ * that had happened when it finished and the neighbors it returned, so that
+ * its recall can be computed afterwards. Every issue draws a new query
+ * vector, whose exact neighbors are computed when the recall is calculated.
+ */
+public class IssuedQuery {
+    private final float[] query;
+    private final int insertCount;
+    private final Set<Integer> neighbors;
+
+    public IssuedQuery(float[] query, int insertCount, Set<Integer> neighbors) {
+        this.query = query;
+        this.insertCount = insertCount;
+        this.neighbors = neighbors;
+    }
+
+    public float[] query() {
+        return query;
+    }
+
+    /**
+     * Returns the number of the inserts in the history that the query may see.
+     */
+    public int insertCount() {
+        return insertCount;
+    }
+
+    public Set<Integer> neighbors() {
+        return neighbors;
+    }
+}
@@ -0,0 +1,130 @@
+package org.vanilladb.bench.benchmarks.sift.rte;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.vanilladb.core.sql.distfn.VectorOps;
+
+/**
+ * The exact k nearest neighbors of the queries issued during the benchmark,
+ * used to measure the recall on the client side without querying the
+ * database.
+ *
+ * <p>
+ * Every issue draws a new query vector, so the neighbors are computed on
+ * demand for the issued queries by a parallel brute-force search. The search
+ * splits the queries into chunks over the worker threads, and each thread
+ * compares its chunk with one block of items at a time so that the block
+ * stays in cache. Distances are computed by {@link VectorOps}, on SIMD if
+ * available.
+ * </p>
+ *
+ * <p>
+ * Each query is compared with the initial items and with only the inserts
+ * that happened before it was issued.
+ * </p>
+ */
+public class SiftGroundTruth {
+
+    private static final int QUERY_CHUNK = 16, ITEM_BLOCK = 1024;
+
+    private final float[] items, inserts;
+    private final int[] insertIds;
+    private final int dim, k;
+
+    /**
+     * Creates the ground truth over the given items.
+     *
+     * @param items
+     *            the initial items as a flat row-major matrix, indexed by item
+     *            id
+     * @param inserts
+     *            the vectors of the inserted items as a flat row-major matrix,
+     *            in the order of insertion
+     * @param insertIds
+     *            the ids of the inserted items
+     * @param dim
+     *            the dimension of the vectors
+     * @param k
+     *            the number of neighbors of a query
+     */
+    public SiftGroundTruth(float[] items, float[] inserts, int[] insertIds, int dim, int k) {
+        this.items = items;
+        this.inserts = inserts;
+        this.insertIds = insertIds;
+        this.dim = dim;
+        this.k = k;
+    }
+
+    /**
+     * Returns the exact nearest neighbors of each query among the initial
+     * items and the inserts that happened before it.
+     *
+     * @param queries
+     *            the query vectors
+     * @param numInserts
+     *            the number of inserts that happened before each query
+     * @return the ids of the neighbors of each query in ascending order of
+     *         distance
+     */
+    public int[][] neighbors(float[][] queries, int[] numInserts) {
+        int numItems = items.length / dim;
+        int[][] neighbors = new int[queries.length][];
+        int numChunks = (queries.length + QUERY_CHUNK - 1) / QUERY_CHUNK;
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            int from = chunk * QUERY_CHUNK, to = Math.min(queries.length, from + QUERY_CHUNK);
+            TopK[] tops = new TopK[to - from];
+            for (int q = from; q < to; q++)
+                tops[q - from] = new TopK(k);
+            for (int blk = 0; blk < numItems; blk += ITEM_BLOCK) {
+                int end = Math.min(numItems, blk + ITEM_BLOCK);
+                for (int q = from; q < to; q++) {
+                    TopK top = tops[q - from];
+                    for (int i = blk; i < end; i++)
+                        top.offer(VectorOps.squaredEuclidean(items, i * dim, queries[q], dim), i);
+                }
+            }
+            for (int q = from; q < to; q++) {
+                TopK top = tops[q - from];
+                for (int i = 0; i < numInserts[q]; i++)
+                    top.offer(VectorOps.squaredEuclidean(inserts, i * dim, queries[q], dim),
+                            insertIds[i]);
+                neighbors[q] = top.ids();
+            }
+        });
+        return neighbors;
+    }
+
+    /**
+     * The k smallest distances seen so far, kept in ascending order on
+     * primitive arrays. Insertion costs O(k), which is cheap for the small k
+     * of the benchmark compared to the distance computation.
+     */
+    private static class TopK {
+        private final float[] dists;
+        private final int[] ids;
+        private int size;
+
+        TopK(int k) {
+            dists = new float[k];
+            ids = new int[k];
+        }
+
+        void offer(float dist, int id) {
+            if (size == dists.length && dist >= dists[size - 1])
+                return;
+            int pos = size < dists.length ? size++ : size - 1;
+            while (pos > 0 && dists[pos - 1] > dist) {
+                dists[pos] = dists[pos - 1];
+                ids[pos] = ids[pos - 1];
+                pos--;
+            }
+            dists[pos] = dist;
+            ids[pos] = id;
+        }
+
+        int[] ids() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -1,13 +1,11 @@
 package org.vanilladb.bench.benchmarks.sift.rte;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 
 import org.vanilladb.bench.benchmarks.sift.SiftBenchConstants;
 import org.vanilladb.bench.benchmarks.sift.SiftTransactionType;
+import org.vanilladb.bench.benchmarks.sift.VectorFileReader;
 import org.vanilladb.bench.rte.TxParamGenerator;
 import org.vanilladb.bench.util.RandomValueGenerator;
 import org.vanilladb.core.sql.VectorConstant;
@@ -22,26 +20,36 @@ public class SiftParamGen implements TxParamGenerator<SiftTransactionType> {
 
     static {
         System.out.println("start loading sift dataset...");
-        int line = 1000000;
-        String vectorString;
-        try (BufferedReader br = new BufferedReader(new FileReader(SiftBenchConstants.DATASET_FILE))) {
-            for (int i = 0; i < line; i++) {
-                vectorString = br.readLine();
-                queryList.add((VectorConstant) (new VectorConstant(vectorString)));
-            }
-        }
-        catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException(SiftBenchConstants.DATASET_FILE + " not found.");
+        try (VectorFileReader reader = new VectorFileReader(SiftBenchConstants.DATASET_FILE, 1000000)) {
+            float[][] batch;
+            while ((batch = reader.nextBatch()) != null)
+                for (float[] vec : batch)
+                    queryList.add(new VectorConstant(vec));
         }
         System.out.println("SiftParamGen: " + queryList.size() + " vectors loaded.");
     }
 
+    /**
+     * Returns the first n vectors of the dataset, which are the items loaded
+     * into the database, as a flat row-major matrix.
+     */
+    public static float[] datasetVectors(int n) {
+        int dim = SiftBenchConstants.NUM_DIMENSION;
+        float[] matrix = new float[n * dim];
+        for (int i = 0; i < n; i++)
+            System.arraycopy(queryList.get(i).asJavaVal(), 0, matrix, i * dim, dim);
+        return matrix;
+    }
+
     @Override
     public SiftTransactionType getTxnType() {
         return SiftTransactionType.ANN;
     }
 
+    /**
+     * Returns a dataset vector plus Gaussian noise, so that every query
+     * issued during the benchmark is a new one.
+     */
     private VectorConstant getSingleVector(int line) {
         VectorConstant randomNoise = VectorConstant.normal(SiftBenchConstants.NUM_DIMENSION, 0, 1);
         return (VectorConstant) queryList.get(line).add(randomNoise);
@@ -57,7 +65,7 @@ public class SiftParamGen implements TxParamGenerator<SiftTransactionType> {
         paramList.add(SiftBenchConstants.NUM_DIMENSION);
 
         // Generate a query vector
-        query = getSingleVector(randomGenerator.number(0, 1000000 - 1));
+        query = getSingleVector(randomGenerator.number(0, queryList.size() - 1));
         
         for (int i = 0; i < SiftBenchConstants.NUM_DIMENSION; i++) {
             paramList.add(query.get(i));
@@ -1,34 +1,25 @@
 package org.vanilladb.bench.benchmarks.sift.rte;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.vanilladb.bench.StatisticMgr;
 import org.vanilladb.bench.benchmarks.sift.SiftBenchConstants;
 import org.vanilladb.bench.benchmarks.sift.SiftTransactionType;
 import org.vanilladb.bench.remote.SutConnection;
-import org.vanilladb.bench.remote.sp.VanillaDbSpResultSet;
 import org.vanilladb.bench.rte.RemoteTerminalEmulator;
 import org.vanilladb.bench.rte.TransactionExecutor;
 import org.vanilladb.bench.rte.TxParamGenerator;
 import org.vanilladb.bench.util.RandomValueGenerator;
-import org.vanilladb.core.sql.Schema;
-import org.vanilladb.core.sql.VectorConstant;
-import org.vanilladb.core.sql.Record;
 
 public class SiftRte extends RemoteTerminalEmulator<SiftTransactionType> {
 
     private SiftTxExecutor executor;
     private static final int precision = 100;
 
-    static Map<VectorConstant, Set<Integer>> resultMap = new ConcurrentHashMap<>();
-    static Map<VectorConstant, Integer> insertMap = new ConcurrentHashMap<>();
+    static Queue<IssuedQuery> issuedQueries = new ConcurrentLinkedQueue<>();
     static CopyOnWriteArrayList<Object[]> insertHistory = new CopyOnWriteArrayList<>();
 
     public SiftRte(SutConnection conn, StatisticMgr statMgr, long sleepTime) {
@@ -62,73 +53,60 @@ public class SiftRte extends RemoteTerminalEmulator<SiftTransactionType> {
                 paramGen = new SiftParamGen();
                 break;
         }
-        executor = new SiftTxExecutor(paramGen, resultMap, insertMap, insertHistory);
+        executor = new SiftTxExecutor(paramGen, issuedQueries, insertHistory);
         return executor;
     }
 
+    /**
+     * Computes the average recall of the queries issued during the benchmark
+     * on the client side, over every issued query. The exact neighbors of the
+     * queries are computed by {@link SiftGroundTruth} among the initial items
+     * and the items inserted before each query was issued.
+     */
     public void executeCalculateRecall(SutConnection conn) throws SQLException {
-        List<Double> recallList = new ArrayList<>();
-        List<Map.Entry<VectorConstant, Integer>> insertMapList = new ArrayList<>(insertMap.entrySet());
-        insertMapList.sort(Map.Entry.comparingByValue());
-
-        // System.out.println("insertHistory: ");
-        // for (Object[] array : insertHistory) {
-        //     for (Object obj : array) {
-        //         System.out.print(obj + " ");
-        //     }
-        //     System.out.println();
-        // }
-        // System.out.println("==========");
-
-        for (Map.Entry<VectorConstant, Integer> entry : insertMapList) {
-            VectorConstant query = entry.getKey();
-            int insertCount = entry.getValue();
-            Set<Integer> approximateNeighbors = resultMap.get(query);
-
-            ArrayList<Object> paramList = new ArrayList<>();
-            paramList.add(SiftBenchConstants.NUM_DIMENSION);
-            for (int i = 0; i < SiftBenchConstants.NUM_DIMENSION; i++) {
-                paramList.add(query.get(i));
-            }
-            paramList.add(insertCount);
-            for (int i = 0; i < insertCount; i++) {
-                Object[] insertParam = insertHistory.get(i);
-                for (Object obj : insertParam) {
-                    paramList.add(obj);
-                }
-            }
-
-            // System.out.println("paramList: " + paramList);
-
-            VanillaDbSpResultSet recallResultSet = (VanillaDbSpResultSet) conn.callStoredProc(SiftTransactionType.CALCULATE_RECALL.getProcedureId(), paramList.toArray());
-            Schema sch = recallResultSet.getSchema();
-            Record rec = recallResultSet.getRecords()[0];
-
-            Set<Integer> trueNeighbors = new HashSet<>();
-
-            for (String fld : sch.fields()) {
-                if (fld.equals("rc")) {
-                    // For record count
-                    continue;
-                }
-                trueNeighbors.add((Integer) rec.getVal(fld).asJavaVal());
-            }
-
-            approximateNeighbors.retainAll(trueNeighbors);
-            double recallRate = (double) approximateNeighbors.size() / trueNeighbors.size();
-
-            recallList.add(recallRate);
+        if (issuedQueries.isEmpty()) {
+            System.out.println("Average Recall Rate: no ANN queries were issued");
+            return;
         }
 
+        int dim = SiftBenchConstants.NUM_DIMENSION;
+        long start = System.currentTimeMillis();
+
+        // params of an insert: [dim, emb..., id]
+        float[] inserts = new float[insertHistory.size() * dim];
+        int[] insertIds = new int[insertHistory.size()];
+        for (int i = 0; i < insertIds.length; i++) {
+            Object[] insertParam = insertHistory.get(i);
+            for (int j = 0; j < dim; j++)
+                inserts[i * dim + j] = (Float) insertParam[j + 1];
+            insertIds[i] = (Integer) insertParam[dim + 1];
+        }
+
+        IssuedQuery[] issued = issuedQueries.toArray(new IssuedQuery[0]);
+        float[][] queries = new float[issued.length][];
+        int[] insertCounts = new int[issued.length];
+        for (int i = 0; i < issued.length; i++) {
+            queries[i] = issued[i].query();
+            insertCounts[i] = issued[i].insertCount();
+        }
+        SiftGroundTruth groundTruth = new SiftGroundTruth(
+                SiftParamGen.datasetVectors(SiftBenchConstants.NUM_ITEMS), inserts, insertIds,
+                dim, SiftBenchConstants.NUM_NEIGHBORS);
+        int[][] trueNeighbors = groundTruth.neighbors(queries, insertCounts);
+
         double sum = 0;
-        for (double recallRate : recallList) {
-            sum += recallRate;
+        for (int i = 0; i < issued.length; i++) {
+            int hits = 0;
+            for (int id : trueNeighbors[i])
+                if (issued[i].neighbors().contains(id))
+                    hits++;
+            sum += (double) hits / trueNeighbors[i].length;
         }
-        double averageRecallRate = sum / recallList.size();
+        double averageRecallRate = sum / issued.length;
 
         statMgr.setRecall(averageRecallRate);
 
-        System.out.println("Average Recall Rate: " + averageRecallRate);
+        System.out.println("Average Recall Rate: " + averageRecallRate + " ("
+                + (System.currentTimeMillis() - start) + " ms)");
     }
-    
 }
@@ -1,7 +1,7 @@
 package org.vanilladb.bench.benchmarks.sift.rte;
 
 import java.util.HashSet;
-import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -15,19 +15,16 @@ import org.vanilladb.bench.rte.TxParamGenerator;
 import org.vanilladb.bench.rte.jdbc.JdbcExecutor;
 import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.Schema;
-import org.vanilladb.core.sql.VectorConstant;
 
 public class SiftTxExecutor extends TransactionExecutor<SiftTransactionType> {
 
-    private Map<VectorConstant, Set<Integer>> resultMap;
-    private Map<VectorConstant, Integer> insertMap;
+    private Queue<IssuedQuery> issuedQueries;
     private CopyOnWriteArrayList<Object[]> insertHistory;
     private boolean isWarmingUp = false;
 
-    public SiftTxExecutor(TxParamGenerator<SiftTransactionType> pg, Map<VectorConstant, Set<Integer>> resultMap, Map<VectorConstant, Integer> insertMap, CopyOnWriteArrayList<Object[]> insertHistory) {
+    public SiftTxExecutor(TxParamGenerator<SiftTransactionType> pg, Queue<IssuedQuery> issuedQueries, CopyOnWriteArrayList<Object[]> insertHistory) {
         this.pg = pg;
-        this.resultMap = resultMap;
-        this.insertMap = insertMap;
+        this.issuedQueries = issuedQueries;
         this.insertHistory = insertHistory;
     }
 
@@ -40,7 +37,6 @@ public class SiftTxExecutor extends TransactionExecutor<SiftTransactionType> {
         try {
             // generate parameters
             Object[] params = pg.generateParameter();
-            VectorConstant query = ((SiftParamGen) pg).getQuery();
 
             long txnRT = System.nanoTime();
 
@@ -48,10 +44,7 @@ public class SiftTxExecutor extends TransactionExecutor<SiftTransactionType> {
             
 
             VanillaDbSpResultSet result = (VanillaDbSpResultSet) executeTxn(conn, params);
-            
-            if (pg.getTxnType() == SiftTransactionType.ANN && !isWarmingUp){
-                insertMap.put(query, insertHistory.size());
-            }
+            int insertCount = insertHistory.size();
 
             if (pg.getTxnType() == SiftTransactionType.INSERT && !isWarmingUp){
                 // params: [dim, new_emb, id]
@@ -78,7 +71,8 @@ public class SiftTxExecutor extends TransactionExecutor<SiftTransactionType> {
             }
 
             if (pg.getTxnType() == SiftTransactionType.ANN && !isWarmingUp){
-                resultMap.put(query, approximateNeighbors);
+                issuedQueries.add(new IssuedQuery(((SiftParamGen) pg).getQuery().asJavaVal(),
+                        insertCount, approximateNeighbors));
             }
             
             return new TxnResultSet(pg.getTxnType(), txnRT, txnEndTime, result.isCommitted(), result.outputMsg());
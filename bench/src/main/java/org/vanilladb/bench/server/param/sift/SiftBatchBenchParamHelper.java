@@ -0,0 +1,85 @@
+package org.vanilladb.bench.server.param.sift;
+
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.storedprocedure.SpResultRecord;
+import org.vanilladb.core.sql.storedprocedure.StoredProcedureHelper;
+
+/**
+ * The parameters of a batch of nearest neighbor queries, which are the vector
+ * dimension, the number of queries, and then the components of every query.
+ * The result holds the ids of the neighbors of query {@code q} at rank
+ * {@code r} in the field {@code id_<q>_<r>}.
+ */
+public class SiftBatchBenchParamHelper implements StoredProcedureHelper {
+    private final String table = "sift";
+    private final String embField = "i_emb";
+    private VectorConstant[] queries;
+    private int numDimension;
+    private Integer[][] items;
+    private int numNeighbors = 20; // Number of top-k
+
+    @Override
+    public void prepareParameters(Object... pars) {
+        numDimension = (Integer) pars[0];
+        int numQueries = (Integer) pars[1];
+        queries = new VectorConstant[numQueries];
+        items = new Integer[numQueries][numNeighbors];
+
+        int ptr = 2;
+        for (int q = 0; q < numQueries; q++) {
+            float[] rawVector = new float[numDimension];
+            for (int i = 0; i < numDimension; i++)
+                rawVector[i] = (float) pars[ptr++];
+            queries[q] = new VectorConstant(rawVector);
+        }
+    }
+
+    @Override
+    public Schema getResultSetSchema() {
+        Schema sch = new Schema();
+        sch.addField("rc", Type.INTEGER);
+        for (int q = 0; q < queries.length; q++)
+            for (int i = 0; i < numNeighbors; i++)
+                sch.addField("id_" + q + "_" + i, Type.INTEGER);
+        return sch;
+    }
+
+    @Override
+    public SpResultRecord newResultSetRecord() {
+        SpResultRecord rec = new SpResultRecord();
+        rec.setVal("rc", new IntegerConstant(numNeighbors));
+
+        for (int q = 0; q < queries.length; q++)
+            for (int i = 0; i < numNeighbors; i++)
+                rec.setVal("id_" + q + "_" + i, new IntegerConstant(items[q][i]));
+        return rec;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    public void setNearestNeighbors(int queryId, Integer[] nearestNeighbors) {
+        items[queryId] = nearestNeighbors;
+    }
+
+    public String getTableName() {
+        return table;
+    }
+
+    public String getEmbeddingField() {
+        return embField;
+    }
+
+    public VectorConstant[] getQueries() {
+        return queries;
+    }
+
+    public int getK() {
+        return numNeighbors;
+    }
+}
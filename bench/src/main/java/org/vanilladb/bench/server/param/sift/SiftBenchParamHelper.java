@@ -3,6 +3,7 @@ package org.vanilladb.bench.server.param.sift;
 import java.util.Set;
 import java.util.ArrayList;
 
+import org.vanilladb.bench.benchmarks.sift.SiftBenchConstants;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.Type;
@@ -16,7 +17,7 @@ public class SiftBenchParamHelper implements StoredProcedureHelper {
     private VectorConstant query;
     private int numDimension;
     private Integer[] items;
-    private int numNeighbors = 20; // Number of top-k
+    private int numNeighbors = SiftBenchConstants.NUM_NEIGHBORS;
 
     private int insertCount = 0;
     private ArrayList<Object[]> insertHistory  = new ArrayList<>();
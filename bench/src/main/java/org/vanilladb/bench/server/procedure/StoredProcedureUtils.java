@@ -15,49 +15,33 @@
  *******************************************************************************/
 package org.vanilladb.bench.server.procedure;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-
-import static org.vanilladb.core.sql.RecordComparator.DIR_DESC;
 
 import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.algebra.Scan;
-import org.vanilladb.core.query.algebra.TableScan;
-import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.vector.ParallelNearestNeighborPlan;
 import org.vanilladb.core.query.parse.InsertData;
+import org.vanilladb.core.query.planner.index.BulkLoader;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.Record;
-import org.vanilladb.core.sql.RecordComparator;
 import org.vanilladb.core.sql.VectorConstant;
 import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.sql.distfn.EuclideanFn;
 import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.index.IndexType;
+import org.vanilladb.core.storage.index.diskann.DiskANNIndex;
 import org.vanilladb.core.storage.index.ivf.IVFIndex;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
 
-import java.util.SortedSet;
 public class StoredProcedureUtils {
 	public static void executeTrainIndex(String tblname, List<String> embFields, 
             String idxName, Transaction tx) {
-		Plan p = new TablePlan(tblname, tx);
-		DistanceFn distFn = new EuclideanFn(embFields.get(0));
-		System.out.println("SP utils execute train index, table: " + tblname);
-		Scan s = p.open();
-		TableScan ts = (TableScan)s;
-		SortedSet<String> fields = ts.schema.fields();
-		System.out.println("FIELDS:");
-		for (String f : fields) {
-			System.out.println(f);
-		}
-		s.beforeFirst();
-		while (s.next()) {
-			// System.out.println("id: " + s.getVal("i_id") + 
-			// "i_emb: " + s.getVal("i_emb"));
-		}
-		s.close();
+		IndexInfo ii = VanillaDb.catalogMgr().getIndexInfoByName(idxName, tx);
+		if (ii != null && ii.indexType() == IndexType.DISKANN)
+			DiskANNIndex.build(tblname, embFields, idxName, tx);
+		else
+			IVFIndex.train(tblname, embFields, idxName, tx);
 	}
 	public static Scan executeQuery(String sql, Transaction tx) {
 		Plan p = VanillaDb.newPlanner().createQueryPlan(sql, tx);
@@ -68,98 +52,32 @@ public class StoredProcedureUtils {
 		return VanillaDb.newPlanner().executeUpdate(sql, tx);
 	}
 
-	static class MapRecord implements Record{
-
-		Map<String, Constant> fldVals = new HashMap<>();
-
-		@Override
-		public Constant getVal(String fldName) {
-			return fldVals.get(fldName);
-		}
-
-		public void put(String fldName, Constant val) {
-			fldVals.put(fldName, val);
-		}
-
-		public boolean containsKey(String fldName) {
-			return fldVals.containsKey(fldName);
-		}
-	}
-
-	static class PriorityQueueScan implements Scan {
-        private PriorityQueue<MapRecord> pq;
-        private boolean isBeforeFirsted = false;
-
-        public PriorityQueueScan(PriorityQueue<MapRecord> pq) {
-            this.pq = pq;
-        }
-
-        @Override
-        public Constant getVal(String fldName) {
-            return pq.peek().getVal(fldName);
-        }
-
-        @Override
-        public void beforeFirst() {
-            this.isBeforeFirsted = true;
-        }
-
-        @Override
-        public boolean next() {
-            if (isBeforeFirsted) {
-                isBeforeFirsted = false;
-                return true;
-            }
-            pq.poll();
-            return pq.size() > 0;
-        }
-
-        @Override
-        public void close() {
-            return;
-        }
-
-        @Override
-        public boolean hasField(String fldName) {
-            return pq.peek().containsKey(fldName);
-        }
-    }
-
+	/**
+	 * Finds the exact k nearest neighbors of the query vector by scanning the
+	 * whole table in parallel.
+	 */
 	public static Scan executeCalculateRecall(VectorConstant query, String tableName, String field, int limit, Transaction tx) {
-		Plan p = new TablePlan(tableName, tx);
-
 		DistanceFn distFn = new EuclideanFn(field);
 		distFn.setQueryVector(query);
 
-		List<String> sortFlds = new ArrayList<String>();
-		sortFlds.add(distFn.fieldName());
-		
-		List<Integer> sortDirs = new ArrayList<Integer>();
-		sortDirs.add(DIR_DESC); // for priority queue
-
-		RecordComparator comp = new RecordComparator(sortFlds, sortDirs, distFn);
-
-		PriorityQueue<MapRecord> pq = new PriorityQueue<>(limit, (MapRecord r1, MapRecord r2) -> comp.compare(r1, r2));
-		
-		Scan s = p.open();
-		s.beforeFirst();
-		while (s.next()) {
-			MapRecord fldVals = new MapRecord();
-			for (String fldName : p.schema().fields()) {
-				fldVals.put(fldName, s.getVal(fldName));
-			}
-			pq.add(fldVals);
-			if (pq.size() > limit)
-				pq.poll();
-		}
-		s.close();
-
-		s = new PriorityQueueScan(pq);
-
-		return s;
+		Plan p = new ParallelNearestNeighborPlan(tableName, null, distFn, limit, tx);
+		return p.open();
 	}
 
 	public static int executeInsert(InsertData sql, Transaction tx) {
 		return VanillaDb.newPlanner().executeInsert(sql, tx);
 	}
+
+	/**
+	 * Loads the rows into the table by a {@link BulkLoader}, which appends
+	 * them without planning each insertion and then fills the indexes of the
+	 * table in batches.
+	 */
+	public static int bulkLoad(String tblName, List<String> fldNames,
+			Iterator<List<Constant>> rows, Transaction tx) {
+		BulkLoader loader = new BulkLoader(tblName, fldNames, tx);
+		while (rows.hasNext())
+			loader.insert(rows.next());
+		return loader.finish();
+	}
 }
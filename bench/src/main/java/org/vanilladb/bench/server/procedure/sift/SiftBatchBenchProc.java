@@ -0,0 +1,58 @@
+package org.vanilladb.bench.server.procedure.sift;
+
+import org.vanilladb.bench.server.param.sift.SiftBatchBenchParamHelper;
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.vector.BatchNearestNeighborPlan;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.sql.storedprocedure.StoredProcedure;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Searches the nearest neighbors of a batch of queries in one transaction,
+ * so that the queries share the scans of the index partitions they probe.
+ */
+public class SiftBatchBenchProc extends StoredProcedure<SiftBatchBenchParamHelper> {
+
+    public SiftBatchBenchProc() {
+        super(new SiftBatchBenchParamHelper());
+    }
+
+    @Override
+    protected void executeSql() {
+        SiftBatchBenchParamHelper paramHelper = getHelper();
+        VectorConstant[] queries = paramHelper.getQueries();
+        Transaction tx = getTransaction();
+
+        DistanceFn[] distFns = new DistanceFn[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            distFns[q] = new EuclideanFn(paramHelper.getEmbeddingField());
+            distFns[q].setQueryVector(queries[q]);
+        }
+
+        // Execute the nearest neighbor searches of all queries together
+        Plan p = VanillaDb.newPlanner().createBatchNearestNeighborPlan(
+                paramHelper.getTableName(), distFns, paramHelper.getK(), -1, tx);
+        Scan s = p.open();
+        s.beforeFirst();
+
+        Integer[][] nearestNeighbors = new Integer[queries.length][paramHelper.getK()];
+        int[] counts = new int[queries.length];
+        while (s.next()) {
+            int q = (Integer) s.getVal(BatchNearestNeighborPlan.QUERY_ID_FIELD).asJavaVal();
+            nearestNeighbors[q][counts[q]++] = (Integer) s.getVal("i_id").asJavaVal();
+        }
+        s.close();
+
+        for (int q = 0; q < queries.length; q++) {
+            if (counts[q] == 0)
+                throw new RuntimeException("Nearest neighbor query execution failed for "
+                        + queries[q].toString());
+            paramHelper.setNearestNeighbors(q, nearestNeighbors[q]);
+        }
+    }
+
+}
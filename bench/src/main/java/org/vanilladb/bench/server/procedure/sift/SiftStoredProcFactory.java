@@ -25,6 +25,9 @@ public class SiftStoredProcFactory implements StoredProcedureFactory {
             case CALCULATE_RECALL:
                 sp = new SiftCalculateRecallProc();
                 break;
+            case BATCH_ANN:
+                sp = new SiftBatchBenchProc();
+                break;
             default:
                 throw new UnsupportedOperationException("Benchmarker does not recognize procedure " + pid);
         }
@@ -1,15 +1,19 @@
 package org.vanilladb.bench.server.procedure.sift;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.vanilladb.bench.benchmarks.sift.SiftBenchConstants;
+import org.vanilladb.bench.benchmarks.sift.VectorFileReader;
 import org.vanilladb.bench.server.param.sift.SiftTestbedLoaderParamHelper;
 import org.vanilladb.bench.server.procedure.StoredProcedureUtils;
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VectorConstant;
 import org.vanilladb.core.sql.storedprocedure.StoredProcedure;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.storage.tx.recovery.CheckpointTask;
@@ -90,20 +94,34 @@ public class SiftTestbedLoaderProc extends StoredProcedure<SiftTestbedLoaderPara
         if (logger.isLoggable(Level.FINE))
             logger.info("Start populating items from SIFT1M dataset");
 
+        SiftTestbedLoaderParamHelper paramHelper = getHelper();
         Transaction tx = getTransaction();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(SiftBenchConstants.DATASET_FILE))) {
-            int iid = startIId;
-            String vectorString;
-
-            while (iid < SiftBenchConstants.NUM_ITEMS && (vectorString = br.readLine()) != null) {
-                String sql = "INSERT INTO sift(i_id, i_emb) VALUES (" + iid + ", [" + vectorString + "])";
-                // logger.info(sql);
-                iid++;
-                StoredProcedureUtils.executeUpdate(sql, tx);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        // the vectors are decoded in the background and loaded without SQL
+        try (VectorFileReader reader = new VectorFileReader(SiftBenchConstants.DATASET_FILE,
+                SiftBenchConstants.NUM_ITEMS - startIId)) {
+            Iterator<List<Constant>> items = new Iterator<List<Constant>>() {
+                private int iid = startIId;
+                private float[][] batch;
+                private int pos;
+
+                @Override
+                public boolean hasNext() {
+                    if (batch != null && pos < batch.length)
+                        return true;
+                    batch = reader.nextBatch();
+                    pos = 0;
+                    return batch != null;
+                }
+
+                @Override
+                public List<Constant> next() {
+                    return Arrays.asList(new IntegerConstant(iid++), new VectorConstant(batch[pos++]));
+                }
+            };
+            // the index is filled once all items are appended
+            StoredProcedureUtils.bulkLoad(paramHelper.getTableName(), Arrays.asList("i_id", "i_emb"),
+                    items, tx);
         }
         if (logger.isLoggable(Level.FINE))
             logger.info("Finish populating items.");
@@ -38,5 +38,16 @@ public class LimitPlan implements Plan {
     public long recordsOutput() {
         return limit;
     }
-    
+
+    @Override
+    public String toString() {
+        String c = child.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->LimitPlan limit: " + limit + " (#blks=" + blocksAccessed()
+                + ", #recs=" + recordsOutput() + ")\n");
+        for (String line : cs)
+            sb.append("\t").append(line).append("\n");
+        return sb.toString();
+    }
 }
@@ -16,6 +16,7 @@
 package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.sql.predicate.Predicate;
 import org.vanilladb.core.storage.record.RecordId;
 
@@ -108,4 +109,11 @@ public class SelectScan implements UpdateScan {
 		UpdateScan us = (UpdateScan) s;
 		us.moveToRecordId(rid);
 	}
+
+	@Override
+	public double rankingDistance(DistanceFn distFn) {
+		if (s instanceof UpdateScan)
+			return ((UpdateScan) s).rankingDistance(distFn);
+		return UpdateScan.super.rankingDistance(distFn);
+	}
 }
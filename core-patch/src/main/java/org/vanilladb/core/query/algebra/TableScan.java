@@ -17,6 +17,7 @@ package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.record.RecordId;
@@ -111,4 +112,9 @@ public class TableScan implements UpdateScan {
 	public void moveToRecordId(RecordId rid) {
 		rf.moveToRecordId(rid);
 	}
+
+	@Override
+	public double rankingDistance(DistanceFn distFn) {
+		return rf.rankingDistance(distFn.fieldName(), distFn);
+	}
 }
@@ -16,6 +16,8 @@
 package org.vanilladb.core.query.algebra;
 
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.record.RecordId;
 
 /**
@@ -57,4 +59,18 @@ public interface UpdateScan extends Scan {
 	 *            the RecordId of the desired record
 	 */
 	void moveToRecordId(RecordId rid);
+
+	/**
+	 * Returns the ranking distance between the query of the distance function
+	 * and the vector in its field of the current record. Scans over stored
+	 * records override this to read the vector in place instead of
+	 * materializing it.
+	 * 
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @return the ranking distance to the vector of the current record
+	 */
+	default double rankingDistance(DistanceFn distFn) {
+		return distFn.rankingDistance((VectorConstant) getVal(distFn.fieldName()));
+	}
 }
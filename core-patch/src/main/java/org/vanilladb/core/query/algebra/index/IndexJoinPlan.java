@@ -25,6 +25,7 @@ import org.vanilladb.core.query.algebra.TableScan;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.VectorCostModel;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.metadata.statistics.Histogram;
 import org.vanilladb.core.storage.tx.Transaction;
@@ -97,13 +98,18 @@ public class IndexJoinPlan extends AbstractJoinPlan {
 	 *       + R(indexjoin(p1,p2,idx)
 	 * </pre>
 	 * 
+	 * The search cost of a vector index is estimated by the
+	 * {@link VectorCostModel}.
+	 * 
 	 * @see Plan#blocksAccessed()
 	 */
 	@Override
 	public long blocksAccessed() {
 		// block accesses to search for a join record in the index
-		long searchCost = Index.searchCost(ii.indexType(),
-				new SearchKeyType(schema(), ii.fieldNames()), tp2.recordsOutput(), 1);
+		SearchKeyType keyType = new SearchKeyType(schema(), ii.fieldNames());
+		long searchCost = ii.indexType().isVectorIndex()
+				? VectorCostModel.searchCost(ii, keyType, tp2.recordsOutput(), 1, -1, tx)
+				: Index.searchCost(ii.indexType(), keyType, tp2.recordsOutput(), 1);
 		return p1.blocksAccessed() + (p1.recordsOutput() * searchCost)
 				+ recordsOutput();
 	}
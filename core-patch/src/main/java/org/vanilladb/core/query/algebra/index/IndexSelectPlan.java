@@ -24,10 +24,14 @@ import org.vanilladb.core.query.algebra.TablePlan;
 import org.vanilladb.core.query.algebra.TableScan;
 import org.vanilladb.core.sql.ConstantRange;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.index.SearchKeyType;
 import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.index.VectorCostModel;
+import org.vanilladb.core.storage.index.VectorSearchRange;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.metadata.statistics.Bucket;
 import org.vanilladb.core.storage.metadata.statistics.Histogram;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -41,6 +45,9 @@ public class IndexSelectPlan implements Plan {
 	private Map<String, ConstantRange> searchRanges;
 	private Transaction tx;
 	private Histogram hist;
+	private DistanceFn distFn;
+	private int k = -1, nprobe = -1;
+	private long vectorSearchCost = -1;
 
 	/**
 	 * Creates a new index-select node in the query tree for the specified index
@@ -64,6 +71,61 @@ public class IndexSelectPlan implements Plan {
 		hist = SelectPlan.constantRangeHistogram(tp.histogram(), searchRanges);
 	}
 
+	/**
+	 * Creates a new index-select node in the query tree that searches a vector
+	 * index for the nearest neighbors of the query vector.
+	 * 
+	 * @param tp
+	 *            the input table plan
+	 * @param ii
+	 *            information about the vector index
+	 * @param searchRanges
+	 *            the ranges of search keys
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @param k
+	 *            the number of neighbors wanted, or -1 for all candidates
+	 * @param nprobe
+	 *            the number of partitions to probe, or -1 for the default of
+	 *            the index
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public IndexSelectPlan(TablePlan tp, IndexInfo ii,
+			Map<String, ConstantRange> searchRanges, DistanceFn distFn,
+			int k, int nprobe, Transaction tx) {
+		this.tp = tp;
+		this.ii = ii;
+		this.searchRanges = searchRanges;
+		this.tx = tx;
+		this.distFn = distFn;
+		this.k = k;
+		this.nprobe = nprobe;
+		// vectors have no order, so the search range cannot narrow down the
+		// histogram; only the number of neighbors wanted can
+		hist = k > 0 ? scaleHistogram(tp.histogram(), k) : tp.histogram();
+	}
+
+	/**
+	 * Returns a histogram with the same distribution as the specified one but
+	 * at most the given number of records.
+	 */
+	private static Histogram scaleHistogram(Histogram hist, double numRecs) {
+		double recs = hist.recordsOutput();
+		if (Double.compare(recs, numRecs) <= 0)
+			return hist;
+		double reduction = numRecs / recs;
+		Histogram scaled = new Histogram(hist.fields());
+		for (String fld : hist.fields())
+			for (Bucket bkt : hist.buckets(fld)) {
+				double freq = bkt.frequency() * reduction;
+				scaled.addBucket(fld, new Bucket(bkt.valueRange(), freq,
+						Math.min(bkt.distinctValues(), freq),
+						bkt.valuePercentiles()));
+			}
+		return scaled;
+	}
+
 	/**
 	 * Creates a new index-select scan for this query
 	 * 
@@ -74,21 +136,30 @@ public class IndexSelectPlan implements Plan {
 		// throws an exception if p is not a tableplan.
 		TableScan ts = (TableScan) tp.open();
 		Index idx = ii.open(tx);
-		return new IndexSelectScan(idx, 
-				new SearchRange(ii.fieldNames(), schema(), searchRanges), ts);
+		SearchRange searchRange = distFn != null
+				? new VectorSearchRange(distFn, k, nprobe)
+				: new SearchRange(ii.fieldNames(), schema(), searchRanges);
+		return new IndexSelectScan(idx, searchRange, ts);
 	}
 
 	/**
 	 * Estimates the number of block accesses to compute the index selection,
 	 * which is the same as the index traversal cost plus the number of matching
-	 * data records.
+	 * data records. The cost of a vector index search is estimated by the
+	 * {@link VectorCostModel} once per plan.
 	 * 
 	 * @see Plan#blocksAccessed()
 	 */
 	@Override
 	public long blocksAccessed() {
-		return Index.searchCost(ii.indexType(), new SearchKeyType(schema(), ii.fieldNames()),
-				tp.recordsOutput(), recordsOutput()) + recordsOutput();
+		SearchKeyType keyType = new SearchKeyType(schema(), ii.fieldNames());
+		if (distFn == null)
+			return Index.searchCost(ii.indexType(), keyType, tp.recordsOutput(),
+					recordsOutput()) + recordsOutput();
+		if (vectorSearchCost < 0)
+			vectorSearchCost = VectorCostModel.searchCost(ii, keyType, tp.recordsOutput(), k,
+					nprobe, tx);
+		return vectorSearchCost + recordsOutput();
 	}
 
 	/**
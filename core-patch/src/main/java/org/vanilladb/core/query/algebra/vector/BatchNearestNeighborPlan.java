@@ -0,0 +1,139 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.query.planner.index.IndexSelector;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.VectorCostModel;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The {@link Plan} class of a batch of k-nearest neighbor searches over the
+ * same vector field of a table. The records of all queries are returned one
+ * query after another, each in ascending order of distance, and every record
+ * carries the position of its query in the batch in the field
+ * {@link #QUERY_ID_FIELD}.
+ *
+ * <p>
+ * A batch shares the I/O of its queries. With an IVF-family index, all
+ * queries are routed first and each probed cluster is scanned only once for
+ * all the queries routed to it. Without a vector index, the table is scanned
+ * once and every vector is compared with all the queries while it is loaded.
+ * Other vector indexes are searched once per query.
+ * </p>
+ */
+public class BatchNearestNeighborPlan implements Plan {
+
+    /**
+     * The name of the field holding the position of the query of a record.
+     */
+    public static final String QUERY_ID_FIELD = "query_id";
+
+    private TablePlan tp;
+    private IndexInfo ii;
+    private DistanceFn[] distFns;
+    private int k, nprobe;
+    private Transaction tx;
+    private Schema schema;
+    private long searchCost = -1;
+
+    /**
+     * Creates a batch k-nearest neighbor node in the query tree. The distance
+     * functions must all be on the same vector field of the table.
+     *
+     * @param tblName
+     *            the name of the table
+     * @param distFns
+     *            the distance function of each query, holding its query
+     *            vector
+     * @param k
+     *            the number of records to return for each query
+     * @param nprobe
+     *            the number of partitions a vector index should probe, or -1
+     *            for the default of the index
+     * @param tx
+     *            the calling transaction
+     */
+    public BatchNearestNeighborPlan(String tblName, DistanceFn[] distFns, int k,
+            int nprobe, Transaction tx) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive: " + k);
+        this.tp = new TablePlan(tblName, tx);
+        this.distFns = distFns;
+        this.k = k;
+        this.nprobe = nprobe;
+        this.tx = tx;
+        this.schema = new Schema();
+        schema.addAll(tp.schema());
+        schema.addField(QUERY_ID_FIELD, INTEGER);
+
+        if (distFns.length > 0)
+            ii = IndexSelector.selectVectorIndex(tblName, distFns[0], tx);
+    }
+
+    @Override
+    public Scan open() {
+        TableScan ts = (TableScan) tp.open();
+        Index idx = ii == null ? null : ii.open(tx);
+        return new BatchNearestNeighborScan(idx, ts, distFns, k, nprobe);
+    }
+
+    /**
+     * Estimates the number of block accesses. The table is read once if there
+     * is no vector index; otherwise, each query costs one index search, which
+     * is estimated by the {@link VectorCostModel} once per plan. Every
+     * returned record costs one more access.
+     *
+     * @see Plan#blocksAccessed()
+     */
+    @Override
+    public long blocksAccessed() {
+        if (ii == null)
+            return tp.blocksAccessed() + recordsOutput();
+        if (searchCost < 0)
+            searchCost = VectorCostModel.searchCost(ii,
+                    new SearchKeyType(tp.schema(), ii.fieldNames()), tp.recordsOutput(), k,
+                    nprobe, tx);
+        return searchCost * distFns.length + recordsOutput();
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public Histogram histogram() {
+        return tp.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return Math.min(k, tp.recordsOutput()) * distFns.length;
+    }
+
+    @Override
+    public String toString() {
+        String c = tp.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->");
+        sb.append("BatchNearestNeighborPlan on: "
+                + (distFns.length > 0 ? distFns[0].fieldName() : "") + " queries: "
+                + distFns.length + " k: " + k
+                + (ii == null ? "" : " index: " + ii.indexName())
+                + " (#blks=" + blocksAccessed() + ", #recs=" + recordsOutput() + ")\n");
+        for (String child : cs)
+            sb.append("\t").append(child).append("\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+import org.vanilladb.core.storage.index.ivf.IVFIndex;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * The scan class corresponding to {@link BatchNearestNeighborPlan}.
+ *
+ * <p>
+ * The neighbors of all queries are searched when the scan is positioned
+ * before the first record. The scan then moves a table scan to each result,
+ * query by query, in ascending order of distance.
+ * </p>
+ */
+public class BatchNearestNeighborScan implements Scan {
+
+    private Index idx;
+    private TableScan ts;
+    private DistanceFn[] distFns;
+    private int k, nprobe;
+    private RecordId[][] results;
+    private int queryPos, rankPos;
+
+    /**
+     * Creates a batch k-nearest neighbor scan.
+     *
+     * @param idx
+     *            the opened vector index on the searched field, or null to
+     *            scan the whole table
+     * @param ts
+     *            the table scan of the data table
+     * @param distFns
+     *            the distance function of each query
+     * @param k
+     *            the number of records to return for each query
+     * @param nprobe
+     *            the number of partitions a vector index should probe, or -1
+     */
+    public BatchNearestNeighborScan(Index idx, TableScan ts, DistanceFn[] distFns,
+            int k, int nprobe) {
+        this.idx = idx;
+        this.ts = ts;
+        this.distFns = distFns;
+        this.k = k;
+        this.nprobe = nprobe;
+    }
+
+    @Override
+    public void beforeFirst() {
+        if (results == null) {
+            if (idx instanceof IVFIndex)
+                results = ((IVFIndex) idx).searchBatch(distFns, k, nprobe);
+            else if (idx != null)
+                results = searchEach();
+            else
+                results = scanTable();
+        }
+        queryPos = 0;
+        rankPos = -1;
+    }
+
+    /**
+     * Searches the index once per query.
+     */
+    private RecordId[][] searchEach() {
+        RecordId[][] rids = new RecordId[distFns.length][];
+        for (int q = 0; q < distFns.length; q++) {
+            List<RecordId> neighbors = new ArrayList<RecordId>(k);
+            idx.beforeFirst(new VectorSearchRange(distFns[q], k, nprobe));
+            while (neighbors.size() < k && idx.next())
+                neighbors.add(idx.getDataRecordId());
+            rids[q] = neighbors.toArray(new RecordId[neighbors.size()]);
+        }
+        return rids;
+    }
+
+    /**
+     * Ranks all the records against every query in a single pass over the
+     * table. A single query reads each vector in place; otherwise, each
+     * vector is loaded once and compared with all the queries.
+     */
+    private RecordId[][] scanTable() {
+        List<TopKHeap<RecordId>> heaps = new ArrayList<TopKHeap<RecordId>>(distFns.length);
+        for (int q = 0; q < distFns.length; q++)
+            heaps.add(new TopKHeap<RecordId>(k));
+
+        if (distFns.length > 0) {
+            String fldName = distFns[0].fieldName();
+            ts.beforeFirst();
+            while (ts.next()) {
+                if (distFns.length == 1) {
+                    TopKHeap<RecordId> heap = heaps.get(0);
+                    double dist = ts.rankingDistance(distFns[0]);
+                    if (dist < heap.threshold())
+                        heap.offer(dist, ts.getRecordId());
+                    continue;
+                }
+
+                VectorConstant vec = (VectorConstant) ts.getVal(fldName);
+                RecordId rid = null;
+                for (int q = 0; q < distFns.length; q++) {
+                    TopKHeap<RecordId> heap = heaps.get(q);
+                    double dist = distFns[q].rankingDistance(vec);
+                    if (dist < heap.threshold()) {
+                        if (rid == null)
+                            rid = ts.getRecordId();
+                        heap.offer(dist, rid);
+                    }
+                }
+            }
+        }
+
+        RecordId[][] rids = new RecordId[distFns.length][];
+        for (int q = 0; q < distFns.length; q++) {
+            TopKHeap<RecordId> heap = heaps.get(q);
+            rids[q] = heap.drainSorted(new RecordId[heap.size()], null);
+        }
+        return rids;
+    }
+
+    @Override
+    public boolean next() {
+        while (queryPos < results.length) {
+            if (++rankPos < results[queryPos].length) {
+                ts.moveToRecordId(results[queryPos][rankPos]);
+                return true;
+            }
+            queryPos++;
+            rankPos = -1;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (idx != null)
+            idx.close();
+        ts.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return fldName.equals(BatchNearestNeighborPlan.QUERY_ID_FIELD) || ts.hasField(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        if (fldName.equals(BatchNearestNeighborPlan.QUERY_ID_FIELD))
+            return new IntegerConstant(queryPos);
+        return ts.getVal(fldName);
+    }
+}
@@ -0,0 +1,104 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The {@link Plan} class of a k-nearest neighbor search whose result is kept
+ * in the {@link NearestNeighborCache}. If the cache holds the result, the scan
+ * returns the cached rows without opening the underlying plan, after taking
+ * the lock on the table file that a table scan takes. Otherwise, the
+ * underlying plan is run and its rows are cached.
+ */
+public class CachedNearestNeighborPlan implements Plan {
+
+    private Plan p;
+    private String tblName;
+    private DistanceFn distFn;
+    private int k, nprobe;
+    private Transaction tx;
+
+    /**
+     * Creates a cached node over the plan of a k-nearest neighbor search on a
+     * table.
+     *
+     * @param p
+     *            the plan of the search
+     * @param tblName
+     *            the name of the searched table
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of neighbors
+     * @param nprobe
+     *            the number of clusters probed by an IVF index, or -1 for the
+     *            default
+     * @param tx
+     *            the calling transaction
+     */
+    public CachedNearestNeighborPlan(Plan p, String tblName, DistanceFn distFn, int k,
+            int nprobe, Transaction tx) {
+        this.p = p;
+        this.tblName = tblName;
+        this.distFn = distFn;
+        this.k = k;
+        this.nprobe = nprobe;
+        this.tx = tx;
+    }
+
+    @Override
+    public Scan open() {
+        NearestNeighborCache.Key key = NearestNeighborCache.key(tblName, distFn, k, nprobe);
+        // read the version before the search, so that an update during the
+        // search keeps its result out of the cache
+        long version = NearestNeighborCache.version(tblName);
+        // lock the table before looking the result up, as a table scan would
+        tx.concurrencyMgr().readFile(VanillaDb.catalogMgr().getTableInfo(tblName, tx).fileName());
+        return new CachedNearestNeighborScan(p, p.schema(), NearestNeighborCache.get(key),
+                key, version, tx);
+    }
+
+    /**
+     * Returns the number of block accesses of the underlying plan, which is
+     * paid whenever the result is not cached.
+     *
+     * @see Plan#blocksAccessed()
+     */
+    @Override
+    public long blocksAccessed() {
+        return p.blocksAccessed();
+    }
+
+    @Override
+    public Schema schema() {
+        return p.schema();
+    }
+
+    @Override
+    public Histogram histogram() {
+        return p.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return p.recordsOutput();
+    }
+
+    @Override
+    public String toString() {
+        String c = p.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->");
+        sb.append("CachedNearestNeighborPlan on: " + distFn.fieldName() + " k: " + k
+                + " (#blks=" + blocksAccessed() + ", #recs=" + recordsOutput() + ")\n");
+        for (String child : cs)
+            sb.append("\t").append(child).append("\n");
+        return sb.toString();
+    }
+}
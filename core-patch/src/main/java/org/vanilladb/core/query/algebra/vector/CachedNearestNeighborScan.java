@@ -0,0 +1,87 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The scan class corresponding to {@link CachedNearestNeighborPlan}. The rows
+ * of a cached result are returned from memory. Otherwise, the first call to
+ * {@link #beforeFirst()} opens the underlying plan, copies all of its rows
+ * and puts them into the cache.
+ */
+public class CachedNearestNeighborScan implements Scan {
+
+    private Plan p;
+    private Constant[][] rows;
+    private NearestNeighborCache.Key key;
+    private long version;
+    private Transaction tx;
+    // the position of each field in a row
+    private Map<String, Integer> fieldPositions = new HashMap<String, Integer>();
+    private int pos;
+
+    public CachedNearestNeighborScan(Plan p, Schema sch, Constant[][] rows,
+            NearestNeighborCache.Key key, long version, Transaction tx) {
+        this.p = p;
+        this.rows = rows;
+        this.key = key;
+        this.version = version;
+        this.tx = tx;
+        for (String fldName : sch.fields())
+            fieldPositions.put(fldName, fieldPositions.size());
+    }
+
+    @Override
+    public void beforeFirst() {
+        if (rows == null) {
+            rows = search();
+            NearestNeighborCache.put(key, version, rows, tx);
+        }
+        pos = -1;
+    }
+
+    private Constant[][] search() {
+        List<Constant[]> result = new ArrayList<Constant[]>();
+        Scan s = p.open();
+        s.beforeFirst();
+        while (s.next()) {
+            Constant[] row = new Constant[fieldPositions.size()];
+            for (Map.Entry<String, Integer> e : fieldPositions.entrySet())
+                row[e.getValue()] = s.getVal(e.getKey());
+            result.add(row);
+        }
+        s.close();
+        return result.toArray(new Constant[result.size()][]);
+    }
+
+    @Override
+    public boolean next() {
+        return ++pos < rows.length;
+    }
+
+    @Override
+    public void close() {
+        // the underlying scan is closed once the rows are copied
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return fieldPositions.containsKey(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        Integer i = fieldPositions.get(fldName);
+        if (i == null)
+            throw new RuntimeException("field " + fldName + " not found.");
+        return rows[pos][i];
+    }
+}
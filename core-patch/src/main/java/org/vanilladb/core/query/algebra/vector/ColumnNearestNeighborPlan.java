@@ -0,0 +1,100 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.record.VectorColumnStore;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The {@link Plan} class of an exact k-nearest neighbor search that ranks the
+ * vectors of a table in its {@link VectorColumnStore} instead of its record
+ * pages. Only the k results are read from the table. It returns the same
+ * records as a {@link TopKNearestPlan} over the table plan.
+ */
+public class ColumnNearestNeighborPlan implements Plan {
+
+    private TablePlan tp;
+    private TableInfo ti;
+    private DistanceFn distFn;
+    private int k;
+    private Transaction tx;
+
+    /**
+     * Creates a k-nearest neighbor node over the vector store of a table in
+     * the query tree.
+     *
+     * @param tblName
+     *            the name of the table
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of records to return
+     * @param tx
+     *            the calling transaction
+     */
+    public ColumnNearestNeighborPlan(String tblName, DistanceFn distFn, int k, Transaction tx) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive: " + k);
+        this.tp = new TablePlan(tblName, tx);
+        this.ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+        this.distFn = distFn;
+        this.k = k;
+        this.tx = tx;
+    }
+
+    @Override
+    public Scan open() {
+        VectorColumnStore store = VectorColumnStore.get(ti, distFn.fieldName(), tx);
+        return new ColumnNearestNeighborScan(store, (TableScan) tp.open(), distFn, k, tx);
+    }
+
+    /**
+     * Estimates the number of block accesses, which is the size of the
+     * vectors in blocks plus one access for each of the returned records.
+     *
+     * @see Plan#blocksAccessed()
+     */
+    @Override
+    public long blocksAccessed() {
+        int dim = ti.schema().type(distFn.fieldName()).getArgument();
+        long vecBlocks = (long) Math.ceil(
+                tp.recordsOutput() * dim * (double) Float.BYTES / Buffer.BUFFER_SIZE);
+        return vecBlocks + recordsOutput();
+    }
+
+    @Override
+    public Schema schema() {
+        return tp.schema();
+    }
+
+    @Override
+    public Histogram histogram() {
+        return tp.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return Math.min(k, tp.recordsOutput());
+    }
+
+    @Override
+    public String toString() {
+        String c = tp.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->");
+        sb.append("ColumnNearestNeighborPlan on: " + distFn.fieldName() + " k: " + k
+                + " (#blks=" + blocksAccessed() + ", #recs=" + recordsOutput() + ")\n");
+        for (String child : cs)
+            sb.append("\t").append(child).append("\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.stream.IntStream;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.VectorColumnStore;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * The scan class corresponding to {@link ColumnNearestNeighborPlan}.
+ *
+ * <p>
+ * The rows of the store are split into partitions of consecutive rows that
+ * are ranked on the common fork-join pool, each with its own top-k heap, and
+ * the heaps are merged at the end. The rows are read in place from the mapped
+ * file without pinning buffers. Once ranked, the scan moves a table scan to
+ * each result in ascending order of distance.
+ * </p>
+ */
+public class ColumnNearestNeighborScan implements Scan {
+
+    // rows ranked by a partition at least, to amortize the fork-join tasks
+    private static final int MIN_PARTITION_ROWS = 4096;
+
+    private VectorColumnStore store;
+    private TableScan ts;
+    private DistanceFn distFn;
+    private int k;
+    private Transaction tx;
+    private RecordId[] results;
+    private int pos;
+
+    public ColumnNearestNeighborScan(VectorColumnStore store, TableScan ts,
+            DistanceFn distFn, int k, Transaction tx) {
+        this.store = store;
+        this.ts = ts;
+        this.distFn = distFn;
+        this.k = k;
+        this.tx = tx;
+    }
+
+    @Override
+    public void beforeFirst() {
+        if (results == null)
+            results = rank();
+        pos = -1;
+    }
+
+    private RecordId[] rank() {
+        long numRows = store.numRows(tx);
+        int numParts = (int) Math.max(1, Math.min(
+                Runtime.getRuntime().availableProcessors(), numRows / MIN_PARTITION_ROWS));
+        TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+        IntStream.range(0, numParts).parallel()
+                .mapToObj(p -> store.rank(distFn, k,
+                        p * numRows / numParts, (p + 1) * numRows / numParts))
+                .forEachOrdered(heap::addAll);
+        return heap.drainSorted(new RecordId[heap.size()], null);
+    }
+
+    @Override
+    public boolean next() {
+        if (++pos >= results.length)
+            return false;
+        ts.moveToRecordId(results[pos]);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        ts.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return ts.hasField(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        return ts.getVal(fldName);
+    }
+}
@@ -0,0 +1,159 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.SelectPlan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.VectorCostModel;
+import org.vanilladb.core.storage.index.ivf.IVFIndex;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The {@link Plan} class of a k-nearest neighbor search with a selection that
+ * is applied after a vector index search (post-filtering). The index is asked
+ * for a pool of candidates that is expected to hold k qualified records by the
+ * selectivity of the predicate, and an IVF index probes proportionally more
+ * clusters. If fewer than k candidates pass the predicate, the search is
+ * repeated with a pool twice as large until k records pass or the index runs
+ * out of candidates.
+ *
+ * <p>
+ * Post-filtering pays off when the predicate is not selective. A selective
+ * predicate is better served by selecting the records first and ranking them
+ * exactly (pre-filtering), which the planner chooses by comparing the costs
+ * of both plans.
+ * </p>
+ */
+public class FilteredNearestNeighborPlan implements Plan {
+
+    /**
+     * Returns the selectivity of a predicate on the records of a table plan,
+     * estimated by the histograms of the table.
+     *
+     * @param tp
+     *            the table plan
+     * @param pred
+     *            the selection predicate on the table
+     * @return the estimated fraction of records satisfying the predicate, in
+     *         {@code (0, 1]}
+     */
+    public static double selectivity(TablePlan tp, Predicate pred) {
+        double totRecs = tp.histogram().recordsOutput();
+        if (totRecs <= 0)
+            return 1.0;
+        double matchRecs = SelectPlan.predHistogram(tp.histogram(), pred).recordsOutput();
+        return Math.max(1.0 / totRecs, Math.min(1.0, matchRecs / totRecs));
+    }
+
+    private TablePlan tp;
+    private IndexInfo ii;
+    private Predicate pred;
+    private DistanceFn distFn;
+    private int k, nprobe, pool;
+    private long searchCost = -1;
+    private Transaction tx;
+    private Histogram hist;
+
+    /**
+     * Creates a post-filtering k-nearest neighbor node in the query tree.
+     *
+     * @param tp
+     *            the plan of the data table
+     * @param ii
+     *            information about a vector index on the field of the
+     *            distance function
+     * @param pred
+     *            the selection predicate on the table
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of records to return
+     * @param nprobe
+     *            the number of partitions the index should probe for an
+     *            unfiltered search, or -1 for the default of the index
+     * @param tx
+     *            the calling transaction
+     */
+    public FilteredNearestNeighborPlan(TablePlan tp, IndexInfo ii, Predicate pred,
+            DistanceFn distFn, int k, int nprobe, Transaction tx) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive: " + k);
+        this.tp = tp;
+        this.ii = ii;
+        this.pred = pred;
+        this.distFn = distFn;
+        this.k = k;
+        this.nprobe = nprobe;
+        this.tx = tx;
+        double selectivity = selectivity(tp, pred);
+        this.pool = (int) Math.min(Integer.MAX_VALUE, Math.ceil(k / selectivity));
+        // an IVF index needs proportionally more clusters to hold the pool
+        if (ii.indexType().isInvertedFileIndex()) {
+            int probe = nprobe > 0 ? nprobe : IVFIndex.NPROBE;
+            this.nprobe = (int) Math.min(IVFIndex.NUM_CLUSTERS, Math.ceil(probe / selectivity));
+        }
+        hist = SelectPlan.predHistogram(tp.histogram(), pred);
+    }
+
+    @Override
+    public Scan open() {
+        TableScan ts = (TableScan) tp.open();
+        Index idx = ii.open(tx);
+        return new FilteredNearestNeighborScan(idx, ts, pred, distFn, k, pool, nprobe);
+    }
+
+    /**
+     * Estimates the number of block accesses, which is the cost of searching
+     * the index for the initial pool of candidates, estimated by the
+     * {@link VectorCostModel}, plus one access for each candidate checked
+     * against the predicate.
+     *
+     * @see Plan#blocksAccessed()
+     */
+    @Override
+    public long blocksAccessed() {
+        if (searchCost < 0)
+            searchCost = VectorCostModel.searchCost(ii,
+                    new SearchKeyType(schema(), ii.fieldNames()), tp.recordsOutput(), pool,
+                    nprobe, tx);
+        return searchCost + pool;
+    }
+
+    @Override
+    public Schema schema() {
+        return tp.schema();
+    }
+
+    @Override
+    public Histogram histogram() {
+        return hist;
+    }
+
+    @Override
+    public long recordsOutput() {
+        return Math.min(k, (long) hist.recordsOutput());
+    }
+
+    @Override
+    public String toString() {
+        String c = tp.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->");
+        sb.append("FilteredNearestNeighborPlan on: " + distFn.fieldName() + " k: " + k
+                + " index: " + ii.indexName() + " pool: " + pool
+                + (nprobe > 0 ? " nprobe: " + nprobe : "") + " pred:" + pred
+                + " (#blks=" + blocksAccessed() + ", #recs=" + recordsOutput() + ")\n");
+        for (String child : cs)
+            sb.append("\t").append(child).append("\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+import org.vanilladb.core.storage.index.ivf.IVFIndex;
+import org.vanilladb.core.storage.record.RecordId;
+
+/**
+ * The scan class corresponding to {@link FilteredNearestNeighborPlan}.
+ *
+ * <p>
+ * The candidates of the index are checked against the predicate in ascending
+ * order of distance until k of them pass. If the pool runs out first, the
+ * search is repeated with a pool twice as large. When an IVF index returns
+ * fewer candidates than asked for, its probed clusters are exhausted, so the
+ * number of probed clusters is doubled as well. The search stops once the
+ * index cannot return more candidates.
+ * </p>
+ */
+public class FilteredNearestNeighborScan implements Scan {
+
+    private Index idx;
+    private TableScan ts;
+    private Predicate pred;
+    private DistanceFn distFn;
+    private int k, pool, nprobe;
+    private RecordId[] results;
+    private int pos;
+
+    public FilteredNearestNeighborScan(Index idx, TableScan ts, Predicate pred,
+            DistanceFn distFn, int k, int pool, int nprobe) {
+        this.idx = idx;
+        this.ts = ts;
+        this.pred = pred;
+        this.distFn = distFn;
+        this.k = k;
+        this.pool = Math.max(k, pool);
+        this.nprobe = nprobe;
+    }
+
+    @Override
+    public void beforeFirst() {
+        if (results == null)
+            results = search();
+        pos = -1;
+    }
+
+    private RecordId[] search() {
+        boolean isIvf = idx instanceof IVFIndex;
+        int numClusters = 0, probe = nprobe;
+        if (isIvf) {
+            numClusters = ((IVFIndex) idx).centroidTable().numClusters();
+            if (probe <= 0)
+                probe = IVFIndex.NPROBE;
+        }
+
+        List<RecordId> matched = new ArrayList<RecordId>(k);
+        int size = pool;
+        while (true) {
+            matched.clear();
+            int found = 0;
+            idx.beforeFirst(new VectorSearchRange(distFn, size, probe));
+            while (matched.size() < k && idx.next()) {
+                found++;
+                RecordId rid = idx.getDataRecordId();
+                ts.moveToRecordId(rid);
+                if (pred.isSatisfied(ts))
+                    matched.add(rid);
+            }
+            if (matched.size() >= k)
+                break;
+
+            if (found < size) {
+                // the probed partitions are exhausted
+                if (!isIvf || probe >= numClusters)
+                    break;
+                probe = Math.min(numClusters, probe * 2);
+            } else
+                size = size > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : size * 2;
+        }
+        return matched.toArray(new RecordId[matched.size()]);
+    }
+
+    @Override
+    public boolean next() {
+        if (++pos >= results.length)
+            return false;
+        ts.moveToRecordId(results[pos]);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        idx.close();
+        ts.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return ts.hasField(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        return ts.getVal(fldName);
+    }
+}
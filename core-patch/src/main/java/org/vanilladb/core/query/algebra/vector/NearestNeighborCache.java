@@ -0,0 +1,284 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A server-wide cache of the results of k-nearest neighbor searches, so that
+ * a query vector submitted again does not rank the table again. At most
+ * {@link #CAPACITY} results are kept, and the least recently used one is
+ * evicted first.
+ *
+ * <p>
+ * A result is keyed by the table, the vector field, the distance function,
+ * the query vector, k and nprobe. If {@link #QUANTUM} is positive, each
+ * component of the query vector is rounded to a multiple of it, so that
+ * near-identical query vectors share a result. Each table has a version,
+ * which is advanced by every update of its records (see
+ * {@link #recordUpdates(String, int, Transaction)}), when the updating
+ * transaction commits or rolls back, and when the table is dropped. A result
+ * computed under an older version is ignored.
+ * </p>
+ *
+ * <p>
+ * The results of a transaction that has updated the table are not cached,
+ * since they may contain its uncommitted records.
+ * </p>
+ */
+public class NearestNeighborCache {
+
+    /**
+     * The maximum number of cached results. Zero disables the cache.
+     */
+    public static final int CAPACITY;
+
+    /**
+     * The grid size that the components of query vectors are rounded to.
+     * Zero matches query vectors exactly.
+     */
+    public static final double QUANTUM;
+
+    static {
+        CAPACITY = CoreProperties.getLoader().getPropertyAsInteger(
+                NearestNeighborCache.class.getName() + ".CAPACITY", 0);
+        QUANTUM = CoreProperties.getLoader().getPropertyAsDouble(
+                NearestNeighborCache.class.getName() + ".QUANTUM", 0);
+    }
+
+    /**
+     * The key of a cached result.
+     */
+    public static class Key {
+        private final String tblName, fldName, distFnName;
+        private final int[] query;
+        private final int k, nprobe, hashCode;
+
+        private Key(String tblName, DistanceFn distFn, int k, int nprobe) {
+            this.tblName = tblName;
+            this.fldName = distFn.fieldName();
+            this.distFnName = distFn.getClass().getName();
+            this.k = k;
+            this.nprobe = nprobe;
+
+            float[] vec = distFn.getQueryVector().asJavaVal();
+            query = new int[vec.length];
+            for (int i = 0; i < vec.length; i++)
+                query[i] = QUANTUM > 0 ? (int) Math.round(vec[i] / QUANTUM)
+                        : Float.floatToIntBits(vec[i]);
+
+            int h = Arrays.hashCode(query);
+            h = 31 * h + tblName.hashCode();
+            h = 31 * h + fldName.hashCode();
+            h = 31 * h + distFnName.hashCode();
+            h = 31 * h + k;
+            this.hashCode = 31 * h + nprobe;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && k == other.k && nprobe == other.nprobe
+                    && tblName.equals(other.tblName) && fldName.equals(other.fldName)
+                    && distFnName.equals(other.distFnName)
+                    && Arrays.equals(query, other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static class Entry {
+        final long version;
+        final Constant[][] rows;
+
+        Entry(long version, Constant[][] rows) {
+            this.version = version;
+            this.rows = rows;
+        }
+    }
+
+    // the cached results in access order
+    private static final LinkedHashMap<Key, Entry> entries =
+            new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    return size() > CAPACITY;
+                }
+            };
+    private static final Map<String, Long> versions = new HashMap<String, Long>();
+    // the transactions with uncommitted updates on each table
+    private static final Map<String, Set<Long>> writers = new HashMap<String, Set<Long>>();
+    private static long numHits, numMisses;
+
+    public static boolean isEnabled() {
+        return CAPACITY > 0;
+    }
+
+    /**
+     * Returns the key of the result of a search.
+     *
+     * @param tblName
+     *            the name of the searched table
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of neighbors
+     * @param nprobe
+     *            the number of clusters probed by an IVF index, or -1 for the
+     *            default
+     * @return the key of the result
+     */
+    public static Key key(String tblName, DistanceFn distFn, int k, int nprobe) {
+        return new Key(tblName, distFn, k, nprobe);
+    }
+
+    /**
+     * Returns the current version of a table. A search reads it before it
+     * ranks the table, and caches its result under it.
+     *
+     * @param tblName
+     *            the name of the table
+     * @return the version of the table
+     */
+    public static synchronized long version(String tblName) {
+        Long version = versions.get(tblName);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Returns the cached rows of a search, or null if there is no result
+     * computed under the current version of the table.
+     *
+     * @param key
+     *            the key of the search
+     * @return the rows of the result in ascending order of distance, or null
+     */
+    public static synchronized Constant[][] get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version != version(key.tblName)) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            numMisses++;
+            return null;
+        }
+        numHits++;
+        return entry.rows;
+    }
+
+    /**
+     * Caches the rows of a search, unless the table has been updated since
+     * the given version or the searching transaction has updated the table.
+     *
+     * @param key
+     *            the key of the search
+     * @param version
+     *            the version of the table when the search started
+     * @param rows
+     *            the rows of the result in ascending order of distance, which
+     *            must not be modified afterwards
+     * @param tx
+     *            the searching transaction
+     */
+    public static synchronized void put(Key key, long version, Constant[][] rows,
+            Transaction tx) {
+        Set<Long> txs = writers.get(key.tblName);
+        if (txs != null && txs.contains(tx.getTransactionNumber()))
+            return;
+        if (version == version(key.tblName))
+            entries.put(key, new Entry(version, rows));
+    }
+
+    /**
+     * Invalidates the cached results of a table updated by a transaction, and
+     * invalidates them again when the transaction commits or rolls back.
+     * Until then, the searches of the transaction are not cached.
+     *
+     * @param tblName
+     *            the name of the updated table
+     * @param count
+     *            the number of updated records
+     * @param tx
+     *            the updating transaction
+     */
+    public static void recordUpdates(String tblName, int count, Transaction tx) {
+        if (!isEnabled() || count <= 0)
+            return;
+        synchronized (NearestNeighborCache.class) {
+            invalidate(tblName);
+            Set<Long> txs = writers.get(tblName);
+            if (txs == null) {
+                txs = new HashSet<Long>();
+                writers.put(tblName, txs);
+            }
+            if (!txs.add(tx.getTransactionNumber()))
+                return;
+        }
+
+        // runs after the locks are released and the updates are undone
+        tx.addLifecycleListener(new TransactionLifecycleListener() {
+            @Override
+            public void onTxCommit(Transaction tx) {
+                endUpdates(tblName, tx);
+            }
+
+            @Override
+            public void onTxRollback(Transaction tx) {
+                endUpdates(tblName, tx);
+            }
+
+            @Override
+            public void onTxEndStatement(Transaction tx) {
+                // do nothing
+            }
+        });
+    }
+
+    private static synchronized void endUpdates(String tblName, Transaction tx) {
+        invalidate(tblName);
+        Set<Long> txs = writers.get(tblName);
+        txs.remove(tx.getTransactionNumber());
+        if (txs.isEmpty())
+            writers.remove(tblName);
+    }
+
+    /**
+     * Invalidates the cached results of a table by advancing its version.
+     *
+     * @param tblName
+     *            the name of the updated table
+     */
+    public static synchronized void invalidate(String tblName) {
+        if (isEnabled())
+            versions.put(tblName, version(tblName) + 1);
+    }
+
+    /**
+     * Returns the fraction of lookups that found a result since startup.
+     *
+     * @return the hit rate of the cache
+     */
+    public static synchronized double hitRate() {
+        long total = numHits + numMisses;
+        return total == 0 ? 0 : (double) numHits / total;
+    }
+}
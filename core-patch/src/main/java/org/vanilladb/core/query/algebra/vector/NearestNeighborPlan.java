@@ -11,8 +11,24 @@ import org.vanilladb.core.storage.tx.Transaction;
 public class NearestNeighborPlan implements Plan {
     private Plan child;
 
-    public NearestNeighborPlan(Plan p, DistanceFn distFn, Transaction tx) {
-        this.child = new SortPlan(p, distFn, tx);
+    /**
+     * Creates a nearest neighbor node that returns only the k closest records
+     * if k is positive. Otherwise, all records are sorted by distance.
+     *
+     * @param p
+     *            the plan of the records to be ranked
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of records wanted, or -1 for all records
+     * @param tx
+     *            the calling transaction
+     */
+    public NearestNeighborPlan(Plan p, DistanceFn distFn, int k, Transaction tx) {
+        if (k > 0)
+            this.child = new TopKNearestPlan(p, distFn, k);
+        else
+            this.child = new SortPlan(p, distFn, tx);
     }
 
     @Override
@@ -40,4 +56,9 @@ public class NearestNeighborPlan implements Plan {
     public long recordsOutput() {
         return child.recordsOutput();
     }
+
+    @Override
+    public String toString() {
+        return child.toString();
+    }
 }       
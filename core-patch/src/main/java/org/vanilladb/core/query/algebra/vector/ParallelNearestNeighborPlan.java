@@ -0,0 +1,116 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.SelectPlan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The {@link Plan} class of an exact k-nearest neighbor search that scans a
+ * table in parallel. The blocks of the table are split into partitions that
+ * are ranked by multiple threads, each keeping its own top-k heap, and the
+ * heaps are merged at the end. It returns the same records as a
+ * {@link TopKNearestPlan} over a (selected) table plan.
+ */
+public class ParallelNearestNeighborPlan implements Plan {
+
+    /**
+     * The minimum number of blocks of a table for the planner to scan it in
+     * parallel. Smaller tables are not worth the cost of the fork-join tasks.
+     */
+    public static final int MIN_BLOCKS;
+
+    static {
+        MIN_BLOCKS = CoreProperties.getLoader().getPropertyAsInteger(
+                ParallelNearestNeighborPlan.class.getName() + ".MIN_BLOCKS", 64);
+    }
+
+    private TablePlan tp;
+    private TableInfo ti;
+    private Predicate pred;
+    private DistanceFn distFn;
+    private int k;
+    private Transaction tx;
+    private Histogram hist;
+
+    /**
+     * Creates a parallel k-nearest neighbor node in the query tree.
+     *
+     * @param tblName
+     *            the name of the table
+     * @param pred
+     *            the selection predicate on the table, or null
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of records to return
+     * @param tx
+     *            the calling transaction
+     */
+    public ParallelNearestNeighborPlan(String tblName, Predicate pred,
+            DistanceFn distFn, int k, Transaction tx) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive: " + k);
+        this.tp = new TablePlan(tblName, tx);
+        this.ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+        this.pred = pred;
+        this.distFn = distFn;
+        this.k = k;
+        this.tx = tx;
+        hist = pred == null ? tp.histogram() : SelectPlan.predHistogram(tp.histogram(), pred);
+    }
+
+    @Override
+    public Scan open() {
+        return new ParallelNearestNeighborScan(ti, (TableScan) tp.open(), pred, distFn, k, tx);
+    }
+
+    /**
+     * Estimates the number of block accesses, which is the cost of reading the
+     * table once plus one access for each of the returned records.
+     *
+     * @see Plan#blocksAccessed()
+     */
+    @Override
+    public long blocksAccessed() {
+        return tp.blocksAccessed() + recordsOutput();
+    }
+
+    @Override
+    public Schema schema() {
+        return tp.schema();
+    }
+
+    @Override
+    public Histogram histogram() {
+        return hist;
+    }
+
+    @Override
+    public long recordsOutput() {
+        return Math.min(k, (long) hist.recordsOutput());
+    }
+
+    @Override
+    public String toString() {
+        String c = tp.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->");
+        sb.append("ParallelNearestNeighborPlan on: " + distFn.fieldName() + " k: " + k
+                + (pred == null ? "" : " pred:" + pred)
+                + " (#blks=" + blocksAccessed() + ", #recs=" + recordsOutput() + ")\n");
+        for (String child : cs)
+            sb.append("\t").append(child).append("\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,150 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.stream.IntStream;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Record;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordPageLayout;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * The scan class corresponding to {@link ParallelNearestNeighborPlan}.
+ *
+ * <p>
+ * The transaction of a scan is not thread-safe, so the calling thread locks and
+ * pins a batch of blocks, and the worker threads only read the pinned buffers
+ * through a {@link RecordPageLayout}. Each batch is split into partitions of
+ * consecutive blocks that are ranked on the common fork-join pool, each with
+ * its own top-k heap. The per-partition heaps are merged after every batch.
+ * Once ranked, the scan moves a table scan to each result in ascending order
+ * of distance.
+ * </p>
+ */
+public class ParallelNearestNeighborScan implements Scan {
+
+    /**
+     * The maximum number of blocks pinned at a time by a scan.
+     */
+    public static final int BATCH_BLOCKS;
+
+    static {
+        BATCH_BLOCKS = CoreProperties.getLoader().getPropertyAsInteger(
+                ParallelNearestNeighborScan.class.getName() + ".BATCH_BLOCKS", 256);
+    }
+
+    private TableInfo ti;
+    private TableScan ts;
+    private Predicate pred;
+    private DistanceFn distFn;
+    private int k;
+    private Transaction tx;
+    private RecordId[] results;
+    private int pos;
+
+    public ParallelNearestNeighborScan(TableInfo ti, TableScan ts, Predicate pred,
+            DistanceFn distFn, int k, Transaction tx) {
+        this.ti = ti;
+        this.ts = ts;
+        this.pred = pred;
+        this.distFn = distFn;
+        this.k = k;
+        this.tx = tx;
+    }
+
+    @Override
+    public void beforeFirst() {
+        if (results == null)
+            results = rank();
+        pos = -1;
+    }
+
+    private RecordId[] rank() {
+        String fileName = ti.fileName();
+        RecordPageLayout layout = new RecordPageLayout(ti);
+        TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+
+        tx.concurrencyMgr().readFile(fileName);
+        long numBlocks = VanillaDb.fileMgr().size(fileName);
+        int batchSize = Math.max(1, Math.min(BATCH_BLOCKS, tx.bufferMgr().available() / 2));
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        // block 0 is the file header
+        for (long start = 1; start < numBlocks; start += batchSize) {
+            int n = (int) Math.min(batchSize, numBlocks - start);
+            Buffer[] buffs = new Buffer[n];
+            try {
+                for (int i = 0; i < n; i++) {
+                    BlockId blk = new BlockId(fileName, start + i);
+                    tx.concurrencyMgr().readBlock(blk);
+                    buffs[i] = tx.bufferMgr().pin(blk);
+                }
+                int numParts = Math.min(n, parallelism);
+                IntStream.range(0, numParts).parallel()
+                        .mapToObj(p -> rankPartition(layout, buffs,
+                                p * n / numParts, (p + 1) * n / numParts))
+                        .forEachOrdered(heap::addAll);
+            } finally {
+                for (Buffer buff : buffs)
+                    if (buff != null)
+                        tx.bufferMgr().unpin(buff);
+            }
+        }
+        return heap.drainSorted(new RecordId[heap.size()], null);
+    }
+
+    private TopKHeap<RecordId> rankPartition(RecordPageLayout layout,
+            Buffer[] buffs, int from, int to) {
+        String fldName = distFn.fieldName();
+        int numSlots = layout.slotsPerBlock();
+        TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+        for (int b = from; b < to; b++) {
+            Buffer buff = buffs[b];
+            for (int slot = 0; slot < numSlots; slot++) {
+                if (!layout.isInUse(buff, slot))
+                    continue;
+                int s = slot;
+                if (pred != null && !pred.isSatisfied(
+                        (Record) fld -> layout.getVal(buff, s, fld)))
+                    continue;
+                double dist = layout.rankingDistance(buff, slot, fldName, distFn);
+                if (dist < heap.threshold())
+                    heap.offer(dist, new RecordId(buff.block(), slot));
+            }
+        }
+        return heap;
+    }
+
+    @Override
+    public boolean next() {
+        if (++pos >= results.length)
+            return false;
+        ts.moveToRecordId(results[pos]);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        ts.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return ts.hasField(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        return ts.getVal(fldName);
+    }
+}
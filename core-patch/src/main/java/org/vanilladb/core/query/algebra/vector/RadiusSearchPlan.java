@@ -0,0 +1,121 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.VectorCostModel;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The {@link Plan} class of a range search, which selects the records whose
+ * vectors are within a radius of a query vector. A vector index is asked for
+ * the candidates within the radius, and each candidate is checked against
+ * the exact distance. The records are streamed in the order of the index
+ * without being sorted.
+ *
+ * <p>
+ * An IVF index probes the clusters whose balls intersect the ball of the
+ * radius, so the search reads only a part of the table and still finds every
+ * record within the radius. The planner puts the full predicate on top of
+ * this plan, which also applies a strict bound.
+ * </p>
+ */
+public class RadiusSearchPlan implements Plan {
+
+    private TablePlan tp;
+    private IndexInfo ii;
+    private DistanceFn distFn;
+    private double radius;
+    private long searchCost = -1;
+    private Transaction tx;
+
+    /**
+     * Creates a range search node in the query tree.
+     *
+     * @param tp
+     *            the plan of the data table
+     * @param ii
+     *            information about a vector index on the field of the
+     *            distance function
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param radius
+     *            the largest distance of a selected record
+     * @param tx
+     *            the calling transaction
+     */
+    public RadiusSearchPlan(TablePlan tp, IndexInfo ii, DistanceFn distFn, double radius,
+            Transaction tx) {
+        this.tp = tp;
+        this.ii = ii;
+        this.distFn = distFn;
+        this.radius = radius;
+        this.tx = tx;
+    }
+
+    @Override
+    public Scan open() {
+        TableScan ts = (TableScan) tp.open();
+        Index idx = ii.open(tx);
+        return new RadiusSearchScan(idx, ts, distFn, radius);
+    }
+
+    /**
+     * Estimates the number of block accesses, which is the cost of searching
+     * the index, estimated by the {@link VectorCostModel}, plus one access for
+     * each candidate. The default number of probed clusters of an IVF index
+     * stands for the clusters intersecting the radius.
+     *
+     * @see Plan#blocksAccessed()
+     */
+    @Override
+    public long blocksAccessed() {
+        if (searchCost < 0)
+            searchCost = VectorCostModel.searchCost(ii,
+                    new SearchKeyType(schema(), ii.fieldNames()), tp.recordsOutput(), -1, -1,
+                    tx);
+        return searchCost + recordsOutput();
+    }
+
+    @Override
+    public Schema schema() {
+        return tp.schema();
+    }
+
+    /**
+     * Returns the histogram of the table, since the histograms do not
+     * describe distances to a query vector.
+     *
+     * @see Plan#histogram()
+     */
+    @Override
+    public Histogram histogram() {
+        return tp.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return tp.recordsOutput();
+    }
+
+    @Override
+    public String toString() {
+        String c = tp.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->");
+        sb.append("RadiusSearchPlan on: " + distFn.fieldName() + " radius: " + radius
+                + " index: " + ii.indexName() + " (#blks=" + blocksAccessed() + ", #recs="
+                + recordsOutput() + ")\n");
+        for (String child : cs)
+            sb.append("\t").append(child).append("\n");
+        return sb.toString();
+    }
+}
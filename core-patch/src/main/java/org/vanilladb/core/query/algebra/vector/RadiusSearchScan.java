@@ -0,0 +1,60 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+
+/**
+ * The scan class corresponding to {@link RadiusSearchPlan}. The candidates of
+ * the index are compared by their ranking distances against the ranking bound
+ * of the radius, so no square root is taken per record.
+ */
+public class RadiusSearchScan implements Scan {
+
+    private Index idx;
+    private TableScan ts;
+    private DistanceFn distFn;
+    private double radius, bound;
+
+    public RadiusSearchScan(Index idx, TableScan ts, DistanceFn distFn, double radius) {
+        this.idx = idx;
+        this.ts = ts;
+        this.distFn = distFn;
+        this.radius = radius;
+        this.bound = distFn.rankingBound(radius);
+    }
+
+    @Override
+    public void beforeFirst() {
+        idx.beforeFirst(new VectorSearchRange(distFn, radius));
+    }
+
+    @Override
+    public boolean next() {
+        while (idx.next()) {
+            ts.moveToRecordId(idx.getDataRecordId());
+            if (ts.rankingDistance(distFn) <= bound)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        idx.close();
+        ts.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return ts.hasField(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        return ts.getVal(fldName);
+    }
+}
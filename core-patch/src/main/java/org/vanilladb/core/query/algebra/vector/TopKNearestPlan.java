@@ -0,0 +1,89 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+
+/**
+ * The {@link Plan} class that returns the k records of its child closest to
+ * the query vector, in ascending order of distance. Unlike a
+ * {@link org.vanilladb.core.query.algebra.materialize.SortPlan sort}, the child
+ * is read only once and nothing is materialized: only the record ids and
+ * distances of the current k best records are kept in memory.
+ *
+ * <p>
+ * The child must open an {@link UpdateScan} so that the selected records can
+ * be revisited by their record ids, which holds for table, select and index
+ * select plans over a table.
+ * </p>
+ */
+public class TopKNearestPlan implements Plan {
+    private Plan p;
+    private DistanceFn distFn;
+    private int k;
+
+    /**
+     * Creates a top-k nearest neighbor node in the query tree.
+     *
+     * @param p
+     *            the plan of the records to be ranked
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of records to return
+     */
+    public TopKNearestPlan(Plan p, DistanceFn distFn, int k) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive: " + k);
+        this.p = p;
+        this.distFn = distFn;
+        this.k = k;
+    }
+
+    @Override
+    public Scan open() {
+        return new TopKNearestScan((UpdateScan) p.open(), distFn, k);
+    }
+
+    /**
+     * Estimates the number of block accesses, which is the cost of reading the
+     * child once plus one access for each of the returned records.
+     *
+     * @see Plan#blocksAccessed()
+     */
+    @Override
+    public long blocksAccessed() {
+        return p.blocksAccessed() + recordsOutput();
+    }
+
+    @Override
+    public Schema schema() {
+        return p.schema();
+    }
+
+    @Override
+    public Histogram histogram() {
+        return p.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return Math.min(k, p.recordsOutput());
+    }
+
+    @Override
+    public String toString() {
+        String c = p.toString();
+        String[] cs = c.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("->");
+        sb.append("TopKNearestPlan on: " + distFn.fieldName() + " k: " + k
+                + " (#blks=" + blocksAccessed() + ", #recs=" + recordsOutput() + ")\n");
+        for (String child : cs)
+            sb.append("\t").append(child).append("\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * The scan class corresponding to {@link TopKNearestPlan}. The first call to
+ * {@link #beforeFirst()} streams the underlying scan once and keeps the k
+ * closest records in a bounded max-heap. The scan then moves the underlying
+ * scan to each of them in ascending order of distance.
+ */
+public class TopKNearestScan implements Scan {
+    private UpdateScan s;
+    private DistanceFn distFn;
+    private int k;
+    private RecordId[] results;
+    private int pos;
+
+    public TopKNearestScan(UpdateScan s, DistanceFn distFn, int k) {
+        this.s = s;
+        this.distFn = distFn;
+        this.k = k;
+    }
+
+    @Override
+    public void beforeFirst() {
+        if (results == null)
+            results = rank();
+        pos = -1;
+    }
+
+    private RecordId[] rank() {
+        TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+        s.beforeFirst();
+        while (s.next()) {
+            double dist = s.rankingDistance(distFn);
+            if (dist < heap.threshold())
+                heap.offer(dist, s.getRecordId());
+        }
+        return heap.drainSorted(new RecordId[heap.size()], null);
+    }
+
+    @Override
+    public boolean next() {
+        if (++pos >= results.length)
+            return false;
+        s.moveToRecordId(results[pos]);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        s.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return s.hasField(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        return s.getVal(fldName);
+    }
+}
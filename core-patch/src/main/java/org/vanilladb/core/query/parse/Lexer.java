@@ -211,9 +211,10 @@ public class Lexer {
 	private void initKeywords() {
 		keywords = Arrays.asList("select", "from", "where", "and", "insert",
 				"into", "values", "delete", "drop", "update", "set", "create", "table",
-				"int", "double", "vector", "varchar", "view", "as", "index", "on",
+				"int", "double", "vector", "normalized", "varchar", "view", "as", "index", "on",
 				"long", "order", "by", "asc", "desc", "limit", "sum", "count", "avg",
 				"min", "max", "distinct", "group", "add", "sub", "mul", "div",
-				"explain", "using", "hash", "btree", "lsh", "cos", "euc", "ivf");
+				"explain", "using", "hash", "btree", "lsh", "cos", "euc", "ip", "ivf", "hnsw", "ivf_pq", "ivf_sq8", "ivf_bq",
+				"diskann", "nprobe");
 	}
 }
@@ -20,6 +20,7 @@ import static org.vanilladb.core.sql.RecordComparator.DIR_DESC;
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.DOUBLE;
 import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.sql.Type.NORMALIZED_VECTOR;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 import static org.vanilladb.core.sql.Type.VECTOR;
 import static org.vanilladb.core.sql.predicate.BinaryArithmeticExpression.OP_ADD;
@@ -54,8 +55,10 @@ import org.vanilladb.core.sql.aggfn.SumFn;
 import org.vanilladb.core.sql.distfn.CosineFn;
 import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.sql.distfn.InnerProductFn;
 import org.vanilladb.core.sql.predicate.BinaryArithmeticExpression;
 import org.vanilladb.core.sql.predicate.ConstantExpression;
+import org.vanilladb.core.sql.predicate.DistanceExpression;
 import org.vanilladb.core.sql.predicate.Expression;
 import org.vanilladb.core.sql.predicate.FieldNameExpression;
 import org.vanilladb.core.sql.predicate.Predicate;
@@ -244,6 +247,7 @@ public class Parser {
 	}
 
 	private List<DistanceFn> embFields = new ArrayList<>();
+	private int nprobe = -1;
 
 	/*
 	 * Methods for parsing queries.
@@ -294,7 +298,7 @@ public class Parser {
 		// System.out.println("Parser: limit " + limit);
 		
 		return new QueryData(isExplain, projs.asStringSet(), tables, pred,
-				groupFields, projs.aggregationFns(), sortFields, sortDirs, embFields, limit);
+				groupFields, projs.aggregationFns(), sortFields, sortDirs, embFields, nprobe, limit);
 	}
 
 	/*
@@ -367,6 +371,41 @@ public class Parser {
 
 	private Term term() {
 		Expression lhs = queryExpression();
+		Term.Operator op;
+		// "F <EUC> vec" is the distance of a vector field, so the operator
+		// follows it
+		if (lhs.isFieldName() && lex.matchDelim('<')) {
+			lex.eatDelim('<');
+			if (matchDistanceFn()) {
+				lhs = new DistanceExpression(distanceFn(lhs.asFieldName()));
+				return new Term(lhs, operator(), rhsExpression());
+			}
+			if (lex.matchDelim('=')) {
+				lex.eatDelim('=');
+				op = OP_LTE;
+			} else
+				op = OP_LT;
+			return new Term(lhs, op, rhsExpression());
+		}
+		return new Term(lhs, operator(), rhsExpression());
+	}
+
+	/*
+	 * Parses the right-hand side of a term, which may also be the distance of
+	 * a vector field, e.g., "r > F <EUC> vec".
+	 */
+	private Expression rhsExpression() {
+		Expression rhs = queryExpression();
+		if (rhs.isFieldName() && lex.matchDelim('<')) {
+			lex.eatDelim('<');
+			if (!matchDistanceFn())
+				throw new BadSyntaxException();
+			rhs = new DistanceExpression(distanceFn(rhs.asFieldName()));
+		}
+		return rhs;
+	}
+
+	private Term.Operator operator() {
 		Term.Operator op;
 		if (lex.matchDelim('=')) {
 			lex.eatDelim('=');
@@ -387,8 +426,35 @@ public class Parser {
 				op = OP_LT;
 		} else
 			throw new UnsupportedOperationException();
-		Expression rhs = queryExpression();
-		return new Term(lhs, op, rhs);
+		return op;
+	}
+
+	private boolean matchDistanceFn() {
+		return lex.matchKeyword("cos") || lex.matchKeyword("euc") || lex.matchKeyword("ip");
+	}
+
+	/*
+	 * Parses "FN> vec" of a distance "F <FN> vec" whose '<' has been eaten.
+	 */
+	private DistanceFn distanceFn(String fld) {
+		DistanceFn distFn;
+		if (lex.matchKeyword("cos")) {
+			lex.eatKeyword("cos");
+			distFn = new CosineFn(fld);
+		} else if (lex.matchKeyword("euc")) {
+			lex.eatKeyword("euc");
+			distFn = new EuclideanFn(fld);
+		} else if (lex.matchKeyword("ip")) {
+			lex.eatKeyword("ip");
+			distFn = new InnerProductFn(fld);
+		} else {
+			throw new UnsupportedOperationException("Invalid distance function");
+		}
+		lex.eatDelim('>');
+
+		VectorConstant queryVec = new VectorConstant(lex.eatVectorConstant());
+		distFn.setQueryVector(queryVec);
+		return distFn;
 	}
 
 	private Expression queryExpression() {
@@ -412,21 +478,13 @@ public class Parser {
 
 				if (lex.matchDelim('<')) {
 					lex.eatDelim('<');
-					DistanceFn distFn;
-					if (lex.matchKeyword("cos")) {
-						lex.eatKeyword("cos");
-						distFn = new CosineFn(fld);
-					} else if (lex.matchKeyword("euc")) {
-						lex.eatKeyword("euc");
-						distFn = new EuclideanFn(fld);
-					} else {
-						throw new UnsupportedOperationException("Invalid distance function");
-					}
-					lex.eatDelim('>');
+					embFields.add(distanceFn(fld));
 
-					VectorConstant queryVec = new VectorConstant(lex.eatVectorConstant());
-					distFn.setQueryVector(queryVec);
-					embFields.add(distFn);
+					// an optional hint on the number of partitions to probe
+					if (lex.matchKeyword("nprobe")) {
+						lex.eatKeyword("nprobe");
+						nprobe = (int) lex.eatNumericConstant();
+					}
 				} else {
 					int dir = sortDirection();
 					list.addField(fld, dir);
@@ -613,7 +671,11 @@ public class Parser {
 			lex.eatDelim('(');
 			double arg = lex.eatNumericConstant();
 			lex.eatDelim(')');
-			schema.addField(fldName, VECTOR((int) arg));
+			if (lex.matchKeyword("normalized")) {
+				lex.eatKeyword("normalized");
+				schema.addField(fldName, NORMALIZED_VECTOR((int) arg));
+			} else
+				schema.addField(fldName, VECTOR((int) arg));
 		} else {
 			lex.eatKeyword("varchar");
 			lex.eatDelim('(');
@@ -633,7 +695,6 @@ public class Parser {
 	}
 
 	private CreateIndexData createIndex() {
-		System.out.println("Parser createIndex");
 		lex.eatKeyword("index");
 		String idxName = lex.eatId();
 		lex.eatKeyword("on");
@@ -659,6 +720,21 @@ public class Parser {
 			} else if (lex.matchKeyword("ivf")) {
 				lex.eatKeyword("ivf");
 				idxType = IndexType.IVF;
+			} else if (lex.matchKeyword("hnsw")) {
+				lex.eatKeyword("hnsw");
+				idxType = IndexType.HNSW;
+			} else if (lex.matchKeyword("ivf_pq")) {
+				lex.eatKeyword("ivf_pq");
+				idxType = IndexType.IVF_PQ;
+			} else if (lex.matchKeyword("ivf_sq8")) {
+				lex.eatKeyword("ivf_sq8");
+				idxType = IndexType.IVF_SQ8;
+			} else if (lex.matchKeyword("ivf_bq")) {
+				lex.eatKeyword("ivf_bq");
+				idxType = IndexType.IVF_BQ;
+			} else if (lex.matchKeyword("diskann")) {
+				lex.eatKeyword("diskann");
+				idxType = IndexType.DISKANN;
 			} else
 				throw new UnsupportedOperationException();
 		}
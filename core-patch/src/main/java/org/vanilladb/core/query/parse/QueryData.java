@@ -39,6 +39,7 @@ public class QueryData {
 	private List<Integer> sortDirs;
 	private List<DistanceFn> embFields;
 	private boolean isExplain;
+	private int nprobe;
 	private int limit;
 
 	/**
@@ -60,9 +61,17 @@ public class QueryData {
 	 *            a list of field names for sorting
 	 * @param sortDirs
 	 *            a list of sort directions
+	 * @param embFields
+	 *            a list of distance functions for nearest neighbor search
+	 * @param nprobe
+	 *            the number of index partitions to probe, or -1 if not
+	 *            specified
+	 * @param limit
+	 *            the maximum number of output records, or -1 if not specified
 	 */
 	public QueryData(boolean isExplain, Set<String> projFields, Set<String> tables, Predicate pred,
-			Set<String> groupFields, Set<AggregationFn> aggFn, List<String> sortFields, List<Integer> sortDirs, List<DistanceFn> embFields, int limit) {
+			Set<String> groupFields, Set<AggregationFn> aggFn, List<String> sortFields, List<Integer> sortDirs,
+			List<DistanceFn> embFields, int nprobe, int limit) {
 		this.isExplain = isExplain;
 		this.projFields = projFields;
 		this.tables = tables;
@@ -72,6 +81,7 @@ public class QueryData {
 		this.sortFields = sortFields;
 		this.sortDirs = sortDirs;
 		this.embFields = embFields;
+		this.nprobe = nprobe;
 		this.limit = limit;
 	}
 
@@ -144,6 +154,16 @@ public class QueryData {
 		return embFields;
 	}
 
+	/**
+	 * Returns the number of index partitions a nearest neighbor search should
+	 * probe, as hinted by the query.
+	 * 
+	 * @return the number of partitions to probe, or -1 if not specified
+	 */
+	public int nprobe() {
+		return nprobe;
+	}
+
 	public int limit() {
 		return limit;
 	}
@@ -192,6 +212,10 @@ public class QueryData {
 			result.delete(result.length() - 2, result.length());
 		}
 
+		if (nprobe != -1) {
+			result.append(" nprobe " + nprobe);
+		}
+
 		if (limit != -1) {
 			result.append(" limit " + limit);
 		}
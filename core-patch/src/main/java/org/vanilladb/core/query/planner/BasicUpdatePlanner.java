@@ -22,6 +22,7 @@ import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.algebra.SelectPlan;
 import org.vanilladb.core.query.algebra.TablePlan;
 import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.query.algebra.vector.NearestNeighborCache;
 import org.vanilladb.core.query.parse.CreateIndexData;
 import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
@@ -33,6 +34,7 @@ import org.vanilladb.core.query.parse.InsertData;
 import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.CosineFn;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
@@ -55,6 +57,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 		}
 		us.close();
 		VanillaDb.statMgr().countRecordUpdates(data.tableName(), count);
+		NearestNeighborCache.recordUpdates(data.tableName(), count, tx);
 		return count;
 	}
 
@@ -68,11 +71,13 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 		while (us.next()) {
 			Collection<String> targetflds = data.targetFields();
 			for (String fld : targetflds)
-				us.setVal(fld, data.newValue(fld).evaluate(us));
+				us.setVal(fld, CosineFn.toStoredValue(p.schema().type(fld),
+						data.newValue(fld).evaluate(us)));
 			count++;
 		}
 		us.close();
 		VanillaDb.statMgr().countRecordUpdates(data.tableName(), count);
+		NearestNeighborCache.recordUpdates(data.tableName(), count, tx);
 		return count;
 	}
 
@@ -83,10 +88,12 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 		us.insert();
 		Iterator<Constant> iter = data.vals().iterator();
 		for (String fldname : data.fields())
-			us.setVal(fldname, iter.next());
+			us.setVal(fldname, CosineFn.toStoredValue(p.schema().type(fldname),
+					iter.next()));
 
 		us.close();
 		VanillaDb.statMgr().countRecordUpdates(data.tableName(), 1);
+		NearestNeighborCache.recordUpdates(data.tableName(), 1, tx);
 		return 1;
 	}
 
@@ -105,7 +112,6 @@ public class BasicUpdatePlanner implements UpdatePlanner {
 
 	@Override
 	public int executeCreateIndex(CreateIndexData data, Transaction tx) {
-		System.out.println("UpdatePlanner CreateIndex");
 		VanillaDb.catalogMgr().createIndex(data.indexName(), data.tableName(),
 				data.fieldNames(), data.indexType(), tx);
 		return 0;
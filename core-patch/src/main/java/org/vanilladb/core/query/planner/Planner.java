@@ -15,8 +15,14 @@
  *******************************************************************************/
 package org.vanilladb.core.query.planner;
 
+import java.sql.Types;
+
 import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.vector.BatchNearestNeighborPlan;
 import org.vanilladb.core.query.parse.*;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
@@ -49,6 +55,46 @@ public class Planner {
 		return qPlanner.createPlan(data, tx);
 	}
 
+	/**
+	 * Creates a plan that searches the k nearest neighbors of a batch of query
+	 * vectors at once. The records of the queries are returned one query
+	 * after another, and the position of the query of each record is in the
+	 * field {@link BatchNearestNeighborPlan#QUERY_ID_FIELD}.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param distFns
+	 *            the distance function of each query, all on the same vector
+	 *            field of the table
+	 * @param k
+	 *            the number of neighbors of each query
+	 * @param nprobe
+	 *            the number of partitions a vector index should probe, or -1
+	 *            for the default of the index
+	 * @param tx
+	 *            the transaction
+	 * @return the plan of the batch search
+	 */
+	public Plan createBatchNearestNeighborPlan(String tblName,
+			DistanceFn[] distFns, int k, int nprobe, Transaction tx) {
+		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+		if (ti == null)
+			throw new BadSemanticException("table " + tblName
+					+ " does not exist");
+		for (DistanceFn distFn : distFns) {
+			String fldName = distFn.fieldName();
+			if (!ti.schema().hasField(fldName)
+					|| ti.schema().type(fldName).getSqlType() != Types.ARRAY)
+				throw new BadSemanticException("vector field " + fldName
+						+ " does not exist");
+			if (!fldName.equals(distFns[0].fieldName()))
+				throw new BadSemanticException(
+						"queries of a batch must search the same field");
+			distFn.setFieldType(ti.schema().type(fldName));
+		}
+		return new BatchNearestNeighborPlan(tblName, distFns, k, nprobe, tx);
+	}
+
 	/**
 	 * Executes an SQL insert, delete, modify, or create statement. The method
 	 * dispatches to the appropriate method of the supplied update planner,
@@ -85,7 +131,6 @@ public class Planner {
 			return uPlanner.executeCreateView((CreateViewData) obj, tx);
 		} else if (obj.getClass().equals(CreateIndexData.class)) {
 			Verifier.verifyCreateIndexData((CreateIndexData) obj, tx);
-			System.out.println("Planner executeCreateIndex");
 			return uPlanner.executeCreateIndex((CreateIndexData) obj, tx);
 		} else if (obj.getClass().equals(DropTableData.class)) {
 			Verifier.verifyDropTableData((DropTableData) obj, tx);
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.query.planner.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.vanilladb.core.query.algebra.vector.NearestNeighborCache;
+import org.vanilladb.core.query.planner.BadSemanticException;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexBuildTask;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.VectorColumnStore;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.recovery.RecoveryMgr;
+
+/**
+ * Loads records into a table in bulk. Unlike an insert statement, a record
+ * is neither parsed nor planned, and it is appended through a record file
+ * that stays open during the whole load, so consecutive records fill a
+ * block before the next one is appended.
+ *
+ * <p>
+ * The indexes of the table are not maintained during the load. When the load
+ * finishes, the appended records are read back in the order of their record
+ * IDs, and every index on the table takes them in batches by
+ * {@link Index#insertBatch(SearchKey[], RecordId[], int)}. Indexes that are
+ * built from the whole table, such as untrained IVF indexes, skip the batches
+ * and index the records when they are trained. Indexes being built in the
+ * background take the records from their build tasks.
+ * </p>
+ *
+ * <p>
+ * The index insertions are not logged logically. To load a testbed without
+ * any logging, turn it off by {@link RecoveryMgr#enableLogging(boolean)}
+ * before the load.
+ * </p>
+ */
+public class BulkLoader {
+	private static final int BATCH_SIZE = 8192;
+
+	private TableInfo ti;
+	private List<String> fldNames;
+	private Transaction tx;
+	private RecordFile rf;
+	private Map<String, VectorColumnStore> stores = new HashMap<String, VectorColumnStore>();
+
+	// the appended records, each packed as (block number << 32 | slot id)
+	private long[] appended = new long[BATCH_SIZE];
+	private int numAppended;
+
+	/**
+	 * Creates a loader that appends records to the specified table.
+	 *
+	 * @param tblName
+	 *            the name of the table
+	 * @param fldNames
+	 *            the fields whose values are given for each record, which must
+	 *            be all the fields of the table
+	 * @param tx
+	 *            the loading transaction
+	 */
+	public BulkLoader(String tblName, List<String> fldNames, Transaction tx) {
+		if (tx.isReadOnly())
+			throw new UnsupportedOperationException();
+		ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+		if (ti == null)
+			throw new BadSemanticException("table " + tblName + " does not exist");
+		if (!new HashSet<String>(fldNames).equals(ti.schema().fields()))
+			throw new BadSemanticException("table " + tblName
+					+ " :fields to be loaded are not the same as the schema definition");
+
+		this.fldNames = new ArrayList<String>(fldNames);
+		this.tx = tx;
+		if (VectorColumnStore.ENABLED)
+			for (String fldName : VectorColumnStore.vectorFields(ti.schema()))
+				stores.put(fldName, VectorColumnStore.get(ti, fldName, tx));
+		rf = ti.open(tx, true);
+	}
+
+	/**
+	 * Appends a record to the table. Its indexes are updated by
+	 * {@link #finish()}.
+	 *
+	 * @param vals
+	 *            the values of the fields, in the order of the field names
+	 *            given to the loader
+	 */
+	public void insert(List<Constant> vals) {
+		if (vals.size() != fldNames.size())
+			throw new BadSemanticException("table " + ti.tableName()
+					+ " :#fields and #values does not match");
+
+		rf.insert();
+		RecordId rid = rf.currentRecordId();
+		for (int i = 0; i < vals.size(); i++) {
+			String fldName = fldNames.get(i);
+			Constant val = CosineFn.toStoredValue(ti.schema().type(fldName), vals.get(i));
+			rf.setVal(fldName, val);
+			VectorColumnStore store = stores.get(fldName);
+			if (store != null)
+				store.put(rid, (VectorConstant) val, tx);
+		}
+
+		if (numAppended == appended.length)
+			appended = Arrays.copyOf(appended, appended.length * 2);
+		appended[numAppended++] = (rid.block().number() << 32) | rid.id();
+	}
+
+	/**
+	 * Inserts all the appended records into the indexes of the table, updates
+	 * the statistics of the table and closes the loader.
+	 *
+	 * @return the number of loaded records
+	 */
+	public int finish() {
+		rf.close();
+		buildIndexes();
+		VanillaDb.statMgr().countRecordUpdates(ti.tableName(), numAppended);
+		NearestNeighborCache.recordUpdates(ti.tableName(), numAppended, tx);
+		int count = numAppended;
+		appended = null;
+		numAppended = 0;
+		return count;
+	}
+
+	private void buildIndexes() {
+		String tblName = ti.tableName();
+		Set<IndexInfo> iis = new HashSet<IndexInfo>();
+		for (String fldName : VanillaDb.catalogMgr().getIndexedFields(tblName, tx))
+			iis.addAll(VanillaDb.catalogMgr().getIndexInfo(tblName, fldName, tx));
+		if (iis.isEmpty() || numAppended == 0)
+			return;
+
+		List<Index> indexes = new ArrayList<Index>(iis.size());
+		Set<String> indexedFlds = new HashSet<String>();
+		for (IndexInfo ii : iis) {
+			indexes.add(ii.open(tx));
+			indexedFlds.addAll(ii.fieldNames());
+		}
+
+		// read the records back block by block
+		Arrays.sort(appended, 0, numAppended);
+		SearchKey[] keys = new SearchKey[BATCH_SIZE];
+		RecordId[] rids = new RecordId[BATCH_SIZE];
+		List<Map<String, Constant>> rows = new ArrayList<Map<String, Constant>>(BATCH_SIZE);
+		RecordFile dataRf = ti.open(tx, false);
+		for (int from = 0; from < numAppended; from += BATCH_SIZE) {
+			int n = Math.min(BATCH_SIZE, numAppended - from);
+			rows.clear();
+			for (int i = 0; i < n; i++) {
+				long packed = appended[from + i];
+				rids[i] = new RecordId(new BlockId(ti.fileName(), packed >>> 32), (int) packed);
+				dataRf.moveToRecordId(rids[i]);
+				Map<String, Constant> row = new HashMap<String, Constant>();
+				for (String fldName : indexedFlds)
+					row.put(fldName, dataRf.getVal(fldName));
+				rows.add(row);
+			}
+
+			for (Index idx : indexes) {
+				List<String> idxFlds = idx.getIndexInfo().fieldNames();
+				for (int i = 0; i < n; i++)
+					keys[i] = new SearchKey(idxFlds, rows.get(i));
+				if (idx.getIndexInfo().state() == IndexInfo.State.READY)
+					idx.insertBatch(keys, rids, n);
+				else
+					for (int i = 0; i < n; i++)
+						IndexBuildTask.recordChange(idx.getIndexInfo(), keys[i], rids[i]);
+			}
+		}
+		dataRf.close();
+
+		for (Index idx : indexes)
+			idx.close();
+	}
+}
@@ -27,8 +27,14 @@ import org.vanilladb.core.query.algebra.index.IndexSelectPlan;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.ConstantRange;
 import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
 import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.index.IndexType;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.VectorCostModel;
+import org.vanilladb.core.storage.index.diskann.DiskANNIndex;
+import org.vanilladb.core.storage.index.ivf.IVFIndex;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -37,21 +43,44 @@ public class IndexSelector {
 	public static IndexSelectPlan selectByBestMatchedIndex(String tblName,
 			TablePlan tablePlan, Predicate pred, Transaction tx, 
 			DistanceFn embField) {
+		return selectByBestMatchedIndex(tblName, tablePlan, pred, tx, embField, -1, -1);
+	}
+
+	/**
+	 * Selects the index that matches the most fields of the predicate, or the
+	 * vector index on the field of the given distance function.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param tablePlan
+	 *            the plan of the table
+	 * @param pred
+	 *            the query predicate
+	 * @param tx
+	 *            the calling transaction
+	 * @param embField
+	 *            the distance function of a nearest neighbor search, or null
+	 * @param k
+	 *            the number of neighbors a vector index may stop at, or -1
+	 * @param nprobe
+	 *            the number of partitions a vector index should probe, or -1
+	 * @return an index select plan, or null if no index is applicable
+	 */
+	public static IndexSelectPlan selectByBestMatchedIndex(String tblName,
+			TablePlan tablePlan, Predicate pred, Transaction tx, 
+			DistanceFn embField, int k, int nprobe) {
 		
 		Set<IndexInfo> candidates = new HashSet<IndexInfo>();
-		System.out.println("IndexSelector selectByBest");
 		for (String fieldName : VanillaDb.catalogMgr().getIndexedFields(tblName, tx)) {
 			ConstantRange searchRange = pred.constantRange(fieldName);
-			System.out.println("IndexSelector:" + fieldName);
-			System.out.println("IndexSelector, embField: " + (embField == null));
-			if (searchRange == null && embField == null)
+			if (searchRange == null && !isEmbeddingField(fieldName, embField))
 				continue;
 			
 			List<IndexInfo> iis = VanillaDb.catalogMgr().getIndexInfo(tblName, fieldName, tx);
 			candidates.addAll(iis);
 		}
 		
-		return selectByBestMatchedIndex(candidates, tablePlan, pred, tx, embField);
+		return selectByBestMatchedIndex(candidates, tablePlan, pred, tx, embField, k, nprobe);
 	}
 	
 	public static IndexSelectPlan selectByBestMatchedIndex(String tblName,
@@ -60,13 +89,11 @@ public class IndexSelector {
 		
 		Set<IndexInfo> candidates = new HashSet<IndexInfo>();
 		for (String fieldName : VanillaDb.catalogMgr().getIndexedFields(tblName, tx)) {
-			System.out.println("selectByBest fields:" + fieldName);
-			System.out.println("selectByBest emb:" + embField.fieldName());
 			if (excludedFields.contains(fieldName))
 				continue;
 			
 			ConstantRange searchRange = pred.constantRange(fieldName);
-			if (searchRange == null && embField == null)
+			if (searchRange == null && !isEmbeddingField(fieldName, embField))
 				continue;
 			
 			List<IndexInfo> iis = VanillaDb.catalogMgr().getIndexInfo(tblName, fieldName, tx);
@@ -89,43 +116,177 @@ public class IndexSelector {
 	public static IndexSelectPlan selectByBestMatchedIndex(Set<IndexInfo> candidates,
 			TablePlan tablePlan, Predicate pred, Transaction tx, 
 			DistanceFn embField) {
+		return selectByBestMatchedIndex(candidates, tablePlan, pred, tx, embField, -1, -1);
+	}
+
+	/**
+	 * Selects the index that matches the most fields of the predicate among
+	 * the candidates. Among the vector indexes on the field of the given
+	 * distance function, the one with the lowest search cost estimated by the
+	 * {@link VectorCostModel} is selected.
+	 * 
+	 * @param candidates
+	 *            the candidate indexes
+	 * @param tablePlan
+	 *            the plan of the table
+	 * @param pred
+	 *            the query predicate
+	 * @param tx
+	 *            the calling transaction
+	 * @param embField
+	 *            the distance function of a nearest neighbor search, or null
+	 * @param k
+	 *            the number of neighbors a vector index may stop at, or -1
+	 * @param nprobe
+	 *            the number of partitions a vector index should probe, or -1
+	 * @return an index select plan, or null if no index is applicable
+	 */
+	public static IndexSelectPlan selectByBestMatchedIndex(Set<IndexInfo> candidates,
+			TablePlan tablePlan, Predicate pred, Transaction tx, 
+			DistanceFn embField, int k, int nprobe) {
 		// Choose the index with the most matched fields in the predicate
-		System.out.println("IndexSelector candidate selectByBest");
-		System.out.println("Candidates Size: " + candidates.size());
 		int matchedCount = 0;
 		IndexInfo bestIndex = null;
 		Map<String, ConstantRange> searchRanges = null;
+		long bestVectorCost = Long.MAX_VALUE;
 		
 		for (IndexInfo ii : candidates) {
-			if (ii.fieldNames().size() < matchedCount)
+			if (ii.fieldNames().size() < matchedCount
+					|| ii.state() != IndexInfo.State.READY)
 				continue;
 			
 			Map<String, ConstantRange> ranges = new HashMap<String, ConstantRange>();
 			for (String fieldName : ii.fieldNames()) {
-				System.out.println("FIELDNAME: " + fieldName);
 				ConstantRange searchRange = pred.constantRange(fieldName);
-				if (searchRange != null && (
+				if (ii.indexType().isVectorIndex()) {
+					if (isEmbeddingField(fieldName, embField)
+							&& supportsDistanceFn(ii, embField) && isReady(ii, tx))
+						ranges.put(fieldName, ConstantRange.newInstance(embField.getQueryVector()));
+				} else if (searchRange != null && (
 						(ii.indexType() == IndexType.HASH && searchRange.isConstant())
 						|| ii.indexType() == IndexType.BTREE))
 					ranges.put(fieldName, searchRange);
-				else if (ii.indexType() == IndexType.IVF) {
-					searchRange = ConstantRange.newInstance(embField.getQueryVector());
-					ranges.put("i_emb", searchRange);
-				}
 			}
 			
-			if (ranges.size() > matchedCount) {
+			if (ranges.isEmpty() || ranges.size() < matchedCount)
+				continue;
+			long cost = ii.indexType().isVectorIndex() ? VectorCostModel.searchCost(ii,
+					new SearchKeyType(tablePlan.schema(), ii.fieldNames()),
+					tablePlan.recordsOutput(), k, nprobe, tx) : Long.MAX_VALUE;
+			// break a tie between vector indexes by their search costs
+			if (ranges.size() > matchedCount || (bestIndex.indexType().isVectorIndex()
+					&& cost < bestVectorCost)) {
 				matchedCount = ranges.size();
 				bestIndex = ii;
 				searchRanges = ranges;
+				bestVectorCost = cost;
 			}
 		}
-		System.out.println("IndexSelector, BestIndex: " + bestIndex.fieldNames());
 		
 		if (bestIndex != null) {
+			if (bestIndex.indexType().isVectorIndex())
+				return new IndexSelectPlan(tablePlan, bestIndex, searchRanges,
+						embField, k, nprobe, tx);
 			return new IndexSelectPlan(tablePlan, bestIndex, searchRanges, tx);
 		}
 		
 		return null;
 	}
+
+	/**
+	 * Returns a vector index on the field of the given distance function that
+	 * can serve searches.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param embField
+	 *            the distance function of a nearest neighbor search
+	 * @param tx
+	 *            the calling transaction
+	 * @return information about the vector index, or null if there is none
+	 */
+	public static IndexInfo selectVectorIndex(String tblName, DistanceFn embField,
+			Transaction tx) {
+		for (IndexInfo ii : VanillaDb.catalogMgr().getIndexInfo(tblName,
+				embField.fieldName(), tx))
+			if (ii.indexType().isVectorIndex() && supportsDistanceFn(ii, embField)
+					&& isReady(ii, tx))
+				return ii;
+		return null;
+	}
+
+	/**
+	 * Returns a vector index on the field of the given distance function that
+	 * can serve range searches exactly, i.e., an IVF index, whose cluster
+	 * radii bound the clusters that a ball can reach. The walk of an HNSW
+	 * graph may miss the parts of a ball that its links do not connect, so a
+	 * range search is not pushed down to it.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param distFn
+	 *            the distance function of a range search
+	 * @param tx
+	 *            the calling transaction
+	 * @return information about the vector index, or null if there is none
+	 */
+	public static IndexInfo selectRadiusIndex(String tblName, DistanceFn distFn,
+			Transaction tx) {
+		for (IndexInfo ii : VanillaDb.catalogMgr().getIndexInfo(tblName,
+				distFn.fieldName(), tx))
+			if (ii.indexType().isInvertedFileIndex()
+					&& supportsDistanceFn(ii, distFn) && isReady(ii, tx))
+				return ii;
+		return null;
+	}
+
+	/**
+	 * Returns true if the vector index ranks its results by the metric of the
+	 * given distance function. The other vector indexes find their candidates
+	 * by the Euclidean distance (IVF centroids, LSH buckets or DiskANN graph
+	 * walks) but compute the exact distance of every candidate they return, and
+	 * the quantized IVF indexes always re-rank a search by another metric. An
+	 * HNSW graph, however, returns the entries it visits in the order of the
+	 * Euclidean distance only, so it would return the wrong neighbors for the
+	 * other metrics.
+	 * 
+	 * @param ii
+	 *            information about the vector index
+	 * @param distFn
+	 *            the distance function of a search
+	 * @return true if the index can serve searches by the distance function
+	 */
+	public static boolean supportsDistanceFn(IndexInfo ii, DistanceFn distFn) {
+		return ii.indexType() != IndexType.HNSW || distFn instanceof EuclideanFn;
+	}
+
+	private static boolean isEmbeddingField(String fieldName, DistanceFn embField) {
+		return embField != null && embField.fieldName().equals(fieldName);
+	}
+
+	/**
+	 * Returns true if the vector index can serve searches. An index that is
+	 * still being built in the background, an untrained IVF index or an unbuilt
+	 * DiskANN index misses entries, so searching it would miss records.
+	 * 
+	 * @param ii
+	 *            information about the vector index
+	 * @param tx
+	 *            the calling transaction
+	 * @return true if the index can serve searches
+	 */
+	public static boolean isReady(IndexInfo ii, Transaction tx) {
+		if (ii.state() != IndexInfo.State.READY)
+			return false;
+		if (!ii.indexType().isInvertedFileIndex() && ii.indexType() != IndexType.DISKANN)
+			return true;
+		Index idx = ii.open(tx);
+		try {
+			if (ii.indexType() == IndexType.DISKANN)
+				return ((DiskANNIndex) idx).isBuilt();
+			return ((IVFIndex) idx).isTrained();
+		} finally {
+			idx.close();
+		}
+	}
 }
@@ -27,6 +27,7 @@ import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.algebra.SelectPlan;
 import org.vanilladb.core.query.algebra.TablePlan;
 import org.vanilladb.core.query.algebra.UpdateScan;
+import org.vanilladb.core.query.algebra.vector.NearestNeighborCache;
 import org.vanilladb.core.query.parse.CreateIndexData;
 import org.vanilladb.core.query.parse.CreateTableData;
 import org.vanilladb.core.query.parse.CreateViewData;
@@ -39,10 +40,15 @@ import org.vanilladb.core.query.parse.ModifyData;
 import org.vanilladb.core.query.planner.UpdatePlanner;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
 import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexBuildTask;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.VectorColumnStore;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
@@ -60,7 +66,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		Iterator<Constant> valIter = data.vals().iterator();
 		for (String fldname : data.fields()) {
 			Constant val = valIter.next();
-			fldValMap.put(fldname, val);
+			fldValMap.put(fldname, CosineFn.toStoredValue(p.schema().type(fldname), val));
 		}
 
 		// Insert the record into the record file
@@ -80,12 +86,27 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		}
 		
 		for (IndexInfo ii : indexes) {
+			SearchKey key = new SearchKey(ii.fieldNames(), fldValMap);
+			if (ii.state() != IndexInfo.State.READY) {
+				IndexBuildTask.recordChange(ii, key, rid);
+				continue;
+			}
 			Index idx = ii.open(tx);
-			idx.insert(new SearchKey(ii.fieldNames(), fldValMap), rid, true);
+			idx.insert(key, rid, true);
 			idx.close();
 		}
 		
+		// Insert the vectors of the record to the vector stores
+		if (VectorColumnStore.ENABLED) {
+			TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblname, tx);
+			for (String fldName : VectorColumnStore.vectorFields(ti.schema()))
+				if (fldValMap.containsKey(fldName))
+					VectorColumnStore.get(ti, fldName, tx).put(rid,
+							(VectorConstant) fldValMap.get(fldName), tx);
+		}
+		
 		VanillaDb.statMgr().countRecordUpdates(data.tableName(), 1);
+		NearestNeighborCache.recordUpdates(data.tableName(), 1, tx);
 		return 1;
 	}
 
@@ -114,6 +135,14 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 			allIndexes.addAll(iis);
 		}
 		
+		// Retrieve all vector stores
+		List<VectorColumnStore> stores = new LinkedList<VectorColumnStore>();
+		if (VectorColumnStore.ENABLED) {
+			TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+			for (String fldName : VectorColumnStore.vectorFields(ti.schema()))
+				stores.add(VectorColumnStore.get(ti, fldName, tx));
+		}
+		
 		// Open the scan
 		UpdateScan s = (UpdateScan) selectPlan.open();
 		int count = 0;
@@ -128,6 +157,10 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 				for (String fldName : ii.fieldNames())
 					fldValMap.put(fldName, s.getVal(fldName));
 				SearchKey key = new SearchKey(ii.fieldNames(), fldValMap);
+				if (ii.state() != IndexInfo.State.READY) {
+					IndexBuildTask.recordChange(ii, key, rid);
+					continue;
+				}
 				
 				// Delete from the index
 				Index index = ii.open(tx);
@@ -135,6 +168,10 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 				index.close();
 			}
 			
+			// Delete the vectors of the record from every vector store
+			for (VectorColumnStore store : stores)
+				store.remove(rid, tx);
+			
 			// Delete the record from the record file
 			s.delete();
 
@@ -156,6 +193,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		s.close();
 		
 		VanillaDb.statMgr().countRecordUpdates(data.tableName(), count);
+		NearestNeighborCache.recordUpdates(data.tableName(), count, tx);
 		return count;
 	}
 
@@ -191,7 +229,8 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 			Map<String, Constant> newValMap = new HashMap<String, Constant>();
 			for (String fieldName : data.targetFields()) {
 				Constant oldVal = s.getVal(fieldName);
-				Constant newVal = data.newValue(fieldName).evaluate(s);
+				Constant newVal = CosineFn.toStoredValue(selectPlan.schema().type(fieldName),
+						data.newValue(fieldName).evaluate(s));
 				
 				oldValMap.put(fieldName, oldVal);
 				newValMap.put(fieldName, newVal);
@@ -200,6 +239,15 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 			
 			RecordId rid = s.getRecordId();
 			
+			// Update the vector stores
+			if (VectorColumnStore.ENABLED) {
+				TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+				for (String fldName : VectorColumnStore.vectorFields(ti.schema()))
+					if (newValMap.containsKey(fldName))
+						VectorColumnStore.get(ti, fldName, tx).put(rid,
+								(VectorConstant) s.getVal(fldName), tx);
+			}
+			
 			// Update the indexes
 			for (Index index : modifiedIndexes) {
 				// Construct a SearchKey for the old value
@@ -212,6 +260,12 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 				}
 				SearchKey oldKey = new SearchKey(index.getIndexInfo().fieldNames(), fldValMap);
 				
+				// Leave an index being built to its build task
+				if (index.getIndexInfo().state() != IndexInfo.State.READY) {
+					IndexBuildTask.recordChange(index.getIndexInfo(), oldKey, rid);
+					continue;
+				}
+				
 				// Delete the old value from the index
 				index.delete(oldKey, rid, true);
 				
@@ -240,6 +294,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		s.close();
 		
 		VanillaDb.statMgr().countRecordUpdates(data.tableName(), count);
+		NearestNeighborCache.recordUpdates(data.tableName(), count, tx);
 		return count;
 	}
 
@@ -44,15 +44,17 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 	 */
 	@Override
 	public Plan createPlan(QueryData data, Transaction tx) {
-		System.out.println("Heuristic Create Plan");
 		// Step 1: Create a TablePlanner object for each mentioned table/view
+		// (the limit bounds a nearest neighbor search only if there is no join)
+		int knnLimit = data.tables().size() == 1 ? data.limit() : -1;
 		int id = 0;
 		for (String tbl : data.tables()) {
 			String viewdef = VanillaDb.catalogMgr().getViewDef(tbl, tx);
 			if (viewdef != null)
 				views.add(VanillaDb.newPlanner().createQueryPlan(viewdef, tx));
 			else {
-				TablePlanner tp = new TablePlanner(tbl, data.pred(), data.embeddingFields(), tx, id);
+				TablePlanner tp = new TablePlanner(tbl, data.pred(), data.embeddingFields(),
+						knnLimit, data.nprobe(), tx, id);
 				tablePlanners.add(tp);
 			}
 			id += 1;
@@ -73,8 +75,9 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 			trunk = new GroupByPlan(trunk, data.groupFields(),
 					data.aggregationFn(), tx);
 
-		// Step 5: Add a sort plan if specified
-		if (data.sortFields() != null)
+		// Step 5: Add a sort plan if specified (an order by distance only has
+		// been applied by the nearest neighbor plan of the table)
+		if (data.sortFields() != null && !data.sortFields().isEmpty())
 			trunk = new SortPlan(trunk, data.sortFields(),
 					data.sortDirections(), tx);
 
@@ -92,7 +95,6 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 	}
 
 	private Plan getLowestSelectPlan() {
-		System.out.println("Heuristic GetLowSelect");
 		TablePlanner bestTp = null;
 		Plan bestPlan = null;
 		Plan bestView = null;
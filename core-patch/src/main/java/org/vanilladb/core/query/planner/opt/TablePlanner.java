@@ -26,13 +26,23 @@ import org.vanilladb.core.query.algebra.SelectPlan;
 import org.vanilladb.core.query.algebra.TablePlan;
 import org.vanilladb.core.query.algebra.index.IndexJoinPlan;
 import org.vanilladb.core.query.algebra.multibuffer.MultiBufferProductPlan;
+import org.vanilladb.core.query.algebra.vector.CachedNearestNeighborPlan;
+import org.vanilladb.core.query.algebra.vector.ColumnNearestNeighborPlan;
+import org.vanilladb.core.query.algebra.vector.FilteredNearestNeighborPlan;
+import org.vanilladb.core.query.algebra.vector.NearestNeighborCache;
 import org.vanilladb.core.query.algebra.vector.NearestNeighborPlan;
+import org.vanilladb.core.query.algebra.vector.ParallelNearestNeighborPlan;
+import org.vanilladb.core.query.algebra.vector.RadiusSearchPlan;
 import org.vanilladb.core.query.planner.index.IndexSelector;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
 import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.sql.predicate.Term;
+import org.vanilladb.core.storage.index.VectorCostModel;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.VectorColumnStore;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
@@ -48,6 +58,7 @@ class TablePlanner {
 	private int hashCode;
 
 	private DistanceFn embField;
+	private int limit = -1, nprobe = -1;
 
 	/**
 	 * Creates a new table planner. The specified predicate applies to the
@@ -72,6 +83,33 @@ class TablePlanner {
 		sch = tp.schema();
 	}
 
+	/**
+	 * Creates a new table planner for a query that may contain a nearest
+	 * neighbor search. If one of the given distance functions is on a field of
+	 * this table, the select plan of the table is ordered by that function.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param pred
+	 *            the query predicate
+	 * @param embFields
+	 *            the distance functions of the query
+	 * @param limit
+	 *            the number of neighbors wanted, or -1 if all records of the
+	 *            table are ranked
+	 * @param nprobe
+	 *            the number of index partitions to probe, or -1 to use the
+	 *            default of the index
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public TablePlanner(String tblName, Predicate pred, List<DistanceFn> embFields,
+			int limit, int nprobe, Transaction tx, int id) {
+		this(tblName, pred, embFields, tx, id);
+		this.limit = limit;
+		this.nprobe = nprobe;
+	}
+
 	public TablePlanner(String tblName, Predicate pred, List<DistanceFn> embFields, Transaction tx, int id) {
 		this.tblName = tblName;
 		this.pred = pred;
@@ -85,6 +123,7 @@ class TablePlanner {
 		for (DistanceFn embField : embFields) {
 			if (sch.hasField(embField.fieldName())) {
 				this.embField = embField;
+				embField.setFieldType(sch.type(embField.fieldName()));
 				break;
 			}
 		}
@@ -109,22 +148,96 @@ class TablePlanner {
 
 	/**
 	 * Constructs a select plan for the table. The plan will use an indexselect,
-	 * if possible.
+	 * if possible, and a range search on a vector field uses a vector index if
+	 * possible. A k-nearest neighbor search uses the vector index with the
+	 * lowest estimated search cost only if it is cheaper than ranking all the
+	 * vectors exactly, which ranks the vector store of the table if the stores
+	 * are enabled, or scans a large table in parallel otherwise. The result of
+	 * a k-nearest neighbor search without a selection is cached if the cache
+	 * is enabled.
 	 * 
 	 * @return a select plan for the table.
 	 */
 	public Plan makeSelectPlan() {
-		System.out.println("MakeSelectPlan");
+		Predicate selectPred = pred.selectPredicate(sch);
+		if (embField != null && limit > 0 && selectPred != null)
+			return makeFilteredNearestNeighborPlan(selectPred);
+
+		if (embField != null && limit > 0 && NearestNeighborCache.isEnabled())
+			return new CachedNearestNeighborPlan(makeUnfilteredSelectPlan(), tblName,
+					embField, limit, nprobe, tx);
+		return makeUnfilteredSelectPlan();
+	}
+
+	private Plan makeUnfilteredSelectPlan() {
 		Plan p = makeIndexSelectPlan();
+		if (embField != null && limit > 0) {
+			// a vector index is used only if its search is estimated to be
+			// cheaper than ranking all the vectors exactly
+			if (p == null || VectorCostModel.exactSearchCost(
+					VanillaDb.catalogMgr().getTableInfo(tblName, tx), embField.fieldName(),
+					VectorColumnStore.ENABLED) + limit <= p.blocksAccessed())
+				return makeExactNearestNeighborPlan();
+		}
+		if (p == null)
+			p = makeRadiusSearchPlan();
 		if (p == null)
 			p = tp;
 		p =  addSelectPredicate(p);
 		if (embField != null) {
-			p = new NearestNeighborPlan(p, embField, tx);
+			p = new NearestNeighborPlan(p, embField, limit, tx);
 		}
 		return p;
 	}
 
+	/**
+	 * Constructs the plan of a k-nearest neighbor search without a selection
+	 * that ranks all the vectors of the table: over the vector store if the
+	 * stores are enabled, by a parallel scan of a large table, or over a
+	 * table scan otherwise.
+	 */
+	private Plan makeExactNearestNeighborPlan() {
+		if (VectorColumnStore.ENABLED)
+			return new ColumnNearestNeighborPlan(tblName, embField, limit, tx);
+		if (tp.blocksAccessed() >= ParallelNearestNeighborPlan.MIN_BLOCKS)
+			return new ParallelNearestNeighborPlan(tblName, pred.selectPredicate(sch),
+					embField, limit, tx);
+		return new NearestNeighborPlan(addSelectPredicate(tp), embField, limit, tx);
+	}
+
+	/**
+	 * Constructs the plan of a k-nearest neighbor search with a selection on
+	 * this table. Two strategies are costed by the selectivity of the
+	 * predicate: pre-filtering selects the qualified records first, through a
+	 * non-vector index if possible, and ranks them exactly; post-filtering
+	 * searches a vector index with a candidate pool large enough for k
+	 * qualified records. The cheaper one is chosen.
+	 * 
+	 * @param selectPred
+	 *            the selection predicate on this table
+	 * @return the plan of the filtered search
+	 */
+	private Plan makeFilteredNearestNeighborPlan(Predicate selectPred) {
+		Plan preFilter = IndexSelector.selectByBestMatchedIndex(tblName, tp, pred, tx, null);
+		// an index on a predicate that is not selective reads more blocks
+		// than the table
+		if (preFilter != null && preFilter.blocksAccessed() >= tp.blocksAccessed())
+			preFilter = null;
+		if (preFilter == null
+				&& tp.blocksAccessed() >= ParallelNearestNeighborPlan.MIN_BLOCKS)
+			preFilter = new ParallelNearestNeighborPlan(tblName, selectPred, embField, limit, tx);
+		else
+			preFilter = new NearestNeighborPlan(addSelectPredicate(
+					preFilter == null ? tp : preFilter), embField, limit, tx);
+
+		IndexInfo vecIndex = IndexSelector.selectVectorIndex(tblName, embField, tx);
+		if (vecIndex == null)
+			return preFilter;
+		Plan postFilter = new FilteredNearestNeighborPlan(tp, vecIndex, selectPred,
+				embField, limit, nprobe, tx);
+		return postFilter.blocksAccessed() < preFilter.blocksAccessed() ? postFilter : preFilter;
+	}
+
 	/**
 	 * Constructs a join plan of the specified trunk and this table. The plan
 	 * will use an indexjoin, if possible; otherwise a multi-buffer product
@@ -176,8 +289,30 @@ class TablePlanner {
 	 * that help the identification: e.g., "F < C", not "F - C < 0".
 	 */
 	private Plan makeIndexSelectPlan() {
-		System.out.println("MakeIndexSelectPlan, vec: " + this.embField.getQueryVector());
-		return IndexSelector.selectByBestMatchedIndex(tblName, tp, pred, tx, this.embField);
+		// the index can return only the top-k neighbors if no other selection
+		// on this table may filter them afterwards
+		int k = pred.selectPredicate(sch) == null ? limit : -1;
+		return IndexSelector.selectByBestMatchedIndex(tblName, tp, pred, tx, embField, k, nprobe);
+	}
+
+	/**
+	 * Constructs a range search plan if the predicate bounds the Euclidean
+	 * distance between a vector field and a query vector, and an IVF index on
+	 * the field can serve it. The radius of a cluster bounds Euclidean
+	 * distances only, so other distance functions are evaluated by the
+	 * selection on a table scan.
+	 */
+	private Plan makeRadiusSearchPlan() {
+		for (String fldName : sch.fields()) {
+			Term t = pred.distanceTerm(fldName);
+			if (t == null || !(t.distanceFn(fldName) instanceof EuclideanFn))
+				continue;
+			IndexInfo ii = IndexSelector.selectRadiusIndex(tblName, t.distanceFn(fldName), tx);
+			if (ii != null)
+				return new RadiusSearchPlan(tp, ii, t.distanceFn(fldName),
+						t.distanceBound(fldName), tx);
+		}
+		return null;
 	}
 
 	/**
@@ -210,7 +345,8 @@ class TablePlanner {
 		
 		// Find the indexes with the most joined fields
 		for (IndexInfo ii : candidates) {
-			if (ii.fieldNames().size() < matchedCount)
+			if (ii.fieldNames().size() < matchedCount
+					|| ii.state() != IndexInfo.State.READY)
 				continue;
 			
 			Map<String, String> joinPairs = new HashMap<String, String>();
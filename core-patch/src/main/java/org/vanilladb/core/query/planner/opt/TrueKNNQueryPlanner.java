@@ -30,13 +30,16 @@ public class TrueKNNQueryPlanner implements QueryPlanner {
 	@Override
 	public Plan createPlan(QueryData data, Transaction tx) {
 		// Step 1: Create a TablePlanner object for each mentioned table/view
+		// (the limit bounds a nearest neighbor search only if there is no join)
+		int knnLimit = data.tables().size() == 1 ? data.limit() : -1;
 		int id = 0;
 		for (String tbl : data.tables()) {
 			String viewdef = VanillaDb.catalogMgr().getViewDef(tbl, tx);
 			if (viewdef != null)
 				views.add(VanillaDb.newPlanner().createQueryPlan(viewdef, tx));
 			else {
-				TablePlanner tp = new TablePlanner(tbl, data.pred(), data.embeddingFields(), tx, id);
+				TablePlanner tp = new TablePlanner(tbl, data.pred(), data.embeddingFields(),
+						knnLimit, data.nprobe(), tx, id);
 				tablePlanners.add(tp);
 			}
 			id += 1;
@@ -57,8 +60,9 @@ public class TrueKNNQueryPlanner implements QueryPlanner {
 			trunk = new GroupByPlan(trunk, data.groupFields(),
 					data.aggregationFn(), tx);
 
-		// Step 5: Add a sort plan if specified
-		if (data.sortFields() != null)
+		// Step 5: Add a sort plan if specified (an order by distance only has
+		// been applied by the nearest neighbor plan of the table)
+		if (data.sortFields() != null && !data.sortFields().isEmpty())
 			trunk = new SortPlan(trunk, data.sortFields(),
 					data.sortDirections(), tx);
 
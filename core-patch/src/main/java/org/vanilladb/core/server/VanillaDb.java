@@ -140,6 +140,9 @@ public class VanillaDb {
 			if (logger.isLoggable(Level.INFO))
 				logger.info("the database has been recovered to a consistent state.");
 		}
+		
+		// the indexes whose builds were interrupted are not used
+		catalogMgr.loadUnbuiltIndexes(initTx);
 
 		// initialize the statistics manager to build the histogram
 		initStatMgr(initTx);
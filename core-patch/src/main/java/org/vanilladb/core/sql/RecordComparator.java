@@ -78,8 +78,8 @@ public class RecordComparator implements Comparator<Record> {
 
 			if (distFn != null && fld.equals(distFn.fieldName())) {
 				// Compare by distance
-				double dist1 = distFn.distance((VectorConstant) rec1.getVal(fld));
-				double dist2 = distFn.distance((VectorConstant) rec2.getVal(fld));
+				double dist1 = distFn.rankingDistance((VectorConstant) rec1.getVal(fld));
+				double dist2 = distFn.rankingDistance((VectorConstant) rec2.getVal(fld));
 				int result = Double.compare(dist1, dist2);
 				if (result != 0)
 					return dir == DIR_ASC ? result : -result;
@@ -99,8 +99,8 @@ public class RecordComparator implements Comparator<Record> {
 
 		if (distFn != null) {
 			// Compare by distance
-			double dist1 = distFn.distance((VectorConstant) val1);
-			double dist2 = distFn.distance((VectorConstant) val2);
+			double dist1 = distFn.rankingDistance((VectorConstant) val1);
+			double dist2 = distFn.rankingDistance((VectorConstant) val2);
 			return Double.compare(dist1, dist2);
 		}
 		
@@ -33,6 +33,10 @@ public abstract class Type {
 		return new VectorType(size);
 	}
 
+	public static Type NORMALIZED_VECTOR(int size) {
+		return new VectorType(size, true);
+	}
+
 	/**
 	 * Constructs a new instance corresponding to the specified SQL type and
 	 * argument.
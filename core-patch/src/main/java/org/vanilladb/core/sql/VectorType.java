@@ -4,12 +4,36 @@ import java.sql.Types;
 
 /**
  * The type of a vector constant.
+ *
+ * <p>
+ * A vector field may be declared normalized ({@code VECTOR(n) NORMALIZED}),
+ * in which case the update planners store each of its values scaled to unit
+ * length and the cosine distance on the field takes a single dot product.
+ * The flag only describes how the values of a field are stored; two vector
+ * types of the same size are equal whether they are normalized or not.
+ * </p>
  */
 public class VectorType extends Type {
     private int size;
+    private boolean normalized;
 
     VectorType(int size) {
+        this(size, false);
+    }
+
+    VectorType(int size, boolean normalized) {
         this.size = size;
+        this.normalized = normalized;
+    }
+
+    /**
+     * Returns whether the values of a field of this type are stored as unit
+     * vectors.
+     *
+     * @return true if the values are normalized to unit length
+     */
+    public boolean isNormalized() {
+        return normalized;
     }
 
     @Override
@@ -1,25 +1,74 @@
 package org.vanilladb.core.sql.distfn;
 
+import java.nio.ByteBuffer;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.VectorType;
 
+/**
+ * The cosine distance {@code 1 - cos(query, vec)}, which is 0 for vectors in
+ * the same direction and 2 for opposite ones, so that closer vectors rank
+ * first.
+ *
+ * <p>
+ * The query is normalized once when it is set. If the field is declared
+ * normalized (see {@link VectorType#isNormalized()}), the update planners
+ * store its vectors at unit length, so the distance takes a single dot
+ * product; otherwise, the norm of each vector is computed in the same pass as
+ * the dot product. The function assumes the latter until a planner tells it
+ * the type of the field by {@link #setFieldType(Type)}.
+ * </p>
+ */
 public class CosineFn extends DistanceFn {
 
+    /**
+     * Returns the value to be stored in a field of the given type, which is
+     * the unit vector of a vector if the field is normalized, or the value
+     * itself otherwise.
+     *
+     * @param type
+     *            the type of the field
+     * @param val
+     *            the value of the field
+     * @return the value to be stored
+     */
+    public static Constant toStoredValue(Type type, Constant val) {
+        if (type instanceof VectorType && ((VectorType) type).isNormalized()
+                && val instanceof VectorConstant)
+            return new VectorConstant(VectorOps.normalize(((VectorConstant) val).asJavaVal()));
+        return val;
+    }
+
+    private float[] unitQuery;
+    private boolean unitVectors;
+
     public CosineFn(String fld) {
         super(fld);
     }
 
+    @Override
+    public void setQueryVector(VectorConstant query) {
+        super.setQueryVector(query);
+        unitQuery = VectorOps.normalize(query.asJavaVal());
+    }
+
+    @Override
+    public void setFieldType(Type type) {
+        unitVectors = type instanceof VectorType && ((VectorType) type).isNormalized();
+    }
+
     @Override
     protected double calculateDistance(VectorConstant vec) {
+        float[] v = vec.asJavaVal();
+        return 1 - (unitVectors ? VectorOps.dotProduct(unitQuery, v)
+                : VectorOps.cosineSimilarity(unitQuery, v));
+    }
 
-        double sum = 0;
-        double querySum = 0;
-        double vecSum = 0;
-        // WARNING: Don't use vec.size() here, it will return the number of bytes
-        for (int i = 0; i < vec.dimension(); i++) { 
-            sum += query.get(i) * vec.get(i);
-            querySum += query.get(i) * query.get(i);
-            vecSum += vec.get(i) * vec.get(i);
-        }
-        return sum / (Math.sqrt(querySum) * Math.sqrt(vecSum));
+    @Override
+    protected double calculateRankingDistance(ByteBuffer buf, int offset) {
+        return 1 - (unitVectors ? VectorOps.dotProduct(unitQuery, buf, offset)
+                : VectorOps.cosineSimilarity(unitQuery, buf, offset));
     }
 }
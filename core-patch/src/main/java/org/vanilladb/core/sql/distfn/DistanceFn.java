@@ -1,5 +1,8 @@
 package org.vanilladb.core.sql.distfn;
 
+import java.nio.ByteBuffer;
+
+import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.sql.VectorConstant;
 
 public abstract class DistanceFn {
@@ -26,9 +29,83 @@ public abstract class DistanceFn {
         return calculateDistance(vec);
     }
 
+    /**
+     * Returns a value that orders vectors the same way as
+     * {@link #distance(VectorConstant)} does, but may skip the work that does
+     * not change the order (e.g., the square root of the Euclidean distance).
+     * Use it when the distances are only compared with each other.
+     *
+     * @param vec
+     *            the vector to be compared with the query vector
+     * @return a monotonic transform of the distance
+     */
+    public double rankingDistance(VectorConstant vec) {
+        if (query.dimension() != vec.dimension()) {
+            throw new IllegalArgumentException("Vector length does not match");
+        }
+        return calculateRankingDistance(vec);
+    }
+
+    /**
+     * Returns the same value as {@link #rankingDistance(VectorConstant)} for a
+     * vector stored as big-endian floats in a buffer, e.g., the content of a
+     * pinned page. Subclasses that override
+     * {@link #calculateRankingDistance(ByteBuffer, int)} read the vector in
+     * place without materializing a {@link VectorConstant}.
+     *
+     * @param buf
+     *            the buffer holding the vector
+     * @param offset
+     *            the byte offset of the vector in the buffer
+     * @param dim
+     *            the dimension of the stored vector
+     * @return a monotonic transform of the distance
+     */
+    public double rankingDistance(ByteBuffer buf, int offset, int dim) {
+        if (query.dimension() != dim) {
+            throw new IllegalArgumentException("Vector length does not match");
+        }
+        return calculateRankingDistance(buf, offset);
+    }
+
+    /**
+     * Returns the ranking distance of a vector at the given distance from the
+     * query vector, so that a range search can compare ranking distances with
+     * it instead of distances.
+     *
+     * @param distance
+     *            a distance returned by {@link #distance(VectorConstant)}
+     * @return the corresponding ranking distance
+     */
+    public double rankingBound(double distance) {
+        return distance;
+    }
+
     protected abstract double calculateDistance(VectorConstant vec);
 
+    protected double calculateRankingDistance(VectorConstant vec) {
+        return calculateDistance(vec);
+    }
+
+    protected double calculateRankingDistance(ByteBuffer buf, int offset) {
+        float[] vec = new float[query.dimension()];
+        for (int i = 0; i < vec.length; i++)
+            vec[i] = buf.getFloat(offset + i * Float.BYTES);
+        return calculateRankingDistance(new VectorConstant(vec));
+    }
+
     public String fieldName() {
         return fieldName;
     }
+
+    /**
+     * Tells the function the type of its field, once a planner has resolved
+     * the field in the schema of a table. Subclasses may use it to pick a
+     * cheaper way to compute the distance for the way the field is stored.
+     *
+     * @param type
+     *            the type of the field
+     */
+    public void setFieldType(Type type) {
+    }
 }
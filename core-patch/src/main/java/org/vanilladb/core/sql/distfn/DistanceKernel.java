@@ -0,0 +1,32 @@
+package org.vanilladb.core.sql.distfn;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The primitive loops behind the distance functions. Vectors are given as an
+ * array and an offset so that rows of a flat matrix can be used without
+ * copying. A vector may also be given as a big-endian {@link ByteBuffer} and a
+ * byte offset, so that it can be read in place from a page.
+ */
+interface DistanceKernel {
+
+    float squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int len);
+
+    float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int len);
+
+    float squaredEuclidean(float[] a, ByteBuffer b, int bOffset, int len);
+
+    float dotProduct(float[] a, ByteBuffer b, int bOffset, int len);
+
+    /**
+     * Returns the dot product of {@code a} and {@code b} divided by the norm
+     * of {@code b}, which is computed in the same pass, or 0 if {@code b} is a
+     * zero vector.
+     */
+    float normalizedDotProduct(float[] a, float[] b, int bOffset, int len);
+
+    float normalizedDotProduct(float[] a, ByteBuffer b, int bOffset, int len);
+
+    float weightedSquaredEuclidean(float[] q, float[] weights, byte[] codes, int codesOffset,
+            int len);
+}
@@ -1,5 +1,7 @@
 package org.vanilladb.core.sql.distfn;
 
+import java.nio.ByteBuffer;
+
 import org.vanilladb.core.sql.VectorConstant;
 
 public class EuclideanFn extends DistanceFn {
@@ -10,12 +12,29 @@ public class EuclideanFn extends DistanceFn {
 
     @Override
     protected double calculateDistance(VectorConstant vec) {
-        double sum = 0;
-        for (int i = 0; i < vec.dimension(); i++) {
-            double diff = query.get(i) - vec.get(i);
-            sum += diff * diff;
-        }
-        return Math.sqrt(sum);
+        return Math.sqrt(calculateRankingDistance(vec));
+    }
+
+    /**
+     * Returns the squared distance. A negative distance is kept negative, so
+     * that no vector is within it.
+     */
+    @Override
+    public double rankingBound(double distance) {
+        return distance < 0 ? distance : distance * distance;
+    }
+
+    /**
+     * Returns the squared Euclidean distance, which ranks vectors the same way
+     * as the Euclidean distance without the square root.
+     */
+    @Override
+    protected double calculateRankingDistance(VectorConstant vec) {
+        return VectorOps.squaredEuclidean(query.asJavaVal(), vec.asJavaVal());
+    }
+
+    @Override
+    protected double calculateRankingDistance(ByteBuffer buf, int offset) {
+        return VectorOps.squaredEuclidean(query.asJavaVal(), buf, offset);
     }
-    
 }
@@ -0,0 +1,27 @@
+package org.vanilladb.core.sql.distfn;
+
+import java.nio.ByteBuffer;
+
+import org.vanilladb.core.sql.VectorConstant;
+
+/**
+ * The negative inner product {@code -(query . vec)}, so that the vectors with
+ * the largest inner products rank first (maximum inner product search). For
+ * unit vectors, it ranks the same way as {@link CosineFn}.
+ */
+public class InnerProductFn extends DistanceFn {
+
+    public InnerProductFn(String fld) {
+        super(fld);
+    }
+
+    @Override
+    protected double calculateDistance(VectorConstant vec) {
+        return -VectorOps.dotProduct(query.asJavaVal(), vec.asJavaVal());
+    }
+
+    @Override
+    protected double calculateRankingDistance(ByteBuffer buf, int offset) {
+        return -VectorOps.dotProduct(query.asJavaVal(), buf, offset);
+    }
+}
@@ -0,0 +1,79 @@
+package org.vanilladb.core.sql.distfn;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The plain-Java {@link DistanceKernel}, used when the Vector API is not
+ * available.
+ */
+class ScalarDistanceKernel implements DistanceKernel {
+
+    @Override
+    public float squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    @Override
+    public float squaredEuclidean(float[] a, ByteBuffer b, int bOffset, int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++) {
+            float diff = a[i] - b.getFloat(bOffset + i * Float.BYTES);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotProduct(float[] a, ByteBuffer b, int bOffset, int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++)
+            sum += a[i] * b.getFloat(bOffset + i * Float.BYTES);
+        return sum;
+    }
+
+    @Override
+    public float normalizedDotProduct(float[] a, float[] b, int bOffset, int len) {
+        float dot = 0, norm = 0;
+        for (int i = 0; i < len; i++) {
+            float vb = b[bOffset + i];
+            dot += a[i] * vb;
+            norm += vb * vb;
+        }
+        return norm == 0 ? 0 : dot / (float) Math.sqrt(norm);
+    }
+
+    @Override
+    public float normalizedDotProduct(float[] a, ByteBuffer b, int bOffset, int len) {
+        float dot = 0, norm = 0;
+        for (int i = 0; i < len; i++) {
+            float vb = b.getFloat(bOffset + i * Float.BYTES);
+            dot += a[i] * vb;
+            norm += vb * vb;
+        }
+        return norm == 0 ? 0 : dot / (float) Math.sqrt(norm);
+    }
+
+    @Override
+    public float weightedSquaredEuclidean(float[] q, float[] weights, byte[] codes,
+            int codesOffset, int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++) {
+            float diff = q[i] - codes[codesOffset + i];
+            sum += weights[i] * diff * diff;
+        }
+        return sum;
+    }
+}
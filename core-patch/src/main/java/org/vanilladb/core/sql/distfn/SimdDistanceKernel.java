@@ -0,0 +1,150 @@
+package org.vanilladb.core.sql.distfn;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link DistanceKernel} on the incubating Vector API. Each loop processes
+ * as many lanes as the preferred species of the platform, accumulates with
+ * fused multiply-adds, and finishes the remaining tail with scalar code.
+ *
+ * <p>
+ * This class must only be loaded if the {@code jdk.incubator.vector} module is
+ * present, see {@link VectorOps}.
+ * </p>
+ */
+class SimdDistanceKernel implements DistanceKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * The byte species with as many lanes as {@link #SPECIES}, or null if no
+     * vector shape is that small.
+     */
+    private static final VectorSpecies<Byte> BYTE_SPECIES = byteSpecies();
+
+    private static VectorSpecies<Byte> byteSpecies() {
+        try {
+            return VectorSpecies.of(byte.class,
+                    VectorShape.forBitSize(SPECIES.length() * Byte.SIZE));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public float squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            FloatVector diff = va.sub(vb);
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    /**
+     * Reads the stored vector with plain absolute gets. Loading lanes from a
+     * big-endian buffer through the Vector API measured slower than this loop
+     * in table scans.
+     */
+    @Override
+    public float squaredEuclidean(float[] a, ByteBuffer b, int bOffset, int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++) {
+            float diff = a[i] - b.getFloat(bOffset + i * Float.BYTES);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotProduct(float[] a, ByteBuffer b, int bOffset, int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++)
+            sum += a[i] * b.getFloat(bOffset + i * Float.BYTES);
+        return sum;
+    }
+
+    @Override
+    public float normalizedDotProduct(float[] a, float[] b, int bOffset, int len) {
+        FloatVector dotAcc = FloatVector.zero(SPECIES);
+        FloatVector normAcc = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            dotAcc = va.fma(vb, dotAcc);
+            normAcc = vb.fma(vb, normAcc);
+        }
+        float dot = dotAcc.reduceLanes(VectorOperators.ADD);
+        float norm = normAcc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            float vb = b[bOffset + i];
+            dot += a[i] * vb;
+            norm += vb * vb;
+        }
+        return norm == 0 ? 0 : dot / (float) Math.sqrt(norm);
+    }
+
+    @Override
+    public float normalizedDotProduct(float[] a, ByteBuffer b, int bOffset, int len) {
+        float dot = 0, norm = 0;
+        for (int i = 0; i < len; i++) {
+            float vb = b.getFloat(bOffset + i * Float.BYTES);
+            dot += a[i] * vb;
+            norm += vb * vb;
+        }
+        return norm == 0 ? 0 : dot / (float) Math.sqrt(norm);
+    }
+
+    @Override
+    public float weightedSquaredEuclidean(float[] q, float[] weights, byte[] codes,
+            int codesOffset, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int bound = BYTE_SPECIES == null ? 0 : SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vc = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, codes, codesOffset + i)
+                    .convertShape(VectorOperators.B2F, SPECIES, 0);
+            FloatVector diff = FloatVector.fromArray(SPECIES, q, i).sub(vc);
+            FloatVector vw = FloatVector.fromArray(SPECIES, weights, i);
+            acc = diff.mul(vw).fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            float diff = q[i] - codes[codesOffset + i];
+            sum += weights[i] * diff * diff;
+        }
+        return sum;
+    }
+}
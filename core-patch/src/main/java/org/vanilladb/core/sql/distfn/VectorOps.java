@@ -0,0 +1,169 @@
+package org.vanilladb.core.sql.distfn;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Distance primitives over float arrays shared by the distance functions and
+ * the vector indexes. The SIMD implementation is used if the JVM is started
+ * with {@code --add-modules jdk.incubator.vector}; otherwise, a scalar loop is
+ * used.
+ */
+public class VectorOps {
+    private static Logger logger = Logger.getLogger(VectorOps.class.getName());
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final DistanceKernel KERNEL = loadKernel();
+
+    private static DistanceKernel loadKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return new SimdDistanceKernel();
+            } catch (LinkageError e) {
+                if (logger.isLoggable(Level.WARNING))
+                    logger.warning("cannot load the SIMD distance kernel: " + e);
+            }
+        } else if (logger.isLoggable(Level.INFO))
+            logger.info(VECTOR_MODULE + " is not present, using scalar distance kernel");
+        return new ScalarDistanceKernel();
+    }
+
+    /**
+     * Returns true if the distance primitives run on the Vector API.
+     *
+     * @return true if SIMD is used
+     */
+    public static boolean isSimdEnabled() {
+        return !(KERNEL instanceof ScalarDistanceKernel);
+    }
+
+    public static float squaredEuclidean(float[] a, float[] b) {
+        return KERNEL.squaredEuclidean(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * Returns the squared Euclidean distance between the vector and the
+     * {@code dim} floats of the matrix starting at the given offset.
+     *
+     * @param matrix
+     *            a flat row-major matrix
+     * @param offset
+     *            the offset of the row in the matrix
+     * @param vec
+     *            the vector
+     * @param dim
+     *            the dimension of the vector
+     * @return the squared Euclidean distance
+     */
+    public static float squaredEuclidean(float[] matrix, int offset, float[] vec, int dim) {
+        return KERNEL.squaredEuclidean(matrix, offset, vec, 0, dim);
+    }
+
+    public static float dotProduct(float[] a, float[] b) {
+        return KERNEL.dotProduct(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * Returns the squared Euclidean distance between the vector and the one
+     * stored in the buffer at the given offset. The stored vector is read in
+     * place as big-endian floats.
+     *
+     * @param vec
+     *            the vector
+     * @param buf
+     *            a big-endian buffer holding the other vector
+     * @param offset
+     *            the byte offset of the other vector in the buffer
+     * @return the squared Euclidean distance
+     */
+    public static float squaredEuclidean(float[] vec, ByteBuffer buf, int offset) {
+        return KERNEL.squaredEuclidean(vec, buf, offset, vec.length);
+    }
+
+    /**
+     * Returns the dot product of the vector and the one stored in the buffer
+     * at the given offset. The stored vector is read in place as big-endian
+     * floats.
+     *
+     * @param vec
+     *            the vector
+     * @param buf
+     *            a big-endian buffer holding the other vector
+     * @param offset
+     *            the byte offset of the other vector in the buffer
+     * @return the dot product
+     */
+    public static float dotProduct(float[] vec, ByteBuffer buf, int offset) {
+        return KERNEL.dotProduct(vec, buf, offset, vec.length);
+    }
+
+    /**
+     * Returns the cosine similarity between a unit vector and another vector,
+     * i.e., their dot product divided by the norm of the other vector. The
+     * similarity is 0 if the other vector is a zero vector.
+     *
+     * @param unit
+     *            a vector of unit length
+     * @param vec
+     *            the other vector
+     * @return the cosine similarity
+     */
+    public static float cosineSimilarity(float[] unit, float[] vec) {
+        return KERNEL.normalizedDotProduct(unit, vec, 0, unit.length);
+    }
+
+    /**
+     * Returns the cosine similarity between a unit vector and the vector
+     * stored in the buffer at the given offset. The stored vector is read in
+     * place as big-endian floats.
+     *
+     * @param unit
+     *            a vector of unit length
+     * @param buf
+     *            a big-endian buffer holding the other vector
+     * @param offset
+     *            the byte offset of the other vector in the buffer
+     * @return the cosine similarity
+     */
+    public static float cosineSimilarity(float[] unit, ByteBuffer buf, int offset) {
+        return KERNEL.normalizedDotProduct(unit, buf, offset, unit.length);
+    }
+
+    /**
+     * Returns a copy of the vector scaled to unit length, or a copy of the
+     * vector itself if it is a zero vector.
+     *
+     * @param vec
+     *            the vector
+     * @return the unit vector in the same direction
+     */
+    public static float[] normalize(float[] vec) {
+        float norm = (float) Math.sqrt(KERNEL.dotProduct(vec, 0, vec, 0, vec.length));
+        float[] unit = vec.clone();
+        if (norm > 0)
+            for (int i = 0; i < unit.length; i++)
+                unit[i] /= norm;
+        return unit;
+    }
+
+    /**
+     * Returns the weighted squared Euclidean distance
+     * {@code sum(weights[i] * (q[i] - codes[i])^2)} between a float vector
+     * and a vector of signed 8-bit codes.
+     *
+     * @param q
+     *            the float vector, in the same scale as the codes
+     * @param weights
+     *            the weight of each dimension
+     * @param codes
+     *            the array holding the codes
+     * @param codesOffset
+     *            the offset of the first code in the array
+     * @return the weighted squared Euclidean distance
+     */
+    public static float weightedSquaredEuclidean(float[] q, float[] weights, byte[] codes,
+            int codesOffset) {
+        return KERNEL.weightedSquaredEuclidean(q, weights, codes, codesOffset, q.length);
+    }
+}
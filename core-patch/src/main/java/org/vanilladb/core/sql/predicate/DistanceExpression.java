@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.sql.predicate;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.Record;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+
+/**
+ * An expression of the distance between a vector field and a query vector,
+ * e.g., {@code emb <EUC> [1, 2, 3]}. Compared with a constant in a
+ * {@link Term}, it selects the records within a radius of the query vector.
+ */
+public class DistanceExpression implements Expression {
+	private DistanceFn distFn;
+
+	/**
+	 * Creates a new expression by wrapping a distance function.
+	 * 
+	 * @param distFn
+	 *            the distance function holding the field name and the query
+	 *            vector
+	 */
+	public DistanceExpression(DistanceFn distFn) {
+		this.distFn = distFn;
+	}
+
+	/**
+	 * Returns the wrapped distance function.
+	 * 
+	 * @return the distance function
+	 */
+	public DistanceFn distanceFn() {
+		return distFn;
+	}
+
+	/**
+	 * Returns false.
+	 * 
+	 * @see Expression#isConstant()
+	 */
+	@Override
+	public boolean isConstant() {
+		return false;
+	}
+
+	/**
+	 * Returns false.
+	 * 
+	 * @see Expression#isFieldName()
+	 */
+	@Override
+	public boolean isFieldName() {
+		return false;
+	}
+
+	/**
+	 * This method should never be called. Throws a ClassCastException.
+	 * 
+	 * @see Expression#asConstant()
+	 */
+	@Override
+	public Constant asConstant() {
+		throw new ClassCastException();
+	}
+
+	/**
+	 * This method should never be called. Throws a ClassCastException.
+	 * 
+	 * @see Expression#asFieldName()
+	 */
+	@Override
+	public String asFieldName() {
+		throw new ClassCastException();
+	}
+
+	/**
+	 * Evaluates the distance between the vector of the record and the query
+	 * vector.
+	 * 
+	 * @see Expression#evaluate(Record)
+	 */
+	@Override
+	public Constant evaluate(Record rec) {
+		VectorConstant vec = (VectorConstant) rec.getVal(distFn.fieldName());
+		return new DoubleConstant(distFn.distance(vec));
+	}
+
+	/**
+	 * Returns true if the vector field is in the specified schema.
+	 * 
+	 * @see Expression#isApplicableTo(Schema)
+	 */
+	@Override
+	public boolean isApplicableTo(Schema sch) {
+		return sch.hasField(distFn.fieldName());
+	}
+
+	@Override
+	public String toString() {
+		return distFn.fieldName() + " <" + distFn.getClass().getSimpleName() + "> "
+				+ distFn.getQueryVector();
+	}
+}
@@ -124,6 +124,22 @@ public class Predicate {
 		return result.terms.size() == 0 ? null : result;
 	}
 
+	/**
+	 * Determines if the distance between the specified vector field and a
+	 * query vector is bounded by a constant in this predicate. If so, the
+	 * method returns the first such term. If not, the method returns null.
+	 * 
+	 * @param fldName
+	 *            the name of the vector field
+	 * @return either a term bounding the distance or null
+	 */
+	public Term distanceTerm(String fldName) {
+		for (Term t : terms)
+			if (t.distanceFn(fldName) != null)
+				return t;
+		return null;
+	}
+
 	/**
 	 * Determines if the specified field is constrained by a constant range in
 	 * this predicate. If so, the method returns that range. If not, the method
@@ -18,6 +18,8 @@ package org.vanilladb.core.sql.predicate;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 
 /**
  * A comparison between two expressions.
@@ -178,6 +180,56 @@ public class Term {
 		return null;
 	}
 
+	/**
+	 * Determines if this term is of the form "D&lt;C" or "D&lt;=C" where D is
+	 * the distance between the specified vector field and a query vector, and
+	 * C is some constant. If so, the method returns the distance function of
+	 * D. If not, the method returns null.
+	 * 
+	 * @param fldName
+	 *            the name of the vector field
+	 * @return either the distance function or null
+	 */
+	public DistanceFn distanceFn(String fldName) {
+		DistanceExpression dist = distanceExpression(fldName);
+		return dist == null ? null : dist.distanceFn();
+	}
+
+	/**
+	 * Determines if this term is of the form "D&lt;C" or "D&lt;=C" where D is
+	 * the distance between the specified vector field and a query vector, and
+	 * C is some constant. If so, the method returns C as the radius around the
+	 * query vector. If not, the method returns NaN.
+	 * 
+	 * @param fldName
+	 *            the name of the vector field
+	 * @return either the radius or NaN
+	 */
+	public double distanceBound(String fldName) {
+		DistanceExpression dist = distanceExpression(fldName);
+		if (dist == null)
+			return Double.NaN;
+		Expression bound = dist == lhs ? rhs : lhs;
+		return (Double) bound.asConstant().castTo(Type.DOUBLE).asJavaVal();
+	}
+
+	private DistanceExpression distanceExpression(String fldName) {
+		Expression dist, bound;
+		if (op == OP_LT || op == OP_LTE) {
+			dist = lhs;
+			bound = rhs;
+		} else if (op == OP_GT || op == OP_GTE) {
+			dist = rhs;
+			bound = lhs;
+		} else
+			return null;
+		if (dist instanceof DistanceExpression && bound.isConstant()
+				&& bound.asConstant().getType().isNumeric()
+				&& ((DistanceExpression) dist).distanceFn().fieldName().equals(fldName))
+			return (DistanceExpression) dist;
+		return null;
+	}
+
 	/**
 	 * Returns true if both expressions of this term apply to the specified
 	 * schema.
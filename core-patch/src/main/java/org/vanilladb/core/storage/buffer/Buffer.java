@@ -25,6 +25,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.log.LogSeqNum;
@@ -97,6 +98,32 @@ public class Buffer {
 		}
 	}
 	
+	/**
+	 * Returns the ranking distance between the query of the distance function
+	 * and the vector stored at the specified offset, without copying the
+	 * vector out of the buffer.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * @param dim
+	 *            the dimension of the stored vector
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * 
+	 * @return the ranking distance to the stored vector
+	 */
+	public double rankingDistance(int offset, int dim, DistanceFn distFn) {
+		contentLock.readLock().lock();
+		try {
+			if (offset < 0 || offset + dim * Float.BYTES > BUFFER_SIZE)
+				throw new IndexOutOfBoundsException("" + offset);
+
+			return contents.rankingDistance(DATA_START_OFFSET + offset, dim, distFn);
+		} finally {
+			contentLock.readLock().unlock();
+		}
+	}
+	
 	void setVal(int offset, Constant val) {
 		contentLock.writeLock().lock();
 		try {
@@ -134,10 +134,10 @@ class BufferPoolMgr {
 			if (buff == null) {
 
 				// Choose Unpinned Buffer
-				int lastReplacedBuff = this.lastReplacedBuff;
-				int currBlk = (lastReplacedBuff + 1) % bufferPool.length;
-				// Note: this check will fail if there is only one buffer
-				while (currBlk != lastReplacedBuff) {
+				// Sweep twice, since the first sweep may only clear the
+				// recently pinned marks
+				int currBlk = (this.lastReplacedBuff + 1) % bufferPool.length;
+				for (int i = 0; i < 2 * bufferPool.length; i++) {
 					buff = bufferPool[currBlk];
 
 					// Get the lock of buffer if it is free
@@ -218,9 +218,10 @@ class BufferPoolMgr {
 		fileLock.lock();
 		try {
 			// Choose Unpinned Buffer
-			int lastReplacedBuff = this.lastReplacedBuff;
-			int currBlk = (lastReplacedBuff + 1) % bufferPool.length;
-			while (currBlk != lastReplacedBuff) {
+			// Sweep twice, since the first sweep may only clear the
+			// recently pinned marks
+			int currBlk = (this.lastReplacedBuff + 1) % bufferPool.length;
+			for (int i = 0; i < 2 * bufferPool.length; i++) {
 				Buffer buff = bufferPool[currBlk];
 
 				// Get the lock of buffer if it is free
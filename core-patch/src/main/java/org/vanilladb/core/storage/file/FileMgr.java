@@ -251,6 +251,16 @@ public class FileMgr {
 		return !fileNotEmptyCache.get(fileName);
 	}
 	
+	/**
+	 * Returns the directory of the database files, for the files that are not
+	 * accessed through blocks, e.g., the memory-mapped ones.
+	 * 
+	 * @return the database directory
+	 */
+	public File dbDirectory() {
+		return dbDirectory;
+	}
+
 	/**
 	 * Returns a boolean indicating whether the file manager had to create a new
 	 * database directory.
@@ -20,6 +20,7 @@ import java.nio.BufferOverflowException;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.file.io.IoAllocator;
 import org.vanilladb.core.storage.file.io.IoBuffer;
 import org.vanilladb.core.util.ByteHelper;
@@ -167,6 +168,25 @@ public class Page {
 		return Constant.newInstance(type, byteVal);
 	}
 
+	/**
+	 * Returns the ranking distance between the query of the distance function
+	 * and the vector stored at a specified offset of this page. The vector is
+	 * read in place, without being copied out of the page.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param dim
+	 *            the dimension of the stored vector
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * 
+	 * @return the ranking distance to the stored vector
+	 * @see DistanceFn#rankingDistance(java.nio.ByteBuffer, int, int)
+	 */
+	public synchronized double rankingDistance(int offset, int dim, DistanceFn distFn) {
+		return distFn.rankingDistance(contents.asReadOnlyByteBuffer(), offset, dim);
+	}
+
 	/**
 	 * Writes a constant value to the specified offset on the page.
 	 * 
@@ -15,12 +15,22 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.file.io;
 
+import java.nio.ByteBuffer;
+
 public interface IoBuffer {
 
 	IoBuffer get(int position, byte[] dst);
 
 	IoBuffer put(int position, byte[] src);
 
+	/**
+	 * Returns a read-only, big-endian view of the whole buffer that shares its
+	 * content. The view must only be read with absolute positions.
+	 * 
+	 * @return a read-only view of the buffer
+	 */
+	ByteBuffer asReadOnlyByteBuffer();
+
 	void clear();
 
 	void rewind();
@@ -16,15 +16,18 @@
 package org.vanilladb.core.storage.file.io.javanio;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.vanilladb.core.storage.file.io.IoBuffer;
 
 public class JavaNioByteBuffer implements IoBuffer {
 
 	private ByteBuffer byteBuffer;
+	private ByteBuffer readOnlyView;
 	
 	public JavaNioByteBuffer(int capacity) {
 		byteBuffer = ByteBuffer.allocateDirect(capacity);
+		readOnlyView = byteBuffer.asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
 	}
 	
 	@Override
@@ -41,6 +44,11 @@ public class JavaNioByteBuffer implements IoBuffer {
 		return this;
 	}
 	
+	@Override
+	public ByteBuffer asReadOnlyByteBuffer() {
+		return readOnlyView;
+	}
+	
 	@Override
 	public void clear() {
 		byteBuffer.clear();
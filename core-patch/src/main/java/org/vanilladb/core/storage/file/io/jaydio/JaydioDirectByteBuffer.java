@@ -15,6 +15,9 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.file.io.jaydio;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import net.smacke.jaydio.DirectIoLib;
 import net.smacke.jaydio.buffer.AlignedDirectByteBuffer;
 
@@ -24,10 +27,14 @@ import org.vanilladb.core.storage.file.io.IoBuffer;
 public class JaydioDirectByteBuffer implements IoBuffer {
 
 	private AlignedDirectByteBuffer byteBuffer;
+	private ByteBuffer readOnlyView;
 	
 	public JaydioDirectByteBuffer(int capacity) {
 		byteBuffer = AlignedDirectByteBuffer
 				.allocate(DirectIoLib.getLibForPath(FileMgr.DB_FILES_DIR), capacity);
+		// JNA maps the memory in native order, but pages are big-endian
+		readOnlyView = byteBuffer.pointer().getByteBuffer(0, capacity).asReadOnlyBuffer()
+				.order(ByteOrder.BIG_ENDIAN);
 	}
 	
 	@Override
@@ -44,6 +51,11 @@ public class JaydioDirectByteBuffer implements IoBuffer {
 		return this;
 	}
 	
+	@Override
+	public ByteBuffer asReadOnlyByteBuffer() {
+		return readOnlyView;
+	}
+	
 	@Override
 	public void clear() {
 		byteBuffer.clear();
@@ -15,11 +15,22 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.index;
 
+import java.util.List;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.storage.index.btree.BTreeIndex;
+import org.vanilladb.core.storage.index.diskann.DiskANNIndex;
 import org.vanilladb.core.storage.index.hash.HashIndex;
+import org.vanilladb.core.storage.index.hnsw.HNSWIndex;
+import org.vanilladb.core.storage.index.ivf.IVFBQIndex;
 import org.vanilladb.core.storage.index.ivf.IVFIndex;
-// import org.vanilladb.core.storage.index.lsh.LSHashIndex;
+import org.vanilladb.core.storage.index.ivf.IVFPQIndex;
+import org.vanilladb.core.storage.index.ivf.IVFSQ8Index;
+import org.vanilladb.core.storage.index.lsh.LSHashIndex;
+import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -37,6 +48,11 @@ public abstract class Index {
 	 * This number does <em>not</em> include the block accesses required to
 	 * retrieve data records.
 	 * </p>
+	 * <p>
+	 * The indexes of the IVF family are costed by their own statistics in
+	 * {@link VectorCostModel} instead, which should also be used for the other
+	 * vector indexes.
+	 * </p>
 	 * 
 	 * @param idxType
 	 *            the index type
@@ -53,8 +69,12 @@ public abstract class Index {
 			return HashIndex.searchCost(keyType, totRecs, matchRecs);
 		else if (idxType == IndexType.BTREE)
 			return BTreeIndex.searchCost(keyType, totRecs, matchRecs);
-		else if (idxType == IndexType.IVF)
-			return IVFIndex.searchCost(keyType, totRecs, matchRecs);
+		else if (idxType == IndexType.HNSW)
+			return HNSWIndex.searchCost(keyType, totRecs, matchRecs);
+		else if (idxType == IndexType.DISKANN)
+			return DiskANNIndex.searchCost(keyType, totRecs, matchRecs);
+		else if (idxType == IndexType.LSH)
+			return LSHashIndex.searchCost(keyType, totRecs, matchRecs);
 		else
 			throw new IllegalArgumentException("unsupported index type");
 	}
@@ -66,12 +86,27 @@ public abstract class Index {
 			return new BTreeIndex(ii, keyType, tx);
 		else if (ii.indexType() == IndexType.IVF)
 			return new IVFIndex(ii, keyType, tx);
-		// else if (ii.indexType() == IndexType.LSH)
-		// 	return new LSHashIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.HNSW)
+			return new HNSWIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.IVF_PQ)
+			return new IVFPQIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.IVF_SQ8)
+			return new IVFSQ8Index(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.IVF_BQ)
+			return new IVFBQIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.DISKANN)
+			return new DiskANNIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.LSH)
+			return new LSHashIndex(ii, keyType, tx);
 		else
 			throw new IllegalArgumentException("unsupported index type");
 	}
 
+	/**
+	 * The number of records inserted at a time by {@link #buildFromTable()}.
+	 */
+	protected static final int BUILD_BATCH_SIZE = 8192;
+
 	protected IndexInfo ii;
 	protected SearchKeyType keyType;
 	protected Transaction tx;
@@ -131,6 +166,60 @@ public abstract class Index {
 	 */
 	public abstract void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging);
 
+	/**
+	 * Inserts a batch of index records without logical logging. It is used by
+	 * bulk loads, which append the data records first and index them
+	 * afterwards. By default, the records are inserted one by one; indexes that
+	 * can place a batch at once override it.
+	 *
+	 * @param keys
+	 *            the keys of the new index records
+	 * @param dataRecordIds
+	 *            the data record IDs of the new index records
+	 * @param n
+	 *            the number of valid records in the arrays
+	 */
+	public void insertBatch(SearchKey[] keys, RecordId[] dataRecordIds, int n) {
+		for (int i = 0; i < n; i++)
+			insert(keys[i], dataRecordIds[i], false);
+	}
+
+	/**
+	 * Indexes all the records of the data table, which is how an index created
+	 * on a table with records is built. The records are scanned in batches of
+	 * {@link #BUILD_BATCH_SIZE} and inserted by
+	 * {@link #insertBatch(SearchKey[], RecordId[], int)}; indexes that learn
+	 * their structure from the whole table override it. Under read committed,
+	 * the read lock on each record is released once the record is read, so
+	 * the scan does not hold back the updates to the table.
+	 */
+	public void buildFromTable() {
+		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx);
+		List<String> fldNames = ii.fieldNames();
+		SearchKey[] keys = new SearchKey[BUILD_BATCH_SIZE];
+		RecordId[] rids = new RecordId[BUILD_BATCH_SIZE];
+		int n = 0;
+
+		RecordFile rf = ti.open(tx, false);
+		rf.beforeFirst();
+		while (rf.next()) {
+			Constant[] vals = new Constant[fldNames.size()];
+			for (int i = 0; i < vals.length; i++)
+				vals[i] = rf.getVal(fldNames.get(i));
+			keys[n] = new SearchKey(vals);
+			rids[n] = rf.currentRecordId();
+			// release the read lock on the record, if the isolation level allows
+			tx.endStatement();
+			if (++n == BUILD_BATCH_SIZE) {
+				insertBatch(keys, rids, n);
+				n = 0;
+			}
+		}
+		rf.close();
+		if (n > 0)
+			insertBatch(keys, rids, n);
+	}
+
 	/**
 	 * Deletes the index record having the specified key and data record ID.
 	 * 
@@ -19,7 +19,7 @@ package org.vanilladb.core.storage.index;
  * Supported index types.
  */
 public enum IndexType {
-	HASH, BTREE, LSH, IVF;
+	HASH, BTREE, LSH, IVF, HNSW, IVF_PQ, IVF_SQ8, DISKANN, IVF_BQ;
 	
 	public static IndexType fromInteger(int typeVal) {
 		switch (typeVal) {
@@ -31,10 +31,40 @@ public enum IndexType {
 			return LSH;
 		case 3:
 			return IVF;
+		case 4:
+			return HNSW;
+		case 5:
+			return IVF_PQ;
+		case 6:
+			return IVF_SQ8;
+		case 7:
+			return DISKANN;
+		case 8:
+			return IVF_BQ;
 		}
 		throw new UnsupportedOperationException();
 	}
 	
+	/**
+	 * Returns true if this type of index searches the nearest neighbors of a
+	 * vector instead of matching search keys.
+	 * 
+	 * @return true if this is a vector index type
+	 */
+	public boolean isVectorIndex() {
+		return isInvertedFileIndex() || this == HNSW || this == DISKANN || this == LSH;
+	}
+
+	/**
+	 * Returns true if this type of index partitions vectors into clusters and
+	 * must be trained before use.
+	 * 
+	 * @return true if this is an IVF index type
+	 */
+	public boolean isInvertedFileIndex() {
+		return this == IVF || this == IVF_PQ || this == IVF_SQ8 || this == IVF_BQ;
+	}
+
 	public int toInteger() {
 		switch (this) {
 		case HASH:
@@ -45,6 +75,16 @@ public enum IndexType {
 			return 2;
 		case IVF:
 			return 3;
+		case HNSW:
+			return 4;
+		case IVF_PQ:
+			return 5;
+		case IVF_SQ8:
+			return 6;
+		case DISKANN:
+			return 7;
+		case IVF_BQ:
+			return 8;
 		}
 		throw new UnsupportedOperationException();
 	}
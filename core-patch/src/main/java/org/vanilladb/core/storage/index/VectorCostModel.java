@@ -0,0 +1,97 @@
+package org.vanilladb.core.storage.index;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.index.ivf.IVFIndex;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Estimates the cost of searching a vector index, in block accesses, so that
+ * the planner can choose between vector indexes and ranking all the vectors
+ * of a table. The costs exclude reading the returned records, which the
+ * plans add by themselves.
+ *
+ * <p>
+ * IVF indexes are costed by their own statistics: the sizes of their
+ * clusters, which reflect both the skew of the clusters and the size of a
+ * (quantized) entry, and the candidates they re-rank (see
+ * {@link IVFIndex#estimateSearchCost(int, int)}). The other indexes are
+ * costed by {@link Index#searchCost(IndexType, SearchKeyType, long, long)}.
+ * </p>
+ */
+public class VectorCostModel {
+
+    /**
+     * Estimates the number of block accesses of a vector index search,
+     * excluding the returned records.
+     *
+     * @param ii
+     *            information about the vector index
+     * @param keyType
+     *            the type of the search key
+     * @param totRecs
+     *            the number of records in the table
+     * @param k
+     *            the number of neighbors wanted, or -1 for all candidates
+     * @param nprobe
+     *            the number of partitions to probe, or -1 for the default of
+     *            the index
+     * @param tx
+     *            the calling transaction
+     * @return the estimated number of block accesses
+     */
+    public static long searchCost(IndexInfo ii, SearchKeyType keyType, long totRecs, int k,
+            int nprobe, Transaction tx) {
+        if (ii.indexType().isInvertedFileIndex()) {
+            IVFIndex idx = (IVFIndex) ii.open(tx);
+            try {
+                return idx.estimateSearchCost(k, nprobe);
+            } finally {
+                idx.close();
+            }
+        }
+        // the statistics may count no records right after a bulk load
+        totRecs = Math.max(totRecs,
+                numRecords(VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx)));
+        return Index.searchCost(ii.indexType(), keyType, totRecs, k > 0 ? k : totRecs);
+    }
+
+    /**
+     * Estimates the number of block accesses of ranking all the vectors of a
+     * field exactly, excluding the returned records. The estimate is based on
+     * the size of the table file rather than on the statistics of the table,
+     * which may be out of date after a bulk load. Ranking a vector store reads
+     * only the vectors of the records.
+     *
+     * @param ti
+     *            the metadata of the table
+     * @param fldName
+     *            the name of the vector field
+     * @param isColumnStore
+     *            true if the vectors are ranked in the vector store of the
+     *            field
+     * @return the estimated number of block accesses
+     */
+    public static long exactSearchCost(TableInfo ti, String fldName, boolean isColumnStore) {
+        if (!isColumnStore)
+            return numBlocks(ti);
+        int dim = ti.schema().type(fldName).getArgument();
+        return (long) Math.ceil((double) numRecords(ti) * dim * Float.BYTES / Buffer.BUFFER_SIZE);
+    }
+
+    private static long numBlocks(TableInfo ti) {
+        // the first block of a table file is its header
+        return Math.max(0, VanillaDb.fileMgr().size(ti.fileName()) - 1);
+    }
+
+    /**
+     * Returns the number of records that the table file can hold, which
+     * bounds the number of records in the table.
+     */
+    private static long numRecords(TableInfo ti) {
+        return numBlocks(ti) * (Buffer.BUFFER_SIZE / RecordPage.slotSize(ti.schema()));
+    }
+}
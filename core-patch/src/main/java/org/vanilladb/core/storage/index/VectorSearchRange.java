@@ -0,0 +1,82 @@
+package org.vanilladb.core.storage.index;
+
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+
+/**
+ * A {@link SearchRange} of a nearest neighbor search on a vector index. Besides
+ * the query vector, it carries the distance function used to rank the
+ * candidates, the number of neighbors wanted by the query, and the number of
+ * partitions the index should probe. A range search carries a radius instead,
+ * and asks for all the candidates that may be within it.
+ */
+public class VectorSearchRange extends SearchRange {
+
+    private final DistanceFn distFn;
+    private final int k, nprobe;
+    private final double radius;
+
+    /**
+     * Creates a search range for a nearest neighbor search.
+     *
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of neighbors wanted, or a non-positive value if
+     *            all candidates should be returned
+     * @param nprobe
+     *            the number of partitions to probe, or a non-positive value to
+     *            use the default of the index
+     */
+    public VectorSearchRange(DistanceFn distFn, int k, int nprobe) {
+        super(ConstantRange.newInstance(distFn.getQueryVector()));
+        this.distFn = distFn;
+        this.k = k;
+        this.nprobe = nprobe;
+        this.radius = Double.NaN;
+    }
+
+    /**
+     * Creates a search range for the vectors within a radius of the query
+     * vector.
+     *
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param radius
+     *            the maximum distance to the query vector
+     */
+    public VectorSearchRange(DistanceFn distFn, double radius) {
+        super(ConstantRange.newInstance(distFn.getQueryVector()));
+        this.distFn = distFn;
+        this.k = -1;
+        this.nprobe = -1;
+        this.radius = radius;
+    }
+
+    public DistanceFn distanceFn() {
+        return distFn;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    public int nprobe() {
+        return nprobe;
+    }
+
+    public boolean hasRadius() {
+        return !Double.isNaN(radius);
+    }
+
+    public double radius() {
+        return radius;
+    }
+
+    @Override
+    public String toString() {
+        return distFn.fieldName() + " <-> " + distFn.getQueryVector()
+                + (k > 0 ? " k=" + k : "") + (nprobe > 0 ? " nprobe=" + nprobe : "")
+                + (hasRadius() ? " radius=" + radius : "");
+    }
+}
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.index.btree;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.vanilladb.core.server.VanillaDb;
@@ -197,6 +198,23 @@ public class BTreeIndex extends Index {
 					dataRecordId.block().number(), dataRecordId.id());
 	}
 
+	/**
+	 * Inserts a batch of index records in the order of their keys, so that
+	 * consecutive insertions descend to the same leaf while it is still in
+	 * the buffer pool.
+	 * 
+	 * @see Index#insertBatch(SearchKey[], RecordId[], int)
+	 */
+	@Override
+	public void insertBatch(SearchKey[] keys, RecordId[] dataRecordIds, int n) {
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+		for (int i : order)
+			insert(keys[i], dataRecordIds[i], false);
+	}
+
 	/**
 	 * Deletes the specified index record. The method first traverses the
 	 * directory to find the leaf page containing that record; then it deletes
@@ -0,0 +1,134 @@
+package org.vanilladb.core.storage.index.diskann;
+
+import java.util.Arrays;
+
+import org.vanilladb.core.storage.index.ivf.ProductQuantizer;
+
+/**
+ * The in-memory compressed vectors of a {@link DiskANNIndex}. Every node of
+ * the on-disk graph keeps its product quantization codes here, so that a
+ * search can rank the neighbors of an expanded node without reading their
+ * records. Nodes are numbered densely in insertion order.
+ *
+ * <p>
+ * Nodes are appended by one writer at a time. Readers never block: the code
+ * array is only replaced by a larger copy after the codes of a new node are in
+ * place, and a node becomes reachable only after its id is written to the
+ * graph on disk.
+ * </p>
+ */
+class CompressedVectors {
+
+    /**
+     * The vectors of an index that has not been built yet.
+     */
+    static final CompressedVectors UNBUILT = new CompressedVectors(null, 0, -1);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ProductQuantizer pq;
+    private final int numWords, build;
+    private volatile long[] codes;
+    private volatile int size;
+    private volatile int entryPoint = -1;
+
+    /**
+     * Creates an empty set of compressed vectors.
+     *
+     * @param pq
+     *            the quantizer of the vectors, or null if the index has not
+     *            been built
+     * @param numWords
+     *            the number of code words of a vector
+     * @param build
+     *            the number of the build that created the graph
+     */
+    CompressedVectors(ProductQuantizer pq, int numWords, int build) {
+        this.pq = pq;
+        this.numWords = numWords;
+        this.build = build;
+        this.codes = new long[pq == null ? 0 : INITIAL_CAPACITY * numWords];
+    }
+
+    boolean isBuilt() {
+        return pq != null;
+    }
+
+    ProductQuantizer quantizer() {
+        return pq;
+    }
+
+    int numWords() {
+        return numWords;
+    }
+
+    int build() {
+        return build;
+    }
+
+    /**
+     * Returns the generation of the index files that hold the graph.
+     */
+    int generation() {
+        return generation(build);
+    }
+
+    /**
+     * Returns the generation of the index files written by a build. Builds
+     * alternate between two generations, so that a build never overwrites
+     * the graph that searches are using.
+     */
+    static int generation(int build) {
+        return build % 2;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the node every search starts from, or -1 if there is no node.
+     */
+    int entryPoint() {
+        return entryPoint;
+    }
+
+    void setEntryPoint(int node) {
+        entryPoint = node;
+    }
+
+    /**
+     * Appends the codes of a new node.
+     *
+     * @param nodeCodes
+     *            the packed codes of the vector of the node
+     * @return the id of the new node
+     */
+    synchronized int append(long[] nodeCodes) {
+        int node = size;
+        long[] arr = codes;
+        if ((node + 1) * numWords > arr.length)
+            arr = Arrays.copyOf(arr, Math.max((node + 1) * numWords, arr.length * 2));
+        System.arraycopy(nodeCodes, 0, arr, node * numWords, numWords);
+        codes = arr;
+        size = node + 1;
+        return node;
+    }
+
+    /**
+     * Returns the approximate squared distance from the query of a lookup
+     * table to a node.
+     */
+    float distance(float[] table, int node) {
+        return pq.distance(table, codes, node * numWords);
+    }
+
+    /**
+     * Reconstructs the approximate vector of a node.
+     */
+    float[] decode(int node, float[] out) {
+        long[] nodeCodes = new long[numWords];
+        System.arraycopy(codes, node * numWords, nodeCodes, 0, numWords);
+        return pq.decode(nodeCodes, out);
+    }
+}
@@ -0,0 +1,852 @@
+package org.vanilladb.core.storage.index.diskann;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.sql.distfn.VectorOps;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexType;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+import org.vanilladb.core.storage.index.ivf.IVFIndex;
+import org.vanilladb.core.storage.index.ivf.ProductQuantizer;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * A DiskANN implementation of {@link Index} for vector fields, which keeps a
+ * Vamana graph on disk so that the index does not have to fit in memory.
+ *
+ * <p>
+ * Node {@code i} of the graph is stored in slot {@code i} of the node file,
+ * with its full vector, data record id and a neighbor list of at most
+ * {@link #MAX_DEGREE} nodes. Only the product quantization codes of the
+ * vectors are kept in memory ({@link CompressedVectors}). A search runs a beam
+ * search from the entry point: in each round, the {@link #BEAM_WIDTH} closest
+ * unexpanded candidates by their compressed distances are read in block
+ * order, their exact distances are taken from the node records, and their
+ * neighbors are ranked by compressed distances again. The expanded nodes are
+ * finally ranked by their exact distances.
+ * </p>
+ *
+ * <p>
+ * The index must be built by
+ * {@link #build(String, List, String, Transaction)}, which trains the
+ * quantizer on a sample of the table and inserts every record starting from
+ * the medoid of the sample. Insertions issued before that are deferred.
+ * Each insertion searches the graph for candidates, keeps a diverse subset of
+ * them as neighbors by the robust pruning of Vamana, and adds back edges to
+ * those neighbors, pruning their lists when they overflow. Deletions only
+ * mark the node, which keeps routing searches.
+ * </p>
+ *
+ * <p>
+ * Each build is numbered and writes its codebook, node and code files into
+ * one of two generations, alternating between builds, while searches keep
+ * using the graph of the previous build. The meta file names the current
+ * build and its entry point, and is written once the new graph is complete,
+ * which swaps it in. A code record carries the number of its build and is
+ * written after the node record, so that the nodes of the current build are
+ * the leading code records with that number; insertions therefore do not
+ * touch the meta file.
+ * </p>
+ */
+public class DiskANNIndex extends Index {
+
+    private static final String
+        SCHEMA_VECTOR = "vec", SCHEMA_RID_BLOCK = "block", SCHEMA_RID_ID = "id",
+        SCHEMA_DELETED = "deleted", SCHEMA_DEGREE = "degree", SCHEMA_NEIGHBOR_PREFIX = "nb",
+        SCHEMA_CODE_PREFIX = "code", SCHEMA_SUBSPACE = "subspace",
+        SCHEMA_CODEWORD_ID = "codeword_id", SCHEMA_CODEWORD = "codeword",
+        SCHEMA_BUILD = "build", SCHEMA_ENTRY = "entry";
+    private static final String NODE_FILE_SUFFIX = "_dann_node", CODE_FILE_SUFFIX = "_dann_pq",
+        CODEBOOK_FILE_SUFFIX = "_dann_codebook", META_FILE_SUFFIX = "_dann_meta";
+    private static final long BUILD_SEED = 20240601L;
+
+    /**
+     * The maximum number of neighbors of a node.
+     */
+    public static final int MAX_DEGREE;
+    public static final int BUILD_LIST_SIZE;
+    public static final int SEARCH_LIST_SIZE;
+    public static final int BEAM_WIDTH;
+    public static final double ALPHA;
+    public static final int NUM_SUBSPACES;
+    public static final int TRAIN_SAMPLE_SIZE;
+
+    static {
+        MAX_DEGREE = CoreProperties.getLoader().getPropertyAsInteger(
+                DiskANNIndex.class.getName() + ".MAX_DEGREE", 32);
+        BUILD_LIST_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+                DiskANNIndex.class.getName() + ".BUILD_LIST_SIZE", 75);
+        SEARCH_LIST_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+                DiskANNIndex.class.getName() + ".SEARCH_LIST_SIZE", 64);
+        BEAM_WIDTH = CoreProperties.getLoader().getPropertyAsInteger(
+                DiskANNIndex.class.getName() + ".BEAM_WIDTH", 4);
+        ALPHA = CoreProperties.getLoader().getPropertyAsDouble(
+                DiskANNIndex.class.getName() + ".ALPHA", 1.2);
+        NUM_SUBSPACES = CoreProperties.getLoader().getPropertyAsInteger(
+                DiskANNIndex.class.getName() + ".NUM_SUBSPACES", 16);
+        TRAIN_SAMPLE_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+                DiskANNIndex.class.getName() + ".TRAIN_SAMPLE_SIZE", 50000);
+    }
+
+    /**
+     * The compressed vectors of each DiskANN index (index name -> vectors),
+     * which are shared by all transactions.
+     */
+    private static final Map<String, CompressedVectors> compressedVectors =
+            new ConcurrentHashMap<String, CompressedVectors>();
+
+    public static long searchCost(SearchKeyType keyType, long totRecs, long matchRecs) {
+        // a search reads about one node record per candidate in its list
+        return Math.min(Math.max(SEARCH_LIST_SIZE, matchRecs), Math.max(totRecs, 1));
+    }
+
+    private static String neighborFieldName(int index) {
+        return SCHEMA_NEIGHBOR_PREFIX + index;
+    }
+
+    private static String codeFieldName(int index) {
+        return SCHEMA_CODE_PREFIX + index;
+    }
+
+    private static Schema nodeSchema(SearchKeyType keyType) {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_VECTOR, keyType.get(0));
+        sch.addField(SCHEMA_RID_BLOCK, BIGINT);
+        sch.addField(SCHEMA_RID_ID, INTEGER);
+        sch.addField(SCHEMA_DELETED, INTEGER);
+        sch.addField(SCHEMA_DEGREE, INTEGER);
+        for (int i = 0; i < MAX_DEGREE; i++)
+            sch.addField(neighborFieldName(i), INTEGER);
+        return sch;
+    }
+
+    private static Schema codeSchema(int numWords) {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_BUILD, INTEGER);
+        for (int i = 0; i < numWords; i++)
+            sch.addField(codeFieldName(i), BIGINT);
+        return sch;
+    }
+
+    private static Schema codebookSchema(int subDim) {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_SUBSPACE, INTEGER);
+        sch.addField(SCHEMA_CODEWORD_ID, INTEGER);
+        sch.addField(SCHEMA_CODEWORD, Type.VECTOR(subDim));
+        return sch;
+    }
+
+    private static Schema metaSchema() {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_BUILD, INTEGER);
+        sch.addField(SCHEMA_ENTRY, INTEGER);
+        return sch;
+    }
+
+    /**
+     * A node read from disk during a beam search.
+     */
+    private static class Expanded {
+        int node;
+        double dist;
+        float[] vec;
+        RecordId dataRecordId;
+        boolean isDeleted;
+        int[] neighbors;
+    }
+
+    private final int dim, numSubspaces, numWords;
+    private final TableInfo[] nodeTis = new TableInfo[2], codeTis = new TableInfo[2];
+    private final int nodesPerBlock, codesPerBlock;
+
+    private RecordId[] results;
+    private int pos;
+    private boolean isBeforeFirsted;
+
+    public DiskANNIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+        super(ii, keyType, tx);
+        this.dim = keyType.get(0).getArgument();
+        this.numSubspaces = ProductQuantizer.numSubspaces(dim, NUM_SUBSPACES);
+        this.numWords = ProductQuantizer.numCodeWords(numSubspaces);
+        for (int gen = 0; gen < 2; gen++) {
+            nodeTis[gen] = new TableInfo(ii.indexName() + NODE_FILE_SUFFIX + gen,
+                    nodeSchema(keyType));
+            codeTis[gen] = new TableInfo(ii.indexName() + CODE_FILE_SUFFIX + gen,
+                    codeSchema(numWords));
+        }
+        this.nodesPerBlock = Buffer.BUFFER_SIZE / RecordPage.slotSize(nodeTis[0].schema());
+        this.codesPerBlock = Buffer.BUFFER_SIZE / RecordPage.slotSize(codeTis[0].schema());
+    }
+
+    /**
+     * Builds the specified DiskANN index over the vectors of the given table.
+     * The product quantizer is trained on a uniform sample of the table, and
+     * every record of the table is then inserted into a new graph, starting
+     * from the sampled vector closest to the mean of the sample.
+     *
+     * @param tblname
+     *            the name of the indexed table
+     * @param embFields
+     *            the indexed vector field
+     * @param idxName
+     *            the name of the DiskANN index
+     * @param tx
+     *            the calling transaction
+     */
+    public static void build(String tblname, List<String> embFields,
+            String idxName, Transaction tx) {
+        IndexInfo ii = VanillaDb.catalogMgr().getIndexInfoByName(idxName, tx);
+        if (ii == null || ii.indexType() != IndexType.DISKANN
+                || !ii.tableName().equals(tblname)
+                || !ii.fieldNames().equals(embFields))
+            throw new IllegalArgumentException("no DiskANN index '" + idxName
+                    + "' on " + tblname + embFields);
+
+        DiskANNIndex idx = (DiskANNIndex) ii.open(tx);
+        try {
+            idx.build();
+        } finally {
+            idx.close();
+        }
+    }
+
+    /**
+     * Builds the graph over every record of the data table.
+     */
+    @Override
+    public void buildFromTable() {
+        build();
+    }
+
+    private void build() {
+        close();
+        String fldName = ii.fieldNames().get(0);
+
+        // draw a reservoir sample of the table
+        Random random = new Random(BUILD_SEED);
+        float[][] samples = new float[TRAIN_SAMPLE_SIZE][];
+        RecordId[] sampleRids = new RecordId[TRAIN_SAMPLE_SIZE];
+        long seen = 0;
+        RecordFile dataRf = dataTableInfo().open(tx, false);
+        dataRf.beforeFirst();
+        while (dataRf.next()) {
+            long slot = seen < TRAIN_SAMPLE_SIZE ? seen
+                    : (long) (random.nextDouble() * (seen + 1));
+            if (slot < TRAIN_SAMPLE_SIZE) {
+                samples[(int) slot] = ((VectorConstant) dataRf.getVal(fldName)).asJavaVal();
+                sampleRids[(int) slot] = dataRf.currentRecordId();
+                // release the read lock on the record, if the isolation level allows
+                tx.endStatement();
+            }
+            seen++;
+        }
+        int numSamples = (int) Math.min(seen, TRAIN_SAMPLE_SIZE);
+        if (numSamples == 0) {
+            dataRf.close();
+            return;
+        }
+        samples = Arrays.copyOf(samples, numSamples);
+
+        // the new graph goes into the generation not used by the current one
+        int[] meta = readMeta();
+        int build = meta == null ? 0 : meta[0] + 1;
+
+        ProductQuantizer pq = ProductQuantizer.train(samples, dim, numSubspaces,
+                IVFIndex.NUM_ITERATIONS, BUILD_SEED);
+        writeCodebook(CompressedVectors.generation(build), pq);
+
+        // the medoid of the sample becomes the entry point
+        float[] mean = new float[dim];
+        for (float[] sample : samples)
+            for (int j = 0; j < dim; j++)
+                mean[j] += sample[j] / numSamples;
+        int medoid = 0;
+        for (int i = 1; i < numSamples; i++)
+            if (VectorOps.squaredEuclidean(mean, samples[i])
+                    < VectorOps.squaredEuclidean(mean, samples[medoid]))
+                medoid = i;
+
+        // the slots of the build before the current one are overwritten
+        CompressedVectors cv = new CompressedVectors(pq, numWords, build);
+        insertNode(cv, samples[medoid], sampleRids[medoid]);
+
+        dataRf.beforeFirst();
+        while (dataRf.next()) {
+            RecordId rid = dataRf.currentRecordId();
+            if (!rid.equals(sampleRids[medoid])) {
+                insertNode(cv, ((VectorConstant) dataRf.getVal(fldName)).asJavaVal(), rid);
+                tx.endStatement();
+            }
+        }
+        dataRf.close();
+
+        // swap in the new graph only after all nodes are in place
+        writeMeta(build, cv.entryPoint());
+        compressedVectors.put(ii.indexName(), cv);
+    }
+
+    /**
+     * Returns the shared compressed vectors of this index, loading them from
+     * the index files if they are not in memory yet.
+     */
+    private CompressedVectors compressedVectors() {
+        CompressedVectors cv = compressedVectors.get(ii.indexName());
+        if (cv != null)
+            return cv;
+
+        synchronized (compressedVectors) {
+            cv = compressedVectors.get(ii.indexName());
+            if (cv == null) {
+                cv = loadCompressedVectors();
+                compressedVectors.put(ii.indexName(), cv);
+            }
+        }
+        return cv;
+    }
+
+    /**
+     * Loads the codes of the current build, which are the leading records of
+     * its code file that carry its number. The records after them are left
+     * by an earlier build and are overwritten by later insertions.
+     */
+    private CompressedVectors loadCompressedVectors() {
+        int[] meta = readMeta();
+        if (meta == null)
+            return CompressedVectors.UNBUILT;
+        ProductQuantizer pq = readCodebook(CompressedVectors.generation(meta[0]));
+        if (pq == null)
+            return CompressedVectors.UNBUILT;
+
+        CompressedVectors cv = new CompressedVectors(pq, numWords, meta[0]);
+        long[] codes = new long[numWords];
+        RecordFile codeRf = openFile(codeTis[cv.generation()]);
+        codeRf.beforeFirst();
+        while (codeRf.next()
+                && (Integer) codeRf.getVal(SCHEMA_BUILD).asJavaVal() == meta[0]) {
+            for (int w = 0; w < numWords; w++)
+                codes[w] = (Long) codeRf.getVal(codeFieldName(w)).asJavaVal();
+            cv.append(codes);
+        }
+        codeRf.close();
+        cv.setEntryPoint(meta[1]);
+        return cv;
+    }
+
+    /**
+     * Returns true if this index has been built.
+     *
+     * @return true if this index has been built
+     */
+    public boolean isBuilt() {
+        return compressedVectors().isBuilt();
+    }
+
+    @Override
+    public void preLoadToMemory() {
+        compressedVectors();
+    }
+
+    /**
+     * Positions the index before the first nearest neighbor of the search
+     * vector. A {@link VectorSearchRange} that asks for k neighbors gets the k
+     * closest ones by its distance function among the expanded nodes; any
+     * other search range gets {@link #SEARCH_LIST_SIZE} of them by Euclidean
+     * distance. Neighbors are returned in ascending order of distance.
+     *
+     * @see Index#beforeFirst(SearchRange)
+     */
+    @Override
+    public void beforeFirst(SearchRange searchRange) {
+        if (!searchRange.isSingleValue())
+            throw new UnsupportedOperationException();
+
+        VectorConstant query = (VectorConstant) searchRange.asSearchKey().get(0);
+        int k = SEARCH_LIST_SIZE;
+        DistanceFn distFn = null;
+        if (searchRange instanceof VectorSearchRange) {
+            VectorSearchRange vsr = (VectorSearchRange) searchRange;
+            if (vsr.k() > 0)
+                k = vsr.k();
+            distFn = vsr.distanceFn();
+        }
+        if (distFn == null)
+            distFn = euclidean(query);
+
+        CompressedVectors cv = compressedVectors();
+        if (cv.entryPoint() < 0)
+            results = new RecordId[0];
+        else {
+            TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+            for (Expanded e : beamSearch(cv, query.asJavaVal(), distFn,
+                    Math.max(k, SEARCH_LIST_SIZE), false))
+                if (!e.isDeleted && e.dist < heap.threshold())
+                    heap.offer(e.dist, e.dataRecordId);
+            results = heap.drainSorted(new RecordId[heap.size()], null);
+        }
+        pos = -1;
+
+        isBeforeFirsted = true;
+    }
+
+    private DistanceFn euclidean(VectorConstant query) {
+        DistanceFn distFn = new EuclideanFn(ii.fieldNames().get(0));
+        distFn.setQueryVector(query);
+        return distFn;
+    }
+
+    /**
+     * Runs a beam search from the entry point and returns the expanded nodes.
+     * The candidate list keeps the {@code listSize} closest nodes seen so far
+     * by compressed distances, and each round expands up to
+     * {@link #BEAM_WIDTH} of them.
+     *
+     * @param query
+     *            the query vector
+     * @param distFn
+     *            the distance function for the exact distances of the
+     *            expanded nodes, or null to use the squared Euclidean distance
+     *            and keep their vectors
+     * @param listSize
+     *            the size of the candidate list
+     * @return the expanded nodes with their exact distances
+     */
+    private List<Expanded> beamSearch(CompressedVectors cv, float[] query,
+            DistanceFn distFn, int listSize, boolean keepVectors) {
+        float[] table = cv.quantizer().lookupTable(query);
+        int[] nodes = new int[listSize];
+        float[] dists = new float[listSize];
+        boolean[] isExpanded = new boolean[listSize];
+        Set<Integer> seen = new HashSet<Integer>();
+        nodes[0] = cv.entryPoint();
+        dists[0] = cv.distance(table, nodes[0]);
+        seen.add(nodes[0]);
+        int len = 1;
+
+        List<Expanded> expanded = new ArrayList<Expanded>();
+        int[] beam = new int[BEAM_WIDTH];
+        RecordFile nodeRf = openFile(nodeTis[cv.generation()]);
+        while (true) {
+            int b = 0;
+            for (int i = 0; i < len && b < beam.length; i++) {
+                if (!isExpanded[i]) {
+                    isExpanded[i] = true;
+                    beam[b++] = nodes[i];
+                }
+            }
+            if (b == 0)
+                break;
+
+            // nodes are laid out in id order, so the beam is read block by block
+            Arrays.sort(beam, 0, b);
+            for (int i = 0; i < b; i++) {
+                Expanded e = readNode(cv, nodeRf, beam[i], query, distFn, keepVectors);
+                expanded.add(e);
+                for (int nb : e.neighbors) {
+                    if (!seen.add(nb))
+                        continue;
+                    float d = cv.distance(table, nb);
+                    if (len == listSize && d >= dists[len - 1])
+                        continue;
+
+                    // insert into the sorted list, dropping the farthest
+                    int p = len < listSize ? len++ : len - 1;
+                    while (p > 0 && dists[p - 1] > d) {
+                        nodes[p] = nodes[p - 1];
+                        dists[p] = dists[p - 1];
+                        isExpanded[p] = isExpanded[p - 1];
+                        p--;
+                    }
+                    nodes[p] = nb;
+                    dists[p] = d;
+                    isExpanded[p] = false;
+                }
+            }
+        }
+        nodeRf.close();
+        return expanded;
+    }
+
+    private Expanded readNode(CompressedVectors cv, RecordFile nodeRf, int node,
+            float[] query, DistanceFn distFn, boolean keepVector) {
+        nodeRf.moveToRecordId(nodeSlot(cv, node));
+        Expanded e = new Expanded();
+        e.node = node;
+        if (keepVector) {
+            e.vec = ((VectorConstant) nodeRf.getVal(SCHEMA_VECTOR)).asJavaVal();
+            e.dist = VectorOps.squaredEuclidean(query, e.vec);
+        } else
+            e.dist = nodeRf.rankingDistance(SCHEMA_VECTOR, distFn);
+        long blkNum = (Long) nodeRf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+        int id = (Integer) nodeRf.getVal(SCHEMA_RID_ID).asJavaVal();
+        e.dataRecordId = new RecordId(new BlockId(dataFileName, blkNum), id);
+        e.isDeleted = (Integer) nodeRf.getVal(SCHEMA_DELETED).asJavaVal() != 0;
+        e.neighbors = readNeighbors(nodeRf);
+        return e;
+    }
+
+    /**
+     * Keeps a diverse subset of the candidates as the neighbors of a base
+     * vector by the robust pruning of Vamana: a candidate is dropped if a
+     * closer selected neighbor is more than {@link #ALPHA} times closer to it
+     * than the base is.
+     *
+     * @param candidates
+     *            the candidate nodes, without duplicates
+     * @param vecs
+     *            the vectors of the candidates
+     * @param dists
+     *            the squared distances from the base to the candidates
+     * @return the selected neighbors
+     */
+    private static int[] robustPrune(int[] candidates, float[][] vecs, float[] dists) {
+        Integer[] order = new Integer[candidates.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Float.compare(dists[a], dists[b]));
+
+        // the distances are squared, and so is alpha
+        double alpha2 = ALPHA * ALPHA;
+        int[] selected = new int[Math.min(MAX_DEGREE, candidates.length)];
+        int n = 0;
+        for (int c : order) {
+            if (n == selected.length)
+                break;
+            boolean isDiverse = true;
+            for (int s = 0; s < n && isDiverse; s++)
+                if (alpha2 * VectorOps.squaredEuclidean(vecs[selected[s]], vecs[c]) <= dists[c])
+                    isDiverse = false;
+            if (isDiverse)
+                selected[n++] = c;
+        }
+        int[] neighbors = new int[n];
+        for (int i = 0; i < n; i++)
+            neighbors[i] = candidates[selected[i]];
+        return neighbors;
+    }
+
+    @Override
+    public boolean next() {
+        if (!isBeforeFirsted)
+            throw new IllegalStateException("You must call beforeFirst() before iterating index '"
+                    + ii.indexName() + "'");
+
+        return ++pos < results.length;
+    }
+
+    @Override
+    public RecordId getDataRecordId() {
+        return results[pos];
+    }
+
+    @Override
+    public void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        CompressedVectors cv = compressedVectors();
+
+        // deferred until the index is built
+        if (!cv.isBuilt())
+            return;
+
+        // keep the files in the same order as the compressed vectors
+        synchronized (cv) {
+            insertNode(cv, ((VectorConstant) key.get(0)).asJavaVal(), dataRecordId);
+        }
+    }
+
+    private void insertNode(CompressedVectors cv, float[] vec, RecordId dataRecordId) {
+        ProductQuantizer pq = cv.quantizer();
+        long[] codes = pq.encode(vec, new float[dim / numSubspaces], new long[numWords]);
+
+        int[] nbrs = new int[0];
+        if (cv.entryPoint() >= 0) {
+            List<Expanded> visited = beamSearch(cv, vec, null, BUILD_LIST_SIZE, true);
+            int[] candidates = new int[visited.size()];
+            float[][] vecs = new float[visited.size()][];
+            float[] dists = new float[visited.size()];
+            for (int i = 0; i < candidates.length; i++) {
+                Expanded e = visited.get(i);
+                candidates[i] = e.node;
+                vecs[i] = e.vec;
+                dists[i] = (float) e.dist;
+            }
+            nbrs = robustPrune(candidates, vecs, dists);
+        }
+
+        int node = cv.append(codes);
+        RecordFile nodeRf = openFile(nodeTis[cv.generation()]);
+        moveToSlot(nodeRf, nodeSlot(cv, node));
+        nodeRf.setVal(SCHEMA_VECTOR, new VectorConstant(vec));
+        nodeRf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
+        nodeRf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+        nodeRf.setVal(SCHEMA_DELETED, new IntegerConstant(0));
+        writeNeighbors(nodeRf, nbrs);
+
+        // the code record is written last, since it marks the node as present
+        RecordFile codeRf = openFile(codeTis[cv.generation()]);
+        moveToSlot(codeRf, codeSlot(cv, node));
+        for (int w = 0; w < numWords; w++)
+            codeRf.setVal(codeFieldName(w), new BigIntConstant(codes[w]));
+        codeRf.setVal(SCHEMA_BUILD, new IntegerConstant(cv.build()));
+        codeRf.close();
+
+        if (cv.entryPoint() < 0)
+            cv.setEntryPoint(node);
+
+        for (int nb : nbrs)
+            addBackEdge(cv, nodeRf, nb, node, vec);
+        nodeRf.close();
+    }
+
+    /**
+     * Adds a node to the neighbor list of another node. If the list is full,
+     * it is pruned over its old neighbors and the new one, whose distances
+     * are approximated by their compressed vectors except for the new one.
+     */
+    private void addBackEdge(CompressedVectors cv, RecordFile nodeRf, int node,
+            int newNb, float[] newVec) {
+        nodeRf.moveToRecordId(nodeSlot(cv, node));
+        int[] nbrs = readNeighbors(nodeRf);
+        for (int nb : nbrs)
+            if (nb == newNb)
+                return;
+
+        int[] candidates = Arrays.copyOf(nbrs, nbrs.length + 1);
+        candidates[nbrs.length] = newNb;
+        if (candidates.length <= MAX_DEGREE) {
+            writeNeighbors(nodeRf, candidates);
+            return;
+        }
+
+        float[] base = ((VectorConstant) nodeRf.getVal(SCHEMA_VECTOR)).asJavaVal();
+        float[][] vecs = new float[candidates.length][];
+        float[] dists = new float[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            vecs[i] = candidates[i] == newNb ? newVec : cv.decode(candidates[i], new float[dim]);
+            dists[i] = VectorOps.squaredEuclidean(base, vecs[i]);
+        }
+        writeNeighbors(nodeRf, robustPrune(candidates, vecs, dists));
+    }
+
+    /**
+     * Marks the node of the data record as deleted. The node is looked up by
+     * a search for the key vector, or by a scan over the nodes if the search
+     * does not reach it. The node keeps its links so that searches can still
+     * route through it.
+     *
+     * @see Index#delete(SearchKey, RecordId, boolean)
+     */
+    @Override
+    public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        CompressedVectors cv = compressedVectors();
+        if (cv.entryPoint() < 0)
+            return;
+
+        VectorConstant vec = (VectorConstant) key.get(0);
+        synchronized (cv) {
+            RecordFile nodeRf = openFile(nodeTis[cv.generation()]);
+            for (Expanded e : beamSearch(cv, vec.asJavaVal(), euclidean(vec),
+                    SEARCH_LIST_SIZE, false)) {
+                if (!e.isDeleted && e.dataRecordId.equals(dataRecordId)) {
+                    nodeRf.moveToRecordId(nodeSlot(cv, e.node));
+                    nodeRf.setVal(SCHEMA_DELETED, new IntegerConstant(1));
+                    nodeRf.close();
+                    return;
+                }
+            }
+
+            for (int node = 0; node < cv.size(); node++) {
+                nodeRf.moveToRecordId(nodeSlot(cv, node));
+                long blkNum = (Long) nodeRf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+                int id = (Integer) nodeRf.getVal(SCHEMA_RID_ID).asJavaVal();
+                if (blkNum == dataRecordId.block().number() && id == dataRecordId.id()
+                        && (Integer) nodeRf.getVal(SCHEMA_DELETED).asJavaVal() == 0) {
+                    nodeRf.setVal(SCHEMA_DELETED, new IntegerConstant(1));
+                    break;
+                }
+            }
+            nodeRf.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        results = null;
+        isBeforeFirsted = false;
+    }
+
+    private int[] readNeighbors(RecordFile nodeRf) {
+        int[] nbrs = new int[(Integer) nodeRf.getVal(SCHEMA_DEGREE).asJavaVal()];
+        for (int i = 0; i < nbrs.length; i++)
+            nbrs[i] = (Integer) nodeRf.getVal(neighborFieldName(i)).asJavaVal();
+        return nbrs;
+    }
+
+    private void writeNeighbors(RecordFile nodeRf, int[] nbrs) {
+        nodeRf.setVal(SCHEMA_DEGREE, new IntegerConstant(nbrs.length));
+        for (int i = 0; i < nbrs.length; i++)
+            nodeRf.setVal(neighborFieldName(i), new IntegerConstant(nbrs[i]));
+    }
+
+    /*
+     * Node i is in slot i of the node and code files of its generation, since
+     * their records are only appended or overwritten. Block 0 of a record file
+     * is its header.
+     */
+
+    private RecordId nodeSlot(CompressedVectors cv, int node) {
+        return new RecordId(new BlockId(nodeTis[cv.generation()].fileName(),
+                1 + node / nodesPerBlock), node % nodesPerBlock);
+    }
+
+    private RecordId codeSlot(CompressedVectors cv, int node) {
+        return new RecordId(new BlockId(codeTis[cv.generation()].fileName(),
+                1 + node / codesPerBlock), node % codesPerBlock);
+    }
+
+    /**
+     * Moves to a slot, overwriting the record left there by an earlier build
+     * or by an insertion cut short by a crash, or appends a record at the end
+     * of the file, which must be the slot.
+     */
+    private void moveToSlot(RecordFile rf, RecordId slot) {
+        if (slot.block().number() < rf.fileSize()) {
+            rf.moveToRecordId(slot);
+            if (rf.isInUse())
+                return;
+        }
+        rf.insert();
+        if (!rf.currentRecordId().equals(slot))
+            throw new IllegalStateException("expected a new record at " + slot
+                    + " but got " + rf.currentRecordId());
+    }
+
+    private TableInfo dataTableInfo() {
+        return VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx);
+    }
+
+    /**
+     * Returns the number of the current build and its entry point in the meta
+     * file, or null if the index has not been built.
+     */
+    private int[] readMeta() {
+        RecordFile metaRf = openFile(new TableInfo(ii.indexName() + META_FILE_SUFFIX, metaSchema()));
+        metaRf.beforeFirst();
+        int[] meta = null;
+        if (metaRf.next())
+            meta = new int[] {
+                (Integer) metaRf.getVal(SCHEMA_BUILD).asJavaVal(),
+                (Integer) metaRf.getVal(SCHEMA_ENTRY).asJavaVal()
+            };
+        metaRf.close();
+        return meta;
+    }
+
+    private void writeMeta(int build, int entryPoint) {
+        RecordFile metaRf = openFile(new TableInfo(ii.indexName() + META_FILE_SUFFIX, metaSchema()));
+        metaRf.beforeFirst();
+        if (!metaRf.next())
+            metaRf.insert();
+        metaRf.setVal(SCHEMA_BUILD, new IntegerConstant(build));
+        metaRf.setVal(SCHEMA_ENTRY, new IntegerConstant(entryPoint));
+        metaRf.close();
+    }
+
+    /**
+     * Replaces the content of the codebook file of a generation with the
+     * codebooks of the given quantizer.
+     */
+    private void writeCodebook(int gen, ProductQuantizer pq) {
+        int subDim = dim / numSubspaces;
+        RecordFile codebookRf = openCodebookFile(gen);
+        codebookRf.beforeFirst();
+        while (codebookRf.next())
+            codebookRf.delete();
+
+        for (int m = 0; m < numSubspaces; m++) {
+            float[] codebook = pq.codebook(m);
+            for (int c = 0; c < pq.numCodewords(); c++) {
+                float[] codeword = new float[subDim];
+                System.arraycopy(codebook, c * subDim, codeword, 0, subDim);
+                codebookRf.insert();
+                codebookRf.setVal(SCHEMA_SUBSPACE, new IntegerConstant(m));
+                codebookRf.setVal(SCHEMA_CODEWORD_ID, new IntegerConstant(c));
+                codebookRf.setVal(SCHEMA_CODEWORD, new VectorConstant(codeword));
+            }
+        }
+        codebookRf.close();
+    }
+
+    private ProductQuantizer readCodebook(int gen) {
+        int subDim = dim / numSubspaces;
+        List<List<float[]>> codewords = new ArrayList<List<float[]>>();
+        for (int m = 0; m < numSubspaces; m++)
+            codewords.add(new ArrayList<float[]>());
+
+        RecordFile codebookRf = openCodebookFile(gen);
+        codebookRf.beforeFirst();
+        while (codebookRf.next()) {
+            int m = (Integer) codebookRf.getVal(SCHEMA_SUBSPACE).asJavaVal();
+            int c = (Integer) codebookRf.getVal(SCHEMA_CODEWORD_ID).asJavaVal();
+            List<float[]> rows = codewords.get(m);
+            while (rows.size() <= c)
+                rows.add(null);
+            rows.set(c, ((VectorConstant) codebookRf.getVal(SCHEMA_CODEWORD)).asJavaVal());
+        }
+        codebookRf.close();
+
+        if (codewords.get(0).isEmpty())
+            return null;
+        float[][] codebooks = new float[numSubspaces][];
+        for (int m = 0; m < numSubspaces; m++) {
+            List<float[]> rows = codewords.get(m);
+            codebooks[m] = new float[rows.size() * subDim];
+            for (int c = 0; c < rows.size(); c++)
+                System.arraycopy(rows.get(c), 0, codebooks[m], c * subDim, subDim);
+        }
+        return new ProductQuantizer(codebooks, dim);
+    }
+
+    private RecordFile openCodebookFile(int gen) {
+        return openFile(new TableInfo(ii.indexName() + CODEBOOK_FILE_SUFFIX + gen,
+                codebookSchema(dim / numSubspaces)));
+    }
+
+    private RecordFile openFile(TableInfo ti) {
+        // the underlying record file should not perform logging
+        RecordFile rf = ti.open(tx, false);
+
+        // initialize the file header if needed
+        if (rf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return rf;
+    }
+}
@@ -0,0 +1,554 @@
+package org.vanilladb.core.storage.index.hnsw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.vanilladb.core.sql.distfn.VectorOps;
+import org.vanilladb.core.storage.record.RecordId;
+
+/**
+ * The in-memory hierarchical navigable small world graph of an
+ * {@link HNSWIndex}. Nodes are numbered densely in insertion order. Layer 0
+ * keeps up to {@code 2 * M} neighbors per node and the upper layers keep up to
+ * {@code M}. Distances are squared Euclidean distances.
+ *
+ * <p>
+ * Searches run concurrently under a read lock. Insertions and deletions are
+ * serialized by a write lock. The graph also remembers where each node and
+ * neighbor list is stored, so that the index can write back the lists changed
+ * by an insertion.
+ * </p>
+ */
+class HNSWGraph {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int m, maxM0, efConstruction;
+    private final double levelMult;
+    private final Random random;
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+    private int size;
+    private float[][] vectors = new float[INITIAL_CAPACITY][];
+    private int[] levels = new int[INITIAL_CAPACITY];
+    private RecordId[] dataRids = new RecordId[INITIAL_CAPACITY];
+    private boolean[] deleted = new boolean[INITIAL_CAPACITY];
+    // links[node][layer] holds the neighbor ids of the node on the layer
+    private int[][][] links = new int[INITIAL_CAPACITY][][];
+    private RecordId[] nodeRecords = new RecordId[INITIAL_CAPACITY];
+    private RecordId[][] linkRecords = new RecordId[INITIAL_CAPACITY][];
+    private Map<RecordId, Integer> nodeOfData = new HashMap<RecordId, Integer>();
+
+    private int entryPoint = -1, maxLevel = -1;
+
+    private final ThreadLocal<int[]> visitedMarks = ThreadLocal.withInitial(() -> new int[0]);
+    private final ThreadLocal<int[]> visitedEpoch = ThreadLocal.withInitial(() -> new int[1]);
+
+    HNSWGraph(int m, int efConstruction, long seed) {
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMult = 1 / Math.log(m);
+        this.random = new Random(seed);
+    }
+
+    int maxNeighbors(int layer) {
+        return layer == 0 ? maxM0 : m;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int level(int node) {
+        return levels[node];
+    }
+
+    float[] vector(int node) {
+        return vectors[node];
+    }
+
+    RecordId dataRecordId(int node) {
+        return dataRids[node];
+    }
+
+    boolean isDeleted(int node) {
+        return deleted[node];
+    }
+
+    int[] neighbors(int node, int layer) {
+        return links[node][layer];
+    }
+
+    RecordId nodeRecord(int node) {
+        return nodeRecords[node];
+    }
+
+    void setNodeRecord(int node, RecordId rid) {
+        nodeRecords[node] = rid;
+    }
+
+    RecordId linkRecord(int node, int layer) {
+        return linkRecords[node][layer];
+    }
+
+    void setLinkRecord(int node, int layer, RecordId rid) {
+        linkRecords[node][layer] = rid;
+    }
+
+    /**
+     * Returns the node of the given data record, or -1 if the record is not in
+     * the graph.
+     */
+    int nodeOf(RecordId dataRid) {
+        rwLock.readLock().lock();
+        try {
+            Integer node = nodeOfData.get(dataRid);
+            return node == null ? -1 : node;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Methods for rebuilding a graph from its files.
+     */
+
+    void restoreNode(int node, int level, float[] vec, RecordId dataRid,
+            boolean isDeleted, RecordId nodeRecord) {
+        ensureCapacity(node + 1);
+        size = Math.max(size, node + 1);
+        levels[node] = level;
+        vectors[node] = vec;
+        dataRids[node] = dataRid;
+        deleted[node] = isDeleted;
+        nodeRecords[node] = nodeRecord;
+        links[node] = new int[level + 1][0];
+        linkRecords[node] = new RecordId[level + 1];
+        if (!isDeleted)
+            nodeOfData.put(dataRid, node);
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Restores a neighbor list after all the nodes are restored. The files are
+     * not logged physically, so after a crash a list may belong to or point to
+     * a node whose record never reached the disk. Such lists and neighbors are
+     * dropped.
+     */
+    void restoreLinks(int node, int layer, int[] nbrs, RecordId linkRecord) {
+        if (node >= size || vectors[node] == null || layer > levels[node])
+            return;
+        int n = 0;
+        for (int nb : nbrs)
+            if (nb < size && vectors[nb] != null)
+                nbrs[n++] = nb;
+        links[node][layer] = n == nbrs.length ? nbrs : Arrays.copyOf(nbrs, n);
+        linkRecords[node][layer] = linkRecord;
+    }
+
+    /**
+     * Inserts a vector into the graph.
+     *
+     * @param vec
+     *            the vector
+     * @param dataRid
+     *            the data record of the vector
+     * @param changedLists
+     *            the output list of {node, layer} pairs whose neighbor lists
+     *            have been modified by the insertion, not including those of
+     *            the new node
+     * @return the id of the new node
+     */
+    int insert(float[] vec, RecordId dataRid, List<int[]> changedLists) {
+        rwLock.writeLock().lock();
+        try {
+            int node = size;
+            ensureCapacity(node + 1);
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelMult);
+            vectors[node] = vec;
+            levels[node] = level;
+            dataRids[node] = dataRid;
+            links[node] = new int[level + 1][0];
+            linkRecords[node] = new RecordId[level + 1];
+            size++;
+            nodeOfData.put(dataRid, node);
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return node;
+            }
+
+            int cur = entryPoint;
+            for (int layer = maxLevel; layer > level; layer--)
+                cur = greedyClosest(vec, cur, layer);
+
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                NodeHeap found = searchLayer(vec, cur, efConstruction, layer);
+                int[] candidates = found.drainAscending();
+                int[] selected = selectNeighbors(vec, candidates, m);
+                links[node][layer] = selected;
+                for (int nb : selected) {
+                    connect(nb, node, layer);
+                    changedLists.add(new int[] { nb, layer });
+                }
+                cur = candidates[0];
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            return node;
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the node of the given data record as deleted. A deleted node still
+     * routes searches but is never returned.
+     *
+     * @return the deleted node, or -1 if the record is not in the graph
+     */
+    int delete(RecordId dataRid) {
+        rwLock.writeLock().lock();
+        try {
+            Integer node = nodeOfData.remove(dataRid);
+            if (node == null)
+                return -1;
+            deleted[node] = true;
+            return node;
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the nodes of the (approximately) k nearest live vectors, in
+     * ascending order of distance.
+     *
+     * @param query
+     *            the query vector
+     * @param k
+     *            the number of neighbors wanted
+     * @param ef
+     *            the size of the dynamic candidate list
+     * @return the nodes of the nearest neighbors
+     */
+    int[] search(float[] query, int k, int ef) {
+        rwLock.readLock().lock();
+        try {
+            if (entryPoint < 0)
+                return new int[0];
+            int cur = entryPoint;
+            for (int layer = maxLevel; layer > 0; layer--)
+                cur = greedyClosest(query, cur, layer);
+
+            int[] found = searchLayer(query, cur, Math.max(ef, k), 0).drainAscending();
+            int[] result = new int[Math.min(k, found.length)];
+            int n = 0;
+            for (int i = 0; i < found.length && n < result.length; i++)
+                if (!deleted[found[i]])
+                    result[n++] = found[i];
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the nodes of the (approximately) all live vectors within a
+     * radius of the query, in no particular order. The nodes within the
+     * radius among the ef closest ones found on layer 0 seed a walk that
+     * follows the links of every node within the radius, so that the whole
+     * connected region of the ball is reached.
+     *
+     * @param query
+     *            the query vector
+     * @param radiusSq
+     *            the squared radius
+     * @param ef
+     *            the size of the dynamic candidate list of the seeding search
+     * @return the nodes within the radius
+     */
+    int[] searchRadius(float[] query, float radiusSq, int ef) {
+        rwLock.readLock().lock();
+        try {
+            if (entryPoint < 0)
+                return new int[0];
+            int cur = entryPoint;
+            for (int layer = maxLevel; layer > 0; layer--)
+                cur = greedyClosest(query, cur, layer);
+            int[] seeds = searchLayer(query, cur, ef, 0).drainAscending();
+
+            // the walk marks nodes by its own epoch after the seeding search
+            int epoch = nextVisitEpoch();
+            int[] marks = visitedMarks.get();
+            int[] queue = new int[16];
+            int head = 0, tail = 0;
+            for (int s : seeds) {
+                if (distance(query, s) > radiusSq)
+                    break;
+                marks[s] = epoch;
+                if (tail == queue.length)
+                    queue = Arrays.copyOf(queue, tail * 2);
+                queue[tail++] = s;
+            }
+
+            int[] result = new int[tail];
+            int n = 0;
+            while (head < tail) {
+                int c = queue[head++];
+                if (!deleted[c]) {
+                    if (n == result.length)
+                        result = Arrays.copyOf(result, n * 2);
+                    result[n++] = c;
+                }
+                for (int nb : links[c][0]) {
+                    if (marks[nb] == epoch)
+                        continue;
+                    marks[nb] = epoch;
+                    if (distance(query, nb) <= radiusSq) {
+                        if (tail == queue.length)
+                            queue = Arrays.copyOf(queue, tail * 2);
+                        queue[tail++] = nb;
+                    }
+                }
+            }
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    private float distance(float[] q, int node) {
+        return VectorOps.squaredEuclidean(q, vectors[node]);
+    }
+
+    private int greedyClosest(float[] q, int cur, int layer) {
+        float curDist = distance(q, cur);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int nb : links[cur][layer]) {
+                float d = distance(q, nb);
+                if (d < curDist) {
+                    curDist = d;
+                    cur = nb;
+                    changed = true;
+                }
+            }
+        }
+        return cur;
+    }
+
+    /**
+     * Runs a best-first search on a layer and returns the ef closest nodes
+     * found in a max-heap.
+     */
+    private NodeHeap searchLayer(float[] q, int ep, int ef, int layer) {
+        int epoch = nextVisitEpoch();
+        int[] marks = visitedMarks.get();
+
+        NodeHeap candidates = new NodeHeap(ef * 2, false);
+        NodeHeap results = new NodeHeap(ef + 1, true);
+        float epDist = distance(q, ep);
+        candidates.push(epDist, ep);
+        results.push(epDist, ep);
+        marks[ep] = epoch;
+
+        while (candidates.size() > 0) {
+            float d = candidates.peekDist();
+            if (d > results.peekDist() && results.size() >= ef)
+                break;
+            int c = candidates.pop();
+            for (int nb : links[c][layer]) {
+                if (marks[nb] == epoch)
+                    continue;
+                marks[nb] = epoch;
+                float nd = distance(q, nb);
+                if (results.size() < ef || nd < results.peekDist()) {
+                    candidates.push(nd, nb);
+                    results.push(nd, nb);
+                    if (results.size() > ef)
+                        results.pop();
+                }
+            }
+        }
+        return results;
+    }
+
+    private int nextVisitEpoch() {
+        int[] marks = visitedMarks.get();
+        int[] epoch = visitedEpoch.get();
+        if (marks.length < size) {
+            marks = new int[Math.max(size, vectors.length)];
+            visitedMarks.set(marks);
+            epoch[0] = 0;
+        }
+        if (++epoch[0] == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            epoch[0] = 1;
+        }
+        return epoch[0];
+    }
+
+    /**
+     * Selects at most {@code max} neighbors from the candidates (sorted by
+     * ascending distance to the base vector) by the heuristic of the HNSW
+     * paper. A candidate is kept only if it is closer to the base than to any
+     * neighbor selected so far, which keeps links spread in all directions.
+     * Pruned candidates fill up the remaining slots.
+     */
+    private int[] selectNeighbors(float[] base, int[] candidates, int max) {
+        if (candidates.length <= max)
+            return candidates;
+        int[] selected = new int[max];
+        int n = 0;
+        List<Integer> pruned = new ArrayList<Integer>();
+        for (int c : candidates) {
+            if (n == max)
+                break;
+            float dc = distance(base, c);
+            boolean good = true;
+            for (int i = 0; i < n; i++) {
+                if (VectorOps.squaredEuclidean(vectors[c], vectors[selected[i]]) < dc) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good)
+                selected[n++] = c;
+            else
+                pruned.add(c);
+        }
+        for (int i = 0; i < pruned.size() && n < max; i++)
+            selected[n++] = pruned.get(i);
+        return n == max ? selected : Arrays.copyOf(selected, n);
+    }
+
+    private void connect(int node, int newNb, int layer) {
+        int[] nbrs = links[node][layer];
+        int max = maxNeighbors(layer);
+        if (nbrs.length < max) {
+            int[] grown = Arrays.copyOf(nbrs, nbrs.length + 1);
+            grown[nbrs.length] = newNb;
+            links[node][layer] = grown;
+            return;
+        }
+
+        // shrink the over-full list back to the limit
+        float[] base = vectors[node];
+        NodeHeap heap = new NodeHeap(nbrs.length + 1, false);
+        for (int nb : nbrs)
+            heap.push(distance(base, nb), nb);
+        heap.push(distance(base, newNb), newNb);
+        links[node][layer] = selectNeighbors(base, heap.drainAscending(), max);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= vectors.length)
+            return;
+        int newCap = Math.max(capacity, vectors.length * 2);
+        vectors = Arrays.copyOf(vectors, newCap);
+        levels = Arrays.copyOf(levels, newCap);
+        dataRids = Arrays.copyOf(dataRids, newCap);
+        deleted = Arrays.copyOf(deleted, newCap);
+        links = Arrays.copyOf(links, newCap);
+        nodeRecords = Arrays.copyOf(nodeRecords, newCap);
+        linkRecords = Arrays.copyOf(linkRecords, newCap);
+    }
+
+    /**
+     * A binary heap of (distance, node) pairs on primitive arrays, ordered
+     * either as a min-heap or as a max-heap.
+     */
+    private static class NodeHeap {
+        private float[] dists;
+        private int[] nodes;
+        private int size;
+        private final boolean isMax;
+
+        NodeHeap(int capacity, boolean isMax) {
+            dists = new float[Math.max(capacity, 1)];
+            nodes = new int[dists.length];
+            this.isMax = isMax;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekDist() {
+            return dists[0];
+        }
+
+        private boolean before(float a, float b) {
+            return isMax ? a > b : a < b;
+        }
+
+        void push(float dist, int node) {
+            if (size == dists.length) {
+                dists = Arrays.copyOf(dists, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int pos = size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!before(dist, dists[parent]))
+                    break;
+                dists[pos] = dists[parent];
+                nodes[pos] = nodes[parent];
+                pos = parent;
+            }
+            dists[pos] = dist;
+            nodes[pos] = node;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            float dist = dists[size];
+            int node = nodes[size];
+            int pos = 0;
+            int half = size >>> 1;
+            while (pos < half) {
+                int child = 2 * pos + 1;
+                if (child + 1 < size && before(dists[child + 1], dists[child]))
+                    child++;
+                if (!before(dists[child], dist))
+                    break;
+                dists[pos] = dists[child];
+                nodes[pos] = nodes[child];
+                pos = child;
+            }
+            dists[pos] = dist;
+            nodes[pos] = node;
+            return top;
+        }
+
+        /**
+         * Empties the heap and returns its nodes in ascending order of
+         * distance.
+         */
+        int[] drainAscending() {
+            int[] result = new int[size];
+            if (isMax)
+                for (int i = result.length - 1; i >= 0; i--)
+                    result[i] = pop();
+            else
+                for (int i = 0; i < result.length; i++)
+                    result[i] = pop();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package org.vanilladb.core.storage.index.hnsw;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A hierarchical navigable small world (HNSW) implementation of {@link Index}
+ * for vector fields.
+ *
+ * <p>
+ * The graph is kept in two record files. The node file has one record per
+ * vector, with its level and data record id. The link file has one record per
+ * node and layer holding a fixed-size neighbor list. Both files are read into
+ * an {@link HNSWGraph} shared by all transactions when the index is first used.
+ * Searches run on the in-memory graph; insertions update the graph and write
+ * the new node and every changed neighbor list back to the files.
+ * </p>
+ *
+ * <p>
+ * The files are not logged physically. Insertions and deletions are logged
+ * logically instead, so that a rollback or the recovery undoes an insertion
+ * by marking its node as deleted and undoes a deletion by inserting the
+ * vector again.
+ * </p>
+ */
+public class HNSWIndex extends Index {
+
+    private static final String
+        SCHEMA_NODE = "node", SCHEMA_LEVEL = "level", SCHEMA_LAYER = "layer",
+        SCHEMA_RID_BLOCK = "block", SCHEMA_RID_ID = "id", SCHEMA_DELETED = "deleted",
+        SCHEMA_VECTOR = "vec", SCHEMA_DEGREE = "degree", SCHEMA_NEIGHBOR_PREFIX = "nb";
+    private static final String NODE_FILE_SUFFIX = "_hnsw_node", LINK_FILE_SUFFIX = "_hnsw_link";
+    private static final long LEVEL_SEED = 20240601L;
+
+    /**
+     * The number of neighbors of a node on the upper layers. Layer 0 keeps
+     * twice as many.
+     */
+    public static final int M;
+    public static final int EF_CONSTRUCTION;
+    public static final int EF_SEARCH;
+
+    static {
+        M = CoreProperties.getLoader().getPropertyAsInteger(
+                HNSWIndex.class.getName() + ".M", 16);
+        EF_CONSTRUCTION = CoreProperties.getLoader().getPropertyAsInteger(
+                HNSWIndex.class.getName() + ".EF_CONSTRUCTION", 100);
+        EF_SEARCH = CoreProperties.getLoader().getPropertyAsInteger(
+                HNSWIndex.class.getName() + ".EF_SEARCH", 64);
+    }
+
+    /**
+     * The graph of each HNSW index (index name -> graph).
+     */
+    private static final Map<String, HNSWGraph> graphs = new ConcurrentHashMap<String, HNSWGraph>();
+
+    public static long searchCost(SearchKeyType keyType, long totRecs, long matchRecs) {
+        // a search compares the query with the neighbors of about ef nodes on
+        // layer 0 and of a few nodes per upper layer; the vectors are all in
+        // memory, so the comparisons are counted by the size of the vectors
+        int dim = keyType.get(0).getArgument();
+        int layers = 1 + (int) (Math.log(Math.max(totRecs, 1)) / Math.log(M));
+        long ef = Math.max(EF_SEARCH, matchRecs);
+        long visits = Math.min(Math.max(totRecs, 1), ef * 2 * M + (long) layers * M);
+        return layers + (long) Math.ceil((double) visits * dim * Float.BYTES / Buffer.BUFFER_SIZE);
+    }
+
+    private static String neighborFieldName(int index) {
+        return SCHEMA_NEIGHBOR_PREFIX + index;
+    }
+
+    private static Schema nodeSchema(SearchKeyType keyType) {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_NODE, INTEGER);
+        sch.addField(SCHEMA_LEVEL, INTEGER);
+        sch.addField(SCHEMA_RID_BLOCK, BIGINT);
+        sch.addField(SCHEMA_RID_ID, INTEGER);
+        sch.addField(SCHEMA_DELETED, INTEGER);
+        sch.addField(SCHEMA_VECTOR, keyType.get(0));
+        return sch;
+    }
+
+    private static Schema linkSchema() {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_NODE, INTEGER);
+        sch.addField(SCHEMA_LAYER, INTEGER);
+        sch.addField(SCHEMA_DEGREE, INTEGER);
+        for (int i = 0; i < 2 * M; i++)
+            sch.addField(neighborFieldName(i), INTEGER);
+        return sch;
+    }
+
+    private RecordId[] results;
+    private int pos;
+    private boolean isBeforeFirsted;
+
+    public HNSWIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+        super(ii, keyType, tx);
+    }
+
+    /**
+     * Returns the shared graph of this index, loading it from the index files
+     * if it is not in memory yet.
+     */
+    private HNSWGraph graph() {
+        HNSWGraph graph = graphs.get(ii.indexName());
+        if (graph != null)
+            return graph;
+
+        synchronized (graphs) {
+            graph = graphs.get(ii.indexName());
+            if (graph == null) {
+                graph = loadGraph();
+                graphs.put(ii.indexName(), graph);
+            }
+        }
+        return graph;
+    }
+
+    private HNSWGraph loadGraph() {
+        HNSWGraph graph = new HNSWGraph(M, EF_CONSTRUCTION, LEVEL_SEED);
+
+        RecordFile nodeRf = openNodeFile();
+        nodeRf.beforeFirst();
+        while (nodeRf.next()) {
+            int node = (Integer) nodeRf.getVal(SCHEMA_NODE).asJavaVal();
+            int level = (Integer) nodeRf.getVal(SCHEMA_LEVEL).asJavaVal();
+            long blkNum = (Long) nodeRf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+            int id = (Integer) nodeRf.getVal(SCHEMA_RID_ID).asJavaVal();
+            boolean deleted = (Integer) nodeRf.getVal(SCHEMA_DELETED).asJavaVal() != 0;
+            float[] vec = ((VectorConstant) nodeRf.getVal(SCHEMA_VECTOR)).asJavaVal();
+            graph.restoreNode(node, level, vec,
+                    new RecordId(new BlockId(dataFileName, blkNum), id), deleted,
+                    nodeRf.currentRecordId());
+        }
+        nodeRf.close();
+
+        RecordFile linkRf = openLinkFile();
+        linkRf.beforeFirst();
+        while (linkRf.next()) {
+            int node = (Integer) linkRf.getVal(SCHEMA_NODE).asJavaVal();
+            int layer = (Integer) linkRf.getVal(SCHEMA_LAYER).asJavaVal();
+            int[] nbrs = new int[(Integer) linkRf.getVal(SCHEMA_DEGREE).asJavaVal()];
+            for (int i = 0; i < nbrs.length; i++)
+                nbrs[i] = (Integer) linkRf.getVal(neighborFieldName(i)).asJavaVal();
+            graph.restoreLinks(node, layer, nbrs, linkRf.currentRecordId());
+        }
+        linkRf.close();
+        return graph;
+    }
+
+    @Override
+    public void preLoadToMemory() {
+        graph();
+    }
+
+    /**
+     * Positions the index before the first nearest neighbor of the search
+     * vector. A {@link VectorSearchRange} that asks for k neighbors gets the k
+     * closest ones found by the graph search; any other search range gets
+     * {@link #EF_SEARCH} of them. Neighbors are returned in ascending order of
+     * distance. A range search gets the vectors within its radius found by a
+     * walk over the graph, in no particular order; the walk may miss vectors
+     * that the links do not connect to the ball, so the planner does not push
+     * range searches down to this index.
+     *
+     * @see Index#beforeFirst(SearchRange)
+     */
+    @Override
+    public void beforeFirst(SearchRange searchRange) {
+        if (!searchRange.isSingleValue())
+            throw new UnsupportedOperationException();
+
+        SearchKey searchKey = searchRange.asSearchKey();
+        float[] query = ((VectorConstant) searchKey.get(0)).asJavaVal();
+        HNSWGraph graph = graph();
+        int[] nodes;
+        if (searchRange instanceof VectorSearchRange
+                && ((VectorSearchRange) searchRange).hasRadius()) {
+            // the graph ranks nodes by squared Euclidean distances
+            double radius = ((VectorSearchRange) searchRange).radius();
+            nodes = graph.searchRadius(query, (float) (radius < 0 ? -1 : radius * radius),
+                    EF_SEARCH);
+        } else {
+            int k = EF_SEARCH;
+            if (searchRange instanceof VectorSearchRange
+                    && ((VectorSearchRange) searchRange).k() > 0)
+                k = ((VectorSearchRange) searchRange).k();
+            nodes = graph.search(query, k, Math.max(k, EF_SEARCH));
+        }
+        results = new RecordId[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+            results[i] = graph.dataRecordId(nodes[i]);
+        pos = -1;
+
+        isBeforeFirsted = true;
+    }
+
+    @Override
+    public boolean next() {
+        if (!isBeforeFirsted)
+            throw new IllegalStateException("You must call beforeFirst() before iterating index '"
+                    + ii.indexName() + "'");
+
+        return ++pos < results.length;
+    }
+
+    @Override
+    public RecordId getDataRecordId() {
+        return results[pos];
+    }
+
+    /**
+     * Inserts the vector of a data record into the graph. The insertion is
+     * skipped if the record already has a live node, which happens when the
+     * undo of a deletion whose mark never reached the disk is replayed by the
+     * recovery.
+     *
+     * @see Index#insert(SearchKey, RecordId, boolean)
+     */
+    @Override
+    public void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        float[] vec = ((VectorConstant) key.get(0)).copy();
+        HNSWGraph graph = graph();
+        List<int[]> changedLists = new ArrayList<int[]>();
+        if (graph.nodeOf(dataRecordId) >= 0)
+            return;
+
+        // log the logical operation starts
+        if (doLogicalLogging)
+            tx.recoveryMgr().logLogicalStart();
+
+        // keep the files in the same order as the graph
+        synchronized (graph) {
+            int node = graph.insert(vec, dataRecordId, changedLists);
+
+            RecordFile nodeRf = openNodeFile();
+            nodeRf.insert();
+            nodeRf.setVal(SCHEMA_NODE, new IntegerConstant(node));
+            nodeRf.setVal(SCHEMA_LEVEL, new IntegerConstant(graph.level(node)));
+            nodeRf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
+            nodeRf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+            nodeRf.setVal(SCHEMA_DELETED, new IntegerConstant(0));
+            nodeRf.setVal(SCHEMA_VECTOR, key.get(0));
+            graph.setNodeRecord(node, nodeRf.currentRecordId());
+            nodeRf.close();
+
+            RecordFile linkRf = openLinkFile();
+            for (int layer = 0; layer <= graph.level(node); layer++) {
+                linkRf.insert();
+                linkRf.setVal(SCHEMA_NODE, new IntegerConstant(node));
+                linkRf.setVal(SCHEMA_LAYER, new IntegerConstant(layer));
+                writeNeighbors(linkRf, graph.neighbors(node, layer));
+                graph.setLinkRecord(node, layer, linkRf.currentRecordId());
+            }
+            for (int[] changed : changedLists) {
+                linkRf.moveToRecordId(graph.linkRecord(changed[0], changed[1]));
+                writeNeighbors(linkRf, graph.neighbors(changed[0], changed[1]));
+            }
+            linkRf.close();
+        }
+
+        // log the logical operation ends
+        if (doLogicalLogging)
+            tx.recoveryMgr().logIndexInsertionEnd(ii.indexName(), key,
+                    dataRecordId.block().number(), dataRecordId.id());
+    }
+
+    private void writeNeighbors(RecordFile linkRf, int[] nbrs) {
+        linkRf.setVal(SCHEMA_DEGREE, new IntegerConstant(nbrs.length));
+        for (int i = 0; i < nbrs.length; i++)
+            linkRf.setVal(neighborFieldName(i), new IntegerConstant(nbrs[i]));
+    }
+
+    /**
+     * Marks the node of the data record as deleted. The node keeps its links
+     * so that searches can still route through it.
+     *
+     * @see Index#delete(SearchKey, RecordId, boolean)
+     */
+    @Override
+    public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        HNSWGraph graph = graph();
+
+        // log the logical operation starts
+        if (doLogicalLogging)
+            tx.recoveryMgr().logLogicalStart();
+
+        synchronized (graph) {
+            int node = graph.delete(dataRecordId);
+            if (node >= 0) {
+                RecordFile nodeRf = openNodeFile();
+                nodeRf.moveToRecordId(graph.nodeRecord(node));
+                nodeRf.setVal(SCHEMA_DELETED, new IntegerConstant(1));
+                nodeRf.close();
+            }
+        }
+
+        // log the logical operation ends
+        if (doLogicalLogging)
+            tx.recoveryMgr().logIndexDeletionEnd(ii.indexName(), key,
+                    dataRecordId.block().number(), dataRecordId.id());
+    }
+
+    @Override
+    public void close() {
+        results = null;
+        isBeforeFirsted = false;
+    }
+
+    private RecordFile openNodeFile() {
+        return openFile(new TableInfo(ii.indexName() + NODE_FILE_SUFFIX, nodeSchema(keyType)));
+    }
+
+    private RecordFile openLinkFile() {
+        return openFile(new TableInfo(ii.indexName() + LINK_FILE_SUFFIX, linkSchema()));
+    }
+
+    private RecordFile openFile(TableInfo ti) {
+        // the underlying record file should not perform logging
+        RecordFile rf = ti.open(tx, false);
+
+        // initialize the file header if needed
+        if (rf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return rf;
+    }
+}
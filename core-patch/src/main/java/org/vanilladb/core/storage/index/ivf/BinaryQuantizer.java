@@ -0,0 +1,163 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A 1-bit binary quantizer. A vector is encoded by the signs of its residual
+ * to a center, one bit per dimension packed 64 to a {@code long}, together
+ * with the norm of the residual. A 128-dimensional vector thus costs 16 bytes
+ * of codes instead of 512 bytes of floats.
+ *
+ * <p>
+ * Two codes are compared by the Hamming distance of their bits, computed by
+ * XOR and {@link Long#bitCount(long)}. The fraction of differing bits
+ * estimates the angle between the two residuals, so that
+ * {@link #distance(long[], int, float, long[], int, float)} estimates their
+ * squared Euclidean distance by the law of cosines. The estimate is coarse,
+ * so it is meant to pick candidates that are re-ranked by exact distances.
+ * </p>
+ */
+public class BinaryQuantizer {
+
+    /**
+     * Returns the number of {@code long} words holding the code of a vector.
+     *
+     * @param dim
+     *            the dimension of the vectors
+     * @return the number of code words
+     */
+    public static int numCodeWords(int dim) {
+        return (dim + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Returns the number of bits that differ between two codes.
+     *
+     * @param a
+     *            the words of the first code
+     * @param aOffset
+     *            the index of the first word of the first code
+     * @param b
+     *            the words of the second code
+     * @param bOffset
+     *            the index of the first word of the second code
+     * @param numWords
+     *            the number of words of a code
+     * @return the Hamming distance of the codes
+     */
+    public static int hamming(long[] a, int aOffset, long[] b, int bOffset, int numWords) {
+        int bits = 0;
+        for (int w = 0; w < numWords; w++)
+            bits += Long.bitCount(a[aOffset + w] ^ b[bOffset + w]);
+        return bits;
+    }
+
+    private final int dim, numWords;
+    // the cosine of the estimated angle for each Hamming distance
+    private final float[] cosines;
+
+    /**
+     * Creates a binary quantizer of vectors of the given dimension.
+     *
+     * @param dim
+     *            the dimension of the vectors
+     */
+    public BinaryQuantizer(int dim) {
+        this.dim = dim;
+        this.numWords = numCodeWords(dim);
+        this.cosines = new float[dim + 1];
+        for (int h = 0; h <= dim; h++)
+            cosines[h] = (float) Math.cos(Math.PI * h / dim);
+    }
+
+    public int dimension() {
+        return dim;
+    }
+
+    public int numWords() {
+        return numWords;
+    }
+
+    /**
+     * Encodes the residual of a vector to a center. A bit is set if the
+     * component of the vector is greater than that of the center.
+     *
+     * @param vec
+     *            the vector to be encoded
+     * @param center
+     *            the array holding the center
+     * @param centerOffset
+     *            the index of the first component of the center
+     * @param words
+     *            the array to hold the code
+     * @param wordOffset
+     *            the index of the first word of the code
+     * @return the norm of the residual
+     */
+    public float encode(float[] vec, float[] center, int centerOffset, long[] words,
+            int wordOffset) {
+        double norm = 0;
+        for (int w = 0; w < numWords; w++)
+            words[wordOffset + w] = 0;
+        for (int j = 0; j < dim; j++) {
+            float diff = vec[j] - center[centerOffset + j];
+            if (diff > 0)
+                words[wordOffset + j / Long.SIZE] |= 1L << (j % Long.SIZE);
+            norm += diff * diff;
+        }
+        return (float) Math.sqrt(norm);
+    }
+
+    /**
+     * Encodes the residual of a vector held in a buffer to a center.
+     *
+     * @param buf
+     *            the buffer holding the vector
+     * @param offset
+     *            the byte offset of the vector in the buffer
+     * @param center
+     *            the center of the residual
+     * @param words
+     *            the array to hold the code
+     * @param wordOffset
+     *            the index of the first word of the code
+     * @return the norm of the residual
+     */
+    public float encode(ByteBuffer buf, int offset, float[] center, long[] words,
+            int wordOffset) {
+        double norm = 0;
+        for (int w = 0; w < numWords; w++)
+            words[wordOffset + w] = 0;
+        for (int j = 0; j < dim; j++) {
+            float diff = buf.getFloat(offset + j * Float.BYTES) - center[j];
+            if (diff > 0)
+                words[wordOffset + j / Long.SIZE] |= 1L << (j % Long.SIZE);
+            norm += diff * diff;
+        }
+        return (float) Math.sqrt(norm);
+    }
+
+    /**
+     * Estimates the squared Euclidean distance between two vectors from the
+     * codes and norms of their residuals to the same center.
+     *
+     * @param queryCodes
+     *            the array holding the code of the query
+     * @param queryOffset
+     *            the index of the first word of the query code
+     * @param queryNorm
+     *            the residual norm of the query
+     * @param codes
+     *            the array holding the code of the other vector
+     * @param offset
+     *            the index of the first word of the code
+     * @param norm
+     *            the residual norm of the other vector
+     * @return the estimated squared distance
+     */
+    public float distance(long[] queryCodes, int queryOffset, float queryNorm, long[] codes,
+            int offset, float norm) {
+        int bits = hamming(queryCodes, queryOffset, codes, offset, numWords);
+        return queryNorm * queryNorm + norm * norm - 2 * queryNorm * norm * cosines[bits];
+    }
+}
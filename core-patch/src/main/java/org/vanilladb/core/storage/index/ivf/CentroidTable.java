@@ -0,0 +1,133 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import org.vanilladb.core.sql.distfn.VectorOps;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * An immutable, in-memory copy of the centroids of an IVF index. The
+ * centroids are kept in a flat row-major {@code float[]} so that routing a
+ * query only touches {@code numClusters * dim} floats. Since the table never
+ * changes once built, a single instance is shared by all transactions and
+ * replaced as a whole after the index is re-trained.
+ */
+public class CentroidTable {
+
+    /**
+     * The table of an index that has not been trained yet.
+     */
+    static final CentroidTable UNTRAINED = new CentroidTable(new float[0], 0);
+
+    private final float[] centroids;
+    private final int numClusters, dim;
+
+    /**
+     * Creates a centroid table. The given matrix is owned by the table
+     * afterwards and must not be modified by the caller.
+     *
+     * @param centroids
+     *            the flat row-major centroid matrix
+     * @param dim
+     *            the dimension of each centroid
+     */
+    CentroidTable(float[] centroids, int dim) {
+        this.centroids = centroids;
+        this.dim = dim;
+        this.numClusters = dim == 0 ? 0 : centroids.length / dim;
+    }
+
+    public boolean isTrained() {
+        return numClusters > 0;
+    }
+
+    public int numClusters() {
+        return numClusters;
+    }
+
+    public int dimension() {
+        return dim;
+    }
+
+    /**
+     * Returns the flat row-major centroid matrix, which must not be modified.
+     */
+    float[] centroids() {
+        return centroids;
+    }
+
+    /**
+     * Computes the residual of the given vector with respect to a centroid,
+     * i.e., the vector minus the centroid.
+     *
+     * @param vec
+     *            the vector
+     * @param clusterId
+     *            the id of the centroid
+     * @param out
+     *            the array of length {@code dim} to hold the residual
+     * @return the given output array
+     */
+    public float[] residual(float[] vec, int clusterId, float[] out) {
+        int offset = clusterId * dim;
+        for (int j = 0; j < dim; j++)
+            out[j] = vec[j] - centroids[offset + j];
+        return out;
+    }
+
+    /**
+     * Returns the Euclidean distance between the given vector and a centroid.
+     *
+     * @param vec
+     *            the vector
+     * @param clusterId
+     *            the id of the centroid
+     * @return the distance to the centroid
+     */
+    public float distance(float[] vec, int clusterId) {
+        return (float) Math.sqrt(VectorOps.squaredEuclidean(centroids, clusterId * dim, vec, dim));
+    }
+
+    /**
+     * Returns the id of the centroid closest to the given vector.
+     *
+     * @param vec
+     *            the vector to be routed
+     * @return the id of the closest cluster, or -1 if the index has not been
+     *         trained
+     */
+    public int nearest(float[] vec) {
+        if (!isTrained())
+            return -1;
+        return KMeans.nearest(centroids, numClusters, dim, vec);
+    }
+
+    /**
+     * Returns the ids of the n centroids closest to the given vector, in
+     * ascending order of distance.
+     *
+     * @param vec
+     *            the vector to be routed
+     * @param n
+     *            the number of clusters wanted
+     * @return the ids of at most n closest clusters, or an empty array if the
+     *         index has not been trained
+     */
+    public int[] nearest(float[] vec, int n) {
+        n = Math.min(n, numClusters);
+        if (n <= 0)
+            return new int[0];
+        if (n == 1)
+            return new int[] { nearest(vec) };
+
+        TopKHeap<Integer> heap = new TopKHeap<Integer>(n);
+        for (int c = 0; c < numClusters; c++) {
+            float dist = VectorOps.squaredEuclidean(centroids, c * dim, vec, dim);
+            if (dist < heap.threshold())
+                heap.offer(dist, c);
+        }
+        Integer[] ranked = heap.drainSorted(new Integer[n], null);
+        int[] ids = new int[ranked.length];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = ranked[i];
+        return ids;
+    }
+}
@@ -0,0 +1,61 @@
+package org.vanilladb.core.storage.index.ivf;
+
+/**
+ * The radius of each cluster of an IVF index, i.e., an upper bound of the
+ * distances from its centroid to its entries. A range search skips the
+ * clusters whose balls do not intersect the ball around the query. The radii
+ * belong to one centroid table, and are computed again for a new one.
+ *
+ * <p>
+ * The radii are published before the posting files are scanned, so that the
+ * entries inserted during the scan grow them as well, and they are used by
+ * range searches only after the scan has completed.
+ * </p>
+ */
+class ClusterRadii {
+
+    private final CentroidTable table;
+    private final float[] radii;
+    private volatile boolean isComplete;
+
+    /**
+     * Creates the radii of the clusters of a centroid table, all zero until
+     * the entries grow them.
+     */
+    ClusterRadii(CentroidTable table) {
+        this.table = table;
+        this.radii = new float[table.numClusters()];
+    }
+
+    CentroidTable centroidTable() {
+        return table;
+    }
+
+    synchronized float radius(int clusterId) {
+        return radii[clusterId];
+    }
+
+    /**
+     * Enlarges the radius of a cluster to cover a new entry. Deleted entries
+     * never shrink a radius, which stays an upper bound.
+     */
+    synchronized void grow(int clusterId, float distance) {
+        if (distance > radii[clusterId])
+            radii[clusterId] = distance;
+    }
+
+    /**
+     * Returns whether the radii cover all the entries in the posting files.
+     */
+    boolean isComplete() {
+        return isComplete;
+    }
+
+    /**
+     * Marks the radii as covering all the entries, after the posting files
+     * have been scanned.
+     */
+    void markComplete() {
+        isComplete = true;
+    }
+}
@@ -0,0 +1,138 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import static org.vanilladb.core.sql.Type.DOUBLE;
+
+import java.util.List;
+
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * An IVF index whose posting entries hold 1-bit binary codes instead of full
+ * vectors. The residual of each vector to its centroid is encoded by a
+ * {@link BinaryQuantizer} into one bit per dimension plus the norm of the
+ * residual, which cuts a posting entry of a 128-dimensional vector from 512
+ * bytes of floats to 16 bytes of codes.
+ *
+ * <p>
+ * A k-nearest neighbor search encodes the residual of the query to each
+ * probed centroid and ranks the entries of the cluster by the distances
+ * estimated from their Hamming distances to the query code. The best
+ * {@code k * RERANK_FACTOR} candidates are then re-ranked by the distance
+ * function over their exact vectors in the data table. The codes need no
+ * training besides the centroids.
+ * </p>
+ */
+public class IVFBQIndex extends IVFIndex {
+
+    private static final String SCHEMA_NORM = "norm";
+
+    /**
+     * The number of candidates per neighbor that are re-ranked by exact
+     * distances. Zero returns the neighbors in the order of the estimated
+     * distances.
+     */
+    public static final int RERANK_FACTOR;
+
+    static {
+        RERANK_FACTOR = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFBQIndex.class.getName() + ".RERANK_FACTOR", 10);
+    }
+
+    private final BinaryQuantizer bq;
+
+    public IVFBQIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+        super(ii, keyType, tx);
+        this.bq = new BinaryQuantizer(dim);
+    }
+
+    /**
+     * Returns the schema of the posting entries, which hold the packed code
+     * of a residual, its norm and the data record id.
+     */
+    @Override
+    protected Schema postingSchema() {
+        Schema sch = codePostingSchema(BinaryQuantizer.numCodeWords(dim));
+        sch.addField(SCHEMA_NORM, DOUBLE);
+        return sch;
+    }
+
+    @Override
+    protected void insertEntry(RecordFile postingRf, CentroidTable table, int clusterId,
+            VectorConstant vec, RecordId dataRecordId) {
+        long[] words = new long[bq.numWords()];
+        float norm = bq.encode(vec.asJavaVal(), table.centroids(), clusterId * dim, words, 0);
+
+        insertCodeEntry(postingRf, words, dataRecordId);
+        postingRf.setVal(SCHEMA_NORM, new DoubleConstant(norm));
+    }
+
+    /**
+     * Returns the residual norm kept in the entry, which is its distance to
+     * the centroid.
+     */
+    @Override
+    protected float distanceToCentroid(RecordFile postingRf, RecordFile dataRf,
+            CentroidTable table, int clusterId) {
+        return ((Double) postingRf.getVal(SCHEMA_NORM).asJavaVal()).floatValue();
+    }
+
+    @Override
+    protected int rerankFactor() {
+        return RERANK_FACTOR;
+    }
+
+    @Override
+    protected boolean ranksByEstimates() {
+        return true;
+    }
+
+    /**
+     * Ranks the entries of a cluster by their estimated distances to each
+     * query. The residual of each query to the centroid of the cluster is
+     * encoded once, and the code of an entry is read once for all the queries.
+     */
+    @Override
+    protected void scanCluster(int clusterId, DistanceFn[] distFns, int[] queries,
+            List<TopKHeap<RecordId>> heaps) {
+        CentroidTable table = centroidTable();
+        if (!table.isTrained())
+            return;
+
+        int numWords = bq.numWords();
+        long[] queryCodes = new long[queries.length * numWords];
+        float[] queryNorms = new float[queries.length];
+        for (int i = 0; i < queries.length; i++)
+            queryNorms[i] = bq.encode(distFns[queries[i]].getQueryVector().asJavaVal(),
+                    table.centroids(), clusterId * dim, queryCodes, i * numWords);
+
+        long[] words = new long[numWords];
+        RecordFile postingRf = openPostingFile(clusterId);
+        postingRf.beforeFirst();
+        while (postingRf.next()) {
+            readCode(postingRf, words);
+            float norm = ((Double) postingRf.getVal(SCHEMA_NORM).asJavaVal()).floatValue();
+            RecordId rid = null;
+            for (int i = 0; i < queries.length; i++) {
+                TopKHeap<RecordId> heap = heaps.get(queries[i]);
+                float dist = bq.distance(queryCodes, i * numWords, queryNorms[i], words, 0,
+                        norm);
+                if (dist < heap.threshold()) {
+                    if (rid == null)
+                        rid = entryRecordId(postingRf);
+                    heap.offer(dist, rid);
+                }
+            }
+        }
+        postingRf.close();
+    }
+}
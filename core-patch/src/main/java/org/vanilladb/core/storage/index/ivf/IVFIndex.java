@@ -1,63 +1,150 @@
 package org.vanilladb.core.storage.index.ivf;
 
-import static org.vanilladb.core.sql.Type.DOUBLE;
 import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.INTEGER;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Vector;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.BigIntConstant;
 import org.vanilladb.core.sql.IntegerConstant;
-import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.DoubleConstant;
 import org.vanilladb.core.sql.VectorConstant;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.index.Index;
 import org.vanilladb.core.storage.index.SearchKey;
 import org.vanilladb.core.storage.index.SearchKeyType;
 import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.index.VectorSearchRange;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.record.RecordPage;
 import org.vanilladb.core.storage.tx.Transaction;
-import org.vanilladb.core.sql.distfn.DistanceFn;
-import org.vanilladb.core.sql.distfn.EuclideanFn;
 import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
 
+/**
+ * An inverted file (IVF) implementation of {@link Index} for vector fields.
+ * The vectors are partitioned by k-means into {@link #NUM_CLUSTERS} clusters.
+ * The centroids are kept in a centroid file, and the entries of each cluster
+ * are kept in a posting file named after the index name and the cluster id.
+ *
+ * <p>
+ * An index that has not been trained yet has no posting lists. Insertions
+ * issued before {@link #train(String, List, String, Transaction)} are
+ * deferred, since training assigns every record of the table anyway.
+ * </p>
+ *
+ * <p>
+ * Insertions after training may leave the clusters unbalanced. Every
+ * {@link #MAINTENANCE_INTERVAL} insertions, an {@link IVFMaintenanceTask} is
+ * scheduled to {@link #rebalance()} the index in the background.
+ * </p>
+ */
 public class IVFIndex extends Index {
+    private static Logger logger = Logger.getLogger(IVFIndex.class.getName());
 
-    private static final String 
+    private static final String
         SCHEMA_VECTOR_PREFIX = "vec", SCHEMA_RID_BLOCK = "block", SCHEMA_RID_ID = "id",
-        SCHEMA_CLUSTER_ID = "cluster_id", SCHEMA_DATA_PAGE = "dt_page";
-    private static final int NUM_CLUSTERS;
+        SCHEMA_CLUSTER_ID = "cluster_id", SCHEMA_DATA_PAGE = "dt_page",
+        SCHEMA_CENTROID = "centroid", SCHEMA_CODE_PREFIX = "code";
+    private static final String CENTROID_FILE_SUFFIX = "_centroid";
+    private static final int REDISTRIBUTE_BATCH_SIZE = 8192;
+    private static final long TRAIN_SEED = 20240601L;
+
+    public static final int NUM_CLUSTERS;
+    public static final int NUM_ITERATIONS;
+    public static final int TRAIN_SAMPLE_SIZE;
+    public static final int NPROBE;
+    public static final int MAINTENANCE_INTERVAL;
+    public static final int SPLIT_FACTOR;
+    public static final int MERGE_FACTOR;
 
     static {
-        NUM_CLUSTERS = CoreProperties.getLoader().getPropertyAsInteger(IVFIndex.class.getName() + ".NUM_CLUSTERS", 100);
+        NUM_CLUSTERS = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFIndex.class.getName() + ".NUM_CLUSTERS", 100);
+        NUM_ITERATIONS = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFIndex.class.getName() + ".NUM_ITERATIONS", 20);
+        TRAIN_SAMPLE_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFIndex.class.getName() + ".TRAIN_SAMPLE_SIZE", 50000);
+        NPROBE = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFIndex.class.getName() + ".NPROBE", 1);
+        MAINTENANCE_INTERVAL = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFIndex.class.getName() + ".MAINTENANCE_INTERVAL", 10000);
+        SPLIT_FACTOR = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFIndex.class.getName() + ".SPLIT_FACTOR", 4);
+        MERGE_FACTOR = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFIndex.class.getName() + ".MERGE_FACTOR", 8);
     }
+
+    /**
+     * The centroids of each IVF index (index name -> centroid table), which
+     * are shared by all transactions. A table is loaded from the centroid
+     * file on first use and replaced after the index is trained or
+     * rebalanced.
+     */
+    private static final Map<String, CentroidTable> centroidTables =
+            new ConcurrentHashMap<String, CentroidTable>();
+
+    /**
+     * The number of insertions into each IVF index (index name -> count)
+     * since the index was loaded, which paces the maintenance checks.
+     */
+    private static final Map<String, AtomicInteger> insertCounts =
+            new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * The cluster radii of each IVF index (index name -> radii), which are
+     * computed on the first range search over the current centroids.
+     */
+    private static final Map<String, ClusterRadii> clusterRadii =
+            new ConcurrentHashMap<String, ClusterRadii>();
+
+    /**
+     * The encoding of each quantized IVF index (index name -> quantizer),
+     * which is shared by all transactions. An encoding is loaded from the
+     * files of the index on first use and replaced after the index is
+     * trained.
+     */
+    private static final Map<String, Object> encodings = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * A posting entry that is moved to another cluster by a rebalance.
+     */
+    private static class MovedEntry {
+        int clusterId;
+        RecordId slot, dataRecordId;
+        float[] vec;
+    }
+
 	private static String vecFieldName(int index) {
 		return SCHEMA_VECTOR_PREFIX + index;
 	}
-	public static long searchCost(SearchKeyType keyType, long totRecs, long matchRecs) {
-        // copied from HashIndex.java
-		int rpb = Buffer.BUFFER_SIZE / RecordPage.slotSize(schema(keyType));
-		return (totRecs / rpb) / NUM_CLUSTERS;
-	}
+
+    private static String codeFieldName(int index) {
+        return SCHEMA_CODE_PREFIX + index;
+    }
 
 	/**
 	 * Returns the schema of the index records.
-	 * 
+	 *
 	 * @param fldType
 	 *            the type of the indexed field
-	 * 
+	 *
 	 * @return the schema of the index records
 	 */
 	private static Schema schema(SearchKeyType keyType) {
@@ -69,35 +156,647 @@ public class IVFIndex extends Index {
         sch.addField(SCHEMA_RID_ID, INTEGER);
         return sch;
     }
-    // Helper class to represent a vector record
-    private static class VectorRecord {
-        VectorConstant vec;
-        RecordId recordId;
 
-        VectorRecord(VectorConstant vec, RecordId recordId) {
-            this.vec= vec;
-            this.recordId = recordId;
-        }
+    /**
+     * Returns the schema of posting entries that hold the packed codes of a
+     * vector instead of the vector, and its data record id. A quantized index
+     * may add fields of its own.
+     *
+     * @param numWords
+     *            the number of 64-bit words of a code
+     * @return the schema of the posting records
+     */
+    protected static Schema codePostingSchema(int numWords) {
+        Schema sch = new Schema();
+        for (int i = 0; i < numWords; i++)
+            sch.addField(codeFieldName(i), BIGINT);
+        sch.addField(SCHEMA_RID_BLOCK, BIGINT);
+        sch.addField(SCHEMA_RID_ID, INTEGER);
+        return sch;
+    }
+
+    /**
+     * Appends a posting entry with the given code, as laid out by
+     * {@link #codePostingSchema(int)}. The posting file stays at the new
+     * entry, so the caller may set its other fields.
+     *
+     * @param postingRf
+     *            the opened posting file of a cluster
+     * @param words
+     *            the packed code of the vector
+     * @param dataRecordId
+     *            the record id of the vector in the data table
+     */
+    protected static void insertCodeEntry(RecordFile postingRf, long[] words,
+            RecordId dataRecordId) {
+        postingRf.insert();
+        for (int i = 0; i < words.length; i++)
+            postingRf.setVal(codeFieldName(i), new BigIntConstant(words[i]));
+        postingRf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
+        postingRf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
     }
-    private int numClusters;
-    private int clusterID;
-    private List<List<VectorRecord>> clusters;
+
+    /**
+     * Reads the packed code of the current entry of a posting file laid out
+     * by {@link #codePostingSchema(int)}.
+     *
+     * @param postingRf
+     *            the posting file positioned at the entry
+     * @param words
+     *            the array to be filled with the code
+     */
+    protected static void readCode(RecordFile postingRf, long[] words) {
+        for (int i = 0; i < words.length; i++)
+            words[i] = (Long) postingRf.getVal(codeFieldName(i)).asJavaVal();
+    }
+
+    /**
+     * Returns the schema of the centroid records.
+     */
+    private static Schema centroidSchema(SearchKeyType keyType) {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_CLUSTER_ID, INTEGER);
+        sch.addField(SCHEMA_CENTROID, keyType.get(0));
+        return sch;
+    }
+
 	private SearchKey searchKey;
 	private RecordFile rf;
 	private boolean isBeforeFirsted;
-    DistanceFn distFn_vec;
+    protected int dim;
+
+    // the clusters to be scanned by next() and the position in them
+    private int[] probes;
+    private int probePos;
+
+    // the merged top-k candidates of a k-nearest neighbor search
+    private RecordId[] topK;
+    private int topKPos;
+
     public IVFIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
         super(ii, keyType, tx);
-        this.clusters = new ArrayList<>();
-        this.distFn_vec = new EuclideanFn("i_emb");
+        this.dim = keyType.get(0).getArgument();
     }
-    public static void train(String tblname, List<String> embFields, 
+
+    /**
+     * Trains the specified IVF index over the vectors of the given table. The
+     * centroids are learned by k-means on a uniform sample of the table and
+     * persisted in the centroid file of the index. Then every record of the
+     * table is redistributed to the posting file of its closest centroid.
+     *
+     * @param tblname
+     *            the name of the indexed table
+     * @param embFields
+     *            the indexed vector field
+     * @param idxName
+     *            the name of the IVF index
+     * @param tx
+     *            the calling transaction
+     */
+    public static void train(String tblname, List<String> embFields,
             String idxName, Transaction tx) {
+        IndexInfo ii = VanillaDb.catalogMgr().getIndexInfoByName(idxName, tx);
+        if (ii == null || !ii.indexType().isInvertedFileIndex()
+                || !ii.tableName().equals(tblname)
+                || !ii.fieldNames().equals(embFields))
+            throw new IllegalArgumentException("no IVF index '" + idxName
+                    + "' on " + tblname + embFields);
+
+        IVFIndex idx = (IVFIndex) ii.open(tx);
+        try {
+            idx.train();
+        } finally {
+            idx.close();
+        }
     }
+
+    /**
+     * Builds the index by training it, which assigns every record of the
+     * data table to a cluster.
+     */
+    @Override
+    public void buildFromTable() {
+        train();
+    }
+
+    private void train() {
+        close();
+        int oldNumClusters = centroidTable().numClusters();
+        float[][] samples = sampleVectors();
+        int k = Math.min(NUM_CLUSTERS, samples.length);
+        if (k == 0)
+            return;
+
+        KMeans kmeans = new KMeans(k, dim, NUM_ITERATIONS, TRAIN_SEED);
+        float[] centroids = kmeans.train(samples);
+        CentroidTable table = new CentroidTable(centroids, dim);
+
+        writeCentroids(centroids, k);
+        trainEncoding(samples, kmeans, table);
+        // rebalancing may have added clusters beyond NUM_CLUSTERS
+        for (int c = 0; c < Math.max(NUM_CLUSTERS, oldNumClusters); c++)
+            clearPostingFile(c);
+        redistribute(kmeans, table);
+
+        // publish the new centroids only after all entries are in place
+        centroidTables.put(ii.indexName(), table);
+    }
+
+    /**
+     * Trains whatever the posting entries need besides the centroids. It is
+     * called after the centroids are learned and before the entries are
+     * redistributed. This index stores full vectors, so there is nothing to
+     * train.
+     *
+     * @param samples
+     *            the sampled vectors that trained the centroids
+     * @param kmeans
+     *            the clusterer that trained the centroids
+     * @param table
+     *            the new centroids
+     */
+    protected void trainEncoding(float[][] samples, KMeans kmeans, CentroidTable table) {
+        // nothing to do
+    }
+
+    /**
+     * Draws a uniform reservoir sample of at most {@link #TRAIN_SAMPLE_SIZE}
+     * vectors from the data table in one scan.
+     */
+    private float[][] sampleVectors() {
+        String fldName = ii.fieldNames().get(0);
+        Random random = new Random(TRAIN_SEED);
+        float[][] reservoir = new float[TRAIN_SAMPLE_SIZE][];
+        long seen = 0;
+
+        RecordFile dataRf = dataTableInfo().open(tx, false);
+        dataRf.beforeFirst();
+        while (dataRf.next()) {
+            float[] vec = ((VectorConstant) dataRf.getVal(fldName)).asJavaVal();
+            // release the read lock on the record, if the isolation level allows
+            tx.endStatement();
+            if (seen < TRAIN_SAMPLE_SIZE)
+                reservoir[(int) seen] = vec;
+            else {
+                long pos = (long) (random.nextDouble() * (seen + 1));
+                if (pos < TRAIN_SAMPLE_SIZE)
+                    reservoir[(int) pos] = vec;
+            }
+            seen++;
+        }
+        dataRf.close();
+
+        if (seen < TRAIN_SAMPLE_SIZE) {
+            float[][] samples = new float[(int) seen][];
+            System.arraycopy(reservoir, 0, samples, 0, samples.length);
+            return samples;
+        }
+        return reservoir;
+    }
+
+    /**
+     * Replaces the content of the centroid file with the given centroids.
+     */
+    private void writeCentroids(float[] centroids, int k) {
+        RecordFile centroidRf = openCentroidFile();
+        centroidRf.beforeFirst();
+        while (centroidRf.next())
+            centroidRf.delete();
+
+        for (int c = 0; c < k; c++) {
+            float[] centroid = new float[dim];
+            System.arraycopy(centroids, c * dim, centroid, 0, dim);
+            centroidRf.insert();
+            centroidRf.setVal(SCHEMA_CLUSTER_ID, new IntegerConstant(c));
+            centroidRf.setVal(SCHEMA_CENTROID, new VectorConstant(centroid));
+        }
+        centroidRf.close();
+    }
+
+    /**
+     * Returns the shared centroid table of this index, loading it from the
+     * centroid file if it is not in memory yet.
+     *
+     * @return the centroid table of this index
+     */
+    public CentroidTable centroidTable() {
+        CentroidTable table = centroidTables.get(ii.indexName());
+        if (table != null)
+            return table;
+
+        synchronized (centroidTables) {
+            table = centroidTables.get(ii.indexName());
+            if (table == null) {
+                float[] centroids = readCentroids();
+                table = centroids == null ? CentroidTable.UNTRAINED
+                        : new CentroidTable(centroids, dim);
+                centroidTables.put(ii.indexName(), table);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Returns the shared encoding of this quantized index, loading it if it
+     * is not in memory yet.
+     *
+     * @param loader
+     *            reads the encoding from the files of this index, or returns
+     *            null if the index has not been trained
+     * @return the encoding, or null if the index has not been trained
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T sharedEncoding(Supplier<T> loader) {
+        Object encoding = encodings.get(ii.indexName());
+        if (encoding != null)
+            return (T) encoding;
+
+        synchronized (encodings) {
+            encoding = encodings.get(ii.indexName());
+            if (encoding == null) {
+                encoding = loader.get();
+                if (encoding != null)
+                    encodings.put(ii.indexName(), encoding);
+            }
+        }
+        return (T) encoding;
+    }
+
+    /**
+     * Replaces the shared encoding of this quantized index with a newly
+     * trained one.
+     *
+     * @param encoding
+     *            the new encoding
+     */
+    protected void publishEncoding(Object encoding) {
+        encodings.put(ii.indexName(), encoding);
+    }
+
+    /**
+     * Returns true if the centroids of this index have been trained.
+     *
+     * @return true if this index has been trained
+     */
+    public boolean isTrained() {
+        return centroidTable().isTrained();
+    }
+
+    /**
+     * Returns the number of blocks of each posting file, excluding its
+     * header, which is the size of each cluster in blocks.
+     *
+     * @return the sizes of the clusters in blocks
+     */
+    public long[] clusterBlocks() {
+        long[] blocks = new long[centroidTable().numClusters()];
+        for (int c = 0; c < blocks.length; c++)
+            blocks[c] = Math.max(0, VanillaDb.fileMgr().size(postingFileName(c)) - 1);
+        return blocks;
+    }
+
+    /**
+     * Estimates the number of block accesses of a search, excluding the
+     * returned records. The query is routed by comparing it with every
+     * centroid, which is counted by the size of the centroids in blocks. A
+     * query tends to fall into large clusters, since the queries follow the
+     * distribution of the data, so a probed cluster is expected to be as large
+     * as the size-weighted mean of the cluster sizes rather than the plain
+     * mean. Quantized entries take fewer blocks, which the sizes of the
+     * posting files reflect. Indexes that re-rank candidates by exact
+     * distances read one data record per candidate.
+     *
+     * @param k
+     *            the number of neighbors wanted, or -1 for all candidates
+     * @param nprobe
+     *            the number of clusters to probe, or -1 for the default
+     * @return the estimated number of block accesses
+     */
+    public long estimateSearchCost(int k, int nprobe) {
+        long[] blocks = clusterBlocks();
+        if (blocks.length == 0)
+            return 0;
+        int probe = Math.min(blocks.length, nprobe > 0 ? nprobe : NPROBE);
+
+        double sum = 0, sumSq = 0;
+        for (long b : blocks) {
+            sum += b;
+            sumSq += (double) b * b;
+        }
+        double probedBlocks = sum == 0 ? 0 : Math.min(sum, probe * sumSq / sum);
+        long routingBlocks = (long) Math.ceil(
+                (double) blocks.length * dim * Float.BYTES / Buffer.BUFFER_SIZE);
+
+        long reranked = 0;
+        int numCandidates = numCandidates(k, rerankFactor());
+        if (k > 0 && numCandidates > k) {
+            int rpb = Buffer.BUFFER_SIZE / RecordPage.slotSize(postingSchema());
+            reranked = (long) Math.min(probedBlocks * rpb, numCandidates);
+        }
+        return routingBlocks + probe + (long) Math.ceil(probedBlocks) + reranked;
+    }
+
+    /**
+     * Reads the centroid file of this index into a flat row-major matrix.
+     * Returns null if the index has not been trained yet.
+     */
+    private float[] readCentroids() {
+        RecordFile centroidRf = openCentroidFile();
+        List<float[]> rows = new ArrayList<float[]>();
+        centroidRf.beforeFirst();
+        while (centroidRf.next()) {
+            int cid = (Integer) centroidRf.getVal(SCHEMA_CLUSTER_ID).asJavaVal();
+            while (rows.size() <= cid)
+                rows.add(null);
+            rows.set(cid, ((VectorConstant) centroidRf.getVal(SCHEMA_CENTROID)).asJavaVal());
+        }
+        centroidRf.close();
+
+        if (rows.isEmpty())
+            return null;
+        float[] centroids = new float[rows.size() * dim];
+        for (int c = 0; c < rows.size(); c++)
+            System.arraycopy(rows.get(c), 0, centroids, c * dim, dim);
+        return centroids;
+    }
+
+    private void clearPostingFile(int clusterId) {
+        RecordFile postingRf = openPostingFile(clusterId);
+        postingRf.beforeFirst();
+        while (postingRf.next())
+            postingRf.delete();
+        postingRf.close();
+    }
+
+    /**
+     * Scans the data table in batches, assigns the vectors of each batch to
+     * their closest centroids in parallel, and appends the entries to the
+     * posting files one cluster at a time.
+     */
+    private void redistribute(KMeans kmeans, CentroidTable table) {
+        String fldName = ii.fieldNames().get(0);
+        float[] centroids = table.centroids();
+        float[][] vecs = new float[REDISTRIBUTE_BATCH_SIZE][];
+        RecordId[] rids = new RecordId[REDISTRIBUTE_BATCH_SIZE];
+        int[] assignment = new int[REDISTRIBUTE_BATCH_SIZE];
+
+        RecordFile dataRf = dataTableInfo().open(tx, false);
+        dataRf.beforeFirst();
+        boolean hasMore = true;
+        while (hasMore) {
+            int n = 0;
+            while (n < REDISTRIBUTE_BATCH_SIZE && (hasMore = dataRf.next())) {
+                vecs[n] = ((VectorConstant) dataRf.getVal(fldName)).asJavaVal();
+                rids[n] = dataRf.currentRecordId();
+                tx.endStatement();
+                n++;
+            }
+            if (n == 0)
+                break;
+
+            kmeans.assign(centroids, vecs, n, assignment);
+            insertAssigned(table, vecs, rids, assignment, n);
+        }
+        dataRf.close();
+    }
+
+    /**
+     * Appends the entries of a batch of assigned vectors cluster by cluster,
+     * so that each posting file is opened once per batch.
+     */
+    private void insertAssigned(CentroidTable table, float[][] vecs, RecordId[] rids,
+            int[] assignment, int n) {
+        for (int c = 0; c < table.numClusters(); c++) {
+            RecordFile postingRf = null;
+            for (int i = 0; i < n; i++) {
+                if (assignment[i] != c)
+                    continue;
+                if (postingRf == null)
+                    postingRf = openPostingFile(c);
+                insertEntry(postingRf, table, c, new VectorConstant(vecs[i]), rids[i]);
+            }
+            if (postingRf != null)
+                postingRf.close();
+        }
+    }
+
+    /**
+     * Rebalances the clusters of this index. Each cluster with more than
+     * {@link #SPLIT_FACTOR} times the average number of blocks is split in
+     * two by a local 2-means over its entries. One half keeps the id of the
+     * cluster, and the other half takes over the id of the smallest cluster
+     * with fewer than {@code 1 / MERGE_FACTOR} of the average blocks, whose
+     * entries are merged into their closest remaining clusters. If there is
+     * no such cluster left, the other half becomes a new cluster.
+     *
+     * <p>
+     * Every entry of a touched cluster is re-assigned by the new centroids and
+     * appended to its new posting file before the old entry is removed, so an
+     * interrupted rebalance leaves duplicated entries rather than lost ones.
+     * The new centroid table is published after all entries are in place.
+     * </p>
+     *
+     * @return true if any cluster is split
+     */
+    public boolean rebalance() {
+        close();
+        CentroidTable table = centroidTable();
+        int n = table.numClusters();
+        if (n < 2)
+            return false;
+
+        // the sizes are estimated by the number of blocks
+        final long[] sizes = clusterBlocks();
+        long total = 0;
+        for (int c = 0; c < n; c++)
+            total += sizes[c];
+        double avg = (double) total / n;
+        List<Integer> oversized = new ArrayList<Integer>();
+        List<Integer> tiny = new ArrayList<Integer>();
+        for (int c = 0; c < n; c++) {
+            if (sizes[c] > 1 && sizes[c] > SPLIT_FACTOR * avg)
+                oversized.add(c);
+            else if (sizes[c] * MERGE_FACTOR < avg)
+                tiny.add(c);
+        }
+        if (oversized.isEmpty())
+            return false;
+        oversized.sort((a, b) -> Long.compare(sizes[b], sizes[a]));
+        tiny.sort((a, b) -> Long.compare(sizes[a], sizes[b]));
+
+        float[] centroids = Arrays.copyOf(table.centroids(), (n + oversized.size()) * dim);
+        int numClusters = n, numMerged = 0;
+        List<MovedEntry> moved = new ArrayList<MovedEntry>();
+        RecordFile dataRf = dataTableInfo().open(tx, false);
+        for (int c : oversized) {
+            int from = moved.size();
+            loadEntries(c, dataRf, moved);
+            if (moved.size() - from < 2)
+                continue;
+            float[][] samples = new float[moved.size() - from][];
+            for (int i = 0; i < samples.length; i++)
+                samples[i] = moved.get(from + i).vec;
+            float[] halves = new KMeans(2, dim, NUM_ITERATIONS, TRAIN_SEED).train(samples);
+
+            int target;
+            if (numMerged < tiny.size()) {
+                target = tiny.get(numMerged++);
+                loadEntries(target, dataRf, moved);
+            } else
+                target = numClusters++;
+            System.arraycopy(halves, 0, centroids, c * dim, dim);
+            System.arraycopy(halves, dim, centroids, target * dim, dim);
+        }
+        dataRf.close();
+
+        CentroidTable newTable = new CentroidTable(
+                Arrays.copyOf(centroids, numClusters * dim), dim);
+        reassign(moved, newTable);
+        writeCentroids(newTable.centroids(), numClusters);
+        centroidTables.put(ii.indexName(), newTable);
+
+        if (logger.isLoggable(Level.INFO))
+            logger.info("rebalanced IVF index '" + ii.indexName() + "': split "
+                    + oversized.size() + " clusters, merged " + numMerged + ", "
+                    + numClusters + " clusters now");
+        return true;
+    }
+
+    /**
+     * Reads every entry of a cluster along with its exact vector, which comes
+     * from the posting file if the entries hold full vectors or from the data
+     * table otherwise.
+     */
+    private void loadEntries(int clusterId, RecordFile dataRf, List<MovedEntry> moved) {
+        String vecFld = vecFieldName(0);
+        boolean hasVectors = postingSchema().hasField(vecFld);
+        String dataFld = ii.fieldNames().get(0);
+
+        RecordFile postingRf = openPostingFile(clusterId);
+        postingRf.beforeFirst();
+        while (postingRf.next()) {
+            MovedEntry entry = new MovedEntry();
+            entry.clusterId = clusterId;
+            entry.slot = postingRf.currentRecordId();
+            entry.dataRecordId = entryRecordId(postingRf);
+            if (hasVectors)
+                entry.vec = ((VectorConstant) postingRf.getVal(vecFld)).asJavaVal();
+            else {
+                dataRf.moveToRecordId(entry.dataRecordId);
+                entry.vec = ((VectorConstant) dataRf.getVal(dataFld)).asJavaVal();
+            }
+            moved.add(entry);
+        }
+        postingRf.close();
+    }
+
+    /**
+     * Appends the given entries to the posting files of their closest
+     * clusters in the new table, and then removes their old entries.
+     */
+    private void reassign(List<MovedEntry> moved, CentroidTable newTable) {
+        int[] targets = new int[moved.size()];
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = newTable.nearest(moved.get(i).vec);
+
+        for (int c = 0; c < newTable.numClusters(); c++) {
+            RecordFile postingRf = null;
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] != c)
+                    continue;
+                if (postingRf == null)
+                    postingRf = openPostingFile(c);
+                MovedEntry entry = moved.get(i);
+                insertEntry(postingRf, newTable, c, new VectorConstant(entry.vec),
+                        entry.dataRecordId);
+            }
+            if (postingRf != null)
+                postingRf.close();
+        }
+
+        // the entries of a cluster are loaded together
+        RecordFile postingRf = null;
+        int openedId = -1;
+        for (MovedEntry entry : moved) {
+            if (entry.clusterId != openedId) {
+                if (postingRf != null)
+                    postingRf.close();
+                postingRf = openPostingFile(entry.clusterId);
+                openedId = entry.clusterId;
+            }
+            postingRf.moveToRecordId(entry.slot);
+            postingRf.delete();
+        }
+        if (postingRf != null)
+            postingRf.close();
+    }
+
+    protected TableInfo dataTableInfo() {
+        return VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx);
+    }
+
+    private RecordFile openCentroidFile() {
+        TableInfo ti = new TableInfo(ii.indexName() + CENTROID_FILE_SUFFIX,
+                centroidSchema(keyType));
+        RecordFile centroidRf = ti.open(tx, false);
+        if (centroidRf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return centroidRf;
+    }
+
+    /**
+     * Returns the schema of the posting entries of this index.
+     *
+     * @return the schema of the posting records
+     */
+    protected Schema postingSchema() {
+        return schema(keyType);
+    }
+
+    private String postingFileName(int clusterId) {
+        return ii.indexName() + clusterId + ".tbl";
+    }
+
+    protected RecordFile openPostingFile(int clusterId) {
+        TableInfo ti = new TableInfo(ii.indexName() + clusterId, postingSchema());
+		// the underlying record file should not perform logging
+        RecordFile postingRf = ti.open(tx, false);
+
+		// initialize the file header if needed
+        if (postingRf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return postingRf;
+    }
+
+    /**
+     * Appends an entry for the given vector to the posting file of its
+     * cluster.
+     *
+     * @param postingRf
+     *            the opened posting file of the cluster
+     * @param table
+     *            the centroids that the vector was assigned by
+     * @param clusterId
+     *            the id of the cluster
+     * @param vec
+     *            the indexed vector
+     * @param dataRecordId
+     *            the record id of the vector in the data table
+     */
+    protected void insertEntry(RecordFile postingRf, CentroidTable table, int clusterId,
+            VectorConstant vec, RecordId dataRecordId) {
+		postingRf.insert();
+		postingRf.setVal(vecFieldName(0), vec);
+		postingRf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block()
+				.number()));
+		postingRf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+    }
+
     @Override
     public void preLoadToMemory() {
+        int numClusters = centroidTable().numClusters();
         for (int i = 0; i < numClusters; i++) {
-            String tblname = ii.indexName() + i + ".tbl";
+            String tblname = postingFileName(i);
             long size = fileSize(tblname);
             BlockId blk;
             for (int j = 0; j < size; j++) {
@@ -107,28 +806,30 @@ public class IVFIndex extends Index {
         }
     }
     private VectorConstant extractVector(SearchKey key) {
-        VectorConstant vec = (VectorConstant) key.get(0);
-        // System.out.println("IVFIndex extractVector: " + Arrays.toString(vec.asJavaVal()));
-        return vec;
+        return (VectorConstant) key.get(0);
     }
+
+    /**
+     * Returns the id of the cluster whose centroid is the closest to the
+     * given vector, or -1 if the index has not been trained yet.
+     */
     private int searchClosestCluster(VectorConstant vec) {
-        double minDistance = Double.MAX_VALUE;
-        this.distFn_vec.setQueryVector(vec);
-        int closestClusterIndex = -1;
-
-        for (int clusterIndex = 0; clusterIndex < clusters.size(); clusterIndex++) {
-            List<VectorRecord> cluster = clusters.get(clusterIndex);
-            for (VectorRecord record : cluster) {
-                double distance = distFn_vec.distance(record.vec);
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    closestClusterIndex = clusterIndex;
-                }
-            }
-        }
-        // System.out.println("closestCluster: " + closestClusterIndex);
-        return closestClusterIndex;
+        return centroidTable().nearest(vec.asJavaVal());
     }
+
+    /**
+     * Positions the index before the first candidate of the search. A
+     * {@link VectorSearchRange} probes the {@code nprobe} clusters closest to
+     * the query vector; if it also asks for k neighbors, the entries of those
+     * clusters are ranked by the distance function and only the k closest
+     * ones are returned, in ascending order of distance. A range search
+     * probes the clusters that may hold vectors within its radius. Any other search
+     * range scans the single closest cluster. Every entry of a scanned
+     * cluster is a candidate, so {@link #next()} does not filter entries by
+     * the search key.
+     *
+     * @see Index#beforeFirst(SearchRange)
+     */
     @Override
     public void beforeFirst(SearchRange searchRange) {
         close();
@@ -137,38 +838,342 @@ public class IVFIndex extends Index {
             throw new UnsupportedOperationException();
 
         this.searchKey = searchRange.asSearchKey();
-        VectorConstant queryVec= extractVector(searchKey);
-        this.clusterID = searchClosestCluster(queryVec);
 
-        String tblname = ii.indexName() + this.clusterID;
-        TableInfo ti = new TableInfo(tblname, schema(keyType));
-		// the underlying record file should not perform logging
-		this.rf = ti.open(tx, false);
+        if (searchRange instanceof VectorSearchRange) {
+            VectorSearchRange vsr = (VectorSearchRange) searchRange;
+            float[] query = extractVector(searchKey).asJavaVal();
+            if (vsr.hasRadius())
+                probes = clustersWithin(query, vsr.distanceFn(), vsr.radius());
+            else {
+                int nprobe = vsr.nprobe() > 0 ? vsr.nprobe() : NPROBE;
+                probes = centroidTable().nearest(query, nprobe);
+                if (vsr.k() > 0)
+                    topK = searchTopK(probes, vsr.distanceFn(), vsr.k());
+            }
+        } else {
+            int clusterId = searchClosestCluster(extractVector(searchKey));
+            probes = clusterId >= 0 ? new int[] { clusterId } : new int[0];
+        }
+        probePos = 0;
+        topKPos = -1;
 
-		// initialize the file header if needed
-		if (rf.fileSize() == 0)
-			RecordFile.formatFileHeader(ti.fileName(), tx);
-		rf.beforeFirst();
-		
 		isBeforeFirsted = true;
     }
 
+    /**
+     * Returns the clusters whose balls intersect the ball of the given radius
+     * around the query, which hold all the vectors within the radius. The
+     * balls bound Euclidean distances only, so every cluster is returned for
+     * other distance functions.
+     */
+    private int[] clustersWithin(float[] query, DistanceFn distFn, double radius) {
+        CentroidTable table = centroidTable();
+        if (!(distFn instanceof EuclideanFn)) {
+            int[] all = new int[table.numClusters()];
+            for (int c = 0; c < all.length; c++)
+                all[c] = c;
+            return all;
+        }
+
+        ClusterRadii radii = clusterRadii(table);
+        int[] ids = new int[table.numClusters()];
+        int n = 0;
+        for (int c = 0; c < table.numClusters(); c++)
+            if (table.distance(query, c) <= radius + radii.radius(c))
+                ids[n++] = c;
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Returns the radii of the clusters of the given centroids, computing
+     * them from the posting files if they are not in memory yet. The radii
+     * are published before the scan, so an entry inserted meanwhile either
+     * grows them or is written before the scan reads its posting file.
+     */
+    private ClusterRadii clusterRadii(CentroidTable table) {
+        ClusterRadii radii = clusterRadii.get(ii.indexName());
+        if (radii != null && radii.centroidTable() == table && radii.isComplete())
+            return radii;
+
+        synchronized (clusterRadii) {
+            radii = clusterRadii.get(ii.indexName());
+            if (radii == null || radii.centroidTable() != table || !radii.isComplete()) {
+                radii = new ClusterRadii(table);
+                clusterRadii.put(ii.indexName(), radii);
+                RecordFile dataRf = dataTableInfo().open(tx, false);
+                for (int c = 0; c < table.numClusters(); c++) {
+                    RecordFile postingRf = openPostingFile(c);
+                    postingRf.beforeFirst();
+                    while (postingRf.next())
+                        radii.grow(c, distanceToCentroid(postingRf, dataRf, table, c));
+                    postingRf.close();
+                }
+                dataRf.close();
+                radii.markComplete();
+            }
+        }
+        return radii;
+    }
+
+    /**
+     * Returns the Euclidean distance from the current entry of a posting
+     * file to the centroid of its cluster. This index reads the vector of the
+     * entry.
+     *
+     * @param postingRf
+     *            the posting file positioned at the entry
+     * @param dataRf
+     *            the opened data table, for entries without exact vectors
+     * @param table
+     *            the centroids
+     * @param clusterId
+     *            the id of the cluster
+     * @return the distance to the centroid
+     */
+    protected float distanceToCentroid(RecordFile postingRf, RecordFile dataRf,
+            CentroidTable table, int clusterId) {
+        float[] vec = ((VectorConstant) postingRf.getVal(vecFieldName(0))).asJavaVal();
+        return table.distance(vec, clusterId);
+    }
+
+    /**
+     * Returns the exact vector of the current entry of a posting file, read
+     * from the data table.
+     *
+     * @param postingRf
+     *            the posting file positioned at the entry
+     * @param dataRf
+     *            the opened data table
+     * @return the vector of the entry
+     */
+    protected float[] dataVector(RecordFile postingRf, RecordFile dataRf) {
+        dataRf.moveToRecordId(entryRecordId(postingRf));
+        return ((VectorConstant) dataRf.getVal(ii.fieldNames().get(0))).asJavaVal();
+    }
+
+    /**
+     * Scans the posting files of the probed clusters and keeps the k entries
+     * closest to the query vector.
+     */
+    private RecordId[] searchTopK(int[] probes, DistanceFn distFn, int k) {
+        DistanceFn[] distFns = { distFn };
+        int[] queries = { 0 };
+        List<TopKHeap<RecordId>> heaps = new ArrayList<TopKHeap<RecordId>>(1);
+        heaps.add(new TopKHeap<RecordId>(numCandidates(k, rerankFactor(distFn))));
+
+        for (int clusterId : probes)
+            scanCluster(clusterId, distFns, queries, heaps);
+        TopKHeap<RecordId> heap = heaps.get(0);
+        return refine(heap.drainSorted(new RecordId[heap.size()], null), distFn, k);
+    }
+
+    /**
+     * Searches the k nearest neighbors of a batch of query vectors. All
+     * queries are routed to their {@code nprobe} closest clusters first. Then
+     * each cluster touched by any query is scanned only once, and every entry
+     * loaded from it is scored against all the queries routed to that
+     * cluster.
+     *
+     * @param distFns
+     *            the distance function of each query, holding its query
+     *            vector
+     * @param k
+     *            the number of neighbors wanted for each query
+     * @param nprobe
+     *            the number of clusters to probe for each query, or a
+     *            non-positive number to use {@link #NPROBE}
+     * @return the record ids of at most k neighbors of each query, in
+     *         ascending order of distance
+     */
+    public RecordId[][] searchBatch(DistanceFn[] distFns, int k, int nprobe) {
+        CentroidTable table = centroidTable();
+        if (nprobe <= 0)
+            nprobe = NPROBE;
+
+        // route every query, then group the queries by cluster
+        int[][] routes = new int[distFns.length][];
+        int[] counts = new int[table.numClusters()];
+        for (int q = 0; q < distFns.length; q++) {
+            routes[q] = table.nearest(distFns[q].getQueryVector().asJavaVal(), nprobe);
+            for (int clusterId : routes[q])
+                counts[clusterId]++;
+        }
+        int[][] members = new int[counts.length][];
+        for (int c = 0; c < counts.length; c++) {
+            members[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int q = 0; q < distFns.length; q++)
+            for (int clusterId : routes[q])
+                members[clusterId][counts[clusterId]++] = q;
+
+        List<TopKHeap<RecordId>> heaps = new ArrayList<TopKHeap<RecordId>>(distFns.length);
+        for (int q = 0; q < distFns.length; q++)
+            heaps.add(new TopKHeap<RecordId>(numCandidates(k, rerankFactor(distFns[q]))));
+        for (int c = 0; c < members.length; c++)
+            if (members[c].length > 0)
+                scanCluster(c, distFns, members[c], heaps);
+
+        RecordId[][] results = new RecordId[distFns.length][];
+        for (int q = 0; q < distFns.length; q++) {
+            TopKHeap<RecordId> heap = heaps.get(q);
+            results[q] = refine(heap.drainSorted(new RecordId[heap.size()], null), distFns[q], k);
+        }
+        return results;
+    }
+
+    /**
+     * Scores every entry of a cluster against the given queries and offers it
+     * to their heaps. Each entry is read only once for all the queries.
+     *
+     * @param clusterId
+     *            the id of the cluster to be scanned
+     * @param distFns
+     *            the distance functions of all queries in the batch
+     * @param queries
+     *            the ids of the queries routed to this cluster
+     * @param heaps
+     *            the candidate heap of each query in the batch
+     */
+    protected void scanCluster(int clusterId, DistanceFn[] distFns, int[] queries,
+            List<TopKHeap<RecordId>> heaps) {
+        String fldName = vecFieldName(0);
+        RecordFile postingRf = openPostingFile(clusterId);
+        postingRf.beforeFirst();
+        while (postingRf.next()) {
+            RecordId rid = null;
+            if (queries.length == 1) {
+                TopKHeap<RecordId> heap = heaps.get(queries[0]);
+                double dist = postingRf.rankingDistance(fldName, distFns[queries[0]]);
+                if (dist < heap.threshold())
+                    heap.offer(dist, entryRecordId(postingRf));
+                continue;
+            }
+
+            VectorConstant vec = (VectorConstant) postingRf.getVal(fldName);
+            for (int q : queries) {
+                TopKHeap<RecordId> heap = heaps.get(q);
+                double dist = distFns[q].rankingDistance(vec);
+                if (dist < heap.threshold()) {
+                    if (rid == null)
+                        rid = entryRecordId(postingRf);
+                    heap.offer(dist, rid);
+                }
+            }
+        }
+        postingRf.close();
+    }
+
+    /**
+     * Returns the number of candidates per neighbor that are re-ranked by
+     * their exact vectors in the data table. Zero returns the candidates in
+     * the order they are ranked by {@link #scanCluster}. The entries of this
+     * index hold exact vectors, so nothing is re-ranked.
+     *
+     * @return the number of candidates per neighbor to be re-ranked
+     */
+    protected int rerankFactor() {
+        return 0;
+    }
+
+    /**
+     * Returns true if {@link #scanCluster} ranks the entries by distances
+     * estimated from their codes, which approximate the Euclidean distance
+     * whatever the distance function of the search is. The entries of this
+     * index hold exact vectors, which are ranked by the distance function.
+     *
+     * @return true if the entries are ranked by estimated Euclidean distances
+     */
+    protected boolean ranksByEstimates() {
+        return false;
+    }
+
+    /**
+     * Returns the number of candidates per neighbor to be re-ranked for a
+     * search by the given distance function. The estimated distances do not
+     * order the entries by any other metric than the Euclidean distance, so
+     * the candidates of such a search are always re-ranked.
+     */
+    private int rerankFactor(DistanceFn distFn) {
+        if (ranksByEstimates() && !(distFn instanceof EuclideanFn))
+            return Math.max(rerankFactor(), 1);
+        return rerankFactor();
+    }
+
+    private static int numCandidates(int k, int rerankFactor) {
+        return rerankFactor > 0 ? k * rerankFactor : k;
+    }
+
+    /**
+     * Turns the candidates of a query, in ascending order of ranked distance,
+     * into its k nearest neighbors.
+     */
+    private RecordId[] refine(RecordId[] candidates, DistanceFn distFn, int k) {
+        if (rerankFactor(distFn) <= 0)
+            return candidates;
+        return rerank(candidates, distFn, k);
+    }
+
+    /**
+     * Returns the k candidates closest to the query by the distance function
+     * over their exact vectors in the data table.
+     *
+     * @param candidates
+     *            the record ids of the candidates
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of neighbors wanted
+     * @return the record ids of at most k neighbors, in ascending order of
+     *         distance
+     */
+    private RecordId[] rerank(RecordId[] candidates, DistanceFn distFn, int k) {
+        String fldName = ii.fieldNames().get(0);
+        TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+
+        RecordFile dataRf = dataTableInfo().open(tx, false);
+        for (RecordId rid : candidates) {
+            dataRf.moveToRecordId(rid);
+            double dist = dataRf.rankingDistance(fldName, distFn);
+            if (dist < heap.threshold())
+                heap.offer(dist, rid);
+        }
+        dataRf.close();
+        return heap.drainSorted(new RecordId[heap.size()], null);
+    }
+
     @Override
     public boolean next() {
 		if (!isBeforeFirsted)
 			throw new IllegalStateException("You must call beforeFirst() before iterating index '"
 					+ ii.indexName() + "'");
 
-		while (rf.next())
-			if (getKey().equals(searchKey))
-				return true;
-		return false;
+        if (topK != null)
+            return ++topKPos < topK.length;
+
+        while (rf == null || !rf.next()) {
+            if (rf != null) {
+                rf.close();
+                rf = null;
+            }
+            if (probePos >= probes.length)
+                return false;
+            rf = openPostingFile(probes[probePos++]);
+            rf.beforeFirst();
+        }
+        return true;
     }
 
     @Override
     public RecordId getDataRecordId() {
-        long blkNum = (Long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
-        int id = (Integer) rf.getVal(SCHEMA_RID_ID).asJavaVal();
+        if (topK != null)
+            return topK[topKPos];
+        return entryRecordId(rf);
+    }
+
+    protected RecordId entryRecordId(RecordFile postingRf) {
+        long blkNum = (Long) postingRf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+        int id = (Integer) postingRf.getVal(SCHEMA_RID_ID).asJavaVal();
         return new RecordId(new BlockId(dataFileName, blkNum), id);
     }
 
@@ -176,42 +1181,89 @@ public class IVFIndex extends Index {
     public void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
 		// search the position
 		beforeFirst(new SearchRange(key));
-		
-		// log the logical operation starts
-		// if (doLogicalLogging)
-			// tx.recoveryMgr().logLogicalStart();
-		
+
+		// deferred until the index is trained
+		if (probes.length == 0)
+			return;
+
 		// insert the data
-		rf.insert();
-		for (int i = 0; i < keyType.length(); i++)
-			rf.setVal(vecFieldName(i), key.get(i));
-		rf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block()
-				.number()));
-		rf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
-		
-		// log the logical operation ends
-		// if (doLogicalLogging)
-			// tx.recoveryMgr().logIndexInsertionEnd(ii.indexName(), key,
-					// dataRecordId.block().number(), dataRecordId.id());
+		CentroidTable table = centroidTable();
+		VectorConstant vec = (VectorConstant) key.get(0);
+		RecordFile postingRf = openPostingFile(probes[0]);
+		insertEntry(postingRf, table, probes[0], vec, dataRecordId);
+		postingRf.close();
+
+		// keep the radius of the cluster covering the new entry
+		ClusterRadii radii = clusterRadii.get(ii.indexName());
+		if (radii != null && radii.centroidTable() == table)
+			radii.grow(probes[0], table.distance(vec.asJavaVal(), probes[0]));
+
+		// check the balance of the clusters once in a while
+		if (MAINTENANCE_INTERVAL > 0 && insertCounts
+				.computeIfAbsent(ii.indexName(), name -> new AtomicInteger())
+				.incrementAndGet() % MAINTENANCE_INTERVAL == 0)
+			IVFMaintenanceTask.schedule(ii);
 	}
 
+    /**
+     * Assigns a batch of vectors to their closest centroids in parallel and
+     * appends the entries cluster by cluster. Like
+     * {@link #insert(SearchKey, RecordId, boolean)}, the entries are deferred
+     * until the index is trained.
+     */
+    @Override
+    public void insertBatch(SearchKey[] keys, RecordId[] dataRecordIds, int n) {
+        close();
+        CentroidTable table = centroidTable();
+        if (!table.isTrained() || n == 0)
+            return;
+
+        float[][] vecs = new float[n][];
+        for (int i = 0; i < n; i++)
+            vecs[i] = ((VectorConstant) keys[i].get(0)).asJavaVal();
+        int[] assignment = new int[n];
+        new KMeans(table.numClusters(), dim, 0, TRAIN_SEED).assign(table.centroids(), vecs, n,
+                assignment);
+        insertAssigned(table, vecs, dataRecordIds, assignment, n);
+
+        ClusterRadii radii = clusterRadii.get(ii.indexName());
+        if (radii != null && radii.centroidTable() == table)
+            for (int i = 0; i < n; i++)
+                radii.grow(assignment[i], table.distance(vecs[i], assignment[i]));
+
+        if (MAINTENANCE_INTERVAL > 0) {
+            int count = insertCounts.computeIfAbsent(ii.indexName(), name -> new AtomicInteger())
+                    .addAndGet(n);
+            if (count / MAINTENANCE_INTERVAL != (count - n) / MAINTENANCE_INTERVAL)
+                IVFMaintenanceTask.schedule(ii);
+        }
+    }
+
     @Override
     public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
-		// search the position
-		beforeFirst(new SearchRange(key));
-		
+		close();
+		CentroidTable table = centroidTable();
+
 		// log the logical operation starts
 		if (doLogicalLogging)
 			tx.recoveryMgr().logLogicalStart();
-		
-		// delete the specified entry
-		while (next()) {
-			if (getDataRecordId().equals(dataRecordId)) {
-				rf.delete();
-				return;
+
+		// delete the specified entry, which is in the closest cluster unless
+		// the clusters were rebalanced after it was inserted
+		float[] vec = extractVector(key).asJavaVal();
+		for (int clusterId : table.nearest(vec, table.numClusters())) {
+			rf = openPostingFile(clusterId);
+			rf.beforeFirst();
+			while (rf.next()) {
+				if (entryRecordId(rf).equals(dataRecordId)) {
+					rf.delete();
+					close();
+					return;
+				}
 			}
-        }
-		
+			close();
+		}
+
 		// log the logical operation ends
 		if (doLogicalLogging)
 			tx.recoveryMgr().logIndexDeletionEnd(ii.indexName(), key,
@@ -220,22 +1272,18 @@ public class IVFIndex extends Index {
 
 	/**
 	 * Closes the index by closing the current table scan.
-	 * 
+	 *
 	 * @see Index#close()
 	 */
 	@Override
 	public void close() {
 		if (rf != null)
 			rf.close();
+		rf = null;
+		topK = null;
 	}
 	private long fileSize(String fileName) {
 		tx.concurrencyMgr().readFile(fileName);
 		return VanillaDb.fileMgr().size(fileName);
 	}
-	private SearchKey getKey() {
-		Constant[] vals = new Constant[keyType.length()];
-		for (int i = 0; i < vals.length; i++)
-			vals[i] = rf.getVal(vecFieldName(i));
-		return new SearchKey(vals);
-	}
 }
@@ -0,0 +1,68 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import java.sql.Connection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * The task rebalances the clusters of an IVF index in its own transaction.
+ * At most one task runs for an index at a time; a request to schedule
+ * another one meanwhile is ignored.
+ *
+ * @see IVFIndex#rebalance()
+ */
+public class IVFMaintenanceTask extends Task {
+    private static Logger logger = Logger.getLogger(IVFMaintenanceTask.class.getName());
+
+    // the names of the indexes being rebalanced
+    private static final Set<String> runningIndexes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Schedules a task to rebalance the given IVF index, unless one is already
+     * running for it.
+     *
+     * @param ii
+     *            the information of the IVF index
+     */
+    public static void schedule(IndexInfo ii) {
+        if (runningIndexes.add(ii.indexName()))
+            VanillaDb.taskMgr().runTask(new IVFMaintenanceTask(ii));
+    }
+
+    private IndexInfo ii;
+
+    private IVFMaintenanceTask(IndexInfo ii) {
+        this.ii = ii;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Transaction tx = VanillaDb.txMgr().newTransaction(
+                    Connection.TRANSACTION_SERIALIZABLE, false);
+            try {
+                IVFIndex idx = (IVFIndex) ii.open(tx);
+                try {
+                    idx.rebalance();
+                } finally {
+                    idx.close();
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (logger.isLoggable(Level.WARNING))
+                    logger.warning("failed to rebalance IVF index '" + ii.indexName()
+                            + "': " + e);
+                tx.rollback();
+            }
+        } finally {
+            runningIndexes.remove(ii.indexName());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * An IVF index whose posting entries hold product-quantized codes instead of
+ * full vectors. The residual of each vector to its centroid is encoded by a
+ * {@link ProductQuantizer} into one byte per subspace, so a posting entry
+ * takes a few words rather than the whole vector.
+ *
+ * <p>
+ * A k-nearest neighbor search ranks the entries of the probed clusters by the
+ * asymmetric distance between the exact query residual and the encoded
+ * residuals, which costs one table lookup per subspace. The best
+ * {@code k * RERANK_FACTOR} candidates are then re-ranked by the distance
+ * function over their exact vectors in the data table. The codebooks are kept
+ * in a codebook file and trained together with the centroids.
+ * </p>
+ */
+public class IVFPQIndex extends IVFIndex {
+
+    private static final String SCHEMA_SUBSPACE = "subspace",
+        SCHEMA_CODEWORD_ID = "codeword_id", SCHEMA_CODEWORD = "codeword";
+    private static final String CODEBOOK_FILE_SUFFIX = "_codebook";
+    private static final long TRAIN_SEED = 20240601L;
+
+    /**
+     * The wanted number of subspaces. The actual number is the largest
+     * divisor of the vector dimension that is not greater than it.
+     */
+    public static final int NUM_SUBSPACES;
+
+    /**
+     * The number of candidates per neighbor that are re-ranked by exact
+     * distances. Zero returns the neighbors in the order of the approximate
+     * distances.
+     */
+    public static final int RERANK_FACTOR;
+
+    static {
+        NUM_SUBSPACES = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFPQIndex.class.getName() + ".NUM_SUBSPACES", 16);
+        RERANK_FACTOR = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFPQIndex.class.getName() + ".RERANK_FACTOR", 4);
+    }
+
+    /**
+     * Returns the schema of the codebook records, one per codeword.
+     */
+    private static Schema codebookSchema(int subDim) {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_SUBSPACE, INTEGER);
+        sch.addField(SCHEMA_CODEWORD_ID, INTEGER);
+        sch.addField(SCHEMA_CODEWORD, Type.VECTOR(subDim));
+        return sch;
+    }
+
+    private final int numSubspaces;
+
+    public IVFPQIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+        super(ii, keyType, tx);
+        this.numSubspaces = ProductQuantizer.numSubspaces(dim, NUM_SUBSPACES);
+    }
+
+    @Override
+    protected Schema postingSchema() {
+        return codePostingSchema(ProductQuantizer.numCodeWords(numSubspaces));
+    }
+
+    /**
+     * Trains the codebooks on the residuals of the samples to their closest
+     * centroids and persists them in the codebook file.
+     */
+    @Override
+    protected void trainEncoding(float[][] samples, KMeans kmeans, CentroidTable table) {
+        int[] assignment = new int[samples.length];
+        kmeans.assign(table.centroids(), samples, samples.length, assignment);
+        float[][] residuals = new float[samples.length][];
+        for (int i = 0; i < samples.length; i++)
+            residuals[i] = table.residual(samples[i], assignment[i], new float[dim]);
+
+        ProductQuantizer pq = ProductQuantizer.train(residuals, dim, numSubspaces,
+                NUM_ITERATIONS, TRAIN_SEED);
+        writeCodebooks(pq);
+        publishEncoding(pq);
+    }
+
+    private void writeCodebooks(ProductQuantizer pq) {
+        int subDim = dim / numSubspaces;
+        RecordFile codebookRf = openCodebookFile();
+        codebookRf.beforeFirst();
+        while (codebookRf.next())
+            codebookRf.delete();
+
+        for (int m = 0; m < numSubspaces; m++) {
+            float[] codebook = pq.codebook(m);
+            for (int c = 0; c < pq.numCodewords(); c++) {
+                float[] codeword = new float[subDim];
+                System.arraycopy(codebook, c * subDim, codeword, 0, subDim);
+                codebookRf.insert();
+                codebookRf.setVal(SCHEMA_SUBSPACE, new IntegerConstant(m));
+                codebookRf.setVal(SCHEMA_CODEWORD_ID, new IntegerConstant(c));
+                codebookRf.setVal(SCHEMA_CODEWORD, new VectorConstant(codeword));
+            }
+        }
+        codebookRf.close();
+    }
+
+    /**
+     * Returns the shared product quantizer of this index, loading it from the
+     * codebook file if it is not in memory yet.
+     *
+     * @return the quantizer, or null if the index has not been trained
+     */
+    public ProductQuantizer quantizer() {
+        return sharedEncoding(this::readCodebooks);
+    }
+
+    private ProductQuantizer readCodebooks() {
+        int subDim = dim / numSubspaces;
+        List<List<float[]>> codewords = new ArrayList<List<float[]>>();
+        for (int m = 0; m < numSubspaces; m++)
+            codewords.add(new ArrayList<float[]>());
+
+        RecordFile codebookRf = openCodebookFile();
+        codebookRf.beforeFirst();
+        while (codebookRf.next()) {
+            int m = (Integer) codebookRf.getVal(SCHEMA_SUBSPACE).asJavaVal();
+            int c = (Integer) codebookRf.getVal(SCHEMA_CODEWORD_ID).asJavaVal();
+            List<float[]> rows = codewords.get(m);
+            while (rows.size() <= c)
+                rows.add(null);
+            rows.set(c, ((VectorConstant) codebookRf.getVal(SCHEMA_CODEWORD)).asJavaVal());
+        }
+        codebookRf.close();
+
+        if (codewords.get(0).isEmpty())
+            return null;
+        float[][] codebooks = new float[numSubspaces][];
+        for (int m = 0; m < numSubspaces; m++) {
+            List<float[]> rows = codewords.get(m);
+            codebooks[m] = new float[rows.size() * subDim];
+            for (int c = 0; c < rows.size(); c++)
+                System.arraycopy(rows.get(c), 0, codebooks[m], c * subDim, subDim);
+        }
+        return new ProductQuantizer(codebooks, dim);
+    }
+
+    private RecordFile openCodebookFile() {
+        TableInfo ti = new TableInfo(ii.indexName() + CODEBOOK_FILE_SUFFIX,
+                codebookSchema(dim / numSubspaces));
+        RecordFile codebookRf = ti.open(tx, false);
+        if (codebookRf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return codebookRf;
+    }
+
+    @Override
+    protected void insertEntry(RecordFile postingRf, CentroidTable table, int clusterId,
+            VectorConstant vec, RecordId dataRecordId) {
+        float[] residual = table.residual(vec.asJavaVal(), clusterId, new float[dim]);
+        long[] codes = quantizer().encode(residual, new float[dim / numSubspaces],
+                new long[ProductQuantizer.numCodeWords(numSubspaces)]);
+        insertCodeEntry(postingRf, codes, dataRecordId);
+    }
+
+    @Override
+    public void preLoadToMemory() {
+        super.preLoadToMemory();
+        quantizer();
+    }
+
+    /**
+     * Returns the distance from the exact vector of an entry, read from the
+     * data table, to its centroid.
+     */
+    @Override
+    protected float distanceToCentroid(RecordFile postingRf, RecordFile dataRf,
+            CentroidTable table, int clusterId) {
+        return table.distance(dataVector(postingRf, dataRf), clusterId);
+    }
+
+    @Override
+    protected int rerankFactor() {
+        return RERANK_FACTOR;
+    }
+
+    @Override
+    protected boolean ranksByEstimates() {
+        return true;
+    }
+
+    /**
+     * Ranks the entries of a cluster by their asymmetric distances to each
+     * query, using one lookup table per query for this cluster. The codes of
+     * an entry are read once for all the queries.
+     */
+    @Override
+    protected void scanCluster(int clusterId, DistanceFn[] distFns, int[] queries,
+            List<TopKHeap<RecordId>> heaps) {
+        ProductQuantizer pq = quantizer();
+        if (pq == null)
+            return;
+
+        CentroidTable table = centroidTable();
+        float[] residual = new float[dim];
+        float[][] lookups = new float[queries.length][];
+        for (int i = 0; i < queries.length; i++) {
+            float[] query = distFns[queries[i]].getQueryVector().asJavaVal();
+            lookups[i] = pq.lookupTable(table.residual(query, clusterId, residual));
+        }
+
+        long[] codes = new long[ProductQuantizer.numCodeWords(numSubspaces)];
+        RecordFile postingRf = openPostingFile(clusterId);
+        postingRf.beforeFirst();
+        while (postingRf.next()) {
+            readCode(postingRf, codes);
+            RecordId rid = null;
+            for (int i = 0; i < queries.length; i++) {
+                TopKHeap<RecordId> heap = heaps.get(queries[i]);
+                float dist = pq.distance(lookups[i], codes);
+                if (dist < heap.threshold()) {
+                    if (rid == null)
+                        rid = entryRecordId(postingRf);
+                    heap.offer(dist, rid);
+                }
+            }
+        }
+        postingRf.close();
+    }
+}
@@ -0,0 +1,203 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.List;
+
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * An IVF index whose posting entries hold 8-bit scalar-quantized vectors
+ * instead of full vectors. Each dimension is encoded by a
+ * {@link ScalarQuantizer} into one byte, which cuts a posting entry to about
+ * a quarter of its float size.
+ *
+ * <p>
+ * A k-nearest neighbor search ranks the entries of the probed clusters by
+ * their approximate squared Euclidean distances to the query, computed on the
+ * codes directly. If {@link #RERANK_FACTOR} is positive, the best
+ * {@code k * RERANK_FACTOR} candidates are re-ranked by the distance function
+ * over their exact vectors in the data table. A search by another metric than
+ * the Euclidean distance is always re-ranked. The range of each dimension is
+ * kept in a range file and trained together with the centroids.
+ * </p>
+ */
+public class IVFSQ8Index extends IVFIndex {
+
+    private static final String SCHEMA_RANGE_KIND = "kind", SCHEMA_RANGE_VECTOR = "vec";
+    private static final String RANGE_FILE_SUFFIX = "_sq8";
+    private static final int RANGE_MINS = 0, RANGE_SCALES = 1;
+
+    /**
+     * The number of candidates per neighbor that are re-ranked by exact
+     * distances. Zero returns the neighbors in the order of the approximate
+     * distances.
+     */
+    public static final int RERANK_FACTOR;
+
+    static {
+        RERANK_FACTOR = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFSQ8Index.class.getName() + ".RERANK_FACTOR", 0);
+    }
+
+    /**
+     * Returns the schema of the range records, which hold the minimums and
+     * the quantization steps of all dimensions.
+     */
+    private static Schema rangeSchema(SearchKeyType keyType) {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_RANGE_KIND, INTEGER);
+        sch.addField(SCHEMA_RANGE_VECTOR, keyType.get(0));
+        return sch;
+    }
+
+    public IVFSQ8Index(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+        super(ii, keyType, tx);
+    }
+
+    @Override
+    protected Schema postingSchema() {
+        return codePostingSchema(ScalarQuantizer.numCodeWords(dim));
+    }
+
+    /**
+     * Trains the range of each dimension on the samples and persists it in
+     * the range file.
+     */
+    @Override
+    protected void trainEncoding(float[][] samples, KMeans kmeans, CentroidTable table) {
+        ScalarQuantizer sq = ScalarQuantizer.train(samples, dim);
+
+        RecordFile rangeRf = openRangeFile();
+        rangeRf.beforeFirst();
+        while (rangeRf.next())
+            rangeRf.delete();
+        rangeRf.insert();
+        rangeRf.setVal(SCHEMA_RANGE_KIND, new IntegerConstant(RANGE_MINS));
+        rangeRf.setVal(SCHEMA_RANGE_VECTOR, new VectorConstant(sq.mins()));
+        rangeRf.insert();
+        rangeRf.setVal(SCHEMA_RANGE_KIND, new IntegerConstant(RANGE_SCALES));
+        rangeRf.setVal(SCHEMA_RANGE_VECTOR, new VectorConstant(sq.scales()));
+        rangeRf.close();
+
+        publishEncoding(sq);
+    }
+
+    /**
+     * Returns the shared scalar quantizer of this index, loading it from the
+     * range file if it is not in memory yet.
+     *
+     * @return the quantizer, or null if the index has not been trained
+     */
+    public ScalarQuantizer quantizer() {
+        return sharedEncoding(this::readRanges);
+    }
+
+    private ScalarQuantizer readRanges() {
+        float[] mins = null, scales = null;
+        RecordFile rangeRf = openRangeFile();
+        rangeRf.beforeFirst();
+        while (rangeRf.next()) {
+            float[] vec = ((VectorConstant) rangeRf.getVal(SCHEMA_RANGE_VECTOR)).asJavaVal();
+            if ((Integer) rangeRf.getVal(SCHEMA_RANGE_KIND).asJavaVal() == RANGE_MINS)
+                mins = vec;
+            else
+                scales = vec;
+        }
+        rangeRf.close();
+
+        if (mins == null || scales == null)
+            return null;
+        return new ScalarQuantizer(mins, scales);
+    }
+
+    private RecordFile openRangeFile() {
+        TableInfo ti = new TableInfo(ii.indexName() + RANGE_FILE_SUFFIX, rangeSchema(keyType));
+        RecordFile rangeRf = ti.open(tx, false);
+        if (rangeRf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return rangeRf;
+    }
+
+    @Override
+    protected void insertEntry(RecordFile postingRf, CentroidTable table, int clusterId,
+            VectorConstant vec, RecordId dataRecordId) {
+        byte[] codes = quantizer().encode(vec.asJavaVal(), new byte[dim]);
+        long[] words = ScalarQuantizer.pack(codes, new long[ScalarQuantizer.numCodeWords(dim)]);
+        insertCodeEntry(postingRf, words, dataRecordId);
+    }
+
+    @Override
+    public void preLoadToMemory() {
+        super.preLoadToMemory();
+        quantizer();
+    }
+
+    /**
+     * Returns the distance from the exact vector of an entry, read from the
+     * data table, to its centroid.
+     */
+    @Override
+    protected float distanceToCentroid(RecordFile postingRf, RecordFile dataRf,
+            CentroidTable table, int clusterId) {
+        return table.distance(dataVector(postingRf, dataRf), clusterId);
+    }
+
+    @Override
+    protected int rerankFactor() {
+        return RERANK_FACTOR;
+    }
+
+    @Override
+    protected boolean ranksByEstimates() {
+        return true;
+    }
+
+    /**
+     * Ranks the entries of a cluster by their approximate distances to each
+     * query. The codes of an entry are read and unpacked once for all the
+     * queries.
+     */
+    @Override
+    protected void scanCluster(int clusterId, DistanceFn[] distFns, int[] queries,
+            List<TopKHeap<RecordId>> heaps) {
+        ScalarQuantizer sq = quantizer();
+        if (sq == null)
+            return;
+
+        float[][] prepared = new float[queries.length][];
+        for (int i = 0; i < queries.length; i++)
+            prepared[i] = sq.prepareQuery(distFns[queries[i]].getQueryVector().asJavaVal());
+
+        long[] words = new long[ScalarQuantizer.numCodeWords(dim)];
+        byte[] codes = new byte[dim];
+        RecordFile postingRf = openPostingFile(clusterId);
+        postingRf.beforeFirst();
+        while (postingRf.next()) {
+            readCode(postingRf, words);
+            ScalarQuantizer.unpack(words, codes);
+            RecordId rid = null;
+            for (int i = 0; i < queries.length; i++) {
+                TopKHeap<RecordId> heap = heaps.get(queries[i]);
+                float dist = sq.distance(prepared[i], codes);
+                if (dist < heap.threshold()) {
+                    if (rid == null)
+                        rid = entryRecordId(postingRf);
+                    heap.offer(dist, rid);
+                }
+            }
+        }
+        postingRf.close();
+    }
+}
@@ -0,0 +1,213 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.vanilladb.core.sql.distfn.VectorOps;
+
+/**
+ * A multi-threaded k-means clusterer over an in-memory sample of vectors. The
+ * centroids are seeded by k-means++ and then refined by Lloyd iterations. Both
+ * the seeding and the assignment steps are split into chunks that are
+ * evaluated in parallel.
+ *
+ * <p>
+ * Centroids are returned as a flat row-major matrix, i.e., the
+ * {@code j}-th dimension of the {@code i}-th centroid is stored at
+ * {@code centroids[i * dim + j]}.
+ * </p>
+ */
+public class KMeans {
+    private static final int CHUNK_SIZE = 1024;
+
+    private final int k, dim, numIterations;
+    private final Random random;
+
+    /**
+     * Creates a k-means clusterer.
+     *
+     * @param k
+     *            the number of clusters
+     * @param dim
+     *            the dimension of the vectors
+     * @param numIterations
+     *            the maximum number of Lloyd iterations
+     * @param seed
+     *            the seed of the random generator used for seeding
+     */
+    public KMeans(int k, int dim, int numIterations, long seed) {
+        this.k = k;
+        this.dim = dim;
+        this.numIterations = numIterations;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Clusters the given samples and returns the centroids.
+     *
+     * @param samples
+     *            the sampled vectors, each of length {@code dim}
+     * @return the flat centroid matrix of size {@code k * dim}
+     */
+    public float[] train(float[][] samples) {
+        if (samples.length < k)
+            throw new IllegalArgumentException("cannot train " + k + " clusters with "
+                    + samples.length + " samples");
+
+        float[] centroids = seed(samples);
+        int[] assignment = new int[samples.length];
+        Arrays.fill(assignment, -1);
+
+        for (int iter = 0; iter < numIterations; iter++) {
+            int changed = assign(centroids, samples, samples.length, assignment);
+            update(centroids, samples, assignment);
+            if (changed == 0)
+                break;
+        }
+        return centroids;
+    }
+
+    /**
+     * Assigns each of the first {@code n} vectors to its closest centroid in
+     * parallel.
+     *
+     * @param centroids
+     *            the flat centroid matrix
+     * @param vecs
+     *            the vectors to be assigned
+     * @param n
+     *            the number of valid vectors in {@code vecs}
+     * @param assignment
+     *            the output cluster ids, whose previous content is used to
+     *            count the changed assignments
+     * @return the number of vectors whose assignment has changed
+     */
+    public int assign(float[] centroids, float[][] vecs, int n, int[] assignment) {
+        int numChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return IntStream.range(0, numChunks).parallel().map(c -> {
+            int changed = 0;
+            int end = Math.min(n, (c + 1) * CHUNK_SIZE);
+            for (int i = c * CHUNK_SIZE; i < end; i++) {
+                int cid = nearest(centroids, k, dim, vecs[i]);
+                if (cid != assignment[i]) {
+                    assignment[i] = cid;
+                    changed++;
+                }
+            }
+            return changed;
+        }).sum();
+    }
+
+    /**
+     * Returns the id of the centroid closest to the given vector.
+     *
+     * @param centroids
+     *            the flat centroid matrix
+     * @param k
+     *            the number of centroids
+     * @param dim
+     *            the dimension of the vectors
+     * @param vec
+     *            the vector
+     * @return the id of the closest centroid
+     */
+    public static int nearest(float[] centroids, int k, int dim, float[] vec) {
+        int best = 0;
+        float bestDist = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float dist = VectorOps.squaredEuclidean(centroids, c * dim, vec, dim);
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Picks the initial centroids by k-means++: each subsequent centroid is
+     * drawn with probability proportional to its squared distance to the
+     * closest centroid chosen so far.
+     */
+    private float[] seed(float[][] samples) {
+        int n = samples.length;
+        float[] centroids = new float[k * dim];
+        float[] minDists = new float[n];
+        Arrays.fill(minDists, Float.MAX_VALUE);
+
+        int first = random.nextInt(n);
+        System.arraycopy(samples[first], 0, centroids, 0, dim);
+
+        for (int c = 1; c < k; c++) {
+            int prevOffset = (c - 1) * dim;
+            int numChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            double total = IntStream.range(0, numChunks).parallel().mapToDouble(chunk -> {
+                double sum = 0;
+                int end = Math.min(n, (chunk + 1) * CHUNK_SIZE);
+                for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                    float d = VectorOps.squaredEuclidean(centroids, prevOffset, samples[i], dim);
+                    if (d < minDists[i])
+                        minDists[i] = d;
+                    sum += minDists[i];
+                }
+                return sum;
+            }).sum();
+
+            int picked = n - 1;
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < n; i++) {
+                    target -= minDists[i];
+                    if (target <= 0) {
+                        picked = i;
+                        break;
+                    }
+                }
+            } else
+                picked = random.nextInt(n);
+            System.arraycopy(samples[picked], 0, centroids, c * dim, dim);
+        }
+        return centroids;
+    }
+
+    /**
+     * Moves each centroid to the mean of its members. A cluster that loses
+     * all its members is re-seeded with a random sample.
+     */
+    private void update(float[] centroids, float[][] samples, int[] assignment) {
+        int n = samples.length;
+        int numChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        double[] sums = new double[k * dim];
+        int[] counts = new int[k];
+
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            double[] localSums = new double[k * dim];
+            int[] localCounts = new int[k];
+            int end = Math.min(n, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                int offset = assignment[i] * dim;
+                float[] v = samples[i];
+                for (int j = 0; j < dim; j++)
+                    localSums[offset + j] += v[j];
+                localCounts[assignment[i]]++;
+            }
+            synchronized (sums) {
+                for (int j = 0; j < sums.length; j++)
+                    sums[j] += localSums[j];
+                for (int c = 0; c < k; c++)
+                    counts[c] += localCounts[c];
+            }
+        });
+
+        for (int c = 0; c < k; c++) {
+            int offset = c * dim;
+            if (counts[c] == 0) {
+                System.arraycopy(samples[random.nextInt(n)], 0, centroids, offset, dim);
+                continue;
+            }
+            for (int j = 0; j < dim; j++)
+                centroids[offset + j] = (float) (sums[offset + j] / counts[c]);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import org.vanilladb.core.sql.distfn.VectorOps;
+
+/**
+ * An immutable product quantizer. A vector is split into
+ * {@code numSubspaces} contiguous sub-vectors of equal length, and each
+ * sub-vector is replaced by the id of its closest codeword in the codebook of
+ * that subspace. Since a codebook has at most 256 codewords, every subspace
+ * costs one byte, and the codes of a vector are packed eight to a
+ * {@code long}.
+ *
+ * <p>
+ * Distances to a query are computed asymmetrically: the query stays exact,
+ * and {@link #lookupTable(float[])} precomputes the squared distances of each
+ * query sub-vector to every codeword. The approximate squared distance to an
+ * encoded vector is then the sum of {@code numSubspaces} table entries.
+ * </p>
+ */
+public class ProductQuantizer {
+
+    /**
+     * The maximum number of codewords per subspace, so that a code fits in a
+     * byte.
+     */
+    public static final int MAX_CODEWORDS = 256;
+    private static final int CODES_PER_WORD = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Returns the largest number of subspaces that is at most the given
+     * number and divides the dimension, so that all sub-vectors have the same
+     * length.
+     *
+     * @param dim
+     *            the dimension of the vectors
+     * @param maxSubspaces
+     *            the wanted number of subspaces
+     * @return the number of subspaces to use
+     */
+    public static int numSubspaces(int dim, int maxSubspaces) {
+        for (int m = Math.min(dim, maxSubspaces); m > 1; m--)
+            if (dim % m == 0)
+                return m;
+        return 1;
+    }
+
+    /**
+     * Returns the number of {@code long} words holding the codes of a vector.
+     *
+     * @param numSubspaces
+     *            the number of subspaces
+     * @return the number of code words
+     */
+    public static int numCodeWords(int numSubspaces) {
+        return (numSubspaces + CODES_PER_WORD - 1) / CODES_PER_WORD;
+    }
+
+    /**
+     * Trains a product quantizer by running k-means in every subspace.
+     *
+     * @param samples
+     *            the training vectors, each of length {@code dim}
+     * @param dim
+     *            the dimension of the vectors
+     * @param numSubspaces
+     *            the number of subspaces, which must divide {@code dim}
+     * @param numIterations
+     *            the maximum number of Lloyd iterations per subspace
+     * @param seed
+     *            the seed of the random generator used for seeding
+     * @return the trained quantizer
+     */
+    public static ProductQuantizer train(float[][] samples, int dim, int numSubspaces,
+            int numIterations, long seed) {
+        int subDim = dim / numSubspaces;
+        int numCodewords = Math.min(MAX_CODEWORDS, samples.length);
+        float[][] codebooks = new float[numSubspaces][];
+        float[][] subSamples = new float[samples.length][subDim];
+
+        for (int m = 0; m < numSubspaces; m++) {
+            for (int i = 0; i < samples.length; i++)
+                System.arraycopy(samples[i], m * subDim, subSamples[i], 0, subDim);
+            KMeans kmeans = new KMeans(numCodewords, subDim, numIterations, seed + m);
+            codebooks[m] = kmeans.train(subSamples);
+        }
+        return new ProductQuantizer(codebooks, dim);
+    }
+
+    private final float[][] codebooks;
+    private final int dim, numSubspaces, subDim, numCodewords;
+
+    /**
+     * Creates a product quantizer. The codebooks are owned by the quantizer
+     * afterwards and must not be modified by the caller.
+     *
+     * @param codebooks
+     *            the flat row-major codeword matrix of each subspace
+     * @param dim
+     *            the dimension of the vectors
+     */
+    public ProductQuantizer(float[][] codebooks, int dim) {
+        this.codebooks = codebooks;
+        this.dim = dim;
+        this.numSubspaces = codebooks.length;
+        this.subDim = dim / numSubspaces;
+        this.numCodewords = codebooks[0].length / subDim;
+    }
+
+    public int dimension() {
+        return dim;
+    }
+
+    public int numSubspaces() {
+        return numSubspaces;
+    }
+
+    public int numCodewords() {
+        return numCodewords;
+    }
+
+    /**
+     * Returns the codeword matrix of the given subspace, which must not be
+     * modified.
+     */
+    public float[] codebook(int subspace) {
+        return codebooks[subspace];
+    }
+
+    /**
+     * Encodes a vector into the ids of its closest codewords.
+     *
+     * @param vec
+     *            the vector to be encoded
+     * @param sub
+     *            a scratch array of length {@code dim / numSubspaces}
+     * @param codes
+     *            the array of {@link #numCodeWords(int)} words to hold the
+     *            packed codes
+     * @return the given code array
+     */
+    public long[] encode(float[] vec, float[] sub, long[] codes) {
+        for (int w = 0; w < codes.length; w++)
+            codes[w] = 0;
+        for (int m = 0; m < numSubspaces; m++) {
+            System.arraycopy(vec, m * subDim, sub, 0, subDim);
+            long code = KMeans.nearest(codebooks[m], numCodewords, subDim, sub);
+            codes[m / CODES_PER_WORD] |= code << ((m % CODES_PER_WORD) * Byte.SIZE);
+        }
+        return codes;
+    }
+
+    /**
+     * Reconstructs the approximate vector of the given codes by concatenating
+     * their codewords.
+     *
+     * @param codes
+     *            the packed codes of a vector
+     * @param out
+     *            the array of length {@code dim} to hold the vector
+     * @return the given output array
+     */
+    public float[] decode(long[] codes, float[] out) {
+        for (int m = 0; m < numSubspaces; m++) {
+            int code = (int) (codes[m / CODES_PER_WORD] >>> ((m % CODES_PER_WORD) * Byte.SIZE)) & 0xFF;
+            System.arraycopy(codebooks[m], code * subDim, out, m * subDim, subDim);
+        }
+        return out;
+    }
+
+    /**
+     * Computes the squared distances from each sub-vector of the query to
+     * every codeword of its subspace. The distance to codeword {@code c} of
+     * subspace {@code m} is stored at {@code m * numCodewords + c}.
+     *
+     * @param query
+     *            the query vector
+     * @return the lookup table
+     */
+    public float[] lookupTable(float[] query) {
+        float[] table = new float[numSubspaces * numCodewords];
+        float[] sub = new float[subDim];
+        for (int m = 0; m < numSubspaces; m++) {
+            System.arraycopy(query, m * subDim, sub, 0, subDim);
+            int base = m * numCodewords;
+            for (int c = 0; c < numCodewords; c++)
+                table[base + c] = VectorOps.squaredEuclidean(codebooks[m], c * subDim, sub, subDim);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the approximate squared distance between the query of a lookup
+     * table and an encoded vector.
+     *
+     * @param table
+     *            the lookup table of the query
+     * @param codes
+     *            the packed codes of the vector
+     * @return the approximate squared Euclidean distance
+     */
+    public float distance(float[] table, long[] codes) {
+        return distance(table, codes, 0);
+    }
+
+    /**
+     * Returns the approximate squared distance between the query of a lookup
+     * table and an encoded vector whose codes start at the given offset of a
+     * larger array.
+     *
+     * @param table
+     *            the lookup table of the query
+     * @param codes
+     *            the array holding the packed codes of the vector
+     * @param offset
+     *            the position of the first code word of the vector
+     * @return the approximate squared Euclidean distance
+     */
+    public float distance(float[] table, long[] codes, int offset) {
+        float dist = 0;
+        for (int m = 0; m < numSubspaces; m++) {
+            int code = (int) (codes[offset + m / CODES_PER_WORD]
+                    >>> ((m % CODES_PER_WORD) * Byte.SIZE)) & 0xFF;
+            dist += table[m * numCodewords + code];
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,178 @@
+package org.vanilladb.core.storage.index.ivf;
+
+import java.util.Arrays;
+
+import org.vanilladb.core.sql.distfn.VectorOps;
+
+/**
+ * An immutable 8-bit scalar quantizer (SQ8). Each dimension is mapped
+ * linearly from its trained {@code [min, max]} range onto the 256 values of a
+ * signed byte, so a vector costs one byte per dimension.
+ *
+ * <p>
+ * A query is not quantized. Instead, {@link #prepareQuery(float[])} moves it
+ * into the scale of the codes, so that the squared distance to an encoded
+ * vector is the sum over dimensions of {@code scale^2 * (q - code)^2}, which is
+ * computed by {@link VectorOps#weightedSquaredEuclidean}.
+ * </p>
+ */
+public class ScalarQuantizer {
+
+    private static final int LEVELS = 255;
+    private static final int CODE_OFFSET = 128;
+    private static final int CODES_PER_WORD = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Returns the number of {@code long} words holding the codes of a vector.
+     *
+     * @param dim
+     *            the dimension of the vectors
+     * @return the number of code words
+     */
+    public static int numCodeWords(int dim) {
+        return (dim + CODES_PER_WORD - 1) / CODES_PER_WORD;
+    }
+
+    /**
+     * Packs byte codes eight to a word.
+     *
+     * @param codes
+     *            the codes to be packed
+     * @param words
+     *            the array of {@link #numCodeWords(int)} words to hold them
+     * @return the given word array
+     */
+    public static long[] pack(byte[] codes, long[] words) {
+        for (int w = 0; w < words.length; w++)
+            words[w] = 0;
+        for (int i = 0; i < codes.length; i++)
+            words[i / CODES_PER_WORD] |= (codes[i] & 0xFFL) << ((i % CODES_PER_WORD) * Byte.SIZE);
+        return words;
+    }
+
+    /**
+     * Unpacks the byte codes packed by {@link #pack(byte[], long[])}.
+     *
+     * @param words
+     *            the packed codes
+     * @param codes
+     *            the array to hold the codes
+     * @return the given code array
+     */
+    public static byte[] unpack(long[] words, byte[] codes) {
+        for (int i = 0; i < codes.length; i++)
+            codes[i] = (byte) (words[i / CODES_PER_WORD] >>> ((i % CODES_PER_WORD) * Byte.SIZE));
+        return codes;
+    }
+
+    /**
+     * Trains a quantizer on the range of each dimension of the samples.
+     *
+     * @param samples
+     *            the training vectors, each of length {@code dim}
+     * @param dim
+     *            the dimension of the vectors
+     * @return the trained quantizer
+     */
+    public static ScalarQuantizer train(float[][] samples, int dim) {
+        float[] mins = new float[dim], maxs = new float[dim];
+        Arrays.fill(mins, Float.MAX_VALUE);
+        Arrays.fill(maxs, -Float.MAX_VALUE);
+        for (float[] vec : samples) {
+            for (int j = 0; j < dim; j++) {
+                mins[j] = Math.min(mins[j], vec[j]);
+                maxs[j] = Math.max(maxs[j], vec[j]);
+            }
+        }
+
+        float[] scales = new float[dim];
+        for (int j = 0; j < dim; j++)
+            scales[j] = (maxs[j] - mins[j]) / LEVELS;
+        return new ScalarQuantizer(mins, scales);
+    }
+
+    private final float[] mins, scales, weights;
+
+    /**
+     * Creates a scalar quantizer. The arrays are owned by the quantizer
+     * afterwards and must not be modified by the caller.
+     *
+     * @param mins
+     *            the minimum of each dimension
+     * @param scales
+     *            the width of a quantization step of each dimension
+     */
+    ScalarQuantizer(float[] mins, float[] scales) {
+        this.mins = mins;
+        this.scales = scales;
+        this.weights = new float[scales.length];
+        for (int j = 0; j < scales.length; j++)
+            weights[j] = scales[j] * scales[j];
+    }
+
+    public int dimension() {
+        return mins.length;
+    }
+
+    /**
+     * Returns the minimum of each dimension, which must not be modified.
+     */
+    float[] mins() {
+        return mins;
+    }
+
+    /**
+     * Returns the quantization step of each dimension, which must not be
+     * modified.
+     */
+    float[] scales() {
+        return scales;
+    }
+
+    /**
+     * Encodes a vector into one signed byte per dimension. Values outside the
+     * trained range are clamped.
+     *
+     * @param vec
+     *            the vector to be encoded
+     * @param codes
+     *            the array of length {@code dim} to hold the codes
+     * @return the given code array
+     */
+    public byte[] encode(float[] vec, byte[] codes) {
+        for (int j = 0; j < codes.length; j++) {
+            int level = scales[j] == 0 ? 0 : Math.round((vec[j] - mins[j]) / scales[j]);
+            level = Math.max(0, Math.min(LEVELS, level));
+            codes[j] = (byte) (level - CODE_OFFSET);
+        }
+        return codes;
+    }
+
+    /**
+     * Moves a query vector into the scale of the codes.
+     *
+     * @param query
+     *            the query vector
+     * @return the query in code scale
+     */
+    public float[] prepareQuery(float[] query) {
+        float[] q = new float[query.length];
+        for (int j = 0; j < q.length; j++)
+            q[j] = scales[j] == 0 ? 0 : (query[j] - mins[j]) / scales[j] - CODE_OFFSET;
+        return q;
+    }
+
+    /**
+     * Returns the approximate squared Euclidean distance between a prepared
+     * query and an encoded vector.
+     *
+     * @param preparedQuery
+     *            the query returned by {@link #prepareQuery(float[])}
+     * @param codes
+     *            the codes of the vector
+     * @return the approximate squared Euclidean distance
+     */
+    public float distance(float[] preparedQuery, byte[] codes) {
+        return VectorOps.weightedSquaredEuclidean(preparedQuery, weights, codes, 0);
+    }
+}
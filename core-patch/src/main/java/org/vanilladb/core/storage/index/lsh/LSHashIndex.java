@@ -0,0 +1,440 @@
+package org.vanilladb.core.storage.index.lsh;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.DOUBLE;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * A locality-sensitive hashing implementation of {@link Index} for vector
+ * fields, which needs no training and keeps insertions as cheap as those of
+ * {@link org.vanilladb.core.storage.index.hash.HashIndex}.
+ *
+ * <p>
+ * The index has {@link #NUM_TABLES} hash tables. A table hashes a vector by
+ * {@link #NUM_HASHES} random projections, each quantized into intervals of
+ * {@link #BUCKET_WIDTH} (E2LSH), so that close vectors likely get the same
+ * signature. The signature selects one of the {@link #NUM_BUCKETS} bucket
+ * files of the table, which keeps the signature and the data record id of
+ * each entry. A search collects the entries with the signature of the query
+ * in every table, drops the duplicates and ranks the candidates by their exact
+ * distances in the data table.
+ * </p>
+ *
+ * <p>
+ * The hash functions are derived from the index name, and the parameters
+ * they depend on are saved in a meta file when the index is first used, so
+ * that changing the properties later does not invalidate an existing index.
+ * The properties only apply to new indexes.
+ * </p>
+ *
+ * <p>
+ * Like the other vector indexes, the bucket files are not logged, and
+ * insertions and deletions are not logged as logical operations.
+ * </p>
+ */
+public class LSHashIndex extends Index {
+
+    private static final String SCHEMA_KEY = "key", SCHEMA_RID_BLOCK = "block",
+        SCHEMA_RID_ID = "id";
+    private static final String SCHEMA_NUM_TABLES = "num_tables",
+        SCHEMA_NUM_HASHES = "num_hashes", SCHEMA_BUCKET_WIDTH = "bucket_width",
+        SCHEMA_NUM_BUCKETS = "num_buckets";
+    private static final String BUCKET_FILE_SUFFIX = "_lsh", META_FILE_SUFFIX = "_lsh_meta";
+
+    /**
+     * The number of hash tables.
+     */
+    public static final int NUM_TABLES;
+
+    /**
+     * The number of random projections combined into the signature of a
+     * vector in a hash table. More projections make a bucket more selective
+     * but miss more neighbors.
+     */
+    public static final int NUM_HASHES;
+
+    /**
+     * The width of the intervals that a projection is quantized into, in the
+     * units of the vectors.
+     */
+    public static final double BUCKET_WIDTH;
+
+    /**
+     * The number of bucket files of a hash table.
+     */
+    public static final int NUM_BUCKETS;
+
+    /**
+     * The number of neighbors returned by a search that does not ask for k.
+     */
+    public static final int DEFAULT_K;
+
+    static {
+        NUM_TABLES = CoreProperties.getLoader().getPropertyAsInteger(
+                LSHashIndex.class.getName() + ".NUM_TABLES", 8);
+        NUM_HASHES = CoreProperties.getLoader().getPropertyAsInteger(
+                LSHashIndex.class.getName() + ".NUM_HASHES", 8);
+        BUCKET_WIDTH = CoreProperties.getLoader().getPropertyAsDouble(
+                LSHashIndex.class.getName() + ".BUCKET_WIDTH", 500.0);
+        NUM_BUCKETS = CoreProperties.getLoader().getPropertyAsInteger(
+                LSHashIndex.class.getName() + ".NUM_BUCKETS", 100);
+        DEFAULT_K = CoreProperties.getLoader().getPropertyAsInteger(
+                LSHashIndex.class.getName() + ".DEFAULT_K", 64);
+    }
+
+    /**
+     * The hash functions of each LSH index (index name -> functions). They
+     * are derived from the index name and the parameters in its meta file, so
+     * they are the same after a restart.
+     */
+    private static final Map<String, HashFunctions> hashFunctions =
+            new ConcurrentHashMap<String, HashFunctions>();
+
+    public static long searchCost(SearchKeyType keyType, long totRecs, long matchRecs) {
+        // a search scans one bucket per table and reads every candidate
+        int rpb = Buffer.BUFFER_SIZE / RecordPage.slotSize(schema());
+        return NUM_TABLES * ((totRecs / rpb) / NUM_BUCKETS + 1) + matchRecs;
+    }
+
+    /**
+     * Returns the schema of the index records.
+     *
+     * @return the schema of the index records
+     */
+    private static Schema schema() {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_KEY, BIGINT);
+        sch.addField(SCHEMA_RID_BLOCK, BIGINT);
+        sch.addField(SCHEMA_RID_ID, INTEGER);
+        return sch;
+    }
+
+    private static Schema metaSchema() {
+        Schema sch = new Schema();
+        sch.addField(SCHEMA_NUM_TABLES, INTEGER);
+        sch.addField(SCHEMA_NUM_HASHES, INTEGER);
+        sch.addField(SCHEMA_BUCKET_WIDTH, DOUBLE);
+        sch.addField(SCHEMA_NUM_BUCKETS, INTEGER);
+        return sch;
+    }
+
+    /**
+     * The random projections and offsets of all hash tables of an index.
+     */
+    private static class HashFunctions {
+        final int numTables, numHashes, numBuckets;
+        final double bucketWidth;
+        // projection j of table t is at row t * numHashes + j
+        final float[][] projections;
+        final float[] offsets;
+
+        HashFunctions(int dim, long seed, int numTables, int numHashes, double bucketWidth,
+                int numBuckets) {
+            this.numTables = numTables;
+            this.numHashes = numHashes;
+            this.bucketWidth = bucketWidth;
+            this.numBuckets = numBuckets;
+            Random random = new Random(seed);
+            projections = new float[numTables * numHashes][dim];
+            offsets = new float[numTables * numHashes];
+            for (int i = 0; i < projections.length; i++) {
+                for (int d = 0; d < dim; d++)
+                    projections[i][d] = (float) random.nextGaussian();
+                offsets[i] = (float) (random.nextDouble() * bucketWidth);
+            }
+        }
+
+        /**
+         * Returns the signature of a vector in a hash table, which combines
+         * the interval of the vector on every projection of the table.
+         */
+        long signature(int table, float[] vec) {
+            long sig = 0;
+            for (int j = table * numHashes; j < (table + 1) * numHashes; j++) {
+                float[] proj = projections[j];
+                double dot = offsets[j];
+                for (int d = 0; d < vec.length; d++)
+                    dot += proj[d] * vec[d];
+                sig = sig * 0x9E3779B97F4A7C15L + (long) Math.floor(dot / bucketWidth);
+            }
+            return sig;
+        }
+
+        /**
+         * Returns the bucket file of a signature in a hash table.
+         */
+        int bucket(long sig) {
+            return (int) Math.floorMod(sig, (long) numBuckets);
+        }
+    }
+
+    private RecordId[] results;
+    private int pos;
+    private boolean isBeforeFirsted;
+
+    /**
+     * Opens an LSH index for the specified index.
+     *
+     * @param ii
+     *            the information of this index
+     * @param keyType
+     *            the type of the search key
+     * @param tx
+     *            the calling transaction
+     */
+    public LSHashIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+        super(ii, keyType, tx);
+    }
+
+    @Override
+    public void preLoadToMemory() {
+        HashFunctions fns = hashFunctions();
+        for (int t = 0; t < fns.numTables; t++) {
+            for (int b = 0; b < fns.numBuckets; b++) {
+                String tblname = bucketFileName(t, b) + ".tbl";
+                long size = fileSize(tblname);
+                BlockId blk;
+                for (int j = 0; j < size; j++) {
+                    blk = new BlockId(tblname, j);
+                    tx.bufferMgr().pin(blk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Positions the index before the first nearest neighbor of the search
+     * vector among the entries that share a bucket with it in any table. A
+     * {@link VectorSearchRange} that asks for k neighbors gets the k closest
+     * ones by its distance function; any other search range gets
+     * {@link #DEFAULT_K} of them by Euclidean distance. Neighbors are returned
+     * in ascending order of distance.
+     *
+     * @see Index#beforeFirst(SearchRange)
+     */
+    @Override
+    public void beforeFirst(SearchRange searchRange) {
+        close();
+        if (!searchRange.isSingleValue())
+            throw new UnsupportedOperationException();
+
+        VectorConstant query = (VectorConstant) searchRange.asSearchKey().get(0);
+        int k = DEFAULT_K;
+        DistanceFn distFn = null;
+        if (searchRange instanceof VectorSearchRange) {
+            VectorSearchRange vsr = (VectorSearchRange) searchRange;
+            if (vsr.k() > 0)
+                k = vsr.k();
+            distFn = vsr.distanceFn();
+        }
+        if (distFn == null) {
+            distFn = new EuclideanFn(ii.fieldNames().get(0));
+            distFn.setQueryVector(query);
+        }
+
+        // collect the candidates of all tables, without duplicates
+        HashFunctions fns = hashFunctions();
+        Set<RecordId> candidates = new LinkedHashSet<RecordId>();
+        for (int t = 0; t < fns.numTables; t++) {
+            long sig = fns.signature(t, query.asJavaVal());
+            RecordFile bucketRf = openBucketFile(t, fns.bucket(sig));
+            bucketRf.beforeFirst();
+            while (bucketRf.next())
+                if ((Long) bucketRf.getVal(SCHEMA_KEY).asJavaVal() == sig)
+                    candidates.add(entryRecordId(bucketRf));
+            bucketRf.close();
+        }
+
+        // re-rank the candidates by their exact distances
+        TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+        String fldName = ii.fieldNames().get(0);
+        RecordFile dataRf = VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx)
+                .open(tx, false);
+        for (RecordId rid : candidates) {
+            dataRf.moveToRecordId(rid);
+            double dist = dataRf.rankingDistance(fldName, distFn);
+            if (dist < heap.threshold())
+                heap.offer(dist, rid);
+        }
+        dataRf.close();
+        results = heap.drainSorted(new RecordId[heap.size()], null);
+        pos = -1;
+
+        isBeforeFirsted = true;
+    }
+
+    @Override
+    public boolean next() {
+        if (!isBeforeFirsted)
+            throw new IllegalStateException("You must call beforeFirst() before iterating index '"
+                    + ii.indexName() + "'");
+
+        return ++pos < results.length;
+    }
+
+    @Override
+    public RecordId getDataRecordId() {
+        return results[pos];
+    }
+
+    /**
+     * Inserts an index record into the bucket of the vector in every table.
+     *
+     * @see Index#insert(SearchKey, RecordId, boolean)
+     */
+    @Override
+    public void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        close();
+        // search the positions
+        VectorConstant vec = (VectorConstant) key.get(0);
+        long[] sigs = new long[hashFunctions().numTables];
+        RecordFile[] bucketRfs = openBucketFiles(vec, sigs);
+
+        // insert the data
+        for (int t = 0; t < sigs.length; t++) {
+            bucketRfs[t].insert();
+            bucketRfs[t].setVal(SCHEMA_KEY, new BigIntConstant(sigs[t]));
+            bucketRfs[t].setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block()
+                    .number()));
+            bucketRfs[t].setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+            bucketRfs[t].close();
+        }
+    }
+
+    /**
+     * Deletes the index record of the data record from every table.
+     *
+     * @see Index#delete(SearchKey, RecordId, boolean)
+     */
+    @Override
+    public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        close();
+        // search the positions
+        VectorConstant vec = (VectorConstant) key.get(0);
+        long[] sigs = new long[hashFunctions().numTables];
+        RecordFile[] bucketRfs = openBucketFiles(vec, sigs);
+
+        // delete the specified entries
+        for (int t = 0; t < sigs.length; t++) {
+            RecordFile bucketRf = bucketRfs[t];
+            bucketRf.beforeFirst();
+            while (bucketRf.next()) {
+                if ((Long) bucketRf.getVal(SCHEMA_KEY).asJavaVal() == sigs[t]
+                        && entryRecordId(bucketRf).equals(dataRecordId)) {
+                    bucketRf.delete();
+                    break;
+                }
+            }
+            bucketRf.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        results = null;
+        isBeforeFirsted = false;
+    }
+
+    private HashFunctions hashFunctions() {
+        return hashFunctions.computeIfAbsent(ii.indexName(), name -> loadHashFunctions());
+    }
+
+    /**
+     * Creates the hash functions by the parameters in the meta file, which
+     * are taken from the properties and saved if the index has no meta file
+     * yet.
+     */
+    private HashFunctions loadHashFunctions() {
+        int dim = keyType.get(0).getArgument();
+        TableInfo metaTi = new TableInfo(ii.indexName() + META_FILE_SUFFIX, metaSchema());
+        RecordFile metaRf = metaTi.open(tx, false);
+        if (metaRf.fileSize() == 0)
+            RecordFile.formatFileHeader(metaTi.fileName(), tx);
+        metaRf.beforeFirst();
+        if (!metaRf.next()) {
+            metaRf.insert();
+            metaRf.setVal(SCHEMA_NUM_TABLES, new IntegerConstant(NUM_TABLES));
+            metaRf.setVal(SCHEMA_NUM_HASHES, new IntegerConstant(NUM_HASHES));
+            metaRf.setVal(SCHEMA_BUCKET_WIDTH, new DoubleConstant(BUCKET_WIDTH));
+            metaRf.setVal(SCHEMA_NUM_BUCKETS, new IntegerConstant(NUM_BUCKETS));
+        }
+        HashFunctions fns = new HashFunctions(dim, ii.indexName().hashCode(),
+                (Integer) metaRf.getVal(SCHEMA_NUM_TABLES).asJavaVal(),
+                (Integer) metaRf.getVal(SCHEMA_NUM_HASHES).asJavaVal(),
+                (Double) metaRf.getVal(SCHEMA_BUCKET_WIDTH).asJavaVal(),
+                (Integer) metaRf.getVal(SCHEMA_NUM_BUCKETS).asJavaVal());
+        metaRf.close();
+        return fns;
+    }
+
+    private String bucketFileName(int table, int bucket) {
+        return ii.indexName() + BUCKET_FILE_SUFFIX + table + "_" + bucket;
+    }
+
+    /**
+     * Opens the bucket file of the vector in every table, and stores the
+     * signatures of the vector in {@code sigs}.
+     */
+    private RecordFile[] openBucketFiles(VectorConstant vec, long[] sigs) {
+        HashFunctions fns = hashFunctions();
+        RecordFile[] bucketRfs = new RecordFile[fns.numTables];
+        for (int t = 0; t < fns.numTables; t++) {
+            sigs[t] = fns.signature(t, vec.asJavaVal());
+            bucketRfs[t] = openBucketFile(t, fns.bucket(sigs[t]));
+        }
+        return bucketRfs;
+    }
+
+    private RecordFile openBucketFile(int table, int bucket) {
+        TableInfo ti = new TableInfo(bucketFileName(table, bucket), schema());
+
+        // the underlying record file should not perform logging
+        RecordFile rf = ti.open(tx, false);
+
+        // initialize the file header if needed
+        if (rf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return rf;
+    }
+
+    private RecordId entryRecordId(RecordFile bucketRf) {
+        long blkNum = (Long) bucketRf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+        int id = (Integer) bucketRf.getVal(SCHEMA_RID_ID).asJavaVal();
+        return new RecordId(new BlockId(dataFileName, blkNum), id);
+    }
+
+    private long fileSize(String fileName) {
+        tx.concurrencyMgr().readFile(fileName);
+        return VanillaDb.fileMgr().size(fileName);
+    }
+}
@@ -66,7 +66,6 @@ public class CatalogMgr {
 
 	public void createIndex(String idxName, String tblName, List<String> fldNames,
 			IndexType indexType, Transaction tx) {
-		System.out.println("Catalog createIndex");
 		idxMgr.createIndex(idxName, tblName, fldNames, indexType, tx);
 	}
 
@@ -74,8 +73,11 @@ public class CatalogMgr {
 		idxMgr.dropIndex(idxName, tx);
 	}
 	
+	public void loadUnbuiltIndexes(Transaction tx) {
+		idxMgr.loadUnbuiltIndexes(tx);
+	}
+	
 	public Set<String> getIndexedFields(String tblName, Transaction tx) {
-		System.out.println("Getting idxMgr Indexed Field for Table " + tblName);
 		return idxMgr.getIndexedFields(tblName, tx);
 	}
 
@@ -18,6 +18,7 @@ package org.vanilladb.core.storage.metadata;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 
+import java.sql.Types;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -26,13 +27,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.vanilladb.core.query.algebra.vector.NearestNeighborCache;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.sql.VectorType;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.VectorColumnStore;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.util.CoreProperties;
 
@@ -138,8 +142,8 @@ public class TableMgr {
 			fcatfile.setVal(FCAT_FLDNAME, new VarcharConstant(fldname));
 			fcatfile.setVal(FCAT_TYPE, new IntegerConstant(sch.type(fldname)
 					.getSqlType()));
-			fcatfile.setVal(FCAT_TYPEARG, new IntegerConstant(sch.type(fldname)
-					.getArgument()));
+			fcatfile.setVal(FCAT_TYPEARG, new IntegerConstant(
+					typeArgument(sch.type(fldname))));
 		}
 		fcatfile.close();
 	}
@@ -154,9 +158,14 @@ public class TableMgr {
 	 */
 	public void dropTable(String tblName, Transaction tx) {
 		// Remove the file
-		RecordFile rf = getTableInfo(tblName, tx).open(tx, true);
+		TableInfo ti = getTableInfo(tblName, tx);
+		RecordFile rf = ti.open(tx, true);
 		rf.remove();
 
+		// Remove the vector stores and the cached searches of the table, if any
+		VectorColumnStore.drop(ti);
+		NearestNeighborCache.invalidate(tblName);
+
 		// Optimization: remove from the TableInfo map
 		tiMap.remove(tblName);
 
@@ -240,7 +249,7 @@ public class TableMgr {
 				int fldtype = (Integer) fcatfile.getVal(FCAT_TYPE).asJavaVal();
 				int fldarg = (Integer) fcatfile.getVal(FCAT_TYPEARG)
 						.asJavaVal();
-				sch.addField(fldname, Type.newInstance(fldtype, fldarg));
+				sch.addField(fldname, newType(fldtype, fldarg));
 			}
 		fcatfile.close();
 		// Optimization:
@@ -253,4 +262,25 @@ public class TableMgr {
 		String fileName = tblName + ".tbl";
 		RecordFile.formatFileHeader(fileName, tx);
 	}
+
+	/**
+	 * Returns the type argument of a field to be saved in the catalog. A
+	 * normalized vector field saves its size negated, so that the catalog
+	 * keeps its format.
+	 */
+	private static int typeArgument(Type type) {
+		if (type instanceof VectorType && ((VectorType) type).isNormalized())
+			return -type.getArgument();
+		return type.getArgument();
+	}
+
+	/**
+	 * Returns the type of a field from its SQL type and the type argument
+	 * saved by {@link #typeArgument(Type)}.
+	 */
+	private static Type newType(int sqlType, int arg) {
+		if (sqlType == Types.ARRAY && arg < 0)
+			return Type.NORMALIZED_VECTOR(-arg);
+		return Type.newInstance(sqlType, arg);
+	}
 }
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.metadata.index;
+
+import java.sql.Connection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo.State;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+
+/**
+ * The task builds an index created on a table that already has records,
+ * without blocking the updates to the table.
+ *
+ * <p>
+ * The index is {@link State#BUILDING} from its creation. Once the creating
+ * transaction commits, the task indexes the records of the table by
+ * {@link Index#buildFromTable()} in a read-committed transaction, which does
+ * not keep the table locked against new records. Meanwhile, the updates to the
+ * table leave the index alone and record the IDs and keys of the changed
+ * records in a side buffer by
+ * {@link #recordChange(IndexInfo, SearchKey, RecordId)}.
+ * </p>
+ *
+ * <p>
+ * After the scan, the task locks the table exclusively, which waits for the
+ * running updates, and reconciles each changed record with the index: the
+ * entries of all the recorded keys are deleted, and the record is indexed
+ * again if it still exists. The index then becomes {@link State#READY}
+ * before the lock is released, so later updates maintain it directly.
+ * </p>
+ *
+ * <p>
+ * The index stays in the build catalog of {@link IndexMgr} until the build
+ * commits. If the build fails, or the system crashes before the build
+ * commits, the index stays {@code BUILDING} and is never used, also after a
+ * restart; it should be dropped and created again.
+ * </p>
+ */
+public class IndexBuildTask extends Task {
+	private static Logger logger = Logger.getLogger(IndexBuildTask.class.getName());
+
+	// the index name -> the task building the index
+	private static final Map<String, IndexBuildTask> buildingIndexes =
+			new ConcurrentHashMap<String, IndexBuildTask>();
+
+	/**
+	 * Marks the index as building and schedules a task to build it once the
+	 * creating transaction commits.
+	 *
+	 * @param idxMgr
+	 *            the index manager that lists the index in the build catalog
+	 * @param ii
+	 *            the information of the new index
+	 * @param tx
+	 *            the transaction that creates the index
+	 */
+	static void schedule(IndexMgr idxMgr, IndexInfo ii, Transaction tx) {
+		final IndexBuildTask task = new IndexBuildTask(idxMgr, ii);
+		ii.setState(State.BUILDING);
+		buildingIndexes.put(ii.indexName(), task);
+		tx.addLifecycleListener(new TransactionLifecycleListener() {
+			@Override
+			public void onTxCommit(Transaction tx) {
+				VanillaDb.taskMgr().runTask(task);
+			}
+
+			@Override
+			public void onTxRollback(Transaction tx) {
+				buildingIndexes.remove(ii.indexName());
+			}
+
+			@Override
+			public void onTxEndStatement(Transaction tx) {
+				// do nothing
+			}
+		});
+	}
+
+	/**
+	 * Records a change to a record of the table of a building index, which
+	 * is applied to the index when the build finishes. The caller must hold a
+	 * lock on the changed record.
+	 *
+	 * @param ii
+	 *            the information of the building index
+	 * @param key
+	 *            the key of the record that is inserted or deleted
+	 * @param dataRecordId
+	 *            the ID of the changed record
+	 */
+	public static void recordChange(IndexInfo ii, SearchKey key, RecordId dataRecordId) {
+		IndexBuildTask task = buildingIndexes.get(ii.indexName());
+		if (task != null)
+			task.addChange(key, dataRecordId);
+	}
+
+	private IndexMgr idxMgr;
+	private IndexInfo ii;
+	// the changed record -> the keys it has been inserted or deleted with
+	private Map<RecordId, Set<SearchKey>> changes =
+			new LinkedHashMap<RecordId, Set<SearchKey>>();
+
+	private IndexBuildTask(IndexMgr idxMgr, IndexInfo ii) {
+		this.idxMgr = idxMgr;
+		this.ii = ii;
+	}
+
+	private synchronized void addChange(SearchKey key, RecordId dataRecordId) {
+		Set<SearchKey> keys = changes.get(dataRecordId);
+		if (keys == null) {
+			keys = new HashSet<SearchKey>();
+			changes.put(dataRecordId, keys);
+		}
+		keys.add(key);
+	}
+
+	@Override
+	public void run() {
+		long start = System.currentTimeMillis();
+		Transaction tx = VanillaDb.txMgr().newTransaction(
+				Connection.TRANSACTION_READ_COMMITTED, false);
+		try {
+			TableInfo ti = VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx);
+			Index idx = ii.open(tx);
+			try {
+				idx.buildFromTable();
+
+				// wait for the running updates and block the new ones
+				tx.concurrencyMgr().modifyFile(ti.fileName());
+				applyChanges(idx, ti, tx);
+			} finally {
+				idx.close();
+			}
+
+			// the updates blocked by the lock will maintain the index
+			idxMgr.finishBuild(ii.indexName(), tx);
+			ii.setState(State.READY);
+			buildingIndexes.remove(ii.indexName());
+			tx.commit();
+
+			if (logger.isLoggable(Level.INFO))
+				logger.info("built index '" + ii.indexName() + "' in "
+						+ (System.currentTimeMillis() - start) + " ms");
+		} catch (RuntimeException e) {
+			buildingIndexes.remove(ii.indexName());
+			if (logger.isLoggable(Level.SEVERE))
+				logger.severe("failed to build index '" + ii.indexName() + "': " + e);
+			tx.rollback();
+		}
+	}
+
+	private synchronized void applyChanges(Index idx, TableInfo ti, Transaction tx) {
+		List<String> fldNames = ii.fieldNames();
+		RecordFile rf = ti.open(tx, false);
+		for (Map.Entry<RecordId, Set<SearchKey>> change : changes.entrySet()) {
+			RecordId rid = change.getKey();
+			Set<SearchKey> keys = change.getValue();
+
+			// the scan may have indexed the record with any of its keys
+			SearchKey current = null;
+			rf.moveToRecordId(rid);
+			if (rf.isInUse()) {
+				Constant[] vals = new Constant[fldNames.size()];
+				for (int i = 0; i < vals.length; i++)
+					vals[i] = rf.getVal(fldNames.get(i));
+				current = new SearchKey(vals);
+				keys.add(current);
+			}
+
+			for (SearchKey key : keys)
+				idx.delete(key, rid, false);
+			if (current != null)
+				idx.insert(current, rid, false);
+		}
+		rf.close();
+		changes.clear();
+	}
+}
@@ -34,9 +34,19 @@ import org.vanilladb.core.storage.tx.Transaction;
  *  as the same IndexInfo.
  */
 public class IndexInfo {
+	/**
+	 * The build states of an index. An index created on a table that already
+	 * has records is {@code BUILDING} until an {@link IndexBuildTask} has
+	 * indexed them, and only {@code READY} indexes are used by the planners.
+	 */
+	public enum State {
+		BUILDING, READY
+	}
+
 	private String idxName, tblName;
 	private List<String> fldNames;
 	private IndexType idxType;
+	private volatile State state = State.READY;
 
 	/**
 	 * Creates an IndexInfo object for the specified index.
@@ -109,6 +119,19 @@ public class IndexInfo {
 		return idxName;
 	}
 	
+	/**
+	 * Returns the build state of the index.
+	 * 
+	 * @return the build state of the index
+	 */
+	public State state() {
+		return state;
+	}
+
+	void setState(State state) {
+		this.state = state;
+	}
+	
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == null)
@@ -28,13 +28,17 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.storage.index.IndexType;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.TableMgr;
+import org.vanilladb.core.storage.metadata.index.IndexInfo.State;
 import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.tx.Transaction;
 
@@ -43,6 +47,8 @@ import org.vanilladb.core.storage.tx.Transaction;
  * manager.
  */
 public class IndexMgr {
+	private static Logger logger = Logger.getLogger(IndexMgr.class.getName());
+
 	/**
 	 * The name of the index catalog.
 	 */
@@ -65,7 +71,20 @@ public class IndexMgr {
 	public static final String KCAT_IDXNAME = "idxname",
 			KCAT_KEYNAME = "keyname";
 
-	private TableInfo idxTi, keyTi;
+	/**
+	 * The name of the build catalog, which lists the indexes whose
+	 * {@link IndexBuildTask} has not committed yet.
+	 */
+	public static final String BCAT = "idxbuildcat";
+
+	/**
+	 * The field name of the build catalog.
+	 */
+	public static final String BCAT_IDXNAME = "idxname";
+
+	private TableInfo idxTi, keyTi, buildTi;
+	// The indexes whose builds were interrupted before the system started
+	private Set<String> unbuiltIndexes;
 
 	// Optimization: Materialize the index information
 	// Index Name -> IndexInfo
@@ -101,12 +120,20 @@ public class IndexMgr {
 			tblMgr.createTable(KCAT, sch, tx);
 		}
 		
+		// The build catalog may be missing from the databases created before it
+		if (tblMgr.getTableInfo(BCAT, tx) == null) {
+			Schema sch = new Schema();
+			sch.addField(BCAT_IDXNAME, VARCHAR(MAX_NAME));
+			tblMgr.createTable(BCAT, sch, tx);
+		}
+		
 		idxTi = tblMgr.getTableInfo(ICAT, tx); 
 		if (idxTi == null) 
 			throw new RuntimeException("cannot find the catalog file for indices"); 
 		keyTi = tblMgr.getTableInfo(KCAT, tx); 
 		if (keyTi == null) 
 			throw new RuntimeException("cannot find the catalog file for the keys of indices"); 
+		buildTi = tblMgr.getTableInfo(BCAT, tx);
 		
 		/*
 		 * Optimization: store the ii. WARNING: if allowing run-time index
@@ -115,12 +142,45 @@ public class IndexMgr {
 		iiMapByIdxNames = new ConcurrentHashMap<String, IndexInfo>();
 		iiMapByTblAndFlds = new ConcurrentHashMap<String, Map<String, List<IndexInfo>>>();
 		loadedTables = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		unbuiltIndexes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	}
+	
+	/**
+	 * Reads the indexes left in the build catalog by the last run. Their
+	 * builds were interrupted, so their files may miss records, and they stay
+	 * {@link State#BUILDING} and are never used. This method should be called
+	 * during system startup, after the recovery.
+	 * 
+	 * @param tx
+	 *            the system startup transaction
+	 */
+	public void loadUnbuiltIndexes(Transaction tx) {
+		RecordFile rf = buildTi.open(tx, true);
+		rf.beforeFirst();
+		while (rf.next())
+			unbuiltIndexes.add((String) rf.getVal(BCAT_IDXNAME).asJavaVal());
+		rf.close();
+		
+		// the recovery may have materialized some of them
+		for (String idxName : unbuiltIndexes) {
+			IndexInfo ii = iiMapByIdxNames.get(idxName);
+			if (ii != null)
+				ii.setState(State.BUILDING);
+		}
+		
+		if (!unbuiltIndexes.isEmpty() && logger.isLoggable(Level.WARNING))
+			logger.warning("indexes " + unbuiltIndexes + " were not fully built and will not be"
+					+ " used; drop and create them again");
 	}
 
 	/**
 	 * Creates an index of the specified type for the specified field. A unique
 	 * ID is assigned to this index, and its information is stored in the idxcat
-	 * table.
+	 * table. If the table already has records, the index is built by an
+	 * {@link IndexBuildTask} after the calling transaction commits, and it is
+	 * not used by the planners until then. The index is listed in the build
+	 * catalog until the build commits, so that an index whose build is
+	 * interrupted by a crash is not used after the restart either.
 	 * 
 	 * @param idxName
 	 *            the name of the index
@@ -153,7 +213,44 @@ public class IndexMgr {
 			rf.close();
 		}
 		
-		updateCache(new IndexInfo(idxName, tblName, fldNames, idxType));
+		IndexInfo ii = new IndexInfo(idxName, tblName, fldNames, idxType);
+		updateCache(ii);
+		
+		// Build the index from the existing records in the background
+		if (hasRecords(tblName, tx)) {
+			rf = buildTi.open(tx, true);
+			rf.insert();
+			rf.setVal(BCAT_IDXNAME, new VarcharConstant(idxName));
+			rf.close();
+			IndexBuildTask.schedule(this, iiMapByIdxNames.get(idxName), tx);
+		}
+	}
+	
+	/**
+	 * Removes the index from the build catalog, which marks it as fully
+	 * built once the calling transaction commits.
+	 * 
+	 * @param idxName
+	 *            the name of the built index
+	 * @param tx
+	 *            the transaction that builds the index
+	 */
+	void finishBuild(String idxName, Transaction tx) {
+		RecordFile rf = buildTi.open(tx, true);
+		rf.beforeFirst();
+		while (rf.next())
+			if (((String) rf.getVal(BCAT_IDXNAME).asJavaVal()).equals(idxName))
+				rf.delete();
+		rf.close();
+	}
+	
+	private boolean hasRecords(String tblName, Transaction tx) {
+		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+		RecordFile rf = ti.open(tx, false);
+		rf.beforeFirst();
+		boolean hasRecords = rf.next();
+		rf.close();
+		return hasRecords;
 	}
 	
 	public Set<String> getIndexedFields(String tblName, Transaction tx) {
@@ -248,7 +345,7 @@ public class IndexMgr {
 		rf.close();
 		
 		// Materialize IndexInfos
-		ii = new IndexInfo(idxName, tblName, fldNames, idxType);
+		ii = newIndexInfo(idxName, tblName, fldNames, idxType);
 		updateCache(ii);
 		
 		return ii;
@@ -297,6 +394,10 @@ public class IndexMgr {
 			}
 		}
 		rf.close();
+		
+		// An index whose build has not committed is in the build catalog
+		finishBuild(idxName, tx);
+		unbuiltIndexes.remove(idxName);
 
 		// update the cache
 		removeFromCache(new IndexInfo(idxName, tblName, fldNames, idxType));
@@ -342,11 +443,19 @@ public class IndexMgr {
 		for (String idxName : idxNames) {
 			IndexType idxType = idxTypeMap.get(idxName);
 			List<String> fldNames = fldNamesMap.get(idxName);
-			updateCache(new IndexInfo(idxName, tblName, fldNames, idxType));
+			updateCache(newIndexInfo(idxName, tblName, fldNames, idxType));
 		}
 		loadedTables.add(tblName);
 	}
 	
+	private IndexInfo newIndexInfo(String idxName, String tblName, List<String> fldNames,
+			IndexType idxType) {
+		IndexInfo ii = new IndexInfo(idxName, tblName, fldNames, idxType);
+		if (unbuiltIndexes.contains(idxName))
+			ii.setState(State.BUILDING);
+		return ii;
+	}
+	
 	private void updateCache(IndexInfo ii) {
 		if (!iiMapByIdxNames.containsKey(ii.indexName()))
 			iiMapByIdxNames.put(ii.indexName(), ii);
@@ -34,6 +34,8 @@ import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.ConstantRange;
 import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VectorConstantRange;
+import org.vanilladb.core.sql.VectorType;
 import org.vanilladb.core.util.CoreProperties;
 
 /**
@@ -395,6 +397,8 @@ public class SampledHistogramBuilder {
 	public Histogram newMaxDiffHistogram(int numBkts, int numPcts) {
 		Map<String, BucketBuilder> initBbs = new HashMap<String, BucketBuilder>();
 		for (String fld : schema.fields()) {
+			if (!isOrdered(fld))
+				continue;
 			if (schema.type(fld).isNumeric()) {
 				initBbs.put(fld, new MaxDiffAreaBucketBuilder(frequencies(fld),
 						null));
@@ -416,8 +420,9 @@ public class SampledHistogramBuilder {
 	public Histogram newMaxDiffAreaHistogram(int numBkts) {
 		Map<String, BucketBuilder> initBbs = new HashMap<String, BucketBuilder>();
 		for (String fld : schema.fields()) {
-			initBbs.put(fld, new MaxDiffAreaBucketBuilder(frequencies(fld),
-					null));
+			if (isOrdered(fld))
+				initBbs.put(fld, new MaxDiffAreaBucketBuilder(frequencies(fld),
+						null));
 		}
 		return newMaxDiffHistogram(numBkts, initBbs);
 	}
@@ -435,8 +440,9 @@ public class SampledHistogramBuilder {
 		Map<String, BucketBuilder> initBbs = new HashMap<String, BucketBuilder>();
 		// initialize the first bucket builder for every field
 		for (String fld : schema.fields())
-			initBbs.put(fld, new MaxDiffFreqBucketBuilder(frequencies(fld),
-					numPcts));
+			if (isOrdered(fld))
+				initBbs.put(fld, new MaxDiffFreqBucketBuilder(frequencies(fld),
+						numPcts));
 		return newMaxDiffHistogram(numBkts, initBbs);
 	}
 
@@ -444,6 +450,17 @@ public class SampledHistogramBuilder {
 			Map<String, BucketBuilder> initBbs) {
 		Map<String, Collection<Bucket>> dists = new HashMap<String, Collection<Bucket>>();
 		for (String fld : schema.fields()) {
+			// unordered values cannot be split, so they fall in a single
+			// unbounded bucket
+			if (!isOrdered(fld)) {
+				Collection<Bucket> dist = new ArrayList<Bucket>(1);
+				dist.add(new Bucket(new VectorConstantRange(null, false, null,
+						false), samples.size() * extrapolateRecords(),
+						extrapolateValues(fld)));
+				dists.put(fld, dist);
+				continue;
+			}
+
 			List<BucketBuilder> bbs = new LinkedList<BucketBuilder>();
 			bbs.add(initBbs.get(fld));
 
@@ -477,6 +494,14 @@ public class SampledHistogramBuilder {
 		return new Histogram(dists);
 	}
 
+	/**
+	 * Returns whether the values of the field can be compared with each other.
+	 * Vectors have no order, so they cannot be bucketed by range.
+	 */
+	private boolean isOrdered(String fldName) {
+		return !(schema.type(fldName) instanceof VectorType);
+	}
+
 	private Map<Constant, Integer> frequencies(String fldName) {
 		Map<Constant, Integer> freqs = new HashMap<Constant, Integer>();
 		for (Record rec : samples) {
@@ -15,11 +15,10 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.metadata.statistics;
 
-import static org.vanilladb.core.storage.metadata.TableMgr.TCAT;
-import static org.vanilladb.core.storage.metadata.TableMgr.TCAT_TBLNAME;
-
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,8 +32,10 @@ import org.vanilladb.core.util.CoreProperties;
 /**
  * The statistics manager, which is responsible for keeping statistical
  * information about each table. The manager does not store this information in
- * catalogs in database. Instead, it calculates this information on system
- * startup, keeps the information in memory, and periodically refreshes it.
+ * catalogs in database. Instead, it calculates the information of a table by a
+ * {@link StatisticsRefreshTask} when the table is first planned, keeps the
+ * information in memory, and periodically refreshes it. Until the first
+ * calculation finishes, the table has empty statistics.
  */
 public class StatMgr {
     private static Logger logger = Logger.getLogger(StatMgr.class.getName());
@@ -48,6 +49,8 @@ public class StatMgr {
     private boolean isRefreshStatOn;
     private Map<String, TableStatInfo> tableStats;
     private Map<String, Integer> updateCounts;
+    // the tables whose refresh tasks are scheduled but not finished
+    private Set<String> refreshingTables;
 
     static {
         REFRESH_THRESHOLD = CoreProperties.getLoader().getPropertyAsInteger(
@@ -59,22 +62,17 @@ public class StatMgr {
     }
 
     /**
-     * Creates the statistics manager. The initial statistics are calculated by
-     * traversing the entire database.
+     * Creates the statistics manager. No table is scanned on startup; the
+     * statistics of a table are calculated in the background when the table is
+     * first planned.
      *
      * @param tx
      *            the startup transaction
      */
     public StatMgr(Transaction tx) {
-        if (logger.isLoggable(Level.INFO))
-            logger.info("building statistics...");
-
         initStatistics(tx);
         // Check refresh_threshold value to turn on/off the statistics
         isRefreshStatOn = !(REFRESH_THRESHOLD == REFRESH_STAT_OFF);
-
-        if (logger.isLoggable(Level.INFO))
-            logger.info("the statistics is up to date.");
     }
 
     /**
@@ -91,18 +89,28 @@ public class StatMgr {
         if (isRefreshStatOn) {
             Integer c = updateCounts.get(ti.tableName());
             if (c != null && c > REFRESH_THRESHOLD)
-                VanillaDb.taskMgr().runTask(
-                        new StatisticsRefreshTask(tx, ti.tableName()));
+                scheduleRefresh(ti.tableName());
         }
 
         TableStatInfo tsi = tableStats.get(ti.tableName());
         if (tsi == null) {
-            tsi = calcTableStats(ti, tx);
+            // the table is scanned in the background rather than by the caller
+            tsi = emptyTableStats(ti);
             tableStats.put(ti.tableName(), tsi);
+            scheduleRefresh(ti.tableName());
         }
         return tsi;
     }
 
+    /**
+     * Schedules a task to refresh the statistics of a table, unless one is
+     * already scheduled. The caller must hold the lock of this manager.
+     */
+    private void scheduleRefresh(String tblName) {
+        if (refreshingTables.add(tblName))
+            VanillaDb.taskMgr().runTask(new StatisticsRefreshTask(tblName));
+    }
+
     public synchronized void countRecordUpdates(String tblName, int count) {
         if (!isRefreshStatOn)
             return;
@@ -117,47 +125,57 @@ public class StatMgr {
         return this.isRefreshStatOn;
     }
 
-    protected synchronized void refreshStatistics(String tblName, Transaction tx) {
-        updateCounts.put(tblName, 0);
+    /**
+     * Recalculates the statistics of a table. The table is scanned without
+     * holding the lock of this manager, so that planning other queries is not
+     * blocked by the scan.
+     */
+    protected void refreshStatistics(String tblName, Transaction tx) {
+        synchronized (this) {
+            updateCounts.put(tblName, 0);
+        }
 
-        TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
-        TableStatInfo si = calcTableStats(ti, tx);
-        tableStats.put(tblName, si);
+        try {
+            TableInfo ti = VanillaDb.catalogMgr().getTableInfo(tblName, tx);
+            if (ti == null)
+                return;
+            TableStatInfo si = calcTableStats(ti, tx);
+            synchronized (this) {
+                tableStats.put(tblName, si);
+            }
+            if (logger.isLoggable(Level.FINE))
+                logger.fine("refreshed the statistics of table " + tblName);
+        } finally {
+            synchronized (this) {
+                refreshingTables.remove(tblName);
+            }
+        }
     }
 
     private synchronized void initStatistics(Transaction tx) {
         updateCounts = new HashMap<String, Integer>();
         tableStats = new HashMap<String, TableStatInfo>();
-        TableInfo tcatmd = VanillaDb.catalogMgr().getTableInfo(TCAT, tx);
-        RecordFile tcatfile = tcatmd.open(tx, true);
-        tcatfile.beforeFirst();
-        while (tcatfile.next()) {
-            String tblName = (String) tcatfile.getVal(TCAT_TBLNAME).asJavaVal();
-            refreshStatistics(tblName, tx);
-        }
-        tcatfile.close();
+        refreshingTables = new HashSet<String>();
     }
 
-    private synchronized TableStatInfo calcTableStats(TableInfo ti, Transaction tx) {
-
-//		long numblocks = 0;
-//		Schema schema = ti.schema();
-//		SampledHistogramBuilder hb = new SampledHistogramBuilder(schema);
-//		Histogram h = hb.newMaxDiffHistogram(NUM_BUCKETS, NUM_PERCENTILES);
-//		return new TableStatInfo(numblocks, h);
+    private TableStatInfo emptyTableStats(TableInfo ti) {
+        SampledHistogramBuilder hb = new SampledHistogramBuilder(ti.schema());
+        Histogram h = hb.newMaxDiffHistogram(NUM_BUCKETS, NUM_PERCENTILES);
+        return new TableStatInfo(0, h);
+    }
 
+    private TableStatInfo calcTableStats(TableInfo ti, Transaction tx) {
         long numblocks = 0;
         Schema schema = ti.schema();
         SampledHistogramBuilder hb = new SampledHistogramBuilder(schema);
 
-        // TODO: Figure out a way to build histogram
-        // RecordFile rf = ti.open(tx, true);
-        // rf.beforeFirst();
-        // while (rf.next()) {
-        //     numblocks = rf.currentRecordId().block().number() + 1;
-        //     hb.sample(rf);
-        // }
-        // rf.close();
+        RecordFile rf = ti.open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            numblocks = rf.currentRecordId().block().number() + 1;
+            hb.sample(rf);
+        }
+        rf.close();
 
         Histogram h = hb.newMaxDiffHistogram(NUM_BUCKETS, NUM_PERCENTILES);
         return new TableStatInfo(numblocks, h);
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.metadata.statistics;
 
+import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -29,11 +30,8 @@ public class StatisticsRefreshTask extends Task {
 			.getName());
 
 	private List<String> refreshtbls;
-	private Transaction tx;
-
-	public StatisticsRefreshTask(Transaction tx, String... tblNames) {
-		this.tx = tx;
 
+	public StatisticsRefreshTask(String... tblNames) {
 		this.refreshtbls = new ArrayList<String>();
 		for (int i = 0; i < tblNames.length; i++)
 			this.refreshtbls.add(tblNames[i]);
@@ -43,8 +41,12 @@ public class StatisticsRefreshTask extends Task {
 	public void run() {
 		if (logger.isLoggable(Level.FINE))
 			logger.info("Start refreshing statistics of table");
+		// the task outlives the transaction that triggers it, so it scans the
+		// tables in a read-only transaction of its own
+		Transaction tx = VanillaDb.txMgr().newTransaction(
+				Connection.TRANSACTION_READ_COMMITTED, true);
 		while (!refreshtbls.isEmpty())
-			VanillaDb.statMgr().refreshStatistics(refreshtbls.remove(0),
-					this.tx);
+			VanillaDb.statMgr().refreshStatistics(refreshtbls.remove(0), tx);
+		tx.commit();
 	}
 }
@@ -21,6 +21,7 @@ import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.SchemaIncompatibleException;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
@@ -155,6 +156,22 @@ public class RecordFile implements Record {
 		return rp.getVal(fldName);
 	}
 
+	/**
+	 * Returns the ranking distance between the query of the distance function
+	 * and the vector in the specified field of the current record, without
+	 * materializing the vector.
+	 * 
+	 * @param fldName
+	 *            the name of a vector field
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * 
+	 * @return the ranking distance to the vector at that field
+	 */
+	public double rankingDistance(String fldName, DistanceFn distFn) {
+		return rp.rankingDistance(fldName, distFn);
+	}
+
 	/**
 	 * Sets a value of the specified field in the current record. The type of
 	 * the value must be equal to that of the specified field.
@@ -348,6 +365,16 @@ public class RecordFile implements Record {
 		rp.moveToId(rid.id());
 	}
 
+	/**
+	 * Returns true if the current slot holds a record, which tells whether a
+	 * record moved to by {@link #moveToRecordId(RecordId)} still exists.
+	 * 
+	 * @return true if the current slot is in use
+	 */
+	public boolean isInUse() {
+		return rp.isInUse();
+	}
+
 	/**
 	 * Returns the record ID of the current record.
 	 * 
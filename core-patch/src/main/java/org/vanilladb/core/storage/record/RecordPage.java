@@ -27,6 +27,7 @@ import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
@@ -189,6 +190,25 @@ public class RecordPage implements Record {
 		return getVal(position, ti.schema().type(fldName));
 	}
 
+	/**
+	 * Returns the ranking distance between the query of the distance function
+	 * and the vector stored in the specified field of this record. The vector
+	 * is read in place from the buffer.
+	 * 
+	 * @param fldName
+	 *            the name of a vector field
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * 
+	 * @return the ranking distance to the stored vector
+	 */
+	public double rankingDistance(String fldName, DistanceFn distFn) {
+		if (!isTempTable())
+			tx.concurrencyMgr().readRecord(new RecordId(blk, currentSlot));
+		int dim = ti.schema().type(fldName).getArgument();
+		return currentBuff.rankingDistance(fieldPos(fldName), dim, distFn);
+	}
+
 	/**
 	 * Stores a value at the specified field of this record.
 	 * 
@@ -263,6 +283,15 @@ public class RecordPage implements Record {
 		return nds;
 	}
 
+	/**
+	 * Returns true if the current slot holds a record.
+	 * 
+	 * @return true if the current slot is in use
+	 */
+	public boolean isInUse() {
+		return isValidSlot() && (Integer) getVal(currentPos(), INTEGER).asJavaVal() == INUSE;
+	}
+
 	/**
 	 * Sets the current record to be the record having the specified ID.
 	 * 
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2016, 2018 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.record;
+
+import static org.vanilladb.core.sql.Type.INTEGER;
+import static org.vanilladb.core.storage.record.RecordPage.FLAG_SIZE;
+import static org.vanilladb.core.storage.record.RecordPage.INUSE;
+
+import java.util.Map;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.metadata.TableInfo;
+
+/**
+ * The slot layout of the record pages of a table, which reads records
+ * directly from buffers that are already pinned by the caller.
+ *
+ * <p>
+ * Unlike {@link RecordPage}, a layout neither pins buffers nor acquires locks
+ * through a transaction, and it keeps no cursor. It is therefore safe to read
+ * different buffers from multiple threads at the same time, provided that the
+ * owning transaction has pinned and locked the blocks beforehand.
+ * </p>
+ */
+public class RecordPageLayout {
+	private Schema sch;
+	private Map<String, Integer> offsetMap;
+	private int slotSize;
+
+	/**
+	 * Creates the layout of the record pages of the specified table.
+	 *
+	 * @param ti
+	 *            the table metadata
+	 */
+	public RecordPageLayout(TableInfo ti) {
+		sch = ti.schema();
+		offsetMap = RecordPage.offsetMap(sch);
+		slotSize = RecordPage.slotSize(sch);
+	}
+
+	/**
+	 * Returns the number of slots in a record page.
+	 *
+	 * @return the number of slots per block
+	 */
+	public int slotsPerBlock() {
+		return Buffer.BUFFER_SIZE / slotSize;
+	}
+
+	/**
+	 * Returns true if the specified slot of the buffer holds a record.
+	 *
+	 * @param buff
+	 *            a pinned buffer of the table
+	 * @param slot
+	 *            the slot id
+	 * @return true if the slot is in use
+	 */
+	public boolean isInUse(Buffer buff, int slot) {
+		return (Integer) buff.getVal(slot * slotSize, INTEGER).asJavaVal() == INUSE;
+	}
+
+	/**
+	 * Returns the value of the specified field of the record in the given slot.
+	 *
+	 * @param buff
+	 *            a pinned buffer of the table
+	 * @param slot
+	 *            the slot id
+	 * @param fldName
+	 *            the name of the field
+	 * @return the value of that field
+	 */
+	public Constant getVal(Buffer buff, int slot, String fldName) {
+		Type type = sch.type(fldName);
+		return buff.getVal(fieldPos(slot, fldName), type);
+	}
+
+	/**
+	 * Returns the ranking distance between the query of the distance function
+	 * and the vector stored in the specified field of the record in the given
+	 * slot. The vector is read in place from the buffer.
+	 *
+	 * @param buff
+	 *            a pinned buffer of the table
+	 * @param slot
+	 *            the slot id
+	 * @param fldName
+	 *            the name of a vector field
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @return the ranking distance to the stored vector
+	 */
+	public double rankingDistance(Buffer buff, int slot, String fldName, DistanceFn distFn) {
+		int dim = sch.type(fldName).getArgument();
+		return buff.rankingDistance(fieldPos(slot, fldName), dim, distFn);
+	}
+
+	private int fieldPos(int slot, String fldName) {
+		return slot * slotSize + FLAG_SIZE + offsetMap.get(fldName);
+	}
+}
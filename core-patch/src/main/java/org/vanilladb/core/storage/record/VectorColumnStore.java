@@ -0,0 +1,698 @@
+/*******************************************************************************
+ * Copyright 2016, 2018 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.record;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.VectorType;
+import org.vanilladb.core.sql.distfn.CosineFn;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.sql.distfn.VectorOps;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.ivf.BinaryQuantizer;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+import org.vanilladb.core.storage.tx.recovery.RecoveryMgr;
+import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * A side store of a vector field of a table, which keeps the vectors in a
+ * contiguous file of floats next to the record file so that an exact nearest
+ * neighbor search can stream them without going through record pages.
+ *
+ * <p>
+ * The vector of record {@code (blk, slot)} is the row
+ * {@code (blk - 1) * slotsPerBlock + slot} of the store, and row {@code i}
+ * starts at byte {@code i * dim * 4}. A row whose first component is NaN holds
+ * no record. The file is memory-mapped in chunks of {@link #CHUNK_ROWS} rows,
+ * so that a search reads the vectors in place from the page cache.
+ * </p>
+ *
+ * <p>
+ * The stores are enabled by {@link #ENABLED} for every vector field, and are
+ * kept in sync by the insertions, deletions and modifications of
+ * {@link org.vanilladb.core.query.planner.index.IndexUpdatePlanner}. A store
+ * is built from the table when its file does not exist. A store is not
+ * logged. Instead, it keeps the old rows changed by each transaction in
+ * memory, and restores them if the transaction rolls back, while the changed
+ * records are still locked. Like the records, the rows are not restored if
+ * logging is disabled.
+ * </p>
+ *
+ * <p>
+ * Since a store is neither logged nor forced with the table, it may not match
+ * the table after a crash. Each checkpoint forces the stores that no running
+ * transaction has changed and marks them as clean with a marker file, which
+ * the next change deletes. A store without the marker is rebuilt from the
+ * table when it is first opened after a restart.
+ * </p>
+ *
+ * <p>
+ * If {@link #PREFILTER_FACTOR} is positive, a search first ranks the rows by
+ * the Hamming distances of their 1-bit {@link BinaryQuantizer} codes, which
+ * are kept in memory and read 32 times fewer bytes than the vectors, and then
+ * ranks only the best {@code k * PREFILTER_FACTOR} rows by the distance
+ * function. The codes encode the residuals to the mean of the rows and
+ * estimate Euclidean distances, so only Euclidean searches and cosine
+ * searches over a normalized field are prefiltered; the others rank every row
+ * by the distance function. The codes are built on the first prefiltered
+ * search, kept in sync by later changes, and rebuilt around a new mean
+ * whenever the number of rows has doubled.
+ * </p>
+ */
+public class VectorColumnStore {
+	private static Logger logger = Logger.getLogger(VectorColumnStore.class.getName());
+
+	private static final String FILE_SUFFIX = ".vec", CLEAN_SUFFIX = ".clean";
+	// the binary codes are not rebuilt while there are only this many rows
+	private static final int MIN_TRAINED_ROWS = 1024;
+
+	/**
+	 * Whether the vector fields of tables are kept in side stores.
+	 */
+	public static final boolean ENABLED;
+	public static final int CHUNK_ROWS;
+
+	/**
+	 * The number of candidates per neighbor picked by the binary codes before
+	 * they are ranked by the distance function. Zero ranks every row by the
+	 * distance function.
+	 */
+	public static final int PREFILTER_FACTOR;
+
+	static {
+		ENABLED = CoreProperties.getLoader().getPropertyAsBoolean(
+				VectorColumnStore.class.getName() + ".ENABLED", false);
+		CHUNK_ROWS = CoreProperties.getLoader().getPropertyAsInteger(
+				VectorColumnStore.class.getName() + ".CHUNK_ROWS", 65536);
+		PREFILTER_FACTOR = CoreProperties.getLoader().getPropertyAsInteger(
+				VectorColumnStore.class.getName() + ".PREFILTER_FACTOR", 0);
+	}
+
+	/**
+	 * The binary codes and residual norms of the rows, with the center that
+	 * they were encoded against. A row without a record has a NaN norm.
+	 */
+	private static class BinaryCodes {
+		final float[] center;
+		final long[] words;
+		final float[] norms;
+		// the number of records when the center was computed
+		final long numTrainedRows;
+
+		BinaryCodes(float[] center, int numWords, int capacity, long numTrainedRows) {
+			this.center = center;
+			this.words = new long[capacity * numWords];
+			this.norms = new float[capacity];
+			this.numTrainedRows = numTrainedRows;
+			Arrays.fill(norms, Float.NaN);
+		}
+
+		int capacity() {
+			return norms.length;
+		}
+	}
+
+	/**
+	 * The content of a row before a transaction changed it.
+	 */
+	private static class RowImage {
+		final long row;
+		// null if the row held no record
+		final float[] vals;
+
+		RowImage(long row, float[] vals) {
+			this.row = row;
+			this.vals = vals;
+		}
+	}
+
+	// the open stores (file name -> store)
+	private static final Map<String, VectorColumnStore> stores =
+			new ConcurrentHashMap<String, VectorColumnStore>();
+
+	/**
+	 * Returns the store of a vector field of the table, opening it, and
+	 * building it from the table if it does not exist yet or was not clean.
+	 *
+	 * @param ti
+	 *            the metadata of the table
+	 * @param fldName
+	 *            the name of the vector field
+	 * @param tx
+	 *            the calling transaction
+	 * @return the store of the field
+	 */
+	public static VectorColumnStore get(TableInfo ti, String fldName, Transaction tx) {
+		String fileName = fileName(ti.tableName(), fldName);
+		VectorColumnStore store = stores.get(fileName);
+		if (store != null)
+			return store;
+
+		synchronized (stores) {
+			store = stores.get(fileName);
+			if (store == null) {
+				File file = new File(VanillaDb.fileMgr().dbDirectory(), fileName);
+				File marker = new File(VanillaDb.fileMgr().dbDirectory(),
+						fileName + CLEAN_SUFFIX);
+				if (file.exists() && !marker.exists()) {
+					// the store may have changes that the table lost, or
+					// miss changes that the recovery redid
+					if (logger.isLoggable(Level.WARNING))
+						logger.warning("the vector store " + fileName
+								+ " was not closed cleanly, rebuilding it");
+					file.delete();
+				}
+				boolean isNew = !file.exists();
+				store = new VectorColumnStore(file, marker, ti, fldName);
+				if (isNew)
+					store.load(tx);
+				stores.put(fileName, store);
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Forces the open stores to disk and marks those that no running
+	 * transaction has changed as clean, so that they are kept after a
+	 * restart. This method is called by each checkpoint.
+	 */
+	public static void checkpoint() {
+		for (VectorColumnStore store : stores.values())
+			store.markClean();
+	}
+
+	/**
+	 * Returns the vector fields of the schema, which have stores if they are
+	 * enabled.
+	 *
+	 * @param sch
+	 *            the schema of a table
+	 * @return the names of the vector fields
+	 */
+	public static List<String> vectorFields(Schema sch) {
+		List<String> flds = new ArrayList<String>();
+		for (String fldName : sch.fields())
+			if (sch.type(fldName) instanceof VectorType)
+				flds.add(fldName);
+		return flds;
+	}
+
+	/**
+	 * Closes and deletes the stores of a table, e.g., when it is dropped.
+	 *
+	 * @param ti
+	 *            the metadata of the table
+	 */
+	public static void drop(TableInfo ti) {
+		synchronized (stores) {
+			for (String fldName : vectorFields(ti.schema())) {
+				String fileName = fileName(ti.tableName(), fldName);
+				VectorColumnStore store = stores.remove(fileName);
+				if (store != null)
+					store.close();
+				new File(VanillaDb.fileMgr().dbDirectory(), fileName + CLEAN_SUFFIX).delete();
+				new File(VanillaDb.fileMgr().dbDirectory(), fileName).delete();
+			}
+		}
+	}
+
+	private static String fileName(String tblName, String fldName) {
+		return tblName + "_" + fldName + FILE_SUFFIX;
+	}
+
+	private final TableInfo ti;
+	private final String dataFileName, fldName;
+	private final int dim, slotsPerBlock, rowBytes;
+	private final long chunkBytes;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	// the file that marks the store as matching the committed table
+	private final File marker;
+	private final boolean isNormalized;
+	private volatile boolean isClean;
+	private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+	private final BinaryQuantizer bq;
+	private volatile BinaryCodes codes;
+	// the old rows changed by each active transaction, the latest first
+	private final Map<Long, Deque<RowImage>> undoLogs =
+			new ConcurrentHashMap<Long, Deque<RowImage>>();
+
+	private VectorColumnStore(File file, File marker, TableInfo ti, String fldName) {
+		this.marker = marker;
+		this.isClean = marker.exists();
+		this.ti = ti;
+		this.dataFileName = ti.fileName();
+		this.fldName = fldName;
+		this.dim = ti.schema().type(fldName).getArgument();
+		this.isNormalized = ((VectorType) ti.schema().type(fldName)).isNormalized();
+		this.slotsPerBlock = new RecordPageLayout(ti).slotsPerBlock();
+		this.rowBytes = dim * Float.BYTES;
+		this.chunkBytes = (long) CHUNK_ROWS * rowBytes;
+		this.bq = new BinaryQuantizer(dim);
+		try {
+			this.file = new RandomAccessFile(file, "rw");
+			this.channel = this.file.getChannel();
+			// map the chunks that are already in the file
+			long numChunks = (channel.size() + chunkBytes - 1) / chunkBytes;
+			for (int c = 0; c < numChunks; c++)
+				chunk(c);
+		} catch (IOException e) {
+			throw new RuntimeException("cannot open " + file + ": " + e);
+		}
+	}
+
+	/**
+	 * Returns the dimension of the stored vectors.
+	 *
+	 * @return the dimension of the vectors
+	 */
+	public int dimension() {
+		return dim;
+	}
+
+	/**
+	 * Returns the number of rows covered by the blocks of the table, some of
+	 * which may hold no record.
+	 *
+	 * @param tx
+	 *            the calling transaction
+	 * @return the number of rows
+	 */
+	public long numRows(Transaction tx) {
+		tx.concurrencyMgr().readFile(dataFileName);
+		long numBlocks = VanillaDb.fileMgr().size(dataFileName);
+		// block 0 is the file header
+		return Math.max(0, numBlocks - 1) * slotsPerBlock;
+	}
+
+	/**
+	 * Stores the vector of a record, which is restored if the transaction
+	 * rolls back. The caller must hold the lock on the record.
+	 *
+	 * @param rid
+	 *            the id of the record
+	 * @param vec
+	 *            the vector of the record
+	 * @param tx
+	 *            the modifying transaction
+	 */
+	public void put(RecordId rid, VectorConstant vec, Transaction tx) {
+		float[] vals = vec.asJavaVal();
+		if (vals.length != dim)
+			throw new IllegalArgumentException("Vector length does not match");
+		long row = row(rid);
+		logUndo(row, tx);
+		write(row, vals);
+	}
+
+	/**
+	 * Removes the vector of a record, which is restored if the transaction
+	 * rolls back. The caller must hold the lock on the record.
+	 *
+	 * @param rid
+	 *            the id of the record
+	 * @param tx
+	 *            the modifying transaction
+	 */
+	public void remove(RecordId rid, Transaction tx) {
+		long row = row(rid);
+		logUndo(row, tx);
+		clear(row);
+	}
+
+	private void write(long row, float[] vals) {
+		MappedByteBuffer chunk = chunk((int) (row / CHUNK_ROWS));
+		int offset = (int) (row % CHUNK_ROWS) * rowBytes;
+		// the first component marks the row as used, so it is written last
+		for (int i = dim - 1; i >= 0; i--)
+			chunk.putFloat(offset + i * Float.BYTES, vals[i]);
+
+		if (PREFILTER_FACTOR > 0) {
+			// synchronized with the building of the codes, which may have
+			// missed the vector
+			synchronized (this) {
+				if (codes != null)
+					encode(row, vals);
+			}
+		}
+	}
+
+	private void clear(long row) {
+		int c = (int) (row / CHUNK_ROWS);
+		if (c < chunks.length)
+			chunks[c].putFloat((int) (row % CHUNK_ROWS) * rowBytes, Float.NaN);
+
+		BinaryCodes bc = codes;
+		if (bc != null && row < bc.capacity())
+			bc.norms[(int) row] = Float.NaN;
+	}
+
+	/**
+	 * Ranks the rows in the specified range by the distance function and
+	 * returns the k closest records. The rows are read in place from the
+	 * mapped file, so this method can be called by multiple threads.
+	 *
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @param k
+	 *            the number of records to return
+	 * @param fromRow
+	 *            the first row, inclusive
+	 * @param toRow
+	 *            the last row, exclusive
+	 * @return a heap of the k closest records
+	 */
+	public TopKHeap<RecordId> rank(DistanceFn distFn, int k, long fromRow, long toRow) {
+		MappedByteBuffer[] cs = chunks;
+		toRow = Math.min(toRow, (long) cs.length * CHUNK_ROWS);
+		if (PREFILTER_FACTOR > 0 && canPrefilter(distFn))
+			return rankPrefiltered(distFn, k, fromRow, toRow, cs);
+
+		TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+		for (long row = fromRow; row < toRow; row++) {
+			MappedByteBuffer chunk = cs[(int) (row / CHUNK_ROWS)];
+			int offset = (int) (row % CHUNK_ROWS) * rowBytes;
+			if (Float.isNaN(chunk.getFloat(offset)))
+				continue;
+			double dist = distFn.rankingDistance(chunk, offset, dim);
+			if (dist < heap.threshold())
+				heap.offer(dist, recordId(row));
+		}
+		return heap;
+	}
+
+	/**
+	 * Returns whether the Euclidean distances estimated by the binary codes
+	 * rank the rows in the same order as the distance function. For unit
+	 * vectors, the squared Euclidean distance to the unit query falls as the
+	 * cosine similarity rises.
+	 */
+	private boolean canPrefilter(DistanceFn distFn) {
+		return distFn instanceof EuclideanFn
+				|| (distFn instanceof CosineFn && isNormalized);
+	}
+
+	/**
+	 * Picks the {@code k * PREFILTER_FACTOR} rows in the range whose binary
+	 * codes are the closest to that of the query, and ranks them by the
+	 * distance function.
+	 */
+	private TopKHeap<RecordId> rankPrefiltered(DistanceFn distFn, int k, long fromRow,
+			long toRow, MappedByteBuffer[] cs) {
+		BinaryCodes bc = binaryCodes(toRow);
+		int numWords = bq.numWords();
+		long[] queryCode = new long[numWords];
+		float[] query = distFn.getQueryVector().asJavaVal();
+		if (distFn instanceof CosineFn)
+			query = VectorOps.normalize(query);
+		float queryNorm = bq.encode(query, bc.center, 0, queryCode, 0);
+
+		TopKHeap<Long> candidates = new TopKHeap<Long>(k * PREFILTER_FACTOR);
+		int end = (int) Math.min(toRow, bc.capacity());
+		for (int row = (int) fromRow; row < end; row++) {
+			float norm = bc.norms[row];
+			if (Float.isNaN(norm))
+				continue;
+			float dist = bq.distance(queryCode, 0, queryNorm, bc.words, row * numWords, norm);
+			if (dist < candidates.threshold())
+				candidates.offer(dist, (long) row);
+		}
+
+		TopKHeap<RecordId> heap = new TopKHeap<RecordId>(k);
+		for (Long row : candidates.drainSorted(new Long[candidates.size()], null)) {
+			MappedByteBuffer chunk = cs[(int) (row / CHUNK_ROWS)];
+			int offset = (int) (row % CHUNK_ROWS) * rowBytes;
+			if (Float.isNaN(chunk.getFloat(offset)))
+				continue;
+			double dist = distFn.rankingDistance(chunk, offset, dim);
+			if (dist < heap.threshold())
+				heap.offer(dist, recordId(row));
+		}
+		return heap;
+	}
+
+	/**
+	 * Returns the binary codes of the rows, building them if there are none
+	 * yet or if the number of rows has doubled since their center was
+	 * computed.
+	 */
+	private BinaryCodes binaryCodes(long numRows) {
+		BinaryCodes bc = codes;
+		if (bc != null && numRows <= 2 * Math.max(bc.numTrainedRows, MIN_TRAINED_ROWS))
+			return bc;
+
+		synchronized (this) {
+			bc = codes;
+			if (bc != null && numRows <= 2 * Math.max(bc.numTrainedRows, MIN_TRAINED_ROWS))
+				return bc;
+
+			MappedByteBuffer[] cs = chunks;
+			int capacity = cs.length * CHUNK_ROWS;
+			float[] center = new float[dim];
+			long count = 0;
+			for (int row = 0; row < capacity; row++) {
+				MappedByteBuffer chunk = cs[row / CHUNK_ROWS];
+				int offset = (row % CHUNK_ROWS) * rowBytes;
+				if (Float.isNaN(chunk.getFloat(offset)))
+					continue;
+				for (int j = 0; j < dim; j++)
+					center[j] += chunk.getFloat(offset + j * Float.BYTES);
+				count++;
+			}
+			for (int j = 0; j < dim; j++)
+				center[j] = count == 0 ? 0 : center[j] / count;
+
+			bc = new BinaryCodes(center, bq.numWords(), capacity, count);
+			for (int row = 0; row < capacity; row++) {
+				MappedByteBuffer chunk = cs[row / CHUNK_ROWS];
+				int offset = (row % CHUNK_ROWS) * rowBytes;
+				if (!Float.isNaN(chunk.getFloat(offset)))
+					bc.norms[row] = bq.encode(chunk, offset, center, bc.words,
+							row * bq.numWords());
+			}
+			codes = bc;
+			if (logger.isLoggable(Level.INFO))
+				logger.info("built the binary codes of " + dataFileName + "." + fldName
+						+ " for " + count + " records");
+			return bc;
+		}
+	}
+
+	/**
+	 * Encodes the vector of a row into the binary codes, growing them if the
+	 * row is beyond their capacity. The caller must hold the lock of this
+	 * store.
+	 */
+	private void encode(long row, float[] vals) {
+		BinaryCodes bc = codes;
+		if (row >= bc.capacity()) {
+			int capacity = (int) Math.max(row + 1, 2L * bc.capacity());
+			BinaryCodes grown = new BinaryCodes(bc.center, bq.numWords(), capacity,
+					bc.numTrainedRows);
+			System.arraycopy(bc.words, 0, grown.words, 0, bc.words.length);
+			System.arraycopy(bc.norms, 0, grown.norms, 0, bc.norms.length);
+			codes = bc = grown;
+		}
+		bc.norms[(int) row] = bq.encode(vals, bc.center, 0, bc.words,
+				(int) row * bq.numWords());
+	}
+
+	/**
+	 * Keeps the old content of a row for the rollback of the transaction,
+	 * registering the rollback on the first change of the transaction. The
+	 * store stays dirty until the transaction finishes.
+	 */
+	private void logUndo(long row, Transaction tx) {
+		if (!RecoveryMgr.isLoggingEnabled()) {
+			if (isClean)
+				registerChange(null, null);
+			return;
+		}
+		Long txNum = tx.getTransactionNumber();
+		Deque<RowImage> log = undoLogs.get(txNum);
+		if (log == null) {
+			log = new ArrayDeque<RowImage>();
+			registerChange(txNum, log);
+			tx.addLifecycleListenerBeforeLockRelease(new TransactionLifecycleListener() {
+				@Override
+				public void onTxCommit(Transaction tx) {
+					undoLogs.remove(txNum);
+				}
+
+				@Override
+				public void onTxRollback(Transaction tx) {
+					// the rows are restored before the store may be marked
+					// as clean again
+					undo(undoLogs.get(txNum));
+					undoLogs.remove(txNum);
+				}
+
+				@Override
+				public void onTxEndStatement(Transaction tx) {
+					// do nothing
+				}
+			});
+		}
+		log.push(new RowImage(row, read(row)));
+	}
+
+	/**
+	 * Registers the undo log of a transaction and deletes the clean marker, as
+	 * one step with respect to {@link #markClean()}.
+	 */
+	private synchronized void registerChange(Long txNum, Deque<RowImage> log) {
+		if (txNum != null)
+			undoLogs.put(txNum, log);
+		if (isClean) {
+			isClean = false;
+			marker.delete();
+		}
+	}
+
+	private synchronized void markClean() {
+		if (isClean || !undoLogs.isEmpty())
+			return;
+		for (MappedByteBuffer chunk : chunks)
+			chunk.force();
+		try {
+			marker.createNewFile();
+			isClean = true;
+		} catch (IOException e) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning("cannot mark the vector store of " + dataFileName + "."
+						+ fldName + " as clean: " + e);
+		}
+	}
+
+	private void undo(Deque<RowImage> log) {
+		for (RowImage image : log) {
+			if (image.vals == null)
+				clear(image.row);
+			else
+				write(image.row, image.vals);
+		}
+	}
+
+	/**
+	 * Returns a copy of the vector in a row, or null if it holds no record.
+	 */
+	private float[] read(long row) {
+		MappedByteBuffer[] cs = chunks;
+		int c = (int) (row / CHUNK_ROWS);
+		if (c >= cs.length)
+			return null;
+		int offset = (int) (row % CHUNK_ROWS) * rowBytes;
+		if (Float.isNaN(cs[c].getFloat(offset)))
+			return null;
+		float[] vals = new float[dim];
+		for (int i = 0; i < dim; i++)
+			vals[i] = cs[c].getFloat(offset + i * Float.BYTES);
+		return vals;
+	}
+
+	private long row(RecordId rid) {
+		return (rid.block().number() - 1) * slotsPerBlock + rid.id();
+	}
+
+	private RecordId recordId(long row) {
+		return new RecordId(new BlockId(dataFileName, 1 + row / slotsPerBlock),
+				(int) (row % slotsPerBlock));
+	}
+
+	/**
+	 * Returns the specified chunk, mapping it and the chunks before it if they
+	 * are not mapped yet. The rows of a chunk that were beyond the end of the
+	 * file are marked as empty.
+	 */
+	private MappedByteBuffer chunk(int c) {
+		MappedByteBuffer[] cs = chunks;
+		if (c < cs.length)
+			return cs[c];
+
+		synchronized (this) {
+			cs = chunks;
+			if (c < cs.length)
+				return cs[c];
+			try {
+				MappedByteBuffer[] newChunks = Arrays.copyOf(cs, c + 1);
+				for (int i = cs.length; i <= c; i++) {
+					long start = i * chunkBytes;
+					long oldSize = channel.size();
+					newChunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, chunkBytes);
+					for (long r = Math.max(0, (oldSize - start) / rowBytes); r < CHUNK_ROWS; r++)
+						newChunks[i].putFloat((int) r * rowBytes, Float.NaN);
+				}
+				chunks = newChunks;
+				return newChunks[c];
+			} catch (IOException e) {
+				throw new RuntimeException("cannot map " + dataFileName + "." + fldName
+						+ ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Fills the store with the vectors of the records in the table.
+	 */
+	private void load(Transaction tx) {
+		RecordFile rf = ti.open(tx, false);
+		rf.beforeFirst();
+		long count = 0;
+		while (rf.next()) {
+			Constant val = rf.getVal(fldName);
+			write(row(rf.currentRecordId()), ((VectorConstant) val).asJavaVal());
+			count++;
+		}
+		rf.close();
+		if (logger.isLoggable(Level.INFO))
+			logger.info("built the vector store of " + ti.tableName() + "." + fldName
+					+ " with " + count + " records");
+	}
+
+	private void close() {
+		try {
+			chunks = new MappedByteBuffer[0];
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning("cannot close the vector store of " + dataFileName + "."
+						+ fldName + ": " + e);
+		}
+	}
+}
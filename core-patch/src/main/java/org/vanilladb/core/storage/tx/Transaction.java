@@ -95,6 +95,18 @@ public class Transaction {
 		lifecycleListeners.add(listener);
 	}
 
+	/**
+	 * Adds a listener that is notified after the recovery manager but before
+	 * the concurrency manager. On rollback, the listener can undo the changes
+	 * that are not logged while this transaction still holds its locks.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void addLifecycleListenerBeforeLockRelease(TransactionLifecycleListener listener) {
+		lifecycleListeners.add(lifecycleListeners.indexOf(concurMgr), listener);
+	}
+
 	/**
 	 * Commits the current transaction. Flushes all modified blocks (and their
 	 * log records), writes and flushes a commit record to the log, releases all
@@ -27,6 +27,7 @@ import java.util.logging.Logger;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.storage.buffer.BufferMgr;
 import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.record.VectorColumnStore;
 import org.vanilladb.core.storage.tx.concurrency.ConcurrencyMgr;
 import org.vanilladb.core.storage.tx.concurrency.ReadCommittedConcurrencyMgr;
 import org.vanilladb.core.storage.tx.concurrency.RepeatableReadConcurrencyMgr;
@@ -155,6 +156,7 @@ public class TransactionMgr implements TransactionLifecycleListener {
 		synchronized (this) {
 			txNums = new LinkedList<Long>(activeTxs);
 			checkpointTx.bufferMgr().flushAll();
+			VectorColumnStore.checkpoint();
 			LogSeqNum lsn = checkpointTx.recoveryMgr().checkpoint(txNums);
 			VanillaDb.logMgr().flush(lsn);
 		}
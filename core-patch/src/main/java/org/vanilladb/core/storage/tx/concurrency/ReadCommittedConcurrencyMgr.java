@@ -47,6 +47,7 @@ public class ReadCommittedConcurrencyMgr extends ConcurrencyMgr {
 	public void onTxEndStatement(Transaction tx) {
 		for (Object obj : toReleaseSLockAtEndStatement)
 			lockTbl.release(obj, txNum, LockTable.S_LOCK);
+		toReleaseSLockAtEndStatement.clear();
 	}
 
 	@Override
@@ -20,6 +20,8 @@ import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_COMMIT;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_ROLLBACK;
 import static org.vanilladb.core.storage.tx.recovery.LogRecord.OP_START;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -47,6 +49,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 		enableLogging = log;
 	}
 
+	public static boolean isLoggingEnabled() {
+		return enableLogging;
+	}
+
 	/**
 	 * Goes through the log, rolling back all uncompleted transactions. Flushes
 	 * all modified blocks. Finally, writes a quiescent checkpoint record to the
@@ -67,7 +73,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 
 	private Map<Long, LogSeqNum> txUnDoNextLSN = new HashMap<Long, LogSeqNum>();
 	private long txNum; // the owner id of this recovery manger
-	private LogSeqNum logicalStartLSN = null;
+	// the starts of the open logical operations, innermost first; a logical
+	// operation may contain others, such as the record file insertions of an
+	// index insertion
+	private Deque<LogSeqNum> logicalStartLSNs = new ArrayDeque<LogSeqNum>();
 
 	/**
 	 * Creates a recovery manager for the specified transaction.
@@ -152,8 +161,9 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public LogSeqNum logLogicalStart() {
 		if (enableLogging) {
 			// Store logicalStartLSN inside the RecoveryMgr
-			this.logicalStartLSN = new LogicalStartRecord(txNum).writeToLog();
-			return this.logicalStartLSN;
+			LogSeqNum lsn = new LogicalStartRecord(txNum).writeToLog();
+			logicalStartLSNs.push(lsn);
+			return lsn;
 		} else
 			return null;
 	}
@@ -178,11 +188,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 
 	public LogSeqNum logRecordFileInsertionEnd(String tblName, long blkNum, int slotId) {
 		if (enableLogging) {
-			if (this.logicalStartLSN == null)
+			if (logicalStartLSNs.isEmpty())
 				throw new RuntimeException("Logical start LSN is null (in logRecordFileInsertionEnd)");
-			LogSeqNum lsn = new RecordFileInsertEndRecord(txNum, tblName, blkNum, slotId, this.logicalStartLSN)
+			LogSeqNum lsn = new RecordFileInsertEndRecord(txNum, tblName, blkNum, slotId, logicalStartLSNs.pop())
 					.writeToLog();
-			this.logicalStartLSN = null;
 			return lsn;
 		} else
 			return null;
@@ -190,11 +199,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 
 	public LogSeqNum logRecordFileDeletionEnd(String tblName, long blkNum, int slotId) {
 		if (enableLogging) {
-			if (this.logicalStartLSN == null)
+			if (logicalStartLSNs.isEmpty())
 				throw new RuntimeException("Logical start LSN is null (in logRecordFileDeletionEnd)");
-			LogSeqNum lsn = new RecordFileDeleteEndRecord(txNum, tblName, blkNum, slotId, this.logicalStartLSN)
+			LogSeqNum lsn = new RecordFileDeleteEndRecord(txNum, tblName, blkNum, slotId, logicalStartLSNs.pop())
 					.writeToLog();
-			this.logicalStartLSN = null;
 			return lsn;
 		} else
 			return null;
@@ -203,11 +211,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 	public LogSeqNum logIndexInsertionEnd(String indexName, SearchKey searchKey, long recordBlockNum,
 			int recordSlotId) {
 		if (enableLogging) {
-			if (this.logicalStartLSN == null)
+			if (logicalStartLSNs.isEmpty())
 				throw new RuntimeException("Logical start LSN is null (in logIndexInsertionEnd)");
 			LogSeqNum lsn = new IndexInsertEndRecord(txNum, indexName, searchKey, recordBlockNum, recordSlotId,
-					this.logicalStartLSN).writeToLog();
-			this.logicalStartLSN = null;
+					logicalStartLSNs.pop()).writeToLog();
 			return lsn;
 		} else
 			return null;
@@ -215,11 +222,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 
 	public LogSeqNum logIndexDeletionEnd(String indexName, SearchKey searchKey, long recordBlockNum, int recordSlotId) {
 		if (enableLogging) {
-			if (this.logicalStartLSN == null)
+			if (logicalStartLSNs.isEmpty())
 				throw new RuntimeException("Logical start LSN is null (in logIndexDeletionEnd)");
 			LogSeqNum lsn = new IndexDeleteEndRecord(txNum, indexName, searchKey, recordBlockNum, recordSlotId,
-					this.logicalStartLSN).writeToLog();
-			this.logicalStartLSN = null;
+					logicalStartLSNs.pop()).writeToLog();
 			return lsn;
 		} else
 			return null;
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.util;
+
+import java.util.Arrays;
+
+/**
+ * A bounded max-heap that keeps the k items with the smallest distances seen
+ * so far. The distances are kept in a primitive array so that offering a
+ * candidate that is farther than the current k-th one costs a single
+ * comparison.
+ *
+ * @param <T>
+ *            the type of the items
+ */
+public class TopKHeap<T> {
+	private final int k;
+	private final double[] dists;
+	private final Object[] items;
+	private int size;
+
+	/**
+	 * Creates an empty heap that keeps at most k items.
+	 *
+	 * @param k
+	 *            the maximum number of items to keep
+	 */
+	public TopKHeap(int k) {
+		if (k <= 0)
+			throw new IllegalArgumentException("k must be positive: " + k);
+		this.k = k;
+		this.dists = new double[k];
+		this.items = new Object[k];
+	}
+
+	/**
+	 * Offers an item with the given distance. The item is kept if the heap is
+	 * not full or if it is closer than the farthest item in the heap, which
+	 * is evicted in that case.
+	 *
+	 * @param dist
+	 *            the distance of the item
+	 * @param item
+	 *            the item
+	 * @return true if the item is kept
+	 */
+	public boolean offer(double dist, T item) {
+		if (size < k) {
+			dists[size] = dist;
+			items[size] = item;
+			siftUp(size++);
+			return true;
+		}
+		if (dist >= dists[0])
+			return false;
+		dists[0] = dist;
+		items[0] = item;
+		siftDown(0);
+		return true;
+	}
+
+	/**
+	 * Returns the distance that a new item must beat to be kept, i.e., the
+	 * distance of the farthest item if the heap is full, or
+	 * {@link Double#POSITIVE_INFINITY} otherwise.
+	 *
+	 * @return the current admission threshold
+	 */
+	public double threshold() {
+		return size < k ? Double.POSITIVE_INFINITY : dists[0];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == k;
+	}
+
+	/**
+	 * Merges all items of the specified heap into this heap.
+	 *
+	 * @param other
+	 *            the heap to be merged
+	 */
+	@SuppressWarnings("unchecked")
+	public void addAll(TopKHeap<? extends T> other) {
+		for (int i = 0; i < other.size; i++)
+			offer(other.dists[i], (T) other.items[i]);
+	}
+
+	/**
+	 * Returns the items in ascending order of distance and empties the heap.
+	 * If {@code distsOut} is not null, the distances of the returned items are
+	 * written to it in the same order.
+	 *
+	 * @param out
+	 *            the array into which the items are stored, if it is big
+	 *            enough; otherwise, a new array of the same runtime type is
+	 *            allocated
+	 * @param distsOut
+	 *            the output array of distances, or null
+	 * @return the items sorted by ascending distance
+	 */
+	@SuppressWarnings("unchecked")
+	public T[] drainSorted(T[] out, double[] distsOut) {
+		int n = size;
+		T[] result = out.length >= n ? out : Arrays.copyOf(out, n);
+		for (int i = n - 1; i >= 0; i--) {
+			result[i] = (T) items[0];
+			if (distsOut != null)
+				distsOut[i] = dists[0];
+			size--;
+			dists[0] = dists[size];
+			items[0] = items[size];
+			items[size] = null;
+			siftDown(0);
+		}
+		return result;
+	}
+
+	private void siftUp(int pos) {
+		double d = dists[pos];
+		Object item = items[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (dists[parent] >= d)
+				break;
+			dists[pos] = dists[parent];
+			items[pos] = items[parent];
+			pos = parent;
+		}
+		dists[pos] = d;
+		items[pos] = item;
+	}
+
+	private void siftDown(int pos) {
+		if (size == 0)
+			return;
+		double d = dists[pos];
+		Object item = items[pos];
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if (right < size && dists[right] > dists[child])
+				child = right;
+			if (d >= dists[child])
+				break;
+			dists[pos] = dists[child];
+			items[pos] = items[child];
+			pos = child;
+		}
+		dists[pos] = d;
+		items[pos] = item;
+	}
+}
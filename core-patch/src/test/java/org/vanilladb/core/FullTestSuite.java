@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+import org.vanilladb.core.query.algebra.vector.NearestNeighborCacheTest;
+import org.vanilladb.core.query.parse.ParserTest;
+import org.vanilladb.core.storage.index.ivf.IVFIndexTest;
+import org.vanilladb.core.storage.index.ivf.IVFQuantizedIndexTest;
+import org.vanilladb.core.storage.metadata.index.IndexBuildTaskTest;
+import org.vanilladb.core.storage.record.VectorColumnStoreTest;
+
+/**
+ * The suite of all the tests, which is the one run by Maven.
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ ParserTest.class, NearestNeighborCacheTest.class,
+		IVFIndexTest.class, IVFQuantizedIndexTest.class, IndexBuildTaskTest.class,
+		VectorColumnStoreTest.class })
+public class FullTestSuite {
+
+}
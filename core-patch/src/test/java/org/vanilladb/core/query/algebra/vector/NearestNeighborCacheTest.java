@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.query.algebra.vector;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class NearestNeighborCacheTest {
+	private static final String TABLE = "nncache_items", FIELD = "i_emb";
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+	}
+
+	@Test
+	public void testMissAfterWriterCommits() {
+		assertTrue(NearestNeighborCache.isEnabled());
+
+		DistanceFn distFn = new EuclideanFn(FIELD);
+		distFn.setQueryVector(new VectorConstant(new float[] { 1, 2, 3, 4 }));
+		NearestNeighborCache.Key key = NearestNeighborCache.key(TABLE, distFn, 10, -1);
+		Constant[][] rows = { { new IntegerConstant(1) }, { new IntegerConstant(2) } };
+
+		Transaction reader = ServerInit.newTransaction();
+		NearestNeighborCache.put(key, NearestNeighborCache.version(TABLE), rows, reader);
+		assertNotNull(NearestNeighborCache.get(key));
+		reader.commit();
+
+		Transaction writer = ServerInit.newTransaction();
+		NearestNeighborCache.recordUpdates(TABLE, 1, writer);
+		assertNull(NearestNeighborCache.get(key));
+
+		// a reader caches the result it computed before the writer commits
+		reader = ServerInit.newTransaction();
+		NearestNeighborCache.put(key, NearestNeighborCache.version(TABLE), rows, reader);
+		assertNotNull(NearestNeighborCache.get(key));
+		reader.commit();
+
+		// the writer does not cache the results that may see its updates
+		NearestNeighborCache.put(key, NearestNeighborCache.version(TABLE), rows, writer);
+		writer.commit();
+		assertNull(NearestNeighborCache.get(key));
+
+		// the results are cached again once the table is not updated
+		reader = ServerInit.newTransaction();
+		NearestNeighborCache.put(key, NearestNeighborCache.version(TABLE), rows, reader);
+		assertNotNull(NearestNeighborCache.get(key));
+		reader.commit();
+	}
+
+	@Test
+	public void testMissAfterWriterRollsBack() {
+		DistanceFn distFn = new EuclideanFn(FIELD);
+		distFn.setQueryVector(new VectorConstant(new float[] { 5, 6, 7, 8 }));
+		NearestNeighborCache.Key key = NearestNeighborCache.key(TABLE, distFn, 10, -1);
+		Constant[][] rows = { { new IntegerConstant(3) } };
+
+		Transaction writer = ServerInit.newTransaction();
+		NearestNeighborCache.recordUpdates(TABLE, 1, writer);
+
+		Transaction reader = ServerInit.newTransaction();
+		NearestNeighborCache.put(key, NearestNeighborCache.version(TABLE), rows, reader);
+		assertNotNull(NearestNeighborCache.get(key));
+		reader.commit();
+
+		writer.rollback();
+		assertNull(NearestNeighborCache.get(key));
+	}
+}
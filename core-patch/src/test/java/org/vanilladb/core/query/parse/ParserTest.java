@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.query.parse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.sql.predicate.Term;
+
+public class ParserTest {
+
+	@Test
+	public void testDistanceBoundOnTheLeft() {
+		Predicate pred = new Parser("select i from t where e <euc> [1.0, 2.0] < 3.0 and i = 1")
+				.queryCommand().pred();
+		assertDistanceBound(pred, 3.0);
+		assertEqualsOne(pred);
+	}
+
+	@Test
+	public void testDistanceBoundOnTheRight() {
+		Predicate pred = new Parser("select i from t where 3.0 > e <euc> [1.0, 2.0] and i = 1")
+				.queryCommand().pred();
+		assertDistanceBound(pred, 3.0);
+		assertEqualsOne(pred);
+	}
+
+	@Test(expected = BadSyntaxException.class)
+	public void testComparisonAfterFieldOnTheRight() {
+		new Parser("select i from t where 3.0 > e < 1").queryCommand();
+	}
+
+	private void assertDistanceBound(Predicate pred, double bound) {
+		Term t = pred.distanceTerm("e");
+		assertNotNull("the distance term is not parsed", t);
+		DistanceFn distFn = t.distanceFn("e");
+		assertTrue(distFn instanceof EuclideanFn);
+		assertArrayEquals(new float[] { 1.0f, 2.0f }, distFn.getQueryVector().asJavaVal(), 0);
+		assertEquals(bound, t.distanceBound("e"), 0);
+	}
+
+	private void assertEqualsOne(Predicate pred) {
+		ConstantRange cr = pred.constantRange("i");
+		assertNotNull("the term after the distance term is not parsed", cr);
+		assertTrue(cr.isConstant());
+		assertEquals(new IntegerConstant(1), cr.asConstant());
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.server;
+
+import java.io.File;
+import java.sql.Connection;
+
+import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Initializes the database server shared by the tests. The database is
+ * created from scratch once per JVM, and each test works on its own tables.
+ */
+public class ServerInit {
+	private static final String DB_NAME = "vanilladb_testdb";
+
+	/**
+	 * Initializes the server on an empty database, unless it is already
+	 * initialized.
+	 */
+	public static synchronized void init() {
+		if (VanillaDb.isInited())
+			return;
+		deleteDir(new File(FileMgr.DB_FILES_DIR, DB_NAME));
+		deleteDir(new File(FileMgr.LOG_FILES_DIR, DB_NAME));
+		VanillaDb.init(DB_NAME);
+	}
+
+	/**
+	 * Starts a serializable read-write transaction.
+	 * 
+	 * @return the new transaction
+	 */
+	public static Transaction newTransaction() {
+		return VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+	}
+
+	private static void deleteDir(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		dir.delete();
+	}
+}
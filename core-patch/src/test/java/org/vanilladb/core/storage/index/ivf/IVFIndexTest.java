@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index.ivf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class IVFIndexTest {
+	private static final String TABLE = "ivf_items", FIELD = "i_emb", INDEX = "ivf_idx_emb";
+	private static final int DIM = 8, NUM_SPREAD = 1600, NUM_SKEWED = 3000;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+	}
+
+	@Test
+	public void testRebalanceKeepsEntries() {
+		Random random = new Random(0);
+
+		// train the index on vectors spread over the space
+		Transaction tx = ServerInit.newTransaction();
+		VanillaDb.newPlanner().executeUpdate("CREATE TABLE " + TABLE + " (i_id INT, "
+				+ FIELD + " VECTOR(" + DIM + "))", tx);
+		VanillaDb.newPlanner().executeUpdate("CREATE INDEX " + INDEX + " ON " + TABLE
+				+ " (" + FIELD + ") USING IVF", tx);
+		for (int i = 0; i < NUM_SPREAD; i++) {
+			float[] vec = new float[DIM];
+			for (int d = 0; d < DIM; d++)
+				vec[d] = random.nextFloat() * 1000;
+			insert(i, vec, tx);
+		}
+		IVFIndex.train(TABLE, Arrays.asList(FIELD), INDEX, tx);
+		tx.commit();
+
+		// grow a single cluster far beyond the others
+		tx = ServerInit.newTransaction();
+		for (int i = 0; i < NUM_SKEWED; i++) {
+			float[] vec = new float[DIM];
+			for (int d = 0; d < DIM; d++)
+				vec[d] = 500 + (float) random.nextGaussian();
+			insert(NUM_SPREAD + i, vec, tx);
+		}
+		tx.commit();
+
+		tx = ServerInit.newTransaction();
+		IndexInfo ii = VanillaDb.catalogMgr().getIndexInfoByName(INDEX, tx);
+		IVFIndex idx = (IVFIndex) ii.open(tx);
+		assertTrue("no cluster is split", idx.rebalance());
+		idx.close();
+		tx.commit();
+
+		tx = ServerInit.newTransaction();
+		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(TABLE, tx);
+		Set<RecordId> expected = new HashSet<RecordId>();
+		RecordFile rf = ti.open(tx, false);
+		rf.beforeFirst();
+		while (rf.next())
+			expected.add(rf.currentRecordId());
+		rf.close();
+		assertEquals(NUM_SPREAD + NUM_SKEWED, expected.size());
+
+		// probe every cluster
+		idx = (IVFIndex) ii.open(tx);
+		DistanceFn distFn = new EuclideanFn(FIELD);
+		distFn.setQueryVector(new VectorConstant(new float[DIM]));
+		idx.beforeFirst(new VectorSearchRange(distFn, 0, idx.centroidTable().numClusters()));
+		Set<RecordId> actual = new HashSet<RecordId>();
+		while (idx.next())
+			assertTrue("duplicate entry", actual.add(idx.getDataRecordId()));
+		idx.close();
+		tx.commit();
+		assertEquals(expected, actual);
+	}
+
+	private static void insert(int id, float[] vec, Transaction tx) {
+		VanillaDb.newPlanner().executeUpdate("INSERT INTO " + TABLE + " (i_id, " + FIELD
+				+ ") VALUES (" + id + ", " + new VectorConstant(vec) + ")", tx);
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index.ivf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.index.VectorSearchRange;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class IVFQuantizedIndexTest {
+	private static final String TABLE = "ivfq_items", FIELD = "i_emb",
+			SQ8_INDEX = "ivfq_idx_sq8", PQ_INDEX = "ivfq_idx_pq";
+	private static final int DIM = 16, NUM_ROWS = 2000, NUM_QUERIES = 10, K = 10;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		Random random = new Random(0);
+		Transaction tx = ServerInit.newTransaction();
+		VanillaDb.newPlanner().executeUpdate("CREATE TABLE " + TABLE + " (i_id INT, "
+				+ FIELD + " VECTOR(" + DIM + "))", tx);
+		VanillaDb.newPlanner().executeUpdate("CREATE INDEX " + SQ8_INDEX + " ON " + TABLE
+				+ " (" + FIELD + ") USING IVF_SQ8", tx);
+		VanillaDb.newPlanner().executeUpdate("CREATE INDEX " + PQ_INDEX + " ON " + TABLE
+				+ " (" + FIELD + ") USING IVF_PQ", tx);
+		for (int i = 0; i < NUM_ROWS; i++)
+			VanillaDb.newPlanner().executeUpdate("INSERT INTO " + TABLE + " (i_id, "
+					+ FIELD + ") VALUES (" + i + ", "
+					+ new VectorConstant(randomVector(random)) + ")", tx);
+		IVFIndex.train(TABLE, Arrays.asList(FIELD), SQ8_INDEX, tx);
+		IVFIndex.train(TABLE, Arrays.asList(FIELD), PQ_INDEX, tx);
+		tx.commit();
+	}
+
+	@Test
+	public void testSQ8Euclidean() {
+		checkExactOrder(SQ8_INDEX, new EuclideanFn(FIELD));
+	}
+
+	@Test
+	public void testSQ8Cosine() {
+		checkExactOrder(SQ8_INDEX, new CosineFn(FIELD));
+	}
+
+	@Test
+	public void testPQEuclidean() {
+		checkExactOrder(PQ_INDEX, new EuclideanFn(FIELD));
+	}
+
+	@Test
+	public void testPQCosine() {
+		checkExactOrder(PQ_INDEX, new CosineFn(FIELD));
+	}
+
+	/**
+	 * Checks that the re-ranked neighbors returned by the index are in
+	 * ascending order of their exact distances.
+	 */
+	private static void checkExactOrder(String idxName, DistanceFn distFn) {
+		Random random = new Random(1);
+		Transaction tx = ServerInit.newTransaction();
+		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(TABLE, tx);
+		IVFIndex idx = (IVFIndex) VanillaDb.catalogMgr().getIndexInfoByName(idxName, tx)
+				.open(tx);
+		int numClusters = idx.centroidTable().numClusters();
+		RecordFile rf = ti.open(tx, false);
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			distFn.setQueryVector(new VectorConstant(randomVector(random)));
+			idx.beforeFirst(new VectorSearchRange(distFn, K, numClusters));
+			int count = 0;
+			double lastDist = Double.NEGATIVE_INFINITY;
+			while (idx.next()) {
+				RecordId rid = idx.getDataRecordId();
+				rf.moveToRecordId(rid);
+				double dist = distFn.distance((VectorConstant) rf.getVal(FIELD));
+				assertTrue(idxName + " returns " + dist + " after " + lastDist,
+						dist >= lastDist);
+				lastDist = dist;
+				count++;
+			}
+			assertEquals(K, count);
+		}
+		rf.close();
+		idx.close();
+		tx.commit();
+	}
+
+	private static float[] randomVector(Random random) {
+		float[] vec = new float[DIM];
+		for (int d = 0; d < DIM; d++)
+			vec[d] = random.nextFloat() * 100;
+		return vec;
+	}
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.metadata.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.ConstantRange;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo.State;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+
+public class IndexBuildTaskTest {
+	private static final String TABLE = "ibt_items", INDEX = "ibt_idx_val";
+	private static final int NUM_ROWS = 2000, NUM_VALS = 50, NUM_UPDATES = 200;
+	private static final long BUILD_TIMEOUT = 60000;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		Transaction tx = ServerInit.newTransaction();
+		VanillaDb.newPlanner().executeUpdate("CREATE TABLE " + TABLE
+				+ " (i_id INT, i_val INT)", tx);
+		for (int i = 0; i < NUM_ROWS; i++)
+			VanillaDb.newPlanner().executeUpdate(insertCmd(i), tx);
+		tx.commit();
+	}
+
+	@Test
+	public void testBuildConcurrentWithUpdates() throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					start.await();
+					for (int i = 0; i < NUM_UPDATES; i++) {
+						execute(insertCmd(NUM_ROWS + i));
+						// delete some of the existing records
+						execute("DELETE FROM " + TABLE + " WHERE i_id = " + (i * 7));
+					}
+				} catch (Throwable t) {
+					errors.add(t);
+				}
+			}
+		};
+		writer.start();
+
+		Transaction tx = ServerInit.newTransaction();
+		VanillaDb.newPlanner().executeUpdate("CREATE INDEX " + INDEX + " ON "
+				+ TABLE + " (i_val) USING BTREE", tx);
+		IndexInfo ii = VanillaDb.catalogMgr().getIndexInfoByName(INDEX, tx);
+		assertEquals(State.BUILDING, ii.state());
+		tx.commit();
+		start.countDown();
+
+		writer.join();
+		assertTrue(errors.toString(), errors.isEmpty());
+
+		long deadline = System.currentTimeMillis() + BUILD_TIMEOUT;
+		while (ii.state() != State.READY) {
+			if (System.currentTimeMillis() > deadline)
+				fail("the index is not built in time");
+			Thread.sleep(10);
+		}
+
+		tx = ServerInit.newTransaction();
+		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(TABLE, tx);
+		List<Set<RecordId>> expected = new ArrayList<Set<RecordId>>();
+		for (int v = 0; v < NUM_VALS; v++)
+			expected.add(new HashSet<RecordId>());
+		RecordFile rf = ti.open(tx, false);
+		rf.beforeFirst();
+		while (rf.next())
+			expected.get((Integer) rf.getVal("i_val").asJavaVal())
+					.add(rf.currentRecordId());
+		rf.close();
+
+		Index idx = ii.open(tx);
+		for (int v = 0; v < NUM_VALS; v++) {
+			Set<RecordId> actual = new HashSet<RecordId>();
+			idx.beforeFirst(new SearchRange(ConstantRange.newInstance(new IntegerConstant(v))));
+			while (idx.next())
+				assertTrue("duplicate entry", actual.add(idx.getDataRecordId()));
+			assertEquals(expected.get(v), actual);
+		}
+		idx.close();
+		tx.commit();
+	}
+
+	private static String insertCmd(int id) {
+		return "INSERT INTO " + TABLE + " (i_id, i_val) VALUES (" + id + ", "
+				+ (id % NUM_VALS) + ")";
+	}
+
+	/**
+	 * Executes an update in its own transaction, and retries it if the
+	 * transaction is aborted by a lock conflict.
+	 */
+	private static void execute(String cmd) {
+		while (true) {
+			Transaction tx = ServerInit.newTransaction();
+			try {
+				VanillaDb.newPlanner().executeUpdate(cmd, tx);
+				tx.commit();
+				return;
+			} catch (LockAbortException e) {
+				tx.rollback();
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.record;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.TopKHeap;
+
+public class VectorColumnStoreTest {
+	private static final String TABLE = "vcs_items", FIELD = "i_emb";
+	private static final int DIM = 4, NUM_ROWS = 100;
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		Transaction tx = ServerInit.newTransaction();
+		VanillaDb.newPlanner().executeUpdate("CREATE TABLE " + TABLE + " (i_id INT, "
+				+ FIELD + " VECTOR(" + DIM + "))", tx);
+		for (int i = 0; i < NUM_ROWS; i++)
+			insert(i, tx);
+		tx.commit();
+	}
+
+	@Test
+	public void testRollbackRestoresRows() {
+		RecordId[] before = rankAll();
+		assertEquals(NUM_ROWS, before.length);
+
+		Transaction tx = ServerInit.newTransaction();
+		VanillaDb.newPlanner().executeUpdate("DELETE FROM " + TABLE + " WHERE i_id < 10", tx);
+		VanillaDb.newPlanner().executeUpdate("UPDATE " + TABLE + " SET " + FIELD + " = "
+				+ new VectorConstant(vector(1000)) + " WHERE i_id = 50", tx);
+		for (int i = NUM_ROWS; i < NUM_ROWS + 10; i++)
+			insert(i, tx);
+		RecordId[] during = rank(tx);
+		assertEquals(NUM_ROWS, during.length);
+		assertFalse("the store does not see the changes",
+				Arrays.equals(before, during));
+		tx.rollback();
+
+		assertArrayEquals(before, rankAll());
+	}
+
+	private static void insert(int id, Transaction tx) {
+		VanillaDb.newPlanner().executeUpdate("INSERT INTO " + TABLE + " (i_id, " + FIELD
+				+ ") VALUES (" + id + ", " + new VectorConstant(vector(id)) + ")", tx);
+	}
+
+	/**
+	 * Returns a vector whose distance to the query grows with the id.
+	 */
+	private static float[] vector(int id) {
+		float[] vec = new float[DIM];
+		Arrays.fill(vec, id);
+		return vec;
+	}
+
+	private static RecordId[] rankAll() {
+		Transaction tx = ServerInit.newTransaction();
+		RecordId[] rids = rank(tx);
+		tx.commit();
+		return rids;
+	}
+
+	private static RecordId[] rank(Transaction tx) {
+		TableInfo ti = VanillaDb.catalogMgr().getTableInfo(TABLE, tx);
+		VectorColumnStore store = VectorColumnStore.get(ti, FIELD, tx);
+		DistanceFn distFn = new EuclideanFn(FIELD);
+		distFn.setQueryVector(new VectorConstant(vector(-1)));
+		TopKHeap<RecordId> heap = store.rank(distFn, 2 * NUM_ROWS, 0, Long.MAX_VALUE);
+		return heap.drainSorted(new RecordId[heap.size()], null);
+	}
+}